@@ -5,8 +5,8 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
- * @EnableScheduling activates the @Scheduled polling loop in IndexWorker.
- * Has no effect on tests (IndexWorker is @Profile("redis") only).
+ * @EnableScheduling activates the @Scheduled polling loop in IndexWorker
+ * (and the queue-stats refresh of InProcessIndexEventBus on other profiles).
  */
 @SpringBootApplication
 @EnableScheduling
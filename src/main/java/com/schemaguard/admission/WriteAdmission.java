@@ -0,0 +1,266 @@
+package com.schemaguard.admission;
+
+import com.schemaguard.exception.ServiceUnavailableException;
+import com.schemaguard.queue.IndexLagTracker;
+import com.schemaguard.store.DocumentOutbox;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Admission control for plan writes, driven by the indexing backlog.
+ *
+ * If Elasticsearch is down or slow, the API would otherwise keep accepting
+ * writes while the index-events stream grows until Redis runs out of
+ * memory. IndexWorker already reports the queue state to IndexLagTracker;
+ * this turns it into an overloaded / normal decision:
+ *
+ *   overloaded when  backlog (group lag + PEL) >= admission.max-backlog
+ *                    or oldest pending age    >= admission.max-oldest-pending-age-ms
+ *   normal again     once both are below resume-ratio × their threshold
+ *
+ * The gap between the two levels keeps the state from flapping around a
+ * single threshold. A threshold of 0 disables that check.
+ *
+ * What an overloaded state does depends on admission.policy:
+ *   reject   — POST/PUT/PATCH/DELETE on /api/v1/plan get 503 with Retry-After
+ *              (WriteAdmissionInterceptor), before the body is even parsed
+ *   degrade  — writes are accepted but their index event is deferred: the id
+ *              goes to the outbox's deferred set instead of the stream, and
+ *              is replayed (current state, one event per id) once normal
+ *   off      — never sheds; state and counters are still reported
+ *
+ * Retry-After estimates how long the worker needs to drain down to the
+ * resume level at its current throughput, capped at retry-after-max-seconds
+ * (and equal to the cap while nothing is being indexed at all).
+ *
+ * No stats at all (nothing has reported yet) count as "unknown" and writes
+ * are admitted. Stats older than stale-after-ms are "stale": the queue
+ * cannot be read, which in practice means Redis or the worker is in
+ * trouble, so they count as overloaded — admission fails closed in the
+ * outage it exists for. admission.stale-is-overloaded=false admits instead.
+ *
+ * snapshot() backs GET /api/v1/index/admission.
+ *
+ * Metrics:
+ *   schemaguard.admission.overloaded  Gauge — 1 while overloaded
+ *   schemaguard.admission.writes      Counter{decision=rejected|deferred}
+ */
+@Component
+public class WriteAdmission {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteAdmission.class);
+
+    public enum Policy { OFF, REJECT, DEGRADE }
+
+    /** Overload thresholds; 0 disables a check. */
+    record Thresholds(long maxBacklog, long maxOldestPendingAgeMs, double resumeRatio) {}
+
+    private final IndexLagTracker lagTracker;
+    private final DocumentOutbox outbox;
+    private final Counter rejected;
+    private final Counter deferred;
+    private final AtomicBoolean overloaded = new AtomicBoolean();
+
+    @Value("${admission.policy:reject}")
+    private String policyName;
+
+    @Value("${admission.max-backlog:50000}")
+    private long maxBacklog;
+
+    @Value("${admission.max-oldest-pending-age-ms:0}")
+    private long maxOldestPendingAgeMs;
+
+    @Value("${admission.resume-ratio:0.8}")
+    private double resumeRatio;
+
+    @Value("${admission.retry-after-max-seconds:60}")
+    private long retryAfterMaxSeconds;
+
+    @Value("${admission.stale-after-ms:30000}")
+    private long staleAfterMs;
+
+    @Value("${admission.stale-is-overloaded:true}")
+    private boolean staleIsOverloaded;
+
+    @Value("${admission.replay-batch:500}")
+    private int replayBatch;
+
+    private Policy policy;
+    private Thresholds thresholds;
+
+    public WriteAdmission(IndexLagTracker lagTracker, DocumentOutbox outbox, MeterRegistry registry) {
+        this.lagTracker = lagTracker;
+        this.outbox = outbox;
+        this.rejected = Counter.builder("schemaguard.admission.writes")
+                .description("Plan writes shed or degraded by admission control")
+                .tag("decision", "rejected")
+                .register(registry);
+        this.deferred = Counter.builder("schemaguard.admission.writes")
+                .description("Plan writes shed or degraded by admission control")
+                .tag("decision", "deferred")
+                .register(registry);
+        Gauge.builder("schemaguard.admission.overloaded", overloaded, b -> b.get() ? 1 : 0)
+                .description("1 while the indexing backlog is over the admission thresholds")
+                .register(registry);
+    }
+
+    @PostConstruct
+    void init() {
+        policy = Policy.valueOf(policyName.trim().toUpperCase(Locale.ROOT));
+        thresholds = new Thresholds(maxBacklog, maxOldestPendingAgeMs, resumeRatio);
+        log.info("write admission policy={} maxBacklog={} maxOldestPendingAgeMs={} resumeRatio={} staleIsOverloaded={}",
+                policy, maxBacklog, maxOldestPendingAgeMs, resumeRatio, staleIsOverloaded);
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Write path
+    // ─────────────────────────────────────────────────────────────────────────
+
+    /** Throws ServiceUnavailableException (→ 503) when policy=reject and overloaded. */
+    public void checkWrite() {
+        if (policy == Policy.REJECT && isOverloaded()) {
+            rejected.increment();
+            throw new ServiceUnavailableException(
+                    "Indexing backlog is over capacity; retry later", retryAfterSeconds());
+        }
+    }
+
+    /** DEFER when policy=degrade and overloaded, PUBLISH otherwise. */
+    public DocumentOutbox.Indexing indexing() {
+        if (policy == Policy.DEGRADE && isOverloaded()) {
+            deferred.increment();
+            return DocumentOutbox.Indexing.DEFER;
+        }
+        return DocumentOutbox.Indexing.PUBLISH;
+    }
+
+    public boolean isOverloaded() {
+        long statsAge = lagTracker.statsAgeMillis();
+        boolean now = overloaded(overloaded.get(), statsAge, staleAfterMs, staleIsOverloaded,
+                lagTracker.backlog(), lagTracker.oldestPendingAgeMillis(), thresholds);
+        if (overloaded.compareAndSet(!now, now)) {
+            if (now) {
+                log.warn("write admission: overloaded (backlog={}, oldestPendingAgeMs={}, statsAgeMs={}) — policy {}",
+                        lagTracker.backlog(), lagTracker.oldestPendingAgeMillis(), statsAge, policy);
+            } else {
+                log.info("write admission: backlog back to normal (backlog={})", lagTracker.backlog());
+            }
+        }
+        return now;
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Deferred index events
+    // ─────────────────────────────────────────────────────────────────────────
+
+    /** Replays deferred ids, a batch per run, once the backlog is back to normal. */
+    @Scheduled(fixedDelayString = "${admission.replay-interval-ms:5000}")
+    public void replayDeferred() {
+        if (isOverloaded()) return;
+        try {
+            int replayed = outbox.replayDeferred(replayBatch);
+            if (replayed > 0) {
+                log.info("write admission: replayed {} deferred index events", replayed);
+            }
+        } catch (Exception ex) {
+            log.warn("write admission: could not replay deferred index events — {}", ex.getMessage());
+        }
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Snapshot for GET /api/v1/index/admission
+    // ─────────────────────────────────────────────────────────────────────────
+
+    public Map<String, Object> snapshot() {
+        boolean over = isOverloaded();
+        long backlog = lagTracker.backlog();
+        long statsAge = lagTracker.statsAgeMillis();
+
+        Map<String, Object> limits = new LinkedHashMap<>();
+        limits.put("maxBacklog", maxBacklog);
+        limits.put("maxOldestPendingAgeMs", maxOldestPendingAgeMs);
+        limits.put("resumeRatio", resumeRatio);
+        limits.put("staleAfterMs", staleAfterMs);
+        limits.put("staleIsOverloaded", staleIsOverloaded);
+        limits.put("retryAfterMaxSeconds", retryAfterMaxSeconds);
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("policy", policy.name().toLowerCase(Locale.ROOT));
+        out.put("state", statsAge < 0 ? "unknown" : statsAge > staleAfterMs ? "stale"
+                : over ? "overloaded" : "normal");
+        out.put("thresholds", limits);
+        out.put("backlog", backlog < 0 ? null : backlog);
+        long age = lagTracker.oldestPendingAgeMillis();
+        out.put("oldestPendingAgeMs", age < 0 ? null : age);
+        out.put("statsAgeMs", statsAge < 0 ? null : statsAge);
+        out.put("retryAfterSeconds", over ? retryAfterSeconds() : null);
+        out.put("rejectedWrites", (long) rejected.count());
+        out.put("deferredWrites", (long) deferred.count());
+        try {
+            out.put("deferredPending", outbox.deferredCount());
+        } catch (Exception ex) {
+            out.put("deferredPending", null);
+        }
+        return out;
+    }
+
+    private long retryAfterSeconds() {
+        return retryAfterSeconds(lagTracker.backlog(), (long) (maxBacklog * resumeRatio),
+                lagTracker.throughputPerSecond(), retryAfterMaxSeconds);
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Decision — pure functions, unit tested
+    // ─────────────────────────────────────────────────────────────────────────
+
+    /**
+     * Next overloaded state. Enters at a threshold, leaves only once every
+     * check is below resumeRatio × its threshold. Unknown values (-1) never
+     * trigger a check.
+     */
+    static boolean overloaded(boolean wasOverloaded, long backlog, long oldestPendingAgeMs, Thresholds t) {
+        if (wasOverloaded) {
+            return !(below(backlog, t.maxBacklog(), t.resumeRatio())
+                    && below(oldestPendingAgeMs, t.maxOldestPendingAgeMs(), t.resumeRatio()));
+        }
+        return reached(backlog, t.maxBacklog()) || reached(oldestPendingAgeMs, t.maxOldestPendingAgeMs());
+    }
+
+    /**
+     * overloaded() for stats statsAgeMs old: none yet (-1) admits, older
+     * than staleAfterMs is overloaded when staleIsOverloaded.
+     */
+    static boolean overloaded(boolean wasOverloaded, long statsAgeMs, long staleAfterMs, boolean staleIsOverloaded,
+                              long backlog, long oldestPendingAgeMs, Thresholds t) {
+        if (statsAgeMs < 0) return false;
+        if (statsAgeMs > staleAfterMs) return staleIsOverloaded;
+        return overloaded(wasOverloaded, backlog, oldestPendingAgeMs, t);
+    }
+
+    /** Seconds to drain from backlog down to resumeBacklog at throughput, within [1, max]. */
+    static long retryAfterSeconds(long backlog, long resumeBacklog, double throughputPerSecond, long max) {
+        if (throughputPerSecond <= 0) return max;
+        long seconds = (long) Math.ceil(Math.max(0, backlog - resumeBacklog) / throughputPerSecond);
+        return Math.max(1, Math.min(max, seconds));
+    }
+
+    private static boolean reached(long value, long threshold) {
+        return threshold > 0 && value >= threshold;
+    }
+
+    private static boolean below(long value, long threshold, double ratio) {
+        return threshold <= 0 || value < 0 || value < threshold * ratio;
+    }
+}
@@ -0,0 +1,32 @@
+package com.schemaguard.admission;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Runs WriteAdmission.checkWrite() in front of PlanController's write
+ * endpoints. Reads (GET / HEAD) always pass. Registered for /api/v1/plan/**
+ * in WebConfig; a rejection surfaces as ServiceUnavailableException and is
+ * rendered by GlobalExceptionHandler, so shed requests never reach body
+ * parsing or schema validation.
+ */
+@Component
+public class WriteAdmissionInterceptor implements HandlerInterceptor {
+
+    private final WriteAdmission admission;
+
+    public WriteAdmissionInterceptor(WriteAdmission admission) {
+        this.admission = admission;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        switch (request.getMethod()) {
+            case "POST", "PUT", "PATCH", "DELETE" -> admission.checkWrite();
+            default -> { }
+        }
+        return true;
+    }
+}
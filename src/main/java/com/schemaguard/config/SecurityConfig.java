@@ -4,6 +4,7 @@ import com.schemaguard.security.SecurityErrorHandler;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
@@ -28,10 +29,15 @@ import java.util.List;
  * Public routes (no auth):
  *   /api/v1/schema/**
  *   /api/v1/index/**   — index admin/health endpoints (demo only)
+ *   /actuator/health, /actuator/prometheus — probes and metrics scraping
  *
  * Security error handling is overridden via SecurityErrorHandler so that
  * 401 and 403 responses follow the same ApiError JSON contract as the rest
  * of the API.
+ *
+ * The JwtDecoder is injected into the filter chain rather than called directly,
+ * so a @Primary decoder (test / benchmark configurations) replaces the Google
+ * decoder for real HTTP requests too, not just for MockMvc.
  */
 @Configuration
 @EnableWebSecurity
@@ -50,7 +56,7 @@ public class SecurityConfig {
     }
 
     @Bean
-    public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain securityFilterChain(HttpSecurity http, JwtDecoder jwtDecoder) throws Exception {
         http
             .sessionManagement(sm -> sm.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
             .csrf(csrf -> csrf.disable())
@@ -60,15 +66,19 @@ public class SecurityConfig {
             )
             .authorizeHttpRequests(auth -> auth
                 .requestMatchers("/api/v1/schema/**").permitAll()
-                // index admin endpoints are public — demo/debug only, no data exposed
+                // index admin actions (reindex) change state — require a valid Bearer token
+                .requestMatchers(HttpMethod.POST, "/api/v1/index/**").authenticated()
+                // index admin reads are public — demo/debug only, no data exposed
                 .requestMatchers("/api/v1/index/**").permitAll()
+                // liveness probes and Prometheus scraping; other actuator endpoints stay protected
+                .requestMatchers("/actuator/health/**", "/actuator/prometheus").permitAll()
                 .requestMatchers("/api/v1/plan/**").authenticated()
                 // search endpoints return plan data — require a valid Bearer token
                 .requestMatchers("/api/v1/search/**").authenticated()
                 .anyRequest().authenticated()
             )
             .oauth2ResourceServer(oauth2 -> oauth2
-                .jwt(jwt -> jwt.decoder(jwtDecoder()))
+                .jwt(jwt -> jwt.decoder(jwtDecoder))
                 .authenticationEntryPoint(securityErrorHandler)
             );
 
@@ -0,0 +1,22 @@
+package com.schemaguard.config;
+
+import com.schemaguard.admission.WriteAdmissionInterceptor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    private final WriteAdmissionInterceptor writeAdmissionInterceptor;
+
+    public WebConfig(WriteAdmissionInterceptor writeAdmissionInterceptor) {
+        this.writeAdmissionInterceptor = writeAdmissionInterceptor;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(writeAdmissionInterceptor)
+                .addPathPatterns("/api/v1/plan", "/api/v1/plan/**");
+    }
+}
@@ -1,11 +1,20 @@
 package com.schemaguard.controller;
 
+import com.schemaguard.admission.WriteAdmission;
+import com.schemaguard.elastic.ElasticsearchHttp;
+import com.schemaguard.elastic.PlanIndexInitializer;
+import com.schemaguard.elastic.PlanReindexService;
+import com.schemaguard.queue.IndexLagTracker;
+import com.schemaguard.queue.IndexReconciler;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.client.RestTemplate;
@@ -16,15 +25,44 @@ import java.util.Map;
 import static com.schemaguard.elastic.PlanIndexConstants.INDEX_NAME;
 
 /**
- * Lightweight admin endpoint for verifying Elasticsearch index connectivity.
+ * Lightweight admin endpoints for Elasticsearch connectivity and index freshness.
  *
  * GET /api/v1/index/health
  *   - pings the Elasticsearch cluster root
  *   - returns index status and cluster health in a simple JSON response
  *   - no auth required (public endpoint, demo only)
  *
+ * GET /api/v1/index/lag
+ *   - how far search trails writes: stream length, consumer group lag,
+ *     pending count, oldest pending event age, and indexed throughput and
+ *     publish → indexed lag over the last minute (see IndexLagTracker)
+ *   - workerReporting=false when no IndexWorker runs (non-redis profiles)
+ *
+ * GET /api/v1/index/admission
+ *   - write admission policy, its thresholds, the backlog they are compared
+ *     against, current state (normal / overloaded / unknown), Retry-After
+ *     while overloaded, and rejected / deferred write counts (see WriteAdmission)
+ *
+ * POST /api/v1/index/reindex   (Bearer token required)
+ *   - starts a zero-downtime rebuild into the next plans-index-vN and swaps
+ *     the plans-index alias when done (see PlanReindexService)
+ *   - 202 with the job snapshot; 409 while a reindex is already running
+ *
+ * GET /api/v1/index/reindex
+ *   - state of the current / last reindex: phase, target and previous index,
+ *     scanned / indexed / failed counts, caught-up ids, plans per second
+ *
+ * GET /api/v1/index/mapping
+ *   - live mapping of the index behind the alias diffed against the
+ *     desired one (see PlanIndexMapping); inSync=false lists what a
+ *     reindex would change
+ *
+ * GET /api/v1/index/reconcile
+ *   - KV ↔ Elasticsearch reconciler: current / last pass, ids checked, and
+ *     stale / missing / orphaned parents re-enqueued (see IndexReconciler)
+ *
  * Does NOT expose any plan data or internal document details.
- * Does NOT modify any state.
+ * Only POST /reindex modifies state.
  */
 @RestController
 @RequestMapping("/api/v1/index")
@@ -33,6 +71,11 @@ public class IndexAdminController {
     private static final Logger log = LoggerFactory.getLogger(IndexAdminController.class);
 
     private final RestTemplate restTemplate = new RestTemplate();
+    private final IndexLagTracker lagTracker;
+    private final WriteAdmission admission;
+    private final PlanReindexService reindexService;
+    private final IndexReconciler reconciler;
+    private final PlanIndexInitializer indexInitializer;
 
     @Value("${elastic.host:localhost}")
     private String host;
@@ -40,6 +83,27 @@ public class IndexAdminController {
     @Value("${elastic.port:9200}")
     private int port;
 
+    @Value("${elastic.connect-timeout-ms:2000}")
+    private long connectTimeoutMs;
+
+    @Value("${elastic.read-timeout-ms:30000}")
+    private long readTimeoutMs;
+
+    public IndexAdminController(IndexLagTracker lagTracker, WriteAdmission admission,
+                                PlanReindexService reindexService, IndexReconciler reconciler,
+                                PlanIndexInitializer indexInitializer) {
+        this.lagTracker = lagTracker;
+        this.admission = admission;
+        this.reindexService = reindexService;
+        this.reconciler = reconciler;
+        this.indexInitializer = indexInitializer;
+    }
+
+    @PostConstruct
+    void applyTimeouts() {
+        restTemplate.setRequestFactory(ElasticsearchHttp.requestFactory(connectTimeoutMs, readTimeoutMs));
+    }
+
     @GetMapping(value = "/health", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<Map<String, Object>> health() {
         Map<String, Object> result = new LinkedHashMap<>();
@@ -64,4 +128,35 @@ public class IndexAdminController {
         result.put("indexName", INDEX_NAME);
         return ResponseEntity.ok(result);
     }
+
+    @GetMapping(value = "/lag", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> lag() {
+        return ResponseEntity.ok(lagTracker.snapshot());
+    }
+
+    @GetMapping(value = "/admission", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> admission() {
+        return ResponseEntity.ok(admission.snapshot());
+    }
+
+    @PostMapping(value = "/reindex", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> startReindex() {
+        log.info("reindex requested");
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(reindexService.start());
+    }
+
+    @GetMapping(value = "/reindex", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> reindex() {
+        return ResponseEntity.ok(reindexService.snapshot());
+    }
+
+    @GetMapping(value = "/mapping", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> mapping() {
+        return ResponseEntity.ok(indexInitializer.mappingReport());
+    }
+
+    @GetMapping(value = "/reconcile", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> reconcile() {
+        return ResponseEntity.ok(reconciler.snapshot());
+    }
 }
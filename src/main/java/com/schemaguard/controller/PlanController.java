@@ -2,19 +2,23 @@ package com.schemaguard.controller;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.schemaguard.admission.WriteAdmission;
 import com.schemaguard.exception.ConflictException;
 import com.schemaguard.exception.NotFoundException;
 import com.schemaguard.exception.PreconditionFailedException;
 import com.schemaguard.model.StoredDocument;
 import com.schemaguard.queue.IndexEvent;
 import com.schemaguard.queue.IndexEventOperation;
-import com.schemaguard.queue.IndexEventPublisher;
+import com.schemaguard.store.DocumentOutbox;
 import com.schemaguard.store.KeyValueStore;
+import com.schemaguard.timing.Phase;
+import com.schemaguard.timing.RequestTimings;
 import com.schemaguard.util.JsonUtil;
 import com.schemaguard.validation.SchemaValidationException;
 import com.schemaguard.validation.SchemaValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -32,26 +36,57 @@ public class PlanController {
 
     static final String MERGE_PATCH_CONTENT_TYPE = "application/merge-patch+json";
 
+    /** "low" sends the write's index event to the bulk/backfill lane. */
+    static final String INDEX_PRIORITY_HEADER = "X-Index-Priority";
+
+    /** "wait_for" asks the indexer to write with refresh=wait_for (index.refresh.policy=wait_for). */
+    static final String INDEX_REFRESH_HEADER = "X-Index-Refresh";
+
+    /** Re-merge attempts for a PATCH without If-Match that races another write. */
+    private static final int MAX_PATCH_ATTEMPTS = 3;
+
+    /**
+     * Largest merge patch carried on the PATCH event for a partial _update in
+     * the indexer; larger ones (and 0 = off) are re-indexed in full.
+     */
+    @Value("${index.partial-update.max-patch-bytes:4096}")
+    private int maxPatchBytes;
+
     private final KeyValueStore store;
     private final SchemaValidator schemaValidator;
     private final ObjectMapper objectMapper;
-    private final IndexEventPublisher eventPublisher;
-
+    private final DocumentOutbox outbox;
+    private final WriteAdmission admission;
+
+    /**
+     * Reads go straight to the KeyValueStore; every write goes through the
+     * DocumentOutbox so the document and its index event commit together.
+     * WriteAdmission decides whether that event is published now or deferred
+     * while the indexing backlog is over capacity (policy=degrade); an
+     * X-Index-Priority: low header publishes it on the backfill lane, and
+     * X-Index-Refresh: wait_for asks for read-your-writes indexing.
+     */
     public PlanController(KeyValueStore store,
                           SchemaValidator schemaValidator,
                           ObjectMapper objectMapper,
-                          IndexEventPublisher eventPublisher) {
+                          DocumentOutbox outbox,
+                          WriteAdmission admission) {
         this.store = store;
         this.schemaValidator = schemaValidator;
         this.objectMapper = objectMapper;
-        this.eventPublisher = eventPublisher;
+        this.outbox = outbox;
+        this.admission = admission;
     }
 
     // ---------------------------
     // POST /api/v1/plan
     // ---------------------------
     @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Map<String, Object>> createPlan(@RequestBody String rawJson) {
+    public ResponseEntity<Map<String, Object>> createPlan(
+            @RequestHeader(value = INDEX_PRIORITY_HEADER, required = false) String priority,
+            @RequestHeader(value = INDEX_REFRESH_HEADER, required = false) String refresh,
+            @RequestBody String rawJson
+    ) {
         schemaValidator.validatePlanJson(rawJson);
 
         String objectId = JsonUtil.extractTopLevelObjectId(objectMapper, rawJson);
@@ -63,15 +98,13 @@ public class PlanController {
             throw new ConflictException("Plan with objectId already exists: " + objectId);
         }
 
-        boolean created = store.create(objectId, rawJson);
-        if (!created) {
+        // document + UPSERT event are written atomically
+        DocumentOutbox.Result result = outbox.create(objectId, rawJson, indexing(priority, refresh));
+        if (!result.isApplied()) {
             return ResponseEntity.status(409).body(errorBody("CONFLICT", "Plan with objectId already exists: " + objectId));
         }
 
-        StoredDocument doc = store.get(objectId).orElseThrow();
-
-        // publish UPSERT event after successful create
-        eventPublisher.publish(IndexEvent.of(IndexEventOperation.UPSERT, objectId, doc.getEtag()));
+        StoredDocument doc = result.document();
 
         Map<String, Object> response = new LinkedHashMap<>();
         response.put("objectId", objectId);
@@ -120,6 +153,8 @@ public class PlanController {
     public ResponseEntity<Map<String, Object>> replacePlan(
             @PathVariable String objectId,
             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestHeader(value = INDEX_PRIORITY_HEADER, required = false) String priority,
+            @RequestHeader(value = INDEX_REFRESH_HEADER, required = false) String refresh,
             @RequestBody String rawJson
     ) {
         StoredDocument existing = store.get(objectId)
@@ -131,12 +166,11 @@ public class PlanController {
         }
 
         schemaValidator.validatePlanJson(rawJson);
-        store.update(objectId, rawJson);
-
-        StoredDocument updated = store.get(objectId).orElseThrow();
 
-        // publish UPSERT event after successful full replace
-        eventPublisher.publish(IndexEvent.of(IndexEventOperation.UPSERT, objectId, updated.getEtag()));
+        // full replace + UPSERT event, atomically; If-Match is re-checked inside the write
+        StoredDocument updated = applied(objectId, ifMatch,
+                outbox.replace(objectId, rawJson, ifMatch != null ? stripQuotes(ifMatch) : null,
+                        IndexEventOperation.UPSERT, indexing(priority, refresh)));
 
         Map<String, Object> response = new LinkedHashMap<>();
         response.put("objectId", objectId);
@@ -160,38 +194,41 @@ public class PlanController {
     public ResponseEntity<String> mergePatchPlan(
             @PathVariable String objectId,
             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestHeader(value = INDEX_PRIORITY_HEADER, required = false) String priority,
+            @RequestHeader(value = INDEX_REFRESH_HEADER, required = false) String refresh,
             @RequestBody String patchJson
     ) {
-        StoredDocument existing = store.get(objectId)
-                .orElseThrow(() -> new NotFoundException("Plan not found: " + objectId));
-
-        if (ifMatch != null && !stripQuotes(ifMatch).equals(existing.getEtag())) {
-            throw new PreconditionFailedException(
-                    "ETag mismatch: document has been modified since you last fetched it");
-        }
+        // The write is conditional on the etag the merge was computed from, so a
+        // concurrent writer is never silently overwritten. Without If-Match the
+        // client asked for "apply to the current version", so a lost race simply
+        // re-reads and re-merges (bounded); with If-Match it is a 412.
+        DocumentOutbox.Indexing indexing = indexing(priority, refresh);
+        StoredDocument updated = null;
+        for (int attempt = 1; updated == null; attempt++) {
+            StoredDocument existing = store.get(objectId)
+                    .orElseThrow(() -> new NotFoundException("Plan not found: " + objectId));
+
+            if (ifMatch != null && !stripQuotes(ifMatch).equals(existing.getEtag())) {
+                throw new PreconditionFailedException(
+                        "ETag mismatch: document has been modified since you last fetched it");
+            }
 
-        String mergedJson;
-        try {
-            JsonNode target = objectMapper.readTree(existing.getJson());
-            JsonNode patch  = objectMapper.readTree(patchJson);
-            JsonNode merged = applyMergePatch(target, patch);
-            mergedJson = objectMapper.writeValueAsString(merged);
-        } catch (Exception e) {
-            throw new SchemaValidationException(
-                    "Invalid patch payload (parse error)",
-                    List.of(e.getMessage())
-            );
+            String mergedJson = mergedJson(existing, patchJson);
+            schemaValidator.validatePlanJson(mergedJson);
+
+            // KV update + PATCH event (carrying the NEW etag, and the patch on top
+            // of the etag it was merged against), atomically.
+            // Never published on 400 / 404 / 412 paths.
+            DocumentOutbox.Result result =
+                    outbox.patch(objectId, mergedJson, existing.getEtag(), eventPatch(patchJson), indexing);
+            if (result.status() == DocumentOutbox.Status.ETAG_MISMATCH
+                    && ifMatch == null && attempt < MAX_PATCH_ATTEMPTS) {
+                log.info("PATCH id={} lost a race with a concurrent write; re-merging (attempt {})",
+                        objectId, attempt + 1);
+                continue;
+            }
+            updated = applied(objectId, ifMatch, result);
         }
-
-        schemaValidator.validatePlanJson(mergedJson);
-        store.update(objectId, mergedJson);
-
-        StoredDocument updated = store.get(objectId).orElseThrow();
-
-        // Publish PATCH event only after KV update succeeds — carries the NEW etag.
-        // Never published on 400 / 404 / 412 paths.
-        IndexEvent patchEvent = IndexEvent.of(IndexEventOperation.PATCH, objectId, updated.getEtag());
-        eventPublisher.publish(patchEvent);
         log.info("PATCH applied to KV id={} newEtag={}; published PATCH event",
                 objectId, updated.getEtag());
 
@@ -207,7 +244,9 @@ public class PlanController {
     @DeleteMapping("/{objectId}")
     public ResponseEntity<Void> deletePlan(
             @PathVariable String objectId,
-            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestHeader(value = INDEX_PRIORITY_HEADER, required = false) String priority,
+            @RequestHeader(value = INDEX_REFRESH_HEADER, required = false) String refresh
     ) {
         StoredDocument existing = store.get(objectId)
                 .orElseThrow(() -> new NotFoundException("Plan not found: " + objectId));
@@ -217,24 +256,56 @@ public class PlanController {
                     "ETag mismatch: document has been modified since you last fetched it");
         }
 
-        // capture etag before deletion so the event carries the last known etag
-        String etagBeforeDelete = existing.getEtag();
-
-        store.delete(objectId);
-
-        // Publish DELETE event only after KV delete succeeds — etag captured before deletion.
+        // KV delete + DELETE event (carrying the last known etag), atomically.
         // Never published on 404 / 412 error paths.
-        IndexEvent deleteEvent = IndexEvent.of(IndexEventOperation.DELETE, objectId, etagBeforeDelete);
-        eventPublisher.publish(deleteEvent);
+        applied(objectId, ifMatch,
+                outbox.delete(objectId, ifMatch != null ? stripQuotes(ifMatch) : null, indexing(priority, refresh)));
         log.info("DELETE removed from KV id={}; published DELETE event for cascaded Elastic removal",
                 objectId);
 
         return ResponseEntity.noContent().build();
     }
 
+    /**
+     * Admission decides publish vs defer; a published event moves to the LOW
+     * lane, or asks for read-your-writes, on request. low wins over wait_for —
+     * a backfill is not waited on.
+     */
+    private DocumentOutbox.Indexing indexing(String priority, String refresh) {
+        DocumentOutbox.Indexing indexing = admission.indexing();
+        if (indexing != DocumentOutbox.Indexing.PUBLISH) return indexing;
+        if ("low".equalsIgnoreCase(priority)) return DocumentOutbox.Indexing.BACKFILL;
+        return IndexEvent.REFRESH_WAIT_FOR.equalsIgnoreCase(refresh)
+                ? DocumentOutbox.Indexing.READ_YOUR_WRITES
+                : indexing;
+    }
+
     // ---------------------------
     // RFC 7396 — JSON Merge Patch
     // ---------------------------
+    /** The patch to carry on the PATCH event, or null when it is larger than max-patch-bytes. */
+    private String eventPatch(String patchJson) {
+        String patch = patchJson.strip();
+        return maxPatchBytes > 0 && patch.length() <= maxPatchBytes ? patch : null;
+    }
+
+    private String mergedJson(StoredDocument existing, String patchJson) {
+        long phase = RequestTimings.start();
+        try {
+            JsonNode target = objectMapper.readTree(existing.getJson());
+            JsonNode patch  = objectMapper.readTree(patchJson);
+            JsonNode merged = applyMergePatch(target, patch);
+            return objectMapper.writeValueAsString(merged);
+        } catch (Exception e) {
+            throw new SchemaValidationException(
+                    "Invalid patch payload (parse error)",
+                    List.of(e.getMessage())
+            );
+        } finally {
+            RequestTimings.stop(Phase.PARSE, phase);
+        }
+    }
+
     JsonNode applyMergePatch(JsonNode target, JsonNode patch) {
         if (!patch.isObject()) {
             return patch;
@@ -264,6 +335,25 @@ public class PlanController {
     // ---------------------------
     // Helpers
     // ---------------------------
+
+    /**
+     * Maps a rejected outbox write to the API error contract. Rejections here
+     * mean another request changed the plan between our read and our write.
+     */
+    private StoredDocument applied(String objectId, String ifMatch, DocumentOutbox.Result result) {
+        return switch (result.status()) {
+            case APPLIED -> result.document();
+            case NOT_FOUND -> throw new NotFoundException("Plan not found: " + objectId);
+            case ETAG_MISMATCH -> {
+                if (ifMatch != null) {
+                    throw new PreconditionFailedException(
+                            "ETag mismatch: document has been modified since you last fetched it");
+                }
+                throw new ConflictException("Plan was modified concurrently, retry the request: " + objectId);
+            }
+            case ALREADY_EXISTS -> throw new ConflictException("Plan with objectId already exists: " + objectId);
+        };
+    }
     private String stripQuotes(String value) {
         if (value != null && value.startsWith("\"") && value.endsWith("\"") && value.length() >= 2) {
             return value.substring(1, value.length() - 1);
@@ -1,5 +1,6 @@
 package com.schemaguard.controller;
 
+import com.schemaguard.elastic.PlanQueries;
 import com.schemaguard.elastic.PlanSearchService;
 import com.schemaguard.model.ApiError;
 import jakarta.servlet.http.HttpServletRequest;
@@ -32,6 +33,27 @@ import java.util.Map;
  *   GET /api/v1/search/parent/{parentId}/children
  *     Return all child documents belonging to a given parent.
  *     Uses a has_parent query with routing=parentId for correctness.
+ *
+ * Both are paged (PlanSearchService.PageRequest):
+ *   size            hits per page (search.page.default-size, at most
+ *                   search.page.max-size)
+ *   sort            field[:asc|desc],... — _score:desc / objectId:asc by default
+ *   cursor          nextCursor of the previous page; same query parameters
+ *   trackTotalHits  true adds "total" — counting every match costs, so off
+ * An invalid size, sort or cursor is a 400; an expired cursor too.
+ *
+ * GET /api/v1/search can return each parent's children with it, from the
+ * same Elasticsearch request (PlanSearchService.ResultOptions):
+ *   children        none (default) | matching | all
+ *   childrenSize    children per parent (search.inner-hits.default-size)
+ *   childrenSource  child fields to return, comma-separated
+ *   source          parent fields to return, comma-separated
+ *
+ * childValue is matched per match (PlanQueries.MatchMode): auto (default —
+ * term on keyword / numeric / date fields, full text on text fields) |
+ * term | terms (a,b,c) | range (min..max) | prefix | text. All but text are
+ * filters — unscored, and cached by Elasticsearch. An unknown match, or one
+ * the field cannot take, is a 400.
  */
 @RestController
 @RequestMapping("/api/v1/search")
@@ -49,9 +71,12 @@ public class SearchController {
     // GET /api/v1/search
     //
     // Query params (all optional):
-    //   q           — free-text match applied to the parent document itself
+    //   q           — free-text match on the parent document's search.q.fields
     //   childField  — field name on a child document to filter by
-    //   childValue  — value to match for childField (uses term + match)
+    //   childValue  — value to match for childField
+    //   match       — how childValue matches, see above (auto by default)
+    //   size, sort, cursor, trackTotalHits — paging, see above
+    //   children, childrenSize, childrenSource, source — children inline, see above
     //
     // When childField + childValue are provided, only parents that have at
     // least one child matching that criterion are returned (has_child query).
@@ -62,6 +87,15 @@ public class SearchController {
             @RequestParam(required = false) String q,
             @RequestParam(required = false) String childField,
             @RequestParam(required = false) String childValue,
+            @RequestParam(required = false) String match,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "false") boolean trackTotalHits,
+            @RequestParam(required = false) String children,
+            @RequestParam(required = false) Integer childrenSize,
+            @RequestParam(required = false) String childrenSource,
+            @RequestParam(required = false) String source,
             HttpServletRequest request
     ) {
         // Validate: childField and childValue must be provided together
@@ -76,11 +110,16 @@ public class SearchController {
         }
 
         try {
-            Map<String, Object> result =
-                    searchService.searchParentsByChildField(childField, childValue, q);
+            Map<String, Object> result = searchService.searchParentsByChildField(childField, childValue, q,
+                    PlanQueries.MatchMode.parse(match),
+                    new PlanSearchService.PageRequest(size, sort, cursor, trackTotalHits),
+                    new PlanSearchService.ResultOptions(source, PlanSearchService.IncludeChildren.parse(children),
+                            childrenSize, childrenSource));
             log.info("GET /api/v1/search childField={} childValue={} q={} → {} results",
                     childField, childValue, q, result.get("count"));
             return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException ex) {
+            return badRequest(ex, request);
         } catch (Exception ex) {
             log.warn("GET /api/v1/search failed — {}", ex.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ApiError(
@@ -97,18 +136,26 @@ public class SearchController {
     // Returns all child documents for the given parentId.
     // Returns an empty children array (count=0) if none exist — not a 404.
     // Uses has_parent query with routing=parentId for shard targeting.
+    // Paged like GET /api/v1/search.
     // ─────────────────────────────────────────────────────────────────────────
     @GetMapping(value = "/parent/{parentId}/children",
                 produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<?> getChildrenForParent(
             @PathVariable String parentId,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "false") boolean trackTotalHits,
             HttpServletRequest request
     ) {
         try {
-            Map<String, Object> result = searchService.findChildrenByParent(parentId);
+            Map<String, Object> result = searchService.findChildrenByParent(parentId,
+                    new PlanSearchService.PageRequest(size, sort, cursor, trackTotalHits));
             log.info("GET /api/v1/search/parent/{}/children → {} children",
                     parentId, result.get("count"));
             return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException ex) {
+            return badRequest(ex, request);
         } catch (Exception ex) {
             log.warn("GET /api/v1/search/parent/{}/children failed — {}", parentId, ex.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ApiError(
@@ -118,4 +165,9 @@ public class SearchController {
             ));
         }
     }
+
+    private static ResponseEntity<ApiError> badRequest(IllegalArgumentException ex, HttpServletRequest request) {
+        return ResponseEntity.badRequest().body(new ApiError(
+                400, "Bad Request", ex.getMessage(), request.getRequestURI()));
+    }
 }
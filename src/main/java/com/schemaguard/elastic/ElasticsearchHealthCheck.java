@@ -34,11 +34,18 @@ public class ElasticsearchHealthCheck {
     @Value("${elastic.port:9200}")
     private int port;
 
+    @Value("${elastic.connect-timeout-ms:2000}")
+    private long connectTimeoutMs;
+
+    @Value("${elastic.read-timeout-ms:30000}")
+    private long readTimeoutMs;
+
     @EventListener(ApplicationReadyEvent.class)
     public void checkConnectivity() {
         String url = "http://" + host + ":" + port;
         try {
-            new RestTemplate().getForObject(url, String.class);
+            new RestTemplate(ElasticsearchHttp.requestFactory(connectTimeoutMs, readTimeoutMs))
+                    .getForObject(url, String.class);
             log.info("Elasticsearch cluster reachable at {}", url);
         } catch (Exception ex) {
             log.warn("Elasticsearch cluster NOT reachable at {} — {}", url, ex.getMessage());
@@ -0,0 +1,28 @@
+package com.schemaguard.elastic;
+
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+
+import java.time.Duration;
+
+/**
+ * Request factory for the plain-HTTP Elasticsearch clients.
+ *
+ * A RestTemplate on the default factory has no timeouts: against a node that
+ * accepts the connection but never answers, a call blocks its thread for
+ * good — for the indexer that is the shared scheduler thread. Every client
+ * uses elastic.connect-timeout-ms / elastic.read-timeout-ms instead; a call
+ * past them fails with ResourceAccessException and is retried like any other
+ * Elasticsearch error.
+ */
+public final class ElasticsearchHttp {
+
+    private ElasticsearchHttp() {}
+
+    public static ClientHttpRequestFactory requestFactory(long connectTimeoutMs, long readTimeoutMs) {
+        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
+        factory.setConnectTimeout(Duration.ofMillis(connectTimeoutMs));
+        factory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
+        return factory;
+    }
+}
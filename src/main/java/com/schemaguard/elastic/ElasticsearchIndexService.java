@@ -1,8 +1,13 @@
 package com.schemaguard.elastic;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.schemaguard.jfr.ElasticRequestEvent;
+import com.schemaguard.queue.PlanDocumentSplitter;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -10,11 +15,16 @@ import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import static com.schemaguard.elastic.PlanIndexConstants.*;
@@ -31,19 +41,51 @@ import static com.schemaguard.elastic.PlanIndexConstants.*;
  * which provides upsert semantics by default — re-indexing a document with
  * the same id replaces it without creating duplicates.
  *
+ * Writes that carry a StoredDocument version use version_type=external
+ * (query parameters, or version / version_type in the _bulk action line), so
+ * a write older than the indexed document comes back 409 and is dropped as
+ * superseded. That ordering no longer depends on the order events are
+ * processed in.
+ *
+ * updateParent is the one partial write: the Update API
+ * (POST /<index>/_update/<id>) with a partial doc, made conditional on the
+ * parent's current seq_no / primary_term.
+ *
  * deleteChildren uses the Delete By Query API (POST /<index>/_delete_by_query)
  * with routing = parentId and a parent_id term query so only children of the
- * specified parent are removed, and only the correct shard is targeted.
+ * specified parent are removed, and only the correct shard is targeted. The
+ * query also matches _plan = parentId, which reaches grandchildren
+ * (join-levels=3); children indexed before _plan existed are still found by
+ * parent_id. deletePlans does the same for a whole batch of parents with one
+ * terms query, and deletes the parents with one _bulk.
+ *
+ * With elastic.index.strategy=nested or flattened a plan is one document:
+ * no join field, no child documents, so the child reads and
+ * delete_by_query requests are skipped and parents are all documents.
+ *
+ * No write forces a refresh (refresh=true). A write passes refresh=wait_for
+ * when the caller asks for Refresh.WAIT_FOR; otherwise the index's
+ * refresh_interval, or refresh() on a schedule, makes it visible.
+ *
+ * Live writes go to the plans-index alias. bulkIndex / deletePlan name a
+ * concrete index instead — the reindex job fills plans-index-vN before the
+ * alias is swapped to it.
  *
  * No document bodies are logged — only ids and routing values.
+ *
+ * Every HTTP call is recorded as a schemaguard.ElasticRequest JFR event
+ * (operation, document id, routing, body size, etag, status).
  */
 @Service
 public class ElasticsearchIndexService implements IndexService {
 
     private static final Logger log = LoggerFactory.getLogger(ElasticsearchIndexService.class);
+    private static final MediaType BULK_CONTENT_TYPE = MediaType.parseMediaType("application/x-ndjson");
 
     private final RestTemplate restTemplate = new RestTemplate();
     private final ObjectMapper objectMapper;
+    private final PlanRoutingStrategy routing;
+    private final PlanDocumentSplitter splitter;
 
     @Value("${elastic.host:localhost}")
     private String host;
@@ -51,8 +93,23 @@ public class ElasticsearchIndexService implements IndexService {
     @Value("${elastic.port:9200}")
     private int port;
 
-    public ElasticsearchIndexService(ObjectMapper objectMapper) {
+    @Value("${elastic.connect-timeout-ms:2000}")
+    private long connectTimeoutMs;
+
+    @Value("${elastic.read-timeout-ms:30000}")
+    private long readTimeoutMs;
+
+    public ElasticsearchIndexService(ObjectMapper objectMapper, ElasticsearchRequestMetrics requestMetrics,
+                                     PlanRoutingStrategy routing, PlanDocumentSplitter splitter) {
         this.objectMapper = objectMapper;
+        this.routing = routing;
+        this.splitter = splitter;
+        this.restTemplate.getInterceptors().add(requestMetrics);
+    }
+
+    @PostConstruct
+    void applyTimeouts() {
+        restTemplate.setRequestFactory(ElasticsearchHttp.requestFactory(connectTimeoutMs, readTimeoutMs));
     }
 
     // ─────────────────────────────────────────────────────────
@@ -60,68 +117,75 @@ public class ElasticsearchIndexService implements IndexService {
     // ─────────────────────────────────────────────────────────
     @Override
     public void indexParent(String parentId, JsonNode parentDoc,
-                            String etag, Map<String, Object> metadata) {
+                            String etag, long version, Map<String, Object> metadata, Refresh refresh) {
         try {
-            ObjectNode doc = buildDocument(parentDoc, etag, metadata);
-            // join field value for a parent is the plain string "plan"
-            doc.put(JOIN_FIELD, TYPE_PLAN);
+            ObjectNode doc = parentDocument(parentDoc, etag, metadata);
 
-            String url = docUrl(parentId, null);
-            put(url, doc);
-            log.info("indexed parent id={}", parentId);
-        } catch (Exception ex) {
-            log.warn("failed to index parent id={} — {}", parentId, ex.getMessage());
+            String url = withParam(versioned(docUrl(parentId, null), version), refresh.param());
+            put("indexParent", parentId, null, etag, url, doc);
+            log.info("indexed parent id={} version={}", parentId, version);
+        } catch (HttpClientErrorException.Conflict ex) {
+            log.info("index parent id={} version={} — superseded by a newer version", parentId, version);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("could not build parent document for " + parentId, ex);
         }
     }
 
     // ─────────────────────────────────────────────────────────
-    // indexChild
+    // updateParent — partial _update guarded by the etag chain
     // ─────────────────────────────────────────────────────────
     @Override
-    public void indexChild(String parentId, String childId, JsonNode childDoc,
-                           String etag, Map<String, Object> metadata) {
+    public PartialUpdate updateParent(String parentId, JsonNode partialDoc, String baseEtag, String newEtag,
+                                      Refresh refresh) {
         try {
-            ObjectNode doc = buildDocument(childDoc, etag, metadata);
-            // join field for child is an object: { "name": "child", "parent": "<parentId>" }
-            ObjectNode joinValue = objectMapper.createObjectNode();
-            joinValue.put("name", TYPE_CHILD);
-            joinValue.put("parent", parentId);
-            doc.set(JOIN_FIELD, joinValue);
+            JsonNode current;
+            try {
+                current = objectMapper.readTree(exchange("getEtag", parentId, null, null,
+                        baseUrl() + "/_doc/" + parentId + "?_source_includes=_etag", HttpMethod.GET, null));
+            } catch (HttpClientErrorException.NotFound ex) {
+                return PartialUpdate.CHAIN_BROKEN;
+            }
+            String indexedEtag = current.path("_source").path("_etag").asText("");
+            if (indexedEtag.equals(newEtag)) return PartialUpdate.NOOP;
+            if (!indexedEtag.equals(baseEtag)) return PartialUpdate.CHAIN_BROKEN;
 
-            // routing = parentId is mandatory — guarantees co-location with parent on same shard
-            String url = docUrl(childId, parentId);
-            put(url, doc);
-            log.info("indexed child id={} routing={}", childId, parentId);
-        } catch (Exception ex) {
-            log.warn("failed to index child id={} routing={} — {}", childId, parentId, ex.getMessage());
+            ObjectNode body = objectMapper.createObjectNode();
+            body.set("doc", buildDocument(partialDoc, newEtag, null));
+            body.put("detect_noop", true);
+            String url = baseUrl() + "/_update/" + parentId
+                    + "?if_seq_no=" + current.path("_seq_no").asLong()
+                    + "&if_primary_term=" + current.path("_primary_term").asLong();
+            url = withParam(url, refresh.param());
+            String response;
+            try {
+                response = exchange("updateParent", parentId, null, newEtag, url, HttpMethod.POST,
+                        objectMapper.writeValueAsString(body));
+            } catch (HttpClientErrorException.Conflict ex) {
+                // written by someone else since the GET — no longer at baseEtag
+                return PartialUpdate.CHAIN_BROKEN;
+            }
+            boolean noop = "noop".equals(objectMapper.readTree(response).path("result").asText());
+            log.info("partially updated parent id={}{}", parentId, noop ? " (noop)" : "");
+            return noop ? PartialUpdate.NOOP : PartialUpdate.UPDATED;
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("could not update parent " + parentId, ex);
         }
     }
 
-    // ─────────────────────────────────────────────────────────
-    // patchParent — replace parent with patched version
-    // ─────────────────────────────────────────────────────────
-    @Override
-    public void patchParent(String parentId, JsonNode patchedParentDoc, String etag) {
-        // patchParent is a full re-index of the parent with the merged document.
-        // Upsert semantics apply — same as indexParent.
-        indexParent(parentId, patchedParentDoc, etag, null);
-        log.info("patched (re-indexed) parent id={}", parentId);
-    }
-
     // ─────────────────────────────────────────────────────────
     // deleteParent
     // ─────────────────────────────────────────────────────────
     @Override
-    public void deleteParent(String parentId) {
+    public void deleteParent(String parentId, long version, Refresh refresh) {
         try {
-            String url = docUrl(parentId, null);
-            restTemplate.exchange(url, HttpMethod.DELETE, jsonEntity(null), String.class);
+            String url = withParam(versioned(docUrl(parentId, null), version), refresh.param());
+            exchange("deleteParent", parentId, null, null, url, HttpMethod.DELETE, null);
             log.info("deleted parent id={}", parentId);
         } catch (HttpClientErrorException.NotFound ex) {
             // idempotent — already gone is fine
             log.info("delete parent id={} — not found, already absent", parentId);
-        } catch (Exception ex) {
-            log.warn("failed to delete parent id={} — {}", parentId, ex.getMessage());
+        } catch (HttpClientErrorException.Conflict ex) {
+            log.info("delete parent id={} version={} — superseded by a newer version", parentId, version);
         }
     }
 
@@ -130,26 +194,244 @@ public class ElasticsearchIndexService implements IndexService {
     // ─────────────────────────────────────────────────────────
     @Override
     public void deleteChildren(String parentId) {
+        if (!routing.joined()) return;
         try {
             // delete_by_query with routing=parentId ensures we only hit the correct shard.
             // parent_id query matches all child documents whose join parent = parentId.
-            String url = baseUrl() + "/_delete_by_query?routing=" + parentId + "&refresh=true";
-
-            String body = """
-                    {
-                      "query": {
-                        "parent_id": {
-                          "type": "%s",
-                          "id": "%s"
-                        }
-                      }
-                    }
-                    """.formatted(TYPE_CHILD, parentId);
-
-            restTemplate.exchange(url, HttpMethod.POST, jsonEntity(body), String.class);
+            // No refresh=true: a segment per deleted plan costs the whole cluster's indexing.
+            // conflicts=proceed, as in deletePlans: a child rewritten mid-delete is
+            // skipped instead of failing the whole request with 409.
+            String url = baseUrl() + "/_delete_by_query?routing=" + parentId + "&conflicts=proceed";
+            String body = objectMapper.writeValueAsString(descendantsQuery(parentId));
+
+            exchange("deleteChildren", parentId, parentId, null, url, HttpMethod.POST, body);
             log.info("deleted children for parent id={}", parentId);
-        } catch (Exception ex) {
-            log.warn("failed to delete children for parent id={} — {}", parentId, ex.getMessage());
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("could not build delete query for " + parentId, ex);
+        }
+    }
+
+    // ─────────────────────────────────────────────────────────
+    // deletePlans — one delete_by_query + one _bulk for a batch of DELETEs
+    // ─────────────────────────────────────────────────────────
+    @Override
+    public int deletePlans(Map<String, Long> versions, Refresh refresh) {
+        if (versions.isEmpty()) return 0;
+        String ids = String.join(",", versions.keySet());
+        try {
+            if (routing.joined()) deleteDescendants(versions.keySet(), ids);
+
+            StringBuilder ndjson = new StringBuilder();
+            for (Map.Entry<String, Long> parent : versions.entrySet()) {
+                appendDeleteAction(ndjson, INDEX_NAME, parent.getKey(), null, parent.getValue());
+            }
+            String response = exchange("deletePlans", null, null, null,
+                    withParam(rootUrl() + "/_bulk", refresh.param()),
+                    HttpMethod.POST, ndjson.toString(), BULK_CONTENT_TYPE);
+            int failed = failedBulkItems(response);
+            log.info("deleted {} plans with their children ({} rejected)", versions.size(), failed);
+            return failed;
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("could not delete plans " + ids, ex);
+        }
+    }
+
+    /**
+     * Descendants of every parent: terms on the join field's parent-id
+     * sub-field or on _plan; routing = the parent ids (ids, comma-joined), so
+     * only their shards are searched.
+     */
+    private void deleteDescendants(Collection<String> parents, String ids) throws JsonProcessingException {
+        ObjectNode body = objectMapper.createObjectNode();
+        ObjectNode bool = body.putObject("query").putObject("bool");
+        ArrayNode should = bool.putArray("should");
+        ArrayNode parentIds = should.addObject().putObject("terms").putArray(JOIN_FIELD + "#" + TYPE_PLAN);
+        ArrayNode planIds = should.addObject().putObject("terms").putArray(ROOT_FIELD);
+        parents.forEach(id -> {
+            parentIds.add(id);
+            planIds.add(id);
+        });
+        bool.put("minimum_should_match", 1);
+        bool.putArray("must_not").addObject().putObject("term").put(JOIN_FIELD, TYPE_PLAN);
+        exchange("deletePlanChildren", null, ids, null,
+                baseUrl() + "/_delete_by_query?routing=" + ids + "&conflicts=proceed",
+                HttpMethod.POST, objectMapper.writeValueAsString(body));
+    }
+
+    // ─────────────────────────────────────────────────────────
+    // refresh
+    // ─────────────────────────────────────────────────────────
+    @Override
+    public void refresh() {
+        exchange("refresh", null, null, null, baseUrl() + "/_refresh", HttpMethod.POST, null);
+    }
+
+    // ─────────────────────────────────────────────────────────
+    // indexedChildEtags — search_after over parent_id, _etag only
+    // ─────────────────────────────────────────────────────────
+    private static final int CHILD_PAGE_SIZE = 1000;
+
+    @Override
+    public Map<String, String> indexedChildEtags(String parentId) {
+        Map<String, String> etags = new LinkedHashMap<>();
+        if (!routing.joined()) return etags;
+        JsonNode after = null;
+        try {
+            while (true) {
+                ObjectNode body = objectMapper.createObjectNode();
+                body.put("size", CHILD_PAGE_SIZE);
+                body.put("track_total_hits", false);
+                body.putArray("_source").add("_etag");
+                body.set("query", descendantsQuery(parentId).get("query"));
+                body.putArray("sort").addObject().put("objectId", "asc");
+                if (after != null) body.set("search_after", after);
+
+                String response = exchange("childEtags", parentId, parentId, null,
+                        baseUrl() + "/_search?routing=" + parentId, HttpMethod.POST,
+                        objectMapper.writeValueAsString(body));
+                JsonNode hits = objectMapper.readTree(response).path("hits").path("hits");
+                for (JsonNode hit : hits) {
+                    etags.put(hit.path("_id").asText(), hit.path("_source").path("_etag").asText(""));
+                    after = hit.path("sort");
+                }
+                if (hits.size() < CHILD_PAGE_SIZE) return etags;
+            }
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("could not read children of " + parentId, ex);
+        }
+    }
+
+    // ─────────────────────────────────────────────────────────
+    // syncChildren — changed children + deletes in one _bulk
+    // ─────────────────────────────────────────────────────────
+    @Override
+    public int syncChildren(String parentId, Map<String, ChildDoc> upserts, Collection<String> deletes,
+                            long version, Refresh refresh) {
+        if (upserts.isEmpty() && deletes.isEmpty()) return 0;
+        try {
+            StringBuilder ndjson = new StringBuilder();
+            for (Map.Entry<String, ChildDoc> child : upserts.entrySet()) {
+                appendIndexAction(ndjson, INDEX_NAME, child.getKey(), routing.descendantRouting(parentId), version,
+                        childDocument(parentId, child.getValue()));
+            }
+            for (String childId : deletes) {
+                appendDeleteAction(ndjson, INDEX_NAME, childId, routing.descendantRouting(parentId), version);
+            }
+            String response = exchange("syncChildren", parentId, parentId, null,
+                    withParam(rootUrl() + "/_bulk", refresh.param()),
+                    HttpMethod.POST, ndjson.toString(), BULK_CONTENT_TYPE);
+            log.info("synced children of parent id={}: {} indexed, {} deleted",
+                    parentId, upserts.size(), deletes.size());
+            return failedBulkItems(response);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("could not build child bulk request for " + parentId, ex);
+        }
+    }
+
+    // ─────────────────────────────────────────────────────────
+    // bulkIndex — one _bulk request into a concrete index
+    // ─────────────────────────────────────────────────────────
+    @Override
+    public int bulkIndex(String targetIndex, List<BulkPlan> plans) {
+        if (plans.isEmpty()) return 0;
+        try {
+            StringBuilder ndjson = new StringBuilder();
+            for (BulkPlan plan : plans) {
+                ObjectNode parent = parentDocument(plan.parentDoc(), plan.etag(), null);
+                appendIndexAction(ndjson, targetIndex, plan.parentId(), null, plan.version(), parent);
+
+                for (Map.Entry<String, ChildDoc> child : plan.children().entrySet()) {
+                    appendIndexAction(ndjson, targetIndex, child.getKey(), routing.descendantRouting(plan.parentId()),
+                            plan.version(), childDocument(plan.parentId(), child.getValue()));
+                }
+            }
+            String response = exchange("bulk", null, null, null, rootUrl() + "/_bulk",
+                    HttpMethod.POST, ndjson.toString(), BULK_CONTENT_TYPE);
+            return failedBulkItems(response);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("could not build bulk request for " + targetIndex, ex);
+        }
+    }
+
+    // ─────────────────────────────────────────────────────────
+    // deletePlan — children + parent from a concrete index
+    // ─────────────────────────────────────────────────────────
+    @Override
+    public void deletePlan(String targetIndex, String parentId) {
+        if (routing.joined()) {
+            String body;
+            try {
+                body = objectMapper.writeValueAsString(descendantsQuery(parentId));
+            } catch (JsonProcessingException ex) {
+                throw new IllegalStateException("could not build delete query for " + parentId, ex);
+            }
+            exchange("deleteChildren", parentId, parentId, null,
+                    indexUrl(targetIndex) + "/_delete_by_query?routing=" + parentId + "&conflicts=proceed",
+                    HttpMethod.POST, body);
+        }
+        try {
+            exchange("deleteParent", parentId, null, null,
+                    indexUrl(targetIndex) + "/_doc/" + parentId, HttpMethod.DELETE, null);
+        } catch (HttpClientErrorException.NotFound ex) {
+            // not copied yet, or never existed — nothing to remove
+        }
+    }
+
+    // ─────────────────────────────────────────────────────────
+    // indexedEtags — _mget with _source limited to the etag
+    // ─────────────────────────────────────────────────────────
+    @Override
+    public Map<String, String> indexedEtags(List<String> parentIds) {
+        Map<String, String> etags = new LinkedHashMap<>();
+        if (parentIds.isEmpty()) return etags;
+        try {
+            ObjectNode body = objectMapper.createObjectNode();
+            body.putPOJO("ids", parentIds);
+            String response = exchange("mget", null, null, null,
+                    baseUrl() + "/_mget?_source_includes=_etag", HttpMethod.POST,
+                    objectMapper.writeValueAsString(body));
+            for (JsonNode doc : objectMapper.readTree(response).path("docs")) {
+                if (doc.path("found").asBoolean(false)) {
+                    etags.put(doc.path("_id").asText(), doc.path("_source").path("_etag").asText(""));
+                }
+            }
+            return etags;
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("could not read _mget response", ex);
+        }
+    }
+
+    // ─────────────────────────────────────────────────────────
+    // parentIdsAfter — search_after over parents by objectId
+    // ─────────────────────────────────────────────────────────
+    @Override
+    public IdPage parentIdsAfter(JsonNode after, int size) {
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("size", size);
+        body.put("_source", false);
+        body.put("track_total_hits", false);
+        if (routing.joined()) {
+            body.putObject("query").putObject("term").put(JOIN_FIELD, TYPE_PLAN);
+        } else {
+            // one document per plan — every document is a parent
+            body.putObject("query").putObject("match_all");
+        }
+        body.putArray("sort").addObject().put("objectId", "asc");
+        if (after != null) {
+            body.set("search_after", after);
+        }
+        try {
+            String response = exchange("search", null, null, null, baseUrl() + "/_search",
+                    HttpMethod.POST, objectMapper.writeValueAsString(body));
+            List<String> ids = new ArrayList<>();
+            JsonNode last = null;
+            for (JsonNode hit : objectMapper.readTree(response).path("hits").path("hits")) {
+                ids.add(hit.path("_id").asText());
+                last = hit.path("sort");
+            }
+            return new IdPage(ids, last);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("could not read search_after page", ex);
         }
     }
 
@@ -157,6 +439,111 @@ public class ElasticsearchIndexService implements IndexService {
     // private helpers
     // ─────────────────────────────────────────────────────────
 
+    private void appendIndexAction(StringBuilder ndjson, String index, String id, String routing,
+                                   long version, ObjectNode doc) throws JsonProcessingException {
+        ObjectNode meta = objectMapper.createObjectNode();
+        meta.put("_index", index);
+        meta.put("_id", id);
+        if (routing != null) meta.put("routing", routing);
+        putVersion(meta, version);
+        ObjectNode action = objectMapper.createObjectNode();
+        action.set("index", meta);
+        ndjson.append(objectMapper.writeValueAsString(action)).append('\n');
+        ndjson.append(objectMapper.writeValueAsString(doc)).append('\n');
+    }
+
+    private void appendDeleteAction(StringBuilder ndjson, String index, String id, String routing,
+                                    long version) throws JsonProcessingException {
+        ObjectNode meta = objectMapper.createObjectNode();
+        meta.put("_index", index);
+        meta.put("_id", id);
+        if (routing != null) meta.put("routing", routing);
+        putVersion(meta, version);
+        ObjectNode action = objectMapper.createObjectNode();
+        action.set("delete", meta);
+        ndjson.append(objectMapper.writeValueAsString(action)).append('\n');
+    }
+
+    /**
+     * Parent source: the plan as the splitter leaves it + etag + metadata,
+     * with the join field's plain "plan" when the strategy joins.
+     */
+    private ObjectNode parentDocument(JsonNode plan, String etag, Map<String, Object> metadata) {
+        ObjectNode doc = buildDocument(splitter.parentDocument(plan), etag, metadata);
+        if (routing.joined()) doc.put(JOIN_FIELD, routing.parentJoinField());
+        return doc;
+    }
+
+    /**
+     * Child source for _bulk: content + its own etag + the join field pointing
+     * at its join parent (parentId unless a grandchild) + _plan = parentId.
+     */
+    private ObjectNode childDocument(String parentId, ChildDoc child) {
+        ObjectNode doc = buildDocument(child.doc(), child.etag(), null);
+        doc.putPOJO(JOIN_FIELD, routing.joinField(child.relation(),
+                child.joinParent() != null ? child.joinParent() : parentId));
+        doc.put(ROOT_FIELD, parentId);
+        return doc;
+    }
+
+    /**
+     * Every descendant of parentId: its direct children by parent_id, plus
+     * anything whose _plan is parentId (grandchildren, and children indexed
+     * with _plan). Send it with routing = parentId.
+     */
+    private ObjectNode descendantsQuery(String parentId) {
+        ObjectNode body = objectMapper.createObjectNode();
+        ArrayNode should = body.putObject("query").putObject("bool").putArray("should");
+        ObjectNode parentQuery = should.addObject().putObject("parent_id");
+        parentQuery.put("type", TYPE_CHILD);
+        parentQuery.put("id", parentId);
+        should.addObject().putObject("term").put(ROOT_FIELD, parentId);
+        return body;
+    }
+
+    /** External versioning for a _bulk action; nothing for an unversioned (0) write. */
+    private static void putVersion(ObjectNode meta, long version) {
+        if (version > 0) {
+            meta.put("version", version);
+            meta.put("version_type", "external");
+        }
+    }
+
+    /** url with version=<version>&version_type=external, unchanged for an unversioned (0) write. */
+    private static String versioned(String url, long version) {
+        return version > 0 ? withParam(url, "version=" + version + "&version_type=external") : url;
+    }
+
+    /** url with param appended; unchanged for an empty param. */
+    private static String withParam(String url, String param) {
+        if (param.isEmpty()) return url;
+        return url + (url.contains("?") ? "&" : "?") + param;
+    }
+
+    /**
+     * Items whose status is not 2xx; 0 when the response says errors=false.
+     * 409 (version conflict — ES already holds a newer version) is not a failure.
+     */
+    private int failedBulkItems(String response) throws JsonProcessingException {
+        if (response == null) return 0;
+        JsonNode root = objectMapper.readTree(response);
+        if (!root.path("errors").asBoolean(false)) return 0;
+        int failed = 0;
+        for (JsonNode item : root.path("items")) {
+            JsonNode result = item.elements().hasNext() ? item.elements().next() : null;
+            int status = result != null ? result.path("status").asInt(200) : 200;
+            if (status == 409) {
+                log.debug("bulk item superseded id={}", result.path("_id").asText());
+            } else if (status >= 300) {
+                if (failed++ == 0) {
+                    log.warn("bulk item rejected id={} — {}", result.path("_id").asText(),
+                            result.path("error").path("reason").asText());
+                }
+            }
+        }
+        return failed;
+    }
+
     /** Merges parentDoc fields + etag + optional metadata into a single ObjectNode. */
     private ObjectNode buildDocument(JsonNode source, String etag, Map<String, Object> metadata) {
         ObjectNode doc = objectMapper.createObjectNode();
@@ -182,19 +569,61 @@ public class ElasticsearchIndexService implements IndexService {
     }
 
     private String baseUrl() {
-        return "http://" + host + ":" + port + "/" + INDEX_NAME;
+        return indexUrl(INDEX_NAME);
+    }
+
+    private String indexUrl(String index) {
+        return rootUrl() + "/" + index;
+    }
+
+    private String rootUrl() {
+        return "http://" + host + ":" + port;
     }
 
     /** Executes an HTTP PUT with JSON content type. */
-    private void put(String url, Object body) throws Exception {
+    private void put(String operation, String docId, String routing, String etag,
+                     String url, Object body) throws JsonProcessingException {
         String json = objectMapper.writeValueAsString(body);
-        restTemplate.exchange(url, HttpMethod.PUT, jsonEntity(json), String.class);
+        exchange(operation, docId, routing, etag, url, HttpMethod.PUT, json);
+    }
+
+    /** Executes a JSON request, recorded as an ElasticRequest JFR event. */
+    private String exchange(String operation, String docId, String routing, String etag,
+                            String url, HttpMethod method, String body) {
+        return exchange(operation, docId, routing, etag, url, method, body, MediaType.APPLICATION_JSON);
+    }
+
+    /** Executes a request with the given content type; returns the response body. */
+    private String exchange(String operation, String docId, String routing, String etag,
+                            String url, HttpMethod method, String body, MediaType contentType) {
+        ElasticRequestEvent event = new ElasticRequestEvent();
+        event.begin();
+        int status = -1;
+        try {
+            ResponseEntity<String> response = restTemplate.exchange(url, method, entity(body, contentType), String.class);
+            status = response.getStatusCode().value();
+            return response.getBody();
+        } catch (HttpStatusCodeException ex) {
+            status = ex.getStatusCode().value();
+            throw ex;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = operation;
+                event.objectId = docId;
+                event.routing = routing;
+                event.payloadSize = body != null ? body.length() : 0;
+                event.etag = etag;
+                event.status = status;
+                event.commit();
+            }
+        }
     }
 
-    /** Builds an HttpEntity with Content-Type: application/json. */
-    private HttpEntity<String> jsonEntity(String body) {
+    /** Builds an HttpEntity with the given Content-Type (application/json, or x-ndjson for _bulk). */
+    private HttpEntity<String> entity(String body, MediaType contentType) {
         HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setContentType(contentType);
         return new HttpEntity<>(body, headers);
     }
 }
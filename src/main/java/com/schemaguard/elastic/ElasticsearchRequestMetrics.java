@@ -0,0 +1,79 @@
+package com.schemaguard.elastic;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RestTemplate interceptor timing every Elasticsearch HTTP call.
+ *
+ * Meter: schemaguard.es.request (Timer)
+ *   operation — derived from the URL so document ids never become tag values:
+ *               doc.put / doc.delete / update.post, _search, _bulk, _delete_by_query, ...
+ *               or index.<method> for calls on the index itself
+ *   status    — HTTP status code, or IO_ERROR when no response arrived
+ *
+ * Spring's own http.client.requests observation is not used because these
+ * clients build URLs by concatenation — it would tag each document id as a
+ * separate uri.
+ */
+@Component
+public class ElasticsearchRequestMetrics implements ClientHttpRequestInterceptor {
+
+    static final String TIMER = "schemaguard.es.request";
+
+    private final MeterRegistry registry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public ElasticsearchRequestMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body,
+                                        ClientHttpRequestExecution execution) throws IOException {
+        String operation = operation(request.getMethod().name(), request.getURI().getPath());
+        long start = System.nanoTime();
+        String status = "IO_ERROR";
+        try {
+            ClientHttpResponse response = execution.execute(request, body);
+            status = Integer.toString(response.getStatusCode().value());
+            return response;
+        } finally {
+            timer(operation, status).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /** Maps /plans-index/_doc/p1 → doc.put, /plans-index/_search → _search, ... */
+    static String operation(String method, String path) {
+        String[] segments = path.split("/");
+        for (int i = segments.length - 1; i >= 0; i--) {
+            String s = segments[i];
+            if (s.equals("_doc") || s.equals("_update") || s.equals("_create")) {
+                return (s.equals("_doc") ? "doc" : s.substring(1)) + "." + method.toLowerCase();
+            }
+            if (s.startsWith("_")) {
+                return s;
+            }
+        }
+        return "index." + method.toLowerCase();
+    }
+
+    private Timer timer(String operation, String status) {
+        return timers.computeIfAbsent(operation + '|' + status, k ->
+                Timer.builder(TIMER)
+                        .description("Elasticsearch HTTP call latency")
+                        .tag("operation", operation)
+                        .tag("status", status)
+                        .register(registry));
+    }
+}
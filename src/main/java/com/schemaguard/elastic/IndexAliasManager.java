@@ -0,0 +1,249 @@
+package com.schemaguard.elastic;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.schemaguard.elastic.PlanIndexConstants.INDEX_NAME;
+
+/**
+ * Versioned physical indices behind the plans-index alias.
+ *
+ * Every reader and writer uses the alias INDEX_NAME; the documents live in
+ * plans-index-v1, plans-index-v2, ... A reindex fills the next version and
+ * then moves the alias in one POST /_aliases call, which Elasticsearch
+ * applies atomically — searches see either the old or the new index, never
+ * neither.
+ *
+ * Deployments created before aliases have a concrete index named
+ * plans-index. currentIndex() reports it as such, and the first swap
+ * replaces it with a remove_index action in the same atomic call (the alias
+ * cannot be added while an index of that name exists). Before that, the
+ * concrete index is cloned to plans-index-v0, so the swap keeps a rollback
+ * copy like any other — _clone needs the source write-blocked, so live
+ * writes to it fail (and are retried by the worker) for the moment between
+ * the clone and the swap.
+ *
+ * Plain HTTP via RestTemplate, like PlanIndexInitializer, for the same
+ * client/media-type reasons.
+ */
+@Component
+public class IndexAliasManager {
+
+    private static final Logger log = LoggerFactory.getLogger(IndexAliasManager.class);
+    private static final Pattern VERSIONED = Pattern.compile(Pattern.quote(INDEX_NAME) + "-v(\\d+)");
+
+    private final RestTemplate restTemplate = new RestTemplate();
+    private final ObjectMapper objectMapper;
+    private final PlanIndexMapping mapping;
+
+    @Value("${elastic.host:localhost}")
+    private String host;
+
+    @Value("${elastic.port:9200}")
+    private int port;
+
+    @Value("${elastic.connect-timeout-ms:2000}")
+    private long connectTimeoutMs;
+
+    @Value("${elastic.read-timeout-ms:30000}")
+    private long readTimeoutMs;
+
+    public IndexAliasManager(ObjectMapper objectMapper, PlanIndexMapping mapping,
+                             ElasticsearchRequestMetrics requestMetrics) {
+        this.objectMapper = objectMapper;
+        this.mapping = mapping;
+        this.restTemplate.getInterceptors().add(requestMetrics);
+    }
+
+    @PostConstruct
+    void applyTimeouts() {
+        restTemplate.setRequestFactory(ElasticsearchHttp.requestFactory(connectTimeoutMs, readTimeoutMs));
+    }
+
+    /**
+     * Concrete index the alias points to; INDEX_NAME itself when that is
+     * still a plain pre-alias index; null when neither exists.
+     */
+    public String currentIndex() {
+        try {
+            JsonNode aliases = objectMapper.readTree(
+                    restTemplate.getForObject(url("/_alias/" + INDEX_NAME), String.class));
+            String any = null;
+            for (Iterator<String> it = aliases.fieldNames(); it.hasNext(); ) {
+                String index = it.next();
+                if (aliases.path(index).path("aliases").path(INDEX_NAME).path("is_write_index").asBoolean(false)) {
+                    return index;
+                }
+                any = index;
+            }
+            return any;
+        } catch (HttpClientErrorException.NotFound ex) {
+            return exists(INDEX_NAME) ? INDEX_NAME : null;
+        } catch (Exception ex) {
+            throw new IllegalStateException("could not resolve alias " + INDEX_NAME + " — " + ex.getMessage(), ex);
+        }
+    }
+
+    /** Name for the next physical index: one above the highest existing plans-index-vN. */
+    public String nextVersionName() {
+        int highest = 0;
+        try {
+            JsonNode indices = objectMapper.readTree(restTemplate.getForObject(
+                    url("/_cat/indices/" + INDEX_NAME + "-v*?h=index&format=json"), String.class));
+            for (JsonNode row : indices) {
+                Matcher m = VERSIONED.matcher(row.path("index").asText());
+                if (m.matches()) highest = Math.max(highest, Integer.parseInt(m.group(1)));
+            }
+        } catch (HttpClientErrorException.NotFound ex) {
+            // no versioned index yet
+        } catch (Exception ex) {
+            throw new IllegalStateException("could not list " + INDEX_NAME + " versions — " + ex.getMessage(), ex);
+        }
+        return INDEX_NAME + "-v" + (highest + 1);
+    }
+
+    /**
+     * Mapping of the index behind the alias (the "mappings" object of
+     * GET /<alias>/_mapping); null when there is no index yet.
+     */
+    public JsonNode liveMappings() {
+        try {
+            JsonNode indices = objectMapper.readTree(
+                    restTemplate.getForObject(url("/" + INDEX_NAME + "/_mapping"), String.class));
+            Iterator<JsonNode> it = indices.elements();
+            return it.hasNext() ? it.next().path("mappings") : null;
+        } catch (HttpClientErrorException.NotFound ex) {
+            return null;
+        } catch (Exception ex) {
+            throw new IllegalStateException("could not read mapping of " + INDEX_NAME + " — " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Creates a physical index with the plan settings and mapping
+     * (PlanIndexMapping). With bulkLoad the refresh interval is switched off
+     * until finishBulkLoad(); with withAlias the alias is attached right away
+     * (first start only).
+     */
+    public void create(String index, boolean bulkLoad, boolean withAlias) {
+        ObjectNode body = mapping.createBody(bulkLoad);
+        if (withAlias) {
+            body.putObject("aliases").putObject(INDEX_NAME).put("is_write_index", true);
+        }
+        send(HttpMethod.PUT, "/" + index, body);
+        log.info("created Elasticsearch index '{}'{}", index, withAlias ? " behind alias " + INDEX_NAME : "");
+    }
+
+    /** Restores the configured refresh interval and makes everything loaded searchable. */
+    public void finishBulkLoad(String index) {
+        ObjectNode settings = objectMapper.createObjectNode();
+        settings.putObject("index").put("refresh_interval", mapping.refreshInterval());
+        send(HttpMethod.PUT, "/" + index + "/_settings", settings);
+        send(HttpMethod.POST, "/" + index + "/_refresh", null);
+    }
+
+    /**
+     * Atomically points the alias at index and away from previous (null when
+     * there is none). Returns the index still holding the previous documents:
+     * previous itself, or its plans-index-v0 clone when previous was the
+     * pre-alias concrete index.
+     */
+    public String swap(String index, String previous) {
+        String kept = previous;
+        ObjectNode body = objectMapper.createObjectNode();
+        ArrayNode actions = body.putArray("actions");
+        ObjectNode add = actions.addObject().putObject("add");
+        add.put("index", index);
+        add.put("alias", INDEX_NAME);
+        add.put("is_write_index", true);
+        if (INDEX_NAME.equals(previous)) {
+            kept = cloneConcreteIndex();
+            actions.addObject().putObject("remove_index").put("index", previous);
+        } else if (previous != null) {
+            ObjectNode remove = actions.addObject().putObject("remove");
+            remove.put("index", previous);
+            remove.put("alias", INDEX_NAME);
+        }
+        try {
+            send(HttpMethod.POST, "/_aliases", body);
+        } catch (RuntimeException ex) {
+            if (!Objects.equals(kept, previous)) setWriteBlock(previous, false);
+            throw ex;
+        }
+        log.info("alias {} → {} (was {}, kept as {})", INDEX_NAME, index, previous, kept);
+        return kept;
+    }
+
+    /**
+     * Clones the pre-alias concrete index to plans-index-v0, leaving the
+     * source write-blocked for the swap that removes it. A v0 left by an
+     * earlier failed swap is replaced — the concrete index is newer.
+     */
+    private String cloneConcreteIndex() {
+        String copy = INDEX_NAME + "-v0";
+        delete(copy);
+        setWriteBlock(INDEX_NAME, true);
+        try {
+            ObjectNode body = objectMapper.createObjectNode();
+            body.putObject("settings").put("index.blocks.write", false);
+            send(HttpMethod.POST, "/" + INDEX_NAME + "/_clone/" + copy, body);
+        } catch (RuntimeException ex) {
+            setWriteBlock(INDEX_NAME, false);
+            throw ex;
+        }
+        log.info("cloned pre-alias index {} to {}", INDEX_NAME, copy);
+        return copy;
+    }
+
+    private void setWriteBlock(String index, boolean blocked) {
+        ObjectNode settings = objectMapper.createObjectNode();
+        settings.put("index.blocks.write", blocked);
+        send(HttpMethod.PUT, "/" + index + "/_settings", settings);
+    }
+
+    public void delete(String index) {
+        try {
+            send(HttpMethod.DELETE, "/" + index, null);
+        } catch (HttpClientErrorException.NotFound ex) {
+            // already gone
+        }
+    }
+
+    private boolean exists(String index) {
+        try {
+            restTemplate.getForEntity(url("/" + index), String.class);
+            return true;
+        } catch (HttpClientErrorException.NotFound ex) {
+            return false;
+        }
+    }
+
+    private void send(HttpMethod method, String path, JsonNode body) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        restTemplate.exchange(url(path), method,
+                new HttpEntity<>(body != null ? body.toString() : null, headers), String.class);
+    }
+
+    private String url(String path) {
+        return "http://" + host + ":" + port + path;
+    }
+}
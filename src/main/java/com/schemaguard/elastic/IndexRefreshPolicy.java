@@ -0,0 +1,72 @@
+package com.schemaguard.elastic;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * When the indexer's writes become searchable (index.refresh.policy).
+ *
+ * A forced refresh (refresh=true) per event cuts a tiny segment every time
+ * and slows indexing for the whole cluster, so no write forces one. Instead:
+ *   none      — the index's refresh_interval alone decides (default)
+ *   wait_for  — events whose client asked for read-your-writes
+ *               (X-Index-Refresh: wait_for) are written with
+ *               refresh=wait_for: the last request for the plan returns once
+ *               it is searchable, without forcing a refresh. Parent and
+ *               children share a shard, so that covers the whole plan.
+ *               Other events are written as with none.
+ *   periodic  — every index.refresh.interval-ms, POST _refresh if anything
+ *               was indexed since the last one; meant for indices whose
+ *               refresh_interval is long or -1 (elastic.index.refresh-interval)
+ *
+ * IndexEventProcessor asks refreshFor() per event and reports writes with
+ * onWritten().
+ */
+@Component
+public class IndexRefreshPolicy {
+
+    private static final Logger log = LoggerFactory.getLogger(IndexRefreshPolicy.class);
+
+    public enum Mode { NONE, WAIT_FOR, PERIODIC }
+
+    private final IndexService indexService;
+    private final Mode mode;
+    private final AtomicBoolean written = new AtomicBoolean();
+
+    public IndexRefreshPolicy(IndexService indexService,
+                              @Value("${index.refresh.policy:none}") String mode) {
+        this.indexService = indexService;
+        this.mode = Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    /** Refresh for the writes of one event; requested = its client asked for read-your-writes. */
+    public IndexService.Refresh refreshFor(boolean requested) {
+        return mode == Mode.WAIT_FOR && requested ? IndexService.Refresh.WAIT_FOR : IndexService.Refresh.NONE;
+    }
+
+    /** Something was written to the index since the last periodic refresh. */
+    public void onWritten() {
+        written.set(true);
+    }
+
+    @Scheduled(fixedDelayString = "${index.refresh.interval-ms:1000}")
+    public void periodicRefresh() {
+        if (mode != Mode.PERIODIC || !written.getAndSet(false)) return;
+        try {
+            indexService.refresh();
+        } catch (Exception ex) {
+            written.set(true);
+            log.warn("periodic refresh of the plans index failed — {}", ex.getMessage());
+        }
+    }
+}
@@ -2,6 +2,8 @@ package com.schemaguard.elastic;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -15,59 +17,188 @@ import java.util.Map;
  * - index* methods use upsert semantics (index with same id replaces the document)
  * - delete* methods succeed silently if the document or children do not exist
  *
+ * Versioning: methods taking a version write with version_type=external, so
+ * Elasticsearch itself rejects a write older than what it holds (409, treated
+ * as "superseded", not as a failure). version 0 means unversioned — written
+ * with internal versioning as before.
+ *
+ * Failures: apart from a missing document on delete and a 409 (superseded),
+ * a failed request throws, so the event is retried and stays pending
+ * rather than being acknowledged with the index left behind.
+ *
+ * Refresh: writes never force a refresh. Refresh.WAIT_FOR makes a request
+ * return once its write is searchable (refresh=wait_for) — IndexRefreshPolicy
+ * decides when the worker asks for that.
+ *
  * Routing contract:
  * - parent documents: routing is the document’s own id (Elasticsearch default)
  * - child documents: routing MUST be the parentId so parent and child
  *   land on the same shard (required for has_child / parent_id queries)
+ * - grandchildren (elastic.index.join-levels=3) are routed by the plan too;
+ *   "children" of a plan below means all of its descendants, which carry the
+ *   plan's id in _plan (PlanIndexConstants.ROOT_FIELD)
  */
 public interface IndexService {
 
+    /** refresh parameter of a write: NONE leaves visibility to refresh_interval. */
+    enum Refresh {
+        NONE, WAIT_FOR;
+
+        /** Query parameter to append ("" for NONE). */
+        public String param() {
+            return this == WAIT_FOR ? "refresh=wait_for" : "";
+        }
+    }
+
     /**
      * Upsert a parent (plan) document into the index.
      *
      * @param parentId   objectId of the plan — used as the Elasticsearch document id
      * @param parentDoc  full plan JSON (validated, stored in Redis)
      * @param etag       current SHA-256 ETag stored alongside the document
+     * @param version    StoredDocument version (external), 0 if unversioned
      * @param metadata   optional extra fields to store (may be null or empty)
+     * @param refresh    WAIT_FOR to return only once the parent is searchable
      */
-    void indexParent(String parentId, JsonNode parentDoc, String etag, Map<String, Object> metadata);
+    void indexParent(String parentId, JsonNode parentDoc, String etag, long version, Map<String, Object> metadata,
+                     Refresh refresh);
 
-    /**
-     * Upsert a child document into the index with routing = parentId.
-     *
-     * @param parentId   objectId of the parent plan (used for routing)
-     * @param childId    objectId of the child object
-     * @param childDoc   child JSON node
-     * @param etag       current SHA-256 ETag of the child
-     * @param metadata   optional extra fields (may be null or empty)
-     */
-    void indexChild(String parentId, String childId, JsonNode childDoc, String etag, Map<String, Object> metadata);
+    /** Outcome of updateParent. */
+    enum PartialUpdate {
+        /** The partial document was merged into the indexed parent. */
+        UPDATED,
+        /** Nothing to change — detect_noop, or the parent already carries newEtag. */
+        NOOP,
+        /** The indexed parent is not at baseEtag (or is missing): re-index it in full. */
+        CHAIN_BROKEN
+    }
 
     /**
-     * Replace a parent document with its patched version.
-     * Semantically identical to indexParent but named separately for clarity
-     * in queue handler code — signals intent of a PATCH operation.
+     * Merges partialDoc into the indexed parent with the _update API
+     * (detect_noop), setting its etag to newEtag — only if the parent is
+     * currently indexed at baseEtag, checked with if_seq_no/if_primary_term
+     * so a concurrent write cannot slip in between. Throws on request failures.
+     * _update has no external versioning; the etag chain is what orders it.
      *
-     * @param parentId         objectId of the plan
-     * @param patchedParentDoc fully merged (post-patch) plan JSON
-     * @param etag             new ETag after the patch
+     * @param parentId   objectId of the plan
+     * @param partialDoc fields to merge (an RFC 7396 patch without null removals)
+     * @param baseEtag   etag the patch was computed against
+     * @param newEtag    etag of the document after the patch
+     * @param refresh    WAIT_FOR to return only once the update is searchable
      */
-    void patchParent(String parentId, JsonNode patchedParentDoc, String etag);
+    PartialUpdate updateParent(String parentId, JsonNode partialDoc, String baseEtag, String newEtag,
+                               Refresh refresh);
 
     /**
      * Delete a parent document from the index by id.
      * Succeeds silently if the document does not exist.
      *
      * @param parentId  objectId of the plan to delete
+     * @param version   version of the delete (external), 0 if unversioned
+     * @param refresh   WAIT_FOR to return only once the delete is visible
      */
-    void deleteParent(String parentId);
+    void deleteParent(String parentId, long version, Refresh refresh);
 
     /**
      * Delete all child documents for a given parent using delete_by_query.
      * Succeeds silently if no children exist.
      * Must include routing = parentId so the query targets the correct shard.
+     * No refresh — delete_by_query only knows refresh=true, which would cut a
+     * segment per deleted plan.
      *
      * @param parentId  objectId of the parent whose children should be removed
      */
     void deleteChildren(String parentId);
+
+    /**
+     * Deletes several plans at once: the children of all of them with one
+     * delete_by_query (terms on the parent ids, routing = those ids, so only
+     * their shards are searched), then the parents with one _bulk of delete
+     * actions, each at its version (external; 0 = unversioned). Throws when a
+     * request fails, so the caller can retry; returns the number of parent
+     * deletes Elasticsearch rejected (version conflicts excluded — superseded).
+     *
+     * @param versions parent id → version of its delete
+     * @param refresh  WAIT_FOR to return only once the parent deletes are visible
+     */
+    int deletePlans(Map<String, Long> versions, Refresh refresh);
+
+    /** Refreshes the plans-index alias (POST _refresh) — index.refresh.policy=periodic. */
+    void refresh();
+
+    // ─────────────────────────────────────────────────────────
+    // Child diffs (worker)
+    // ─────────────────────────────────────────────────────────
+
+    /**
+     * Etag of every child currently indexed under parentId, keyed by child id
+     * (routing = parentId, _source limited to the etag). Throws when the
+     * request fails, so the caller can retry instead of diffing against
+     * nothing.
+     */
+    Map<String, String> indexedChildEtags(String parentId);
+
+    /**
+     * Indexes upserts and deletes the children in deletes, all with
+     * routing = parentId and the parent's version, in one _bulk request.
+     * Throws when the request fails; returns the number of items
+     * Elasticsearch rejected (version conflicts excluded — superseded).
+     * refresh applies to the whole _bulk request.
+     */
+    int syncChildren(String parentId, Map<String, ChildDoc> upserts, Collection<String> deletes, long version,
+                     Refresh refresh);
+
+    // ─────────────────────────────────────────────────────────
+    // Bulk loading into a concrete index (reindex)
+    // ─────────────────────────────────────────────────────────
+
+    /**
+     * A child document and the etag of its own content (not the parent's),
+     * with its join relation and direct join parent — null for the plan.
+     */
+    record ChildDoc(JsonNode doc, String etag, String relation, String joinParent) {
+
+        /** A planservice child of the plan (join-levels=2). */
+        public ChildDoc(JsonNode doc, String etag) {
+            this(doc, etag, PlanIndexConstants.TYPE_CHILD, null);
+        }
+    }
+
+    /** A plan and its children as one unit of a bulk load; children keyed by child id. */
+    record BulkPlan(String parentId, JsonNode parentDoc, String etag, long version, Map<String, ChildDoc> children) {}
+
+    /**
+     * Indexes plans and their children into targetIndex — a concrete index,
+     * not the alias — with one _bulk request. Unlike the single-document
+     * methods this throws when the request itself fails, so a reindex stops
+     * instead of silently copying nothing.
+     *
+     * @return the number of bulk items Elasticsearch rejected
+     */
+    int bulkIndex(String targetIndex, List<BulkPlan> plans);
+
+    /** Removes a plan and its children from targetIndex; absent documents are fine. */
+    void deletePlan(String targetIndex, String parentId);
+
+    // ─────────────────────────────────────────────────────────
+    // Consistency checks (KV ↔ ES reconciler)
+    // ─────────────────────────────────────────────────────────
+
+    /**
+     * Etags of the given parents as indexed in the plans-index alias, with
+     * _source limited to the etag field; parents not in the index are left
+     * out. Throws when the request fails.
+     */
+    Map<String, String> indexedEtags(List<String> parentIds);
+
+    /** A page of parent ids and the sort values of its last hit — search_after of the next page. */
+    record IdPage(List<String> ids, JsonNode after) {}
+
+    /**
+     * One page of up to size parent ids, ordered by objectId and starting
+     * after the sort values after (a previous page's after(), null for the
+     * first page) — search_after paging over the whole index. No ids means
+     * the end. Throws when the request fails.
+     */
+    IdPage parentIdsAfter(JsonNode after, int size);
 }
@@ -24,6 +24,24 @@ public final class PlanIndexConstants {
     /** Join relation name for parent documents. */
     public static final String TYPE_PLAN   = "plan";
 
-    /** Join relation name for child documents. */
+    /** Join relation name for child documents (planservice entries). */
     public static final String TYPE_CHILD  = "child";
+
+    // elastic.index.join-levels=3 — see PlanRoutingStrategy
+
+    /** planCostShares, a child of the plan. */
+    public static final String TYPE_PLAN_COST_SHARE    = "plancostshare";
+
+    /** linkedService of a planservice, a grandchild of the plan. */
+    public static final String TYPE_SERVICE            = "service";
+
+    /** planserviceCostShares of a planservice, a grandchild of the plan. */
+    public static final String TYPE_SERVICE_COST_SHARE = "servicecostshare";
+
+    /**
+     * objectId of the plan a descendant belongs to, on every non-plan
+     * document — the one field that finds all of a plan's descendants, at any
+     * join level.
+     */
+    public static final String ROOT_FIELD = "_plan";
 }
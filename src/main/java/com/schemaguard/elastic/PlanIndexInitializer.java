@@ -1,25 +1,38 @@
 package com.schemaguard.elastic;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import static com.schemaguard.elastic.PlanIndexConstants.INDEX_NAME;
 
 /**
  * Creates the 'plans-index' Elasticsearch index with parent-child join mapping
  * on application startup, if it does not already exist.
  *
+ * Settings and mapping come from PlanIndexMapping. When the index exists,
+ * its live mapping is diffed against the desired one instead and every
+ * difference is logged at WARN — a mapping cannot change in place, so the
+ * fix is a reindex. GET /api/v1/index/mapping returns the same report.
+ *
+ * 'plans-index' is an alias: a fresh cluster gets the physical index
+ * plans-index-v1 with the alias attached (IndexAliasManager), so a later
+ * reindex can swap it without downtime. An existing pre-alias concrete
+ * plans-index is left as it is until the first reindex replaces it; that
+ * swap keeps it as plans-index-v0 for rollback.
+ *
  * Uses plain HTTP via RestTemplate for both the existence check and index creation.
  * This avoids two known issues with the Elasticsearch Java API Client in this stack:
  *   1. indices.exists() throws on the empty-body 404 ES returns for missing indices.
@@ -35,29 +48,9 @@ public class PlanIndexInitializer {
 
     private static final Logger log = LoggerFactory.getLogger(PlanIndexInitializer.class);
 
-    static final String INDEX_MAPPING = """
-            {
-              "mappings": {
-                "dynamic": true,
-                "properties": {
-                  "objectId": {
-                    "type": "keyword"
-                  },
-                  "objectType": {
-                    "type": "keyword"
-                  },
-                  "my_join_field": {
-                    "type": "join",
-                    "relations": {
-                      "plan": "child"
-                    }
-                  }
-                }
-              }
-            }
-            """;
-
     private final RestTemplate restTemplate = new RestTemplate();
+    private final IndexAliasManager aliases;
+    private final PlanIndexMapping mapping;
 
     @Value("${elastic.host:localhost}")
     private String host;
@@ -65,35 +58,73 @@ public class PlanIndexInitializer {
     @Value("${elastic.port:9200}")
     private int port;
 
+    @Value("${elastic.connect-timeout-ms:2000}")
+    private long connectTimeoutMs;
+
+    @Value("${elastic.read-timeout-ms:30000}")
+    private long readTimeoutMs;
+
+    public PlanIndexInitializer(IndexAliasManager aliases, PlanIndexMapping mapping) {
+        this.aliases = aliases;
+        this.mapping = mapping;
+    }
+
+    @PostConstruct
+    void applyTimeouts() {
+        restTemplate.setRequestFactory(ElasticsearchHttp.requestFactory(connectTimeoutMs, readTimeoutMs));
+    }
+
     @EventListener(ApplicationReadyEvent.class)
     public void initIndex() {
         String indexUrl = "http://" + host + ":" + port + "/" + INDEX_NAME;
         try {
             if (indexExists(indexUrl)) {
                 log.info("Elasticsearch index '{}' already exists — skipping creation", INDEX_NAME);
+                logMappingDiff();
                 return;
             }
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            HttpEntity<String> request = new HttpEntity<>(INDEX_MAPPING, headers);
-
-            // use exchange() — RestTemplate.put() returns void
-            ResponseEntity<String> response = restTemplate.exchange(
-                    indexUrl, HttpMethod.PUT, request, String.class);
-
-            if (response.getStatusCode().is2xxSuccessful()) {
-                log.info("Elasticsearch index '{}' initialized with parent-child mapping", INDEX_NAME);
-            } else {
-                log.warn("Elasticsearch index '{}' creation returned status {}",
-                        INDEX_NAME, response.getStatusCode());
-            }
+            aliases.create(aliases.nextVersionName(), false, true);
+            log.info("Elasticsearch index '{}' initialized with parent-child mapping", INDEX_NAME);
 
         } catch (Exception ex) {
             log.warn("could not initialize Elasticsearch index '{}' — {}", INDEX_NAME, ex.getMessage());
         }
     }
 
+    /**
+     * Live index vs desired mapping: index = the physical index behind the
+     * alias, inSync, differences (PlanIndexMapping.diff lines).
+     */
+    public Map<String, Object> mappingReport() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        JsonNode live = aliases.liveMappings();
+        result.put("index", aliases.currentIndex());
+        if (live == null) {
+            result.put("inSync", false);
+            result.put("differences", List.of("index " + INDEX_NAME + " does not exist"));
+            return result;
+        }
+        List<String> differences = mapping.diff(live);
+        result.put("inSync", differences.isEmpty());
+        result.put("differences", differences);
+        return result;
+    }
+
+    private void logMappingDiff() {
+        Map<String, Object> report = mappingReport();
+        List<?> differences = (List<?>) report.get("differences");
+        if (differences.isEmpty()) {
+            log.info("mapping of {} matches the desired mapping", report.get("index"));
+            return;
+        }
+        log.warn("mapping of {} differs from the desired mapping in {} places — reindex to apply:",
+                report.get("index"), differences.size());
+        for (Object difference : differences) {
+            log.warn("  {}", difference);
+        }
+    }
+
     private boolean indexExists(String indexUrl) {
         try {
             ResponseEntity<String> resp = restTemplate.getForEntity(indexUrl, String.class);
@@ -0,0 +1,222 @@
+package com.schemaguard.elastic;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.schemaguard.queue.PlanDocumentSplitter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Desired settings + mapping of the plan indices.
+ *
+ * The mapping lives in elastic/plans-index.json and names every field the
+ * plan schema defines, with the type it is searched by:
+ *   keyword       ids, _org, objectType, planType — exact match / sort / terms
+ *   text+keyword  linkedService.name — full-text with an exact sub-field
+ *   scaled_float  deductible / copay (factor 100) — numeric, independent of
+ *                 whether the first value seen was 10 or 10.5
+ *   date          creationDate (dd-MM-yyyy)
+ *   index: false  _etag — only ever read back from _source
+ * Parents and children share the index, so the child fields (linkedService,
+ * planserviceCostShares) appear both at the root and under
+ * linkedPlanServices. With elastic.index.join-levels=3 services and cost
+ * shares are documents of their own, searched by the root-level name /
+ * deductible / copay; the join relations follow PlanRoutingStrategy.
+ * With elastic.index.strategy=nested or flattened there is no join field
+ * and no _plan; nested maps linkedPlanServices as "nested".
+ *
+ * Fields the schema does not define (it allows additional properties) are
+ * governed by elastic.index.dynamic: false (default) keeps them in _source
+ * but unindexed, so the mapping cannot grow; true maps them through the
+ * dynamic templates (strings → keyword, numbers → double); strict rejects
+ * such documents.
+ *
+ * Shards, replicas and refresh_interval come from elastic.index.*. Mappings
+ * of an existing index cannot change in place — diff() reports how the live
+ * mapping differs, and a reindex (PlanReindexService) creates the next
+ * physical index with the desired one.
+ */
+@Component
+public class PlanIndexMapping {
+
+    static final String MAPPING_PATH = "elastic/plans-index.json";
+
+    /** Field parameters compared by diff(), besides the type. */
+    private static final List<String> PARAMS =
+            List.of("index", "doc_values", "format", "scaling_factor", "ignore_above", "ignore_malformed", "relations");
+
+    private final ObjectNode template;
+    private final ObjectMapper objectMapper;
+    private final PlanRoutingStrategy routing;
+    private volatile JsonNode desiredProperties;
+
+    @Value("${elastic.index.shards:1}")
+    private int shards;
+
+    @Value("${elastic.index.replicas:1}")
+    private int replicas;
+
+    @Value("${elastic.index.refresh-interval:1s}")
+    private String refreshInterval;
+
+    @Value("${elastic.index.dynamic:false}")
+    private String dynamic;
+
+    public PlanIndexMapping(ObjectMapper objectMapper, PlanRoutingStrategy routing) {
+        this.objectMapper = objectMapper;
+        this.routing = routing;
+        try (InputStream in = new ClassPathResource(MAPPING_PATH).getInputStream()) {
+            this.template = (ObjectNode) objectMapper.readTree(in);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("could not read " + MAPPING_PATH, ex);
+        }
+    }
+
+    /**
+     * Body for PUT /<index>: configured settings + mapping. With bulkLoad
+     * the refresh interval is -1 until IndexAliasManager.finishBulkLoad().
+     */
+    public ObjectNode createBody(boolean bulkLoad) {
+        ObjectNode body = template.deepCopy();
+        ObjectNode index = body.withObjectProperty("settings").withObjectProperty("index");
+        index.put("number_of_shards", shards);
+        index.put("number_of_replicas", replicas);
+        index.put("refresh_interval", bulkLoad ? "-1" : refreshInterval);
+        ObjectNode mappings = (ObjectNode) body.get("mappings");
+        mappings.put("dynamic", dynamic);
+        ObjectNode properties = (ObjectNode) mappings.get("properties");
+        if (routing.joined()) {
+            ((ObjectNode) properties.get(PlanIndexConstants.JOIN_FIELD))
+                    .set("relations", objectMapper.valueToTree(routing.relations()));
+        } else {
+            properties.remove(List.of(PlanIndexConstants.JOIN_FIELD, PlanIndexConstants.ROOT_FIELD));
+        }
+        if (routing.strategy() == PlanRoutingStrategy.Strategy.NESTED) {
+            // type first, so the mapping reads like the file's
+            ObjectNode services = (ObjectNode) properties.get(PlanDocumentSplitter.CHILDREN_FIELD);
+            ObjectNode nested = objectMapper.createObjectNode().put("type", "nested");
+            nested.setAll(services);
+            properties.set(PlanDocumentSplitter.CHILDREN_FIELD, nested);
+        }
+        return body;
+    }
+
+    /**
+     * Mapping type of a dotted field path in the desired mapping — "object"
+     * for one with properties (nested included), null when not mapped.
+     */
+    public String fieldType(String path) {
+        JsonNode field = field(path);
+        if (field == null) return null;
+        return field.has("properties") ? "object" : field.path("type").asText("object");
+    }
+
+    /** True when the field has a .keyword sub-field (text fields). */
+    public boolean hasKeyword(String path) {
+        JsonNode field = field(path);
+        return field != null && field.path("fields").has("keyword");
+    }
+
+    private JsonNode field(String path) {
+        JsonNode properties = desiredProperties();
+        JsonNode field = null;
+        for (String name : path.split("\\.")) {
+            field = properties.get(name);
+            if (field == null) return null;
+            properties = field.path("properties");
+        }
+        return field;
+    }
+
+    /** properties of createBody(), built once — they only depend on configuration. */
+    private JsonNode desiredProperties() {
+        JsonNode properties = desiredProperties;
+        if (properties == null) {
+            properties = createBody(false).at("/mappings/properties");
+            desiredProperties = properties;
+        }
+        return properties;
+    }
+
+    /** The refresh interval a bulk-loaded index returns to. */
+    public String refreshInterval() {
+        return refreshInterval;
+    }
+
+    /** Differences of liveMappings (the "mappings" of GET /<index>/_mapping) from the desired mapping. */
+    public List<String> diff(JsonNode liveMappings) {
+        return diff(createBody(false).get("mappings"), liveMappings);
+    }
+
+    /**
+     * One line per difference, empty when in sync:
+     *   dynamic: live X, desired Y
+     *   missing a.b (type)           — desired, not in the live mapping
+     *   type a.b: live X, desired Y
+     *   param a.b.index: live X, desired Y
+     *   unmapped a.b (type)          — live only, e.g. added dynamically
+     */
+    static List<String> diff(JsonNode desired, JsonNode live) {
+        List<String> out = new ArrayList<>();
+        String liveDynamic = live.path("dynamic").asText("true");
+        String desiredDynamic = desired.path("dynamic").asText("true");
+        if (!liveDynamic.equals(desiredDynamic)) {
+            out.add("dynamic: live " + liveDynamic + ", desired " + desiredDynamic);
+        }
+        diffFields("", desired.path("properties"), live.path("properties"), out);
+        return out;
+    }
+
+    private static void diffFields(String prefix, JsonNode desired, JsonNode live, List<String> out) {
+        for (Map.Entry<String, JsonNode> field : desired.properties()) {
+            String path = prefix + field.getKey();
+            JsonNode want = field.getValue();
+            JsonNode have = live.get(field.getKey());
+            if (have == null) {
+                out.add("missing " + path + " (" + typeOf(want) + ")");
+                continue;
+            }
+            if (!typeOf(want).equals(typeOf(have))) {
+                out.add("type " + path + ": live " + typeOf(have) + ", desired " + typeOf(want));
+                continue;
+            }
+            for (String param : PARAMS) {
+                JsonNode a = have.get(param);
+                JsonNode b = want.get(param);
+                if (!sameValue(a, b)) {
+                    out.add("param " + path + "." + param + ": live " + a + ", desired " + b);
+                }
+            }
+            diffFields(path + ".", want.path("properties"), have.path("properties"), out);
+            diffFields(path + ".", want.path("fields"), have.path("fields"), out);
+        }
+        for (Iterator<String> it = live.fieldNames(); it.hasNext(); ) {
+            String name = it.next();
+            if (!desired.has(name)) {
+                out.add("unmapped " + prefix + name + " (" + typeOf(live.get(name)) + ")");
+            }
+        }
+    }
+
+    private static String typeOf(JsonNode field) {
+        return field.path("type").asText("object");
+    }
+
+    /** Equal values, where 100 and 100.0 or true and "true" count as the same — ES echoes either. */
+    private static boolean sameValue(JsonNode a, JsonNode b) {
+        if (a == null || b == null) return a == b;
+        if (a.isNumber() && b.isNumber()) return a.doubleValue() == b.doubleValue();
+        if (a.isValueNode() && b.isValueNode()) return a.asText().equals(b.asText());
+        return a.equals(b);
+    }
+}
@@ -0,0 +1,229 @@
+package com.schemaguard.elastic;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Typed query DSL for the plan searches — every query is built as a
+ * JsonNode, so values are escaped by Jackson rather than pasted into JSON
+ * text.
+ *
+ * A child condition (childField / childValue) is matched in one of these
+ * modes (match=):
+ *   term    value equals the field — keyword, number, date; a text field
+ *           is matched on its .keyword sub-field
+ *   terms   value is a comma-separated list, any of them
+ *   range   value is min..max, either end optional ("10..12", "2900..")
+ *   prefix  value starts the field (keyword / .keyword)
+ *   text    full-text match, scored (lenient: a value of the wrong type
+ *           matches nothing instead of failing)
+ *   auto    text for text fields (and unmapped ones), term otherwise
+ *           (default)
+ *
+ * Every mode but text is exact: its clause belongs in bool.filter, where
+ * it is not scored and Elasticsearch's node query cache can keep the
+ * matching documents for the next request. Only text goes in must.
+ */
+public final class PlanQueries {
+
+    private PlanQueries() {}
+
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+    /** Mapping types auto matches exactly. */
+    private static final Set<String> EXACT_TYPES =
+            Set.of("keyword", "scaled_float", "double", "float", "long", "integer", "date", "boolean");
+
+    public enum MatchMode {
+        AUTO, TERM, TERMS, RANGE, PREFIX, TEXT;
+
+        /** auto / term / terms / range / prefix / text, any case; null or blank = AUTO. */
+        public static MatchMode parse(String value) {
+            if (value == null || value.isBlank()) return AUTO;
+            for (MatchMode mode : values()) {
+                if (mode.name().equalsIgnoreCase(value.trim())) return mode;
+            }
+            throw new IllegalArgumentException(
+                    "match must be auto, term, terms, range, prefix or text, was '" + value + "'");
+        }
+    }
+
+    /** A query and whether it is exact — a bool.filter clause — or scored (bool.must). */
+    public record Clause(ObjectNode query, boolean exact) {}
+
+    /**
+     * The condition field = value in mode. type is the field's mapping type
+     * (null if unmapped, "object" for an object); keyword says whether a text
+     * field has a .keyword sub-field.
+     */
+    public static Clause condition(MatchMode mode, String field, String value, String type, boolean keyword) {
+        if ("object".equals(type)) {
+            // an object, e.g. linkedService: any of its fields, full-text only
+            if (mode != MatchMode.AUTO && mode != MatchMode.TEXT) {
+                throw new IllegalArgumentException("'" + field + "' is an object — only text matches it");
+            }
+            return new Clause(multiMatch(value, List.of(field.equals("*") ? "*" : field + ".*")), false);
+        }
+        if (mode == MatchMode.AUTO) {
+            mode = type != null && EXACT_TYPES.contains(type) ? MatchMode.TERM : MatchMode.TEXT;
+        }
+        String exactField = "text".equals(type) && keyword ? field + ".keyword" : field;
+        return switch (mode) {
+            case TERM -> new Clause(term(exactField, value), true);
+            case TERMS -> new Clause(terms(exactField, split(value)), true);
+            case RANGE -> {
+                int dots = value.indexOf("..");
+                if (dots < 0) throw new IllegalArgumentException("range value must be min..max, was '" + value + "'");
+                yield new Clause(range(field, value.substring(0, dots).trim(), value.substring(dots + 2).trim()), true);
+            }
+            case PREFIX -> new Clause(prefix(exactField, value), true);
+            default -> new Clause(match(field, value), false);
+        };
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Leaf queries
+    // ─────────────────────────────────────────────────────────────────────────
+
+    public static ObjectNode matchAll() {
+        ObjectNode query = NODES.objectNode();
+        query.putObject("match_all");
+        return query;
+    }
+
+    public static ObjectNode term(String field, String value) {
+        ObjectNode query = NODES.objectNode();
+        query.putObject("term").put(field, value);
+        return query;
+    }
+
+    public static ObjectNode terms(String field, List<String> values) {
+        ObjectNode query = NODES.objectNode();
+        ArrayNode array = query.putObject("terms").putArray(field);
+        values.forEach(array::add);
+        return query;
+    }
+
+    /** gte / lte bounds; a blank one is left open. */
+    public static ObjectNode range(String field, String gte, String lte) {
+        if (gte.isBlank() && lte.isBlank()) throw new IllegalArgumentException("range needs a min or a max");
+        ObjectNode query = NODES.objectNode();
+        ObjectNode bounds = query.putObject("range").putObject(field);
+        if (!gte.isBlank()) bounds.put("gte", gte);
+        if (!lte.isBlank()) bounds.put("lte", lte);
+        return query;
+    }
+
+    public static ObjectNode prefix(String field, String value) {
+        ObjectNode query = NODES.objectNode();
+        query.putObject("prefix").put(field, value);
+        return query;
+    }
+
+    public static ObjectNode exists(String field) {
+        ObjectNode query = NODES.objectNode();
+        query.putObject("exists").put("field", field);
+        return query;
+    }
+
+    public static ObjectNode match(String field, String text) {
+        ObjectNode query = NODES.objectNode();
+        query.putObject("match").putObject(field).put("query", text).put("lenient", true);
+        return query;
+    }
+
+    public static ObjectNode multiMatch(String text, List<String> fields) {
+        ObjectNode query = NODES.objectNode();
+        ObjectNode multiMatch = query.putObject("multi_match");
+        multiMatch.put("query", text);
+        ArrayNode array = multiMatch.putArray("fields");
+        fields.forEach(array::add);
+        multiMatch.put("lenient", true);
+        return query;
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Compound queries
+    // ─────────────────────────────────────────────────────────────────────────
+
+    public static ObjectNode hasChild(String type, JsonNode query) {
+        ObjectNode hasChild = NODES.objectNode();
+        hasChild.putObject("has_child").put("type", type).set("query", query);
+        return hasChild;
+    }
+
+    public static ObjectNode hasParent(String parentType, JsonNode query) {
+        ObjectNode hasParent = NODES.objectNode();
+        hasParent.putObject("has_parent").put("parent_type", parentType).set("query", query);
+        return hasParent;
+    }
+
+    public static ObjectNode nested(String path, JsonNode query) {
+        ObjectNode nested = NODES.objectNode();
+        nested.putObject("nested").put("path", path).set("query", query);
+        return nested;
+    }
+
+    /** The clause on its own when scored, else wrapped as bool.filter — filter context inside a join. */
+    public static ObjectNode inContext(Clause clause) {
+        return clause.exact() ? bool().filter(clause.query()).build() : clause.query();
+    }
+
+    public static Bool bool() {
+        return new Bool();
+    }
+
+    /** bool query builder; empty sections are left out. */
+    public static final class Bool {
+
+        private final List<JsonNode> must = new ArrayList<>();
+        private final List<JsonNode> filter = new ArrayList<>();
+        private final List<JsonNode> should = new ArrayList<>();
+
+        private Bool() {}
+
+        public Bool must(JsonNode query) {
+            must.add(query);
+            return this;
+        }
+
+        public Bool filter(JsonNode query) {
+            filter.add(query);
+            return this;
+        }
+
+        public Bool should(JsonNode query) {
+            should.add(query);
+            return this;
+        }
+
+        /** must when scored, filter when exact. */
+        public Bool add(Clause clause) {
+            return clause.exact() ? filter(clause.query()) : must(clause.query());
+        }
+
+        public ObjectNode build() {
+            ObjectNode query = NODES.objectNode();
+            ObjectNode bool = query.putObject("bool");
+            if (!must.isEmpty()) bool.putArray("must").addAll(must);
+            if (!filter.isEmpty()) bool.putArray("filter").addAll(filter);
+            if (!should.isEmpty()) bool.putArray("should").addAll(should);
+            return query;
+        }
+    }
+
+    private static List<String> split(String values) {
+        List<String> list = new ArrayList<>();
+        for (String value : values.split(",")) {
+            if (!value.isBlank()) list.add(value.trim());
+        }
+        if (list.isEmpty()) throw new IllegalArgumentException("terms needs at least one value");
+        return list;
+    }
+}
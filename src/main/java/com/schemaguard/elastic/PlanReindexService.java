@@ -0,0 +1,325 @@
+package com.schemaguard.elastic;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.schemaguard.exception.ConflictException;
+import com.schemaguard.model.StoredDocument;
+import com.schemaguard.queue.PlanDocumentSplitter;
+import com.schemaguard.store.DocumentChangeFeed;
+import com.schemaguard.store.KeyValueStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Zero-downtime rebuild of the search index from the key-value store.
+ *
+ * Phases (state in the snapshot):
+ *   COPYING      — creates the next plans-index-vN with refresh off, opens
+ *                  the DocumentChangeFeed, then SCANs every plan id and
+ *                  bulk-indexes parent + children, reindex.parallelism batches
+ *                  of reindex.batch-size at a time
+ *   CATCHING_UP  — re-copies every id written since the copy started (the
+ *                  feed), until a poll comes back empty; ids no longer in KV
+ *                  are deleted from the new index
+ *   SWAPPING     — restores refresh, then moves the plans-index alias in one
+ *                  atomic _aliases call, and drains the feed once more for
+ *                  writes that landed on the old index meanwhile
+ *   DONE / FAILED
+ *
+ * Live indexing keeps writing through the alias, i.e. into the old index,
+ * for the whole run; the feed is what carries those writes over. The old
+ * index is kept after the swap (drop it once satisfied) — a pre-alias
+ * concrete plans-index is kept as its clone plans-index-v0, which
+ * previousIndex then names; on failure the new one is deleted and the alias
+ * is untouched.
+ *
+ * One job per instance — a second start while one runs is a ConflictException
+ * (409). Across instances the feed's consumer group is shared, so run it on
+ * one instance at a time.
+ *
+ * Metric: schemaguard.reindex.documents Counter, tag outcome = indexed | failed
+ * (parents and children; failed = items rejected by _bulk).
+ */
+@Service
+public class PlanReindexService {
+
+    private static final Logger log = LoggerFactory.getLogger(PlanReindexService.class);
+
+    public enum State { IDLE, COPYING, CATCHING_UP, SWAPPING, DONE, FAILED }
+
+    private final KeyValueStore kvStore;
+    private final IndexService indexService;
+    private final IndexAliasManager aliases;
+    private final DocumentChangeFeed changeFeed;
+    private final PlanDocumentSplitter splitter;
+    private final ObjectMapper objectMapper;
+    private final Counter indexedCounter;
+    private final Counter failedCounter;
+
+    private final ExecutorService jobExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "plan-reindex");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Value("${reindex.batch-size:500}")
+    private int batchSize;
+
+    @Value("${reindex.parallelism:4}")
+    private int parallelism;
+
+    @Value("${reindex.catch-up-batch:500}")
+    private int catchUpBatch;
+
+    // progress of the current / last run
+    private final AtomicReference<State> state = new AtomicReference<>(State.IDLE);
+    private final AtomicLong scannedIds = new AtomicLong();
+    private final AtomicLong indexedPlans = new AtomicLong();
+    private final AtomicLong indexedChildren = new AtomicLong();
+    private final AtomicLong failedDocuments = new AtomicLong();
+    private final AtomicLong caughtUpIds = new AtomicLong();
+    private volatile String targetIndex;
+    private volatile String previousIndex;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+
+    public PlanReindexService(KeyValueStore kvStore,
+                              IndexService indexService,
+                              IndexAliasManager aliases,
+                              DocumentChangeFeed changeFeed,
+                              PlanDocumentSplitter splitter,
+                              ObjectMapper objectMapper,
+                              MeterRegistry registry) {
+        this.kvStore = kvStore;
+        this.indexService = indexService;
+        this.aliases = aliases;
+        this.changeFeed = changeFeed;
+        this.splitter = splitter;
+        this.objectMapper = objectMapper;
+        this.indexedCounter = documentCounter(registry, "indexed");
+        this.failedCounter = documentCounter(registry, "failed");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdownNow();
+    }
+
+    /**
+     * Starts a reindex in the background and returns its initial snapshot.
+     * @throws ConflictException when a reindex is already running
+     */
+    public Map<String, Object> start() {
+        if (!running.compareAndSet(false, true)) {
+            throw new ConflictException("A reindex is already running (" + state.get() + " into " + targetIndex + ")");
+        }
+        scannedIds.set(0);
+        indexedPlans.set(0);
+        indexedChildren.set(0);
+        failedDocuments.set(0);
+        caughtUpIds.set(0);
+        targetIndex = null;
+        previousIndex = null;
+        error = null;
+        finishedAt = null;
+        startedAt = Instant.now();
+        state.set(State.COPYING);
+        jobExecutor.execute(this::run);
+        return snapshot();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        State current = state.get();
+        result.put("state", current.name());
+        result.put("targetIndex", targetIndex);
+        result.put("previousIndex", previousIndex);
+        Instant started = startedAt;
+        long elapsedMs = 0;
+        if (started != null) {
+            Instant end = finishedAt != null ? finishedAt : Instant.now();
+            elapsedMs = Math.max(0, end.toEpochMilli() - started.toEpochMilli());
+            result.put("startedAt", started.toString());
+            result.put("finishedAt", finishedAt != null ? finishedAt.toString() : null);
+        }
+        result.put("elapsedMs", elapsedMs);
+        result.put("scannedIds", scannedIds.get());
+        result.put("indexedPlans", indexedPlans.get());
+        result.put("indexedChildren", indexedChildren.get());
+        result.put("failedDocuments", failedDocuments.get());
+        result.put("caughtUpIds", caughtUpIds.get());
+        result.put("plansPerSecond", elapsedMs > 0
+                ? Math.round(indexedPlans.get() * 10_000.0 / elapsedMs) / 10.0 : 0.0);
+        result.put("batchSize", batchSize);
+        result.put("parallelism", parallelism);
+        if (error != null) result.put("error", error);
+        return result;
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Job
+    // ─────────────────────────────────────────────────────────────────────────
+
+    private void run() {
+        boolean feedOpen = false;
+        boolean swapped = false;
+        try {
+            previousIndex = aliases.currentIndex();
+            targetIndex = aliases.nextVersionName();
+            aliases.create(targetIndex, true, false);
+            log.info("reindex started: {} → {}", previousIndex, targetIndex);
+
+            // open before the scan: a write during the copy is either seen by
+            // SCAN, by the feed, or both — never by neither
+            changeFeed.open();
+            feedOpen = true;
+            copyAll();
+
+            state.set(State.CATCHING_UP);
+            catchUp();
+
+            state.set(State.SWAPPING);
+            aliases.finishBulkLoad(targetIndex);
+            previousIndex = aliases.swap(targetIndex, previousIndex);
+            swapped = true;
+            catchUp();
+
+            changeFeed.close();
+            feedOpen = false;
+            state.set(State.DONE);
+            log.info("reindex done: {} plans, {} children into {} ({} failed)",
+                    indexedPlans.get(), indexedChildren.get(), targetIndex, failedDocuments.get());
+        } catch (Exception ex) {
+            error = ex.getMessage();
+            state.set(State.FAILED);
+            log.error("reindex into {} failed — {}", targetIndex, ex.getMessage());
+            if (feedOpen) closeQuietly();
+            // once swapped the new index is live — keep it, the old one is still there
+            if (targetIndex != null && !swapped) {
+                deleteQuietly(targetIndex);
+            }
+        } finally {
+            finishedAt = Instant.now();
+            running.set(false);
+        }
+    }
+
+    /** SCAN → MGET → _bulk, with up to parallelism batches in flight. */
+    private void copyAll() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+            Thread t = new Thread(r, "plan-reindex-copy");
+            t.setDaemon(true);
+            return t;
+        });
+        Semaphore inFlight = new Semaphore(Math.max(1, parallelism));
+        List<Future<?>> batches = new ArrayList<>();
+        try {
+            kvStore.scanIds(batchSize, ids -> {
+                scannedIds.addAndGet(ids.size());
+                inFlight.acquireUninterruptibly();
+                batches.add(pool.submit(() -> {
+                    try {
+                        copy(ids);
+                    } finally {
+                        inFlight.release();
+                    }
+                    return null;
+                }));
+            });
+            for (Future<?> batch : batches) {
+                batch.get();    // rethrows the first failed batch
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Re-copies ids from the change feed until it comes back empty. */
+    private void catchUp() {
+        List<String> ids;
+        while (!(ids = changeFeed.poll(catchUpBatch)).isEmpty()) {
+            caughtUpIds.addAndGet(ids.size());
+            Map<String, StoredDocument> present = copy(ids);
+            for (String id : ids) {
+                if (!present.containsKey(id)) {
+                    indexService.deletePlan(targetIndex, id);
+                }
+            }
+        }
+    }
+
+    /** Copies the ids still in KV into the target index; returns what was found. */
+    private Map<String, StoredDocument> copy(List<String> ids) {
+        Map<String, StoredDocument> docs = kvStore.getAll(ids);
+        List<IndexService.BulkPlan> plans = new ArrayList<>(docs.size());
+        long children = 0;
+        for (StoredDocument doc : docs.values()) {
+            try {
+                Map<String, IndexService.ChildDoc> childDocs = splitter.childDocs(doc.getJson());
+                plans.add(new IndexService.BulkPlan(doc.getObjectId(),
+                        objectMapper.readTree(doc.getJson()), doc.getEtag(), doc.getVersion(), childDocs));
+                children += childDocs.size();
+            } catch (Exception ex) {
+                failedDocuments.incrementAndGet();
+                failedCounter.increment();
+                log.warn("reindex skipped unreadable plan id={} — {}", doc.getObjectId(), ex.getMessage());
+            }
+        }
+        if (plans.isEmpty()) return docs;
+
+        int failed = indexService.bulkIndex(targetIndex, plans);
+        long total = plans.size() + children;
+        indexedPlans.addAndGet(plans.size());
+        indexedChildren.addAndGet(children);
+        failedDocuments.addAndGet(failed);
+        indexedCounter.increment(total - failed);
+        if (failed > 0) failedCounter.increment(failed);
+        return docs;
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // helpers
+    // ─────────────────────────────────────────────────────────────────────────
+
+    private void closeQuietly() {
+        try {
+            changeFeed.close();
+        } catch (Exception ex) {
+            log.warn("could not close change feed — {}", ex.getMessage());
+        }
+    }
+
+    private void deleteQuietly(String index) {
+        try {
+            aliases.delete(index);
+        } catch (Exception ex) {
+            log.warn("could not delete abandoned index {} — {}", index, ex.getMessage());
+        }
+    }
+
+    private static Counter documentCounter(MeterRegistry registry, String outcome) {
+        return Counter.builder("schemaguard.reindex.documents")
+                .description("Parent and child documents written by the reindex job")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+}
@@ -1,11 +1,15 @@
 package com.schemaguard.elastic;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
-import static com.schemaguard.elastic.PlanIndexConstants.TYPE_CHILD;
-import static com.schemaguard.elastic.PlanIndexConstants.TYPE_PLAN;
+import static com.schemaguard.elastic.PlanIndexConstants.*;
 
 /**
  * Encapsulates all Elasticsearch routing and join-field logic for the plans index.
@@ -14,18 +18,92 @@ import static com.schemaguard.elastic.PlanIndexConstants.TYPE_PLAN;
  * - parent document: routing = its own objectId (Elasticsearch default, no override needed)
  * - child document:  routing = parentId (MUST be set explicitly — enforces co-location
  *   with the parent on the same shard, required for join queries)
+ * - grandchild document: routing = the plan's objectId as well, not its
+ *   direct parent's — every level of a join must live on the plan's shard
  *
  * Join field shapes:
  * - parent: my_join_field = "plan"  (plain string)
  * - child:  my_join_field = { "name": "child", "parent": "<parentId>" }  (object)
  *
- * This class is intentionally stateless — all methods are pure functions that
- * take IDs and return the correct field values. The indexing layer (next task)
- * calls these methods when building index requests.
+ * Join levels (elastic.index.join-levels):
+ *   2  plan → child (planservice); cost shares and linkedService stay inside
+ *      the plan / planservice documents (default)
+ *   3  plan → child (planservice) → service | servicecostshare
+ *      plan → plancostshare
+ *      every object of the plan is its own small document, so a query on a
+ *      service name or a copay only touches documents of that type
+ *
+ * Strategy (elastic.index.strategy) — how a plan's services are laid out,
+ * read by PlanDocumentSplitter, IndexService, PlanIndexMapping and
+ * PlanSearchService alike, so one setting switches all of them:
+ *   join       parent/child documents as above; has_child queries (default)
+ *   nested     one document per plan, linkedPlanServices mapped as nested —
+ *              a service condition is a nested query inside the plan's own
+ *              document, no join, no global ordinals
+ *   flattened  one document per plan, linkedPlanServices a plain object
+ *              array — the cheapest queries, but conditions on two fields of
+ *              a service may be met by two different services
+ * With nested / flattened there are no child documents, no join field and
+ * no routing beyond the default. The mapping differs per strategy, so
+ * switching an existing deployment needs a reindex (PlanReindexService).
+ *
+ * Apart from the configured strategy and level count this class is
+ * stateless — all methods are pure functions that take IDs and return the
+ * correct field values.
  */
 @Component
 public class PlanRoutingStrategy {
 
+    public enum Strategy { JOIN, NESTED, FLATTENED }
+
+    private final Strategy strategy;
+    private final int joinLevels;
+
+    @Autowired
+    public PlanRoutingStrategy(@Value("${elastic.index.strategy:join}") String strategy,
+                               @Value("${elastic.index.join-levels:2}") int joinLevels) {
+        if (joinLevels != 2 && joinLevels != 3) {
+            throw new IllegalArgumentException("elastic.index.join-levels must be 2 or 3, was " + joinLevels);
+        }
+        this.strategy = Strategy.valueOf(strategy.trim().toUpperCase(Locale.ROOT));
+        this.joinLevels = joinLevels;
+    }
+
+    /** The join strategy with the given number of levels. */
+    public PlanRoutingStrategy(int joinLevels) {
+        this("join", joinLevels);
+    }
+
+    public Strategy strategy() {
+        return strategy;
+    }
+
+    public int joinLevels() {
+        return joinLevels;
+    }
+
+    /** True when services are child documents with a join field (strategy join). */
+    public boolean joined() {
+        return strategy == Strategy.JOIN;
+    }
+
+    /** True for plan → planservice → service / cost share (join, join-levels=3). */
+    public boolean multiLevel() {
+        return joined() && joinLevels == 3;
+    }
+
+    /** The "relations" of the join field mapping for the configured levels. */
+    public Map<String, Object> relations() {
+        Map<String, Object> relations = new LinkedHashMap<>();
+        if (multiLevel()) {
+            relations.put(TYPE_PLAN, List.of(TYPE_CHILD, TYPE_PLAN_COST_SHARE));
+            relations.put(TYPE_CHILD, List.of(TYPE_SERVICE, TYPE_SERVICE_COST_SHARE));
+        } else {
+            relations.put(TYPE_PLAN, TYPE_CHILD);
+        }
+        return relations;
+    }
+
     /**
      * Returns the join field value for a parent (plan) document.
      * Elasticsearch accepts a plain string when there are no child relations to specify.
@@ -44,8 +122,18 @@ public class PlanRoutingStrategy {
      * @return  map representing { "name": "child", "parent": "<parentId>" }
      */
     public Map<String, String> childJoinField(String parentId) {
+        return joinField(TYPE_CHILD, parentId);
+    }
+
+    /**
+     * Join field value for a document of any non-plan relation.
+     *
+     * @param relation  relation name, e.g. "service"
+     * @param parentId  objectId of its direct parent (a planservice for a service)
+     */
+    public Map<String, String> joinField(String relation, String parentId) {
         return Map.of(
-                "name",   TYPE_CHILD,
+                "name",   relation,
                 "parent", parentId
         );
     }
@@ -60,4 +148,13 @@ public class PlanRoutingStrategy {
     public String childRouting(String parentId) {
         return parentId;
     }
+
+    /**
+     * Routing of any descendant of a plan, at any level: the plan's id.
+     *
+     * @param planId  objectId of the plan at the top of the join
+     */
+    public String descendantRouting(String planId) {
+        return planId;
+    }
 }
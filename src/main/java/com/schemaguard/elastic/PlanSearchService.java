@@ -1,7 +1,14 @@
 package com.schemaguard.elastic;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.schemaguard.elastic.PlanQueries.Clause;
+import com.schemaguard.elastic.PlanQueries.MatchMode;
+import com.schemaguard.queue.PlanDocumentSplitter;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -10,12 +17,22 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
 
 import static com.schemaguard.elastic.PlanIndexConstants.*;
 
@@ -41,6 +58,21 @@ import static com.schemaguard.elastic.PlanIndexConstants.*;
  * Routing contract:
  *   child documents MUST be queried with routing=parentId.
  *   Parent documents use default routing (their own id).
+ *
+ * Both return one page at a time: size, sort and an opaque cursor, read
+ * with search_after — from a point in time after the first page (see
+ * Paging below).
+ *
+ * With elastic.index.join-levels=3 a childField under linkedService,
+ * planserviceCostShares or planCostShares lives on a document of its own
+ * (PlanDocumentSplitter); the has_child clause then goes down to that
+ * relation (e.g. child → service) and matches the field without its prefix.
+ *
+ * With elastic.index.strategy=nested or flattened each plan is one document
+ * holding its linkedPlanServices. childField is then searched as
+ * linkedPlanServices.<childField> — inside a nested query for nested, as a
+ * plain field for flattened — and planCostShares.* on the plan itself.
+ * findChildrenByParent reads the plan's linkedPlanServices from its _source.
  */
 @Service
 public class PlanSearchService {
@@ -49,6 +81,8 @@ public class PlanSearchService {
 
     private final RestTemplate restTemplate = new RestTemplate();
     private final ObjectMapper objectMapper;
+    private final PlanRoutingStrategy routing;
+    private final PlanIndexMapping mapping;
 
     @Value("${elastic.host:localhost}")
     private String host;
@@ -56,8 +90,41 @@ public class PlanSearchService {
     @Value("${elastic.port:9200}")
     private int port;
 
-    public PlanSearchService(ObjectMapper objectMapper) {
+    @Value("${elastic.connect-timeout-ms:2000}")
+    private long connectTimeoutMs;
+
+    @Value("${elastic.read-timeout-ms:30000}")
+    private long readTimeoutMs;
+
+    @Value("${search.page.default-size:20}")
+    private int defaultPageSize;
+
+    @Value("${search.page.max-size:100}")
+    private int maxPageSize;
+
+    @Value("${search.pit.keep-alive:1m}")
+    private String pitKeepAlive;
+
+    @Value("${search.q.fields:planType,objectType,_org,objectId}")
+    private String qFields;
+
+    @Value("${search.inner-hits.default-size:3}")
+    private int defaultInnerHitsSize;
+
+    @Value("${search.inner-hits.max-size:100}")
+    private int maxInnerHitsSize;
+
+    public PlanSearchService(ObjectMapper objectMapper, ElasticsearchRequestMetrics requestMetrics,
+                             PlanRoutingStrategy routing, PlanIndexMapping mapping) {
         this.objectMapper = objectMapper;
+        this.routing = routing;
+        this.mapping = mapping;
+        this.restTemplate.getInterceptors().add(requestMetrics);
+    }
+
+    @PostConstruct
+    void applyTimeouts() {
+        restTemplate.setRequestFactory(ElasticsearchHttp.requestFactory(connectTimeoutMs, readTimeoutMs));
     }
 
     // ─────────────────────────────────────────────────────────────────────────
@@ -66,23 +133,33 @@ public class PlanSearchService {
     // Builds a has_child query so parents are returned when at least one of
     // their children matches the given field/value.
     //
+    // The child condition is matched per match mode (PlanQueries): exact
+    // modes sit in bool.filter, unscored and cached by ES's node query cache;
+    // full text is scored in bool.must.
+    //
     // If childField/childValue are blank, falls back to match_all so the
     // endpoint still works as a plain "list all parents" call.
     //
     // If q is provided, it is combined via bool/must with the has_child clause
-    // so the parent document itself must also match.
+    // so the parent document itself must also match — on search.q.fields
+    // only, not every field.
+    //
+    // One page per call (see Paging below); sorted by _score unless asked.
+    // options can inline each parent's children (see Result options below).
     // ─────────────────────────────────────────────────────────────────────────
     public Map<String, Object> searchParentsByChildField(
-            String childField, String childValue, String q) {
+            String childField, String childValue, String q, MatchMode match, PageRequest page,
+            ResultOptions options) {
 
-        String queryBody = buildParentSearchQuery(childField, childValue, q);
-        log.info("searchParentsByChildField childField={} childValue={} q={}",
-                childField, childValue, q);
+        log.info("searchParentsByChildField childField={} childValue={} match={} q={} size={} sort={} children={}",
+                childField, childValue, match, q, page.size(), page.sort(), options.children());
 
         try {
-            String url = baseUrl() + "/_search";
-            String raw = post(url, queryBody);
-            return parseParentResults(raw, childField, childValue);
+            ObjectNode body = buildParentSearchQuery(childField, childValue, q, match, options);
+            Page result = searchPage(PARENTS_SCOPE, null, body, page, DEFAULT_PARENT_SORT, PARENT_SORT_FIELDS);
+            return parseParentResults(result, childField, childValue, options);
+        } catch (IllegalArgumentException ex) {
+            throw ex;
         } catch (Exception ex) {
             log.warn("searchParentsByChildField failed — {}", ex.getMessage());
             throw new RuntimeException("Elasticsearch query failed: " + ex.getMessage(), ex);
@@ -95,34 +172,26 @@ public class PlanSearchService {
     // Uses a has_parent query filtered to parentId so only children of that
     // specific parent are returned.
     //
-    // routing=parentId is appended to the URL — this is REQUIRED for
-    // parent-child joins. Without it, the query scatters across all shards
-    // and may miss child documents (or return results from wrong parents).
+    // routing=parentId is set on the search (and the point in time) the
+    // pages are read from — this is REQUIRED for parent-child joins. Without
+    // it, the query scatters across all shards and may miss child documents
+    // (or return results from wrong parents).
     // ─────────────────────────────────────────────────────────────────────────
-    public Map<String, Object> findChildrenByParent(String parentId) {
-        log.info("findChildrenByParent parentId={}", parentId);
+    public Map<String, Object> findChildrenByParent(String parentId, PageRequest page) {
+        log.info("findChildrenByParent parentId={} size={} sort={}", parentId, page.size(), page.sort());
+        if (!routing.joined()) return findEmbeddedChildren(parentId, page);
 
         // has_parent query: find children whose parent document has objectId == parentId
-        String queryBody = """
-                {
-                  "query": {
-                    "has_parent": {
-                      "parent_type": "%s",
-                      "query": {
-                        "term": {
-                          "objectId": "%s"
-                        }
-                      }
-                    }
-                  }
-                }
-                """.formatted(TYPE_PLAN, parentId);
+        ObjectNode body = objectMapper.createObjectNode();
+        body.set("query", PlanQueries.hasParent(TYPE_PLAN,
+                PlanQueries.bool().filter(PlanQueries.term("objectId", parentId)).build()));
 
         try {
-            // routing=parentId ensures we only hit the shard where this parent's children live
-            String url = baseUrl() + "/_search?routing=" + parentId;
-            String raw = post(url, queryBody);
-            return parseChildResults(raw, parentId);
+            Page result = searchPage(childrenScope(parentId), parentId, body, page,
+                    DEFAULT_CHILD_SORT, CHILD_SORT_FIELDS);
+            return parseChildResults(result, parentId);
+        } catch (IllegalArgumentException ex) {
+            throw ex;
         } catch (Exception ex) {
             log.warn("findChildrenByParent failed parentId={} — {}", parentId, ex.getMessage());
             throw new RuntimeException("Elasticsearch query failed: " + ex.getMessage(), ex);
@@ -130,63 +199,498 @@ public class PlanSearchService {
     }
 
     // ─────────────────────────────────────────────────────────────────────────
-    // Query builders
+    // findEmbeddedChildren (strategy nested / flattened)
+    //
+    // The services are part of the plan document: one GET of the plan with
+    // _source limited to linkedPlanServices. A missing plan has no children.
+    // The array is small and already in hand, so it is sorted and paged in
+    // memory; the cursor holds the offset of the next page.
     // ─────────────────────────────────────────────────────────────────────────
+    private Map<String, Object> findEmbeddedChildren(String parentId, PageRequest page) {
+        int size = pageSize(page.size());
+        Cursor cursor = page.cursor() != null ? decodeCursor(page.cursor(), childrenScope(parentId), null) : null;
+        String sort = sortOf(page, cursor, DEFAULT_CHILD_SORT);
+        List<SortKey> keys = parseSort(sort, CHILD_SORT_FIELDS);
+        int offset = cursor != null ? cursor.after().path(0).asInt() : 0;
+
+        JsonNode services;
+        try {
+            String url = baseUrl() + "/_doc/" + parentId + "?_source_includes=" + PlanDocumentSplitter.CHILDREN_FIELD;
+            String raw;
+            try {
+                raw = restTemplate.getForObject(url, String.class);
+            } catch (HttpClientErrorException.NotFound ex) {
+                raw = "{}";
+            }
+            services = objectMapper.readTree(raw).path("_source").path(PlanDocumentSplitter.CHILDREN_FIELD);
+        } catch (Exception ex) {
+            log.warn("findChildrenByParent failed parentId={} — {}", parentId, ex.getMessage());
+            throw new RuntimeException("Elasticsearch query failed: " + ex.getMessage(), ex);
+        }
+
+        List<JsonNode> sorted = new ArrayList<>();
+        services.forEach(sorted::add);
+        sorted.sort(sourceOrder(keys));
+        List<JsonNode> hits = new ArrayList<>();
+        for (JsonNode service : sorted.subList(Math.min(offset, sorted.size()), Math.min(offset + size, sorted.size()))) {
+            // shaped like a search hit, so parseChildResults reads both
+            ObjectNode hit = objectMapper.createObjectNode();
+            hit.put("_id", service.path("objectId").asText());
+            hit.set("_source", service);
+            hits.add(hit);
+        }
+        String next = offset + size < sorted.size()
+                ? encodeCursor(new Cursor(childrenScope(parentId), null, null, sort,
+                        objectMapper.createArrayNode().add(offset + size)))
+                : null;
+        return parseChildResults(new Page(hits, page.trackTotalHits() ? (long) sorted.size() : null, next), parentId);
+    }
 
-    private String buildParentSearchQuery(String childField, String childValue, String q) {
-        // Inner child query:
-        // If childField+childValue supplied, use multi_match targeting that specific field
-        // (supports dotted paths like "linkedService.name") plus a wildcard fallback so
-        // partial paths also work. If no filter, match_all so the endpoint lists all parents.
-        String innerChildQuery;
-        if (hasValue(childField) && hasValue(childValue)) {
-            innerChildQuery = """
-                    {
-                      "multi_match": {
-                        "query": "%s",
-                        "fields": ["%s", "%s.*"],
-                        "type": "best_fields",
-                        "lenient": true
-                      }
-                    }
-                    """.formatted(childValue, childField, childField);
+    // ─────────────────────────────────────────────────────────────────────────
+    // Paging — search_after, over a point in time (PIT) from page 2 on
+    //
+    // Every page is sorted, with objectId (the document _id) as the final
+    // tie-breaker, and the next page starts after the last hit's sort values
+    // (search_after). That costs the same on page 1000 as on page 1, unlike
+    // from/size, which has every shard collect from + size hits.
+    //
+    // The first page is a plain search: most searches never ask for a second
+    // one, and a PIT opened for each of them would pile up until keep-alive.
+    // The first cursor request opens the PIT, which then pins the index for
+    // the remaining pages, so documents indexed meanwhile cannot shift or
+    // duplicate hits across them. It lives for search.pit.keep-alive past
+    // each page, and is closed once a short page shows the end.
+    //
+    // The cursor handed to the client is opaque: base64url JSON of what it
+    // pages over, a hash of the query (q, childField, childValue, match,
+    // result options — everything but the paging fields), the PIT id, the
+    // sort, and the last hit's sort values. A cursor used with other query
+    // parameters, or another sort, is rejected.
+    //
+    // track_total_hits is off unless asked for — counting every match is what
+    // lets ES skip no documents.
+    // ─────────────────────────────────────────────────────────────────────────
+
+    /**
+     * One page of a search: size (null = search.page.default-size), sort as
+     * "field[:asc|desc],..." (null = the endpoint's default), the nextCursor
+     * of the previous page (null for the first) and whether to count all hits.
+     */
+    public record PageRequest(Integer size, String sort, String cursor, boolean trackTotalHits) {}
+
+    /** A page of hits as ES returned them; total null when not tracked, nextCursor null at the end. */
+    record Page(List<JsonNode> hits, Long total, String nextCursor) {}
+
+    /**
+     * What a cursor carries: what it pages over (parents, or one parent's
+     * children), the hash of the query it belongs to (null for in-memory
+     * paging), the PIT (null until page 2, and for in-memory paging), the
+     * sort, and where the next page starts.
+     */
+    record Cursor(String scope, String query, String pit, String sort, JsonNode after) {}
+
+    /** A sort field and its direction. */
+    record SortKey(String field, boolean descending) {}
+
+    private static final String PARENTS_SCOPE = "parents";
+    /** Unique per document, so no two hits share their full sort values. */
+    private static final String TIE_BREAKER = "objectId";
+    private static final String DEFAULT_PARENT_SORT = "_score:desc";
+    private static final String DEFAULT_CHILD_SORT = "objectId:asc";
+
+    /** Keyword, date and numeric fields a page can be sorted by. */
+    static final Set<String> PARENT_SORT_FIELDS = Set.of(
+            "_score", "objectId", "objectType", "_org", "planType", "creationDate",
+            "planCostShares.deductible", "planCostShares.copay");
+    static final Set<String> CHILD_SORT_FIELDS = Set.of(
+            "objectId", "objectType", "_org", "linkedService.objectId", "linkedService.name.keyword",
+            "planserviceCostShares.deductible", "planserviceCostShares.copay");
+
+    private Page searchPage(String scope, String routingValue, ObjectNode body, PageRequest page,
+                            String defaultSort, Set<String> sortFields) throws Exception {
+        int size = pageSize(page.size());
+        String query = queryHash(body);     // before the paging fields go in
+        Cursor cursor = page.cursor() != null ? decodeCursor(page.cursor(), scope, query) : null;
+        String sort = sortOf(page, cursor, defaultSort);
+        List<SortKey> keys = parseSort(sort, sortFields);
+        String pit = cursor == null ? null : cursor.pit() != null ? cursor.pit() : openPit(routingValue);
+
+        body.put("size", size);
+        body.put("track_total_hits", page.trackTotalHits());
+        if (pit != null) body.putObject("pit").put("id", pit).put("keep_alive", pitKeepAlive);
+        ArrayNode sortNode = body.putArray("sort");
+        for (SortKey key : keys) {
+            sortNode.addObject().putObject(key.field()).put("order", key.descending() ? "desc" : "asc");
+        }
+        if (keys.stream().noneMatch(key -> key.field().equals(TIE_BREAKER))) {
+            sortNode.addObject().putObject(TIE_BREAKER).put("order", "asc");
+        }
+        if (cursor != null) body.set("search_after", cursor.after());
+
+        String raw;
+        if (pit == null) {
+            raw = post(baseUrl() + "/_search" + (routingValue != null ? "?routing=" + routingValue : ""),
+                    body.toString());
         } else {
-            innerChildQuery = """
-                    { "match_all": {} }
-                    """;
-        }
-
-        // has_child clause — type must match the child relation name in the join mapping
-        String hasChildClause = """
-                {
-                  "has_child": {
-                    "type": "%s",
-                    "query": %s
-                  }
-                }
-                """.formatted(TYPE_CHILD, innerChildQuery);
-
-        // If q param provided, combine has_child + multi_match on parent with bool/must
-        if (hasValue(q)) {
-            return """
-                    {
-                      "query": {
-                        "bool": {
-                          "must": [
-                            %s,
-                            { "multi_match": { "query": "%s", "fields": ["*"], "lenient": true } }
-                          ]
-                        }
-                      }
-                    }
-                    """.formatted(hasChildClause, q);
-        }
-
-        return """
-                {
-                  "query": %s
+            try {
+                // a PIT search names no index — the PIT does
+                raw = post(rootUrl() + "/_search", body.toString());
+            } catch (HttpClientErrorException.NotFound ex) {
+                throw new IllegalArgumentException("cursor expired — search again without it");
+            }
+        }
+        JsonNode root = objectMapper.readTree(raw);
+        List<JsonNode> hits = new ArrayList<>();
+        root.path("hits").path("hits").forEach(hits::add);
+        Long total = page.trackTotalHits() ? root.path("hits").path("total").path("value").asLong() : null;
+
+        // ES may hand back a new PIT id with every page
+        String nextPit = pit != null ? root.path("pit_id").asText(pit) : null;
+        if (hits.size() < size) {
+            if (nextPit != null) closePit(nextPit);
+            return new Page(hits, total, null);
+        }
+        JsonNode after = hits.get(hits.size() - 1).path("sort");
+        return new Page(hits, total, encodeCursor(new Cursor(scope, query, nextPit, sort, after)));
+    }
+
+    private int pageSize(Integer size) {
+        if (size == null) return defaultPageSize;
+        if (size < 1 || size > maxPageSize) {
+            throw new IllegalArgumentException("size must be between 1 and " + maxPageSize);
+        }
+        return size;
+    }
+
+    /** The cursor's sort when paging on, else the requested one or the default. */
+    private static String sortOf(PageRequest page, Cursor cursor, String defaultSort) {
+        if (cursor == null) return hasValue(page.sort()) ? page.sort() : defaultSort;
+        if (hasValue(page.sort()) && !page.sort().equals(cursor.sort())) {
+            throw new IllegalArgumentException("sort cannot change while paging with a cursor");
+        }
+        return cursor.sort();
+    }
+
+    /** "field[:asc|desc],..." → sort keys; asc unless given, except _score. */
+    static List<SortKey> parseSort(String sort, Set<String> allowed) {
+        List<SortKey> keys = new ArrayList<>();
+        for (String part : sort.split(",")) {
+            String[] fieldAndOrder = part.trim().split(":", 2);
+            String field = fieldAndOrder[0].trim();
+            if (!allowed.contains(field)) {
+                throw new IllegalArgumentException("cannot sort by '" + field + "' — sortable: "
+                        + String.join(", ", new TreeSet<>(allowed)));
+            }
+            String order = fieldAndOrder.length > 1 ? fieldAndOrder[1].trim() : field.equals("_score") ? "desc" : "asc";
+            if (!order.equals("asc") && !order.equals("desc")) {
+                throw new IllegalArgumentException("sort order must be asc or desc, was '" + order + "'");
+            }
+            keys.add(new SortKey(field, order.equals("desc")));
+        }
+        return keys;
+    }
+
+    /** Order of _source objects by the sort keys — numbers numerically, missing values last. */
+    private static Comparator<JsonNode> sourceOrder(List<SortKey> keys) {
+        Comparator<JsonNode> order = (a, b) -> 0;
+        for (SortKey key : keys) {
+            String pointer = "/" + key.field().replaceFirst("\\.keyword$", "").replace('.', '/');
+            Comparator<JsonNode> byValue = (a, b) -> compareValues(a.at(pointer), b.at(pointer));
+            order = order.thenComparing(key.descending() ? byValue.reversed() : byValue);
+        }
+        return order;
+    }
+
+    private static int compareValues(JsonNode a, JsonNode b) {
+        if (a.isMissingNode() || b.isMissingNode()) return Boolean.compare(a.isMissingNode(), b.isMissingNode());
+        if (a.isNumber() && b.isNumber()) return Double.compare(a.doubleValue(), b.doubleValue());
+        return a.asText().compareTo(b.asText());
+    }
+
+    String encodeCursor(Cursor cursor) {
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(objectMapper.writeValueAsBytes(cursor));
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("could not encode cursor", ex);
+        }
+    }
+
+    /** The cursor, if it was issued for this scope and query; IllegalArgumentException otherwise. */
+    Cursor decodeCursor(String encoded, String scope, String query) {
+        Cursor cursor;
+        try {
+            cursor = objectMapper.readValue(Base64.getUrlDecoder().decode(encoded), Cursor.class);
+        } catch (Exception ex) {
+            throw new IllegalArgumentException("invalid cursor");
+        }
+        if (!scope.equals(cursor.scope()) || !Objects.equals(query, cursor.query())
+                || cursor.sort() == null || cursor.after() == null) {
+            throw new IllegalArgumentException("cursor does not belong to this search");
+        }
+        return cursor;
+    }
+
+    /** Short SHA-256 of the request body without its paging fields — a cursor's query identity. */
+    static String queryHash(JsonNode body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(body.toString().getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 12));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 not available", ex);
+        }
+    }
+
+    private static String childrenScope(String parentId) {
+        return "children:" + parentId;
+    }
+
+    /** Opens a PIT on the plans index, routed when the pages are (a parent's children). */
+    private String openPit(String routingValue) throws Exception {
+        String url = baseUrl() + "/_pit?keep_alive=" + pitKeepAlive
+                + (routingValue != null ? "&routing=" + routingValue : "");
+        return objectMapper.readTree(post(url, null)).path("id").asText();
+    }
+
+    /** Frees the PIT of a finished search; one left behind expires after keep_alive anyway. */
+    private void closePit(String pit) {
+        try {
+            exchange(rootUrl() + "/_pit", HttpMethod.DELETE, objectMapper.createObjectNode().put("id", pit).toString());
+        } catch (Exception ex) {
+            log.debug("closing point in time failed — {}", ex.getMessage());
+        }
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Result options — children inline (inner_hits) and _source filtering
+    //
+    // Instead of a children request per parent hit, the parent search can
+    // return each parent's children with it: inner_hits on the has_child
+    // (join) or nested clause, fetched per hit in the same request. MATCHING
+    // returns the children that satisfied the child condition, ALL every
+    // child. With join-levels=3 these are the plan's direct children on the
+    // way to the match (planservices, or the plancostshare). Flattened keeps
+    // no per-service identity, so its children come from the plan's own
+    // linkedPlanServices — all of them either way.
+    // ─────────────────────────────────────────────────────────────────────────
+
+    public enum IncludeChildren {
+        NONE, MATCHING, ALL;
+
+        /** none / matching / all, any case; null or blank = NONE. */
+        public static IncludeChildren parse(String value) {
+            if (!hasValue(value)) return NONE;
+            for (IncludeChildren mode : values()) {
+                if (mode.name().equalsIgnoreCase(value.trim())) return mode;
+            }
+            throw new IllegalArgumentException("children must be none, matching or all, was '" + value + "'");
+        }
+    }
+
+    /**
+     * What each parent hit carries: source = parent _source fields
+     * (comma-separated, null = all), children = which children to inline,
+     * childrenSize = at most that many per parent (null =
+     * search.inner-hits.default-size), childrenSource = their _source fields.
+     */
+    public record ResultOptions(String source, IncludeChildren children, Integer childrenSize,
+                                String childrenSource) {
+
+        public static final ResultOptions DEFAULT = new ResultOptions(null, IncludeChildren.NONE, null, null);
+    }
+
+    private static final String INNER_HITS_NAME = "children";
+
+    private int childrenSize(Integer size) {
+        if (size == null) return defaultInnerHitsSize;
+        if (size < 0 || size > maxInnerHitsSize) {
+            throw new IllegalArgumentException("childrenSize must be between 0 and " + maxInnerHitsSize);
+        }
+        return size;
+    }
+
+    /** "a, b.c" → [a, b.c]; empty for null / blank. */
+    private static List<String> fieldList(String fields) {
+        if (!hasValue(fields)) return List.of();
+        List<String> list = new ArrayList<>();
+        for (String field : fields.split(",")) {
+            if (!field.isBlank()) list.add(field.trim());
+        }
+        return list;
+    }
+
+    /**
+     * A copy of source with only the given (dotted) fields; source itself
+     * when there are none. For flattened children, which ES cannot filter.
+     */
+    private JsonNode filterSource(JsonNode source, List<String> fields) {
+        if (fields.isEmpty()) return source;
+        ObjectNode filtered = objectMapper.createObjectNode();
+        for (String field : fields) {
+            String[] path = field.split("\\.");
+            JsonNode value = source;
+            ObjectNode target = filtered;
+            for (int i = 0; i < path.length && !value.isMissingNode(); i++) {
+                value = value.path(path[i]);
+                if (i < path.length - 1 && !value.isMissingNode()) target = target.withObjectProperty(path[i]);
+            }
+            if (!value.isMissingNode()) target.set(path[path.length - 1], value);
+        }
+        return filtered;
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Query builders
+    // ─────────────────────────────────────────────────────────────────────────
+
+    ObjectNode buildParentSearchQuery(String childField, String childValue, String q,
+                                      MatchMode match, ResultOptions options) {
+        boolean filtered = hasValue(childField) && hasValue(childValue);
+        Clause serviceClause = serviceClause(childField, childValue, match);
+
+        // children inline: inner_hits on the has_child / nested clause itself
+        // when it yields the children asked for, else on a match-all one in a
+        // should, which adds inner hits without filtering the parents
+        boolean inline = options.children() != IncludeChildren.NONE
+                && routing.strategy() != PlanRoutingStrategy.Strategy.FLATTENED;
+        boolean separate = inline && (options.children() == IncludeChildren.ALL && filtered
+                || innerHitsTarget(serviceClause.query()) == null);
+        if (inline && !separate) addInnerHits(serviceClause.query(), options);
+
+        // exact service condition → filter (cached, unscored); text → must;
+        // q is scored, over search.q.fields only
+        PlanQueries.Bool query = PlanQueries.bool().add(serviceClause);
+        if (hasValue(q)) query.must(PlanQueries.multiMatch(q, fieldList(qFields)));
+        if (separate) {
+            ObjectNode allChildren = serviceClause(null, null, match).query();
+            addInnerHits(allChildren, options);
+            query.should(allChildren);
+        }
+        ObjectNode body = objectMapper.createObjectNode();
+        body.set("query", query.build());
+
+        List<String> source = fieldList(options.source());
+        if (!source.isEmpty()) {
+            ArrayNode includes = body.putObject("_source").putArray("includes");
+            source.forEach(includes::add);
+            // flattened children are read from the plan's own array
+            if (options.children() != IncludeChildren.NONE && !inline) includes.add(PlanDocumentSplitter.CHILDREN_FIELD);
+        }
+        return body;
+    }
+
+    /**
+     * has_child / nested / plain clause for the child condition, per
+     * strategy; exact when the condition is (or there is none).
+     */
+    private Clause serviceClause(String childField, String childValue, MatchMode match) {
+        return routing.joined()
+                ? buildHasChildClause(childField, childValue, match)
+                : buildEmbeddedClause(childField, childValue, match);
+    }
+
+    /** The condition on field, typed by the index mapping ("*" = every field of the document). */
+    private Clause condition(MatchMode match, String field, String value) {
+        if (field.equals("*")) return PlanQueries.condition(match, field, value, "object", false);
+        return PlanQueries.condition(match, field, value, mapping.fieldType(field), mapping.hasKeyword(field));
+    }
+
+    private Clause buildHasChildClause(String childField, String childValue, MatchMode match) {
+        // Inner child query: the condition on the field (dotted paths like
+        // "linkedService.name" work) in filter context when exact. If no
+        // filter, match_all so the endpoint lists all parents.
+        ChildTarget target = childTarget(childField, routing.multiLevel());
+        if (!hasValue(childField) || !hasValue(childValue)) {
+            return new Clause(PlanQueries.hasChild(TYPE_CHILD, PlanQueries.matchAll()), true);
+        }
+        Clause condition = condition(match, target.field(), childValue);
+
+        // has_child clause — type must match the child relation name in the join mapping;
+        // one has_child per join level down to the relation holding the field
+        ObjectNode hasChildClause = PlanQueries.inContext(condition);
+        for (int i = target.relations().size() - 1; i >= 0; i--) {
+            hasChildClause = PlanQueries.hasChild(target.relations().get(i), hasChildClause);
+        }
+        return new Clause(hasChildClause, condition.exact());
+    }
+
+    /** The has_child or nested object of clause, which inner_hits go on; null for a plain query. */
+    private static ObjectNode innerHitsTarget(ObjectNode clause) {
+        JsonNode target = clause.has("has_child") ? clause.get("has_child") : clause.get("nested");
+        return target instanceof ObjectNode object ? object : null;
+    }
+
+    /**
+     * inner_hits named "children": up to childrenSize per parent, _source
+     * limited to childrenSource (plus objectId — the child's id in the
+     * response). Nested inner hits filter by the full path.
+     */
+    private void addInnerHits(ObjectNode clause, ResultOptions options) {
+        ObjectNode innerHits = innerHitsTarget(clause).putObject("inner_hits");
+        innerHits.put("name", INNER_HITS_NAME);
+        innerHits.put("size", childrenSize(options.childrenSize()));
+        List<String> fields = fieldList(options.childrenSource());
+        if (!fields.isEmpty()) {
+            String prefix = clause.has("nested") ? PlanDocumentSplitter.CHILDREN_FIELD + "." : "";
+            ArrayNode includes = innerHits.putObject("_source").putArray("includes");
+            includes.add(prefix + "objectId");
+            fields.forEach(field -> includes.add(prefix + field));
+        }
+    }
+
+    /**
+     * The service condition on a plan that embeds its services: the same
+     * condition, on linkedPlanServices.<childField> (planCostShares.* as
+     * given — it is the plan's own). nested wraps it in a nested query so it
+     * is evaluated per service; without a filter, plans with at least one
+     * service match — as has_child with match_all does.
+     */
+    private Clause buildEmbeddedClause(String childField, String childValue, MatchMode match) {
+        boolean filtered = hasValue(childField) && hasValue(childValue);
+        String field = embeddedField(filtered ? childField : "objectId");
+        Clause condition = filtered
+                ? condition(match, field, childValue)
+                : new Clause(PlanQueries.exists(field), true);
+        if (routing.strategy() != PlanRoutingStrategy.Strategy.NESTED
+                || !field.startsWith(PlanDocumentSplitter.CHILDREN_FIELD + ".")) {
+            return condition;
+        }
+        return new Clause(PlanQueries.nested(PlanDocumentSplitter.CHILDREN_FIELD, PlanQueries.inContext(condition)),
+                condition.exact());
+    }
+
+    /** Path of a child field in a plan that embeds its services. */
+    static String embeddedField(String childField) {
+        String planField = PlanDocumentSplitter.PLAN_COST_SHARES_FIELD;
+        if (childField.equals(planField) || childField.startsWith(planField + ".")) return childField;
+        return PlanDocumentSplitter.CHILDREN_FIELD + "." + childField;
+    }
+
+    /** Objects that are documents of their own with three join levels → relations down to them. */
+    private static final Map<String, List<String>> SPLIT_OBJECTS = Map.of(
+            "linkedService",         List.of(TYPE_CHILD, TYPE_SERVICE),
+            "planserviceCostShares", List.of(TYPE_CHILD, TYPE_SERVICE_COST_SHARE),
+            "planCostShares",        List.of(TYPE_PLAN_COST_SHARE));
+
+    /** Join relations from the plan down to the document holding a field, and its name there. */
+    record ChildTarget(List<String> relations, String field) {}
+
+    /**
+     * Where childField is searched: on the child (planservice) as given, or —
+     * with three join levels — on the service / cost share document, with the
+     * object's prefix stripped ("linkedService.name" → service, "name").
+     */
+    static ChildTarget childTarget(String childField, boolean multiLevel) {
+        if (multiLevel && childField != null) {
+            for (Map.Entry<String, List<String>> split : SPLIT_OBJECTS.entrySet()) {
+                String prefix = split.getKey();
+                if (childField.equals(prefix)) return new ChildTarget(split.getValue(), "*");
+                if (childField.startsWith(prefix + ".")) {
+                    return new ChildTarget(split.getValue(), childField.substring(prefix.length() + 1));
                 }
-                """.formatted(hasChildClause);
+            }
+        }
+        return new ChildTarget(List.of(TYPE_CHILD), childField);
     }
 
     // ─────────────────────────────────────────────────────────────────────────
@@ -194,57 +698,97 @@ public class PlanSearchService {
     // ─────────────────────────────────────────────────────────────────────────
 
     @SuppressWarnings("unchecked")
-    private Map<String, Object> parseParentResults(
-            String raw, String childField, String childValue) throws Exception {
-
-        JsonNode root = objectMapper.readTree(raw);
-        JsonNode hits = root.path("hits").path("hits");
-
+    private Map<String, Object> parseParentResults(Page page, String childField, String childValue,
+                                                   ResultOptions options) {
+        // linkedPlanServices added to a filtered _source only to read flattened children from
+        boolean dropServices = options.children() != IncludeChildren.NONE
+                && routing.strategy() == PlanRoutingStrategy.Strategy.FLATTENED
+                && hasValue(options.source())
+                && !fieldList(options.source()).contains(PlanDocumentSplitter.CHILDREN_FIELD);
         List<Map<String, Object>> results = new ArrayList<>();
-        if (hits.isArray()) {
-            for (JsonNode hit : hits) {
-                Map<String, Object> entry = new LinkedHashMap<>();
-                entry.put("parentId", hit.path("_id").asText());
-                entry.put("score",    hit.path("_score").asDouble());
-                entry.put("source",   objectMapper.convertValue(
-                        hit.path("_source"), Map.class));
-
-                // matchedBy — tells the caller which filter was applied
-                Map<String, Object> matchedBy = new LinkedHashMap<>();
-                matchedBy.put("childField", hasValue(childField) ? childField : null);
-                matchedBy.put("childValue", hasValue(childValue) ? childValue : null);
-                entry.put("matchedBy", matchedBy);
-
-                results.add(entry);
+        for (JsonNode hit : page.hits()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("parentId", hit.path("_id").asText());
+            entry.put("score",    hit.path("_score").asDouble());
+            Map<String, Object> source = objectMapper.convertValue(hit.path("_source"), Map.class);
+            if (dropServices) source.remove(PlanDocumentSplitter.CHILDREN_FIELD);
+            entry.put("source",   source);
+            if (options.children() != IncludeChildren.NONE) {
+                putChildren(entry, hit, options);
             }
+
+            // matchedBy — tells the caller which filter was applied
+            Map<String, Object> matchedBy = new LinkedHashMap<>();
+            matchedBy.put("childField", hasValue(childField) ? childField : null);
+            matchedBy.put("childValue", hasValue(childValue) ? childValue : null);
+            entry.put("matchedBy", matchedBy);
+
+            results.add(entry);
         }
 
         Map<String, Object> response = new LinkedHashMap<>();
         response.put("count", results.size());
+        if (page.total() != null) response.put("total", page.total());
         response.put("results", results);
+        response.put("nextCursor", page.nextCursor());
         return response;
     }
 
+    /**
+     * "children" (childId + source) and "childCount" of a parent hit: from
+     * its inner hits, or — flattened — from its linkedPlanServices.
+     * childCount is the total behind the children returned, not their
+     * number: the matching children for MATCHING, every child for ALL, and
+     * every linkedPlanServices entry when flattened.
+     */
     @SuppressWarnings("unchecked")
-    private Map<String, Object> parseChildResults(String raw, String parentId) throws Exception {
-        JsonNode root = objectMapper.readTree(raw);
-        JsonNode hits = root.path("hits").path("hits");
+    private void putChildren(Map<String, Object> entry, JsonNode hit, ResultOptions options) {
+        List<JsonNode> sources = new ArrayList<>();
+        long count;
+        JsonNode innerHits = hit.path("inner_hits").path(INNER_HITS_NAME).path("hits");
+        if (routing.strategy() == PlanRoutingStrategy.Strategy.FLATTENED) {
+            JsonNode services = hit.path("_source").path(PlanDocumentSplitter.CHILDREN_FIELD);
+            int limit = childrenSize(options.childrenSize());
+            List<String> fields = fieldList(options.childrenSource());
+            if (!fields.isEmpty()) fields.add(0, "objectId");
+            for (JsonNode service : services) {
+                if (sources.size() == limit) break;
+                sources.add(filterSource(service, fields));
+            }
+            count = services.size();
+        } else {
+            innerHits.path("hits").forEach(child -> sources.add(child.path("_source")));
+            count = innerHits.path("total").path("value").asLong(sources.size());
+        }
 
         List<Map<String, Object>> children = new ArrayList<>();
-        if (hits.isArray()) {
-            for (JsonNode hit : hits) {
-                Map<String, Object> entry = new LinkedHashMap<>();
-                entry.put("childId", hit.path("_id").asText());
-                entry.put("source",  objectMapper.convertValue(
-                        hit.path("_source"), Map.class));
-                children.add(entry);
-            }
+        for (JsonNode source : sources) {
+            Map<String, Object> child = new LinkedHashMap<>();
+            child.put("childId", source.path("objectId").asText());
+            child.put("source",  objectMapper.convertValue(source, Map.class));
+            children.add(child);
+        }
+        entry.put("childCount", count);
+        entry.put("children", children);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> parseChildResults(Page page, String parentId) {
+        List<Map<String, Object>> children = new ArrayList<>();
+        for (JsonNode hit : page.hits()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("childId", hit.path("_id").asText());
+            entry.put("source",  objectMapper.convertValue(
+                    hit.path("_source"), Map.class));
+            children.add(entry);
         }
 
         Map<String, Object> response = new LinkedHashMap<>();
         response.put("parentId", parentId);
         response.put("count",    children.size());
+        if (page.total() != null) response.put("total", page.total());
         response.put("children", children);
+        response.put("nextCursor", page.nextCursor());
         return response;
     }
 
@@ -253,14 +797,22 @@ public class PlanSearchService {
     // ─────────────────────────────────────────────────────────────────────────
 
     private String post(String url, String body) {
+        return exchange(url, HttpMethod.POST, body);
+    }
+
+    private String exchange(String url, HttpMethod method, String body) {
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
         HttpEntity<String> entity = new HttpEntity<>(body, headers);
-        return restTemplate.exchange(url, HttpMethod.POST, entity, String.class).getBody();
+        return restTemplate.exchange(url, method, entity, String.class).getBody();
     }
 
     private String baseUrl() {
-        return "http://" + host + ":" + port + "/" + INDEX_NAME;
+        return rootUrl() + "/" + INDEX_NAME;
+    }
+
+    private String rootUrl() {
+        return "http://" + host + ":" + port;
     }
 
     private static boolean hasValue(String s) {
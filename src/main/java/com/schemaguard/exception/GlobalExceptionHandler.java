@@ -3,6 +3,7 @@ package com.schemaguard.exception;
 import com.schemaguard.model.ApiError;
 import com.schemaguard.validation.SchemaValidationException;
 import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
@@ -65,6 +66,16 @@ public class GlobalExceptionHandler {
         return build(HttpStatus.PRECONDITION_FAILED, ex.getMessage(), req);
     }
 
+    // ── 503 Service Unavailable — write shed by admission control ─────────────
+    @ExceptionHandler(ServiceUnavailableException.class)
+    public ResponseEntity<ApiError> handleServiceUnavailable(
+            ServiceUnavailableException ex, HttpServletRequest req) {
+        ResponseEntity<ApiError> response = build(HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage(), req);
+        return ResponseEntity.status(response.getStatusCode())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(response.getBody());
+    }
+
     // ── 500 Internal Server Error — catch-all (no stack trace in body) ────────
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ApiError> handleGeneric(
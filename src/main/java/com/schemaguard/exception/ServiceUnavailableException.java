@@ -0,0 +1,19 @@
+package com.schemaguard.exception;
+
+/**
+ * Thrown when a request is shed because the service is overloaded.
+ * Mapped to 503 with a Retry-After header of retryAfterSeconds.
+ */
+public class ServiceUnavailableException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public ServiceUnavailableException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,38 @@
+package com.schemaguard.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** One Elasticsearch HTTP call made while indexing or deleting a plan. */
+@Name("schemaguard.ElasticRequest")
+@Label("Elastic Request")
+@Category({"SchemaGuard", "Elasticsearch"})
+@StackTrace(false)
+public class ElasticRequestEvent extends Event {
+
+    @Label("Operation")
+    @Description("indexParent, getEtag, updateParent, childEtags, syncChildren, deleteParent, deleteChildren, deletePlanChildren, deletePlans, refresh, bulk, mget or search")
+    public String operation;
+
+    @Label("Object Id")
+    @Description("Document id; the parent id for deleteChildren")
+    public String objectId;
+
+    @Label("Routing")
+    public String routing;
+
+    @Label("Payload Size")
+    @Description("Request body length in characters")
+    public int payloadSize;
+
+    @Label("ETag")
+    public String etag;
+
+    @Label("Status")
+    @Description("HTTP status, or -1 when no response arrived")
+    public int status;
+}
@@ -0,0 +1,36 @@
+package com.schemaguard.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** One non-empty XREADGROUP batch, from read until the last event is handled. */
+@Name("schemaguard.IndexBatch")
+@Label("Index Batch")
+@Category({"SchemaGuard", "Queue"})
+@StackTrace(false)
+public class IndexBatchEvent extends Event {
+
+    @Label("Size")
+    public int size;
+
+    @Label("Indexed")
+    public int indexed;
+
+    @Label("Failed")
+    @Description("Events left in the PEL after exhausting retries")
+    public int failed;
+
+    @Label("First Stream Id")
+    public String firstStreamId;
+
+    @Label("Last Stream Id")
+    public String lastStreamId;
+
+    @Label("Object Ids")
+    @Description("Comma-separated plan ids in the batch")
+    public String objectIds;
+}
@@ -0,0 +1,30 @@
+package com.schemaguard.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** XADD of one index event onto the Redis stream. */
+@Name("schemaguard.IndexEventPublish")
+@Label("Index Event Publish")
+@Category({"SchemaGuard", "Queue"})
+@StackTrace(false)
+public class IndexEventPublishEvent extends Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Object Id")
+    public String objectId;
+
+    @Label("ETag")
+    public String etag;
+
+    @Label("Stream Id")
+    public String streamId;
+
+    @Label("Success")
+    public boolean success;
+}
@@ -0,0 +1,39 @@
+package com.schemaguard.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** One key-value store call, including the ETag hash for writes. */
+@Name("schemaguard.KvOperation")
+@Label("KV Operation")
+@Category({"SchemaGuard", "Store"})
+@Description("Key-value store call for a plan document")
+@StackTrace(false)
+public class KvOperationEvent extends Event {
+
+    @Label("Store")
+    public String store;
+
+    @Label("Operation")
+    @Description("create, get, update, delete, exists, get_all, get_etags, outbox_create, outbox_replace, "
+            + "outbox_patch, outbox_delete or outbox_replay")
+    public String operation;
+
+    @Label("Object Id")
+    public String objectId;
+
+    @Label("Payload Size")
+    @Description("Document length in characters written or read, 0 when none")
+    public int payloadSize;
+
+    @Label("ETag")
+    public String etag;
+
+    @Label("Success")
+    @Description("False when the call threw")
+    public boolean success;
+}
@@ -0,0 +1,31 @@
+package com.schemaguard.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** One JSON Schema validation of a plan payload (POST, PUT, post-merge PATCH). */
+@Name("schemaguard.PlanValidation")
+@Label("Plan Validation")
+@Category({"SchemaGuard", "API"})
+@Description("Parse + JSON Schema validation of a plan payload")
+@StackTrace(false)
+public class PlanValidationEvent extends Event {
+
+    @Label("Object Id")
+    public String objectId;
+
+    @Label("Payload Size")
+    @Description("Payload length in characters")
+    public int payloadSize;
+
+    @Label("Outcome")
+    @Description("valid, invalid or parse_error")
+    public String outcome;
+
+    @Label("Violations")
+    public int violations;
+}
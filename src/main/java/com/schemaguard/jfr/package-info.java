@@ -0,0 +1,22 @@
+/**
+ * Java Flight Recorder events for SchemaGuard's own operations.
+ *
+ * Each event is a duration event (begin → end) carrying the plan objectId
+ * and, where known, payload size and ETag, so a recording can line up a
+ * GC pause or monitor wait with the plan that was being handled at the time.
+ *
+ *   schemaguard.PlanValidation     SchemaValidator.validatePlanJson
+ *   schemaguard.KvOperation        RedisKeyValueStore, one per store call, and
+ *                                  RedisDocumentOutbox, one per outbox write
+ *   schemaguard.IndexEventPublish  RedisStreamEventPublisher XADD — only the
+ *                                  reconciler's repair events; plan writes
+ *                                  XADD inside the outbox script and show up
+ *                                  as KvOperation outbox_<mode>
+ *   schemaguard.IndexBatch         IndexWorker, one per non-empty XREADGROUP batch
+ *   schemaguard.ElasticRequest     ElasticsearchIndexService HTTP calls
+ *
+ * Fields are only filled in when shouldCommit() is true, so with recording
+ * off (or below the configured threshold) an instrumentation point costs a
+ * begin()/end() pair. Settings live in src/main/resources/jfr/schemaguard.jfc.
+ */
+package com.schemaguard.jfr;
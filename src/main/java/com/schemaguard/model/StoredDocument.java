@@ -6,22 +6,44 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import java.io.Serializable;
 import java.time.Instant;
 
+/**
+ * A plan as stored in the key-value store.
+ *
+ * etag is the SHA-256 of the content — equal content, equal etag, no order.
+ * version is a monotonically increasing number assigned by DocumentOutbox
+ * in the same atomic step as the write; a later write always has a higher
+ * version, also across delete + re-create. It is what Elasticsearch orders
+ * writes by (version_type=external). 0 = unversioned (written before
+ * versions existed, or outside the outbox).
+ */
 public class StoredDocument implements Serializable {
     private final String objectId;
     private final String json;
     private final String etag;
     private final Instant lastModified;
+    private final long version;
+
+    public StoredDocument(String objectId, String json, String etag, Instant lastModified) {
+        this(objectId, json, etag, lastModified, null);
+    }
 
     @JsonCreator
     public StoredDocument(
             @JsonProperty("objectId") String objectId,
             @JsonProperty("json") String json,
             @JsonProperty("etag") String etag,
-            @JsonProperty("lastModified") Instant lastModified) {
+            @JsonProperty("lastModified") Instant lastModified,
+            @JsonProperty("version") Long version) {
         this.objectId = objectId;
         this.json = json;
         this.etag = etag;
         this.lastModified = lastModified;
+        this.version = version != null ? version : 0;
+    }
+
+    /** This document with the version the outbox assigned to it. */
+    public StoredDocument withVersion(long version) {
+        return new StoredDocument(objectId, json, etag, lastModified, version);
     }
 
     public String getObjectId() {
@@ -39,4 +61,8 @@ public class StoredDocument implements Serializable {
     public Instant getLastModified() {
         return lastModified;
     }
+
+    public long getVersion() {
+        return version;
+    }
 }
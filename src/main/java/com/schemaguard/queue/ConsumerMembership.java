@@ -0,0 +1,249 @@
+package com.schemaguard.queue;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamInfo;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Consumer identity and liveness for IndexWorker replicas.
+ *
+ * Identity: index.worker.consumer if set, otherwise "<hostname>-<pid>-<8 hex>"
+ * so every replica (and every restart) reads as its own consumer and Redis
+ * spreads new entries across them.
+ *
+ * Heartbeat: every index.worker.heartbeat-interval-ms the instance refreshes
+ * <index.worker.heartbeat-prefix><consumer> with a TTL of
+ * index.worker.heartbeat-ttl-ms. A crashed replica's key simply expires.
+ * The heartbeat runs on a thread of its own ("consumer-heartbeat"), not on
+ * Spring's scheduler: that one thread also runs IndexWorker.poll, and a slow
+ * batch there must not let the key expire while this replica is alive and
+ * still working through its pending entries.
+ *
+ * Dead consumer: a group member other than this one whose heartbeat key is
+ * gone and whose XINFO CONSUMERS idle time is at least
+ * index.worker.claim-min-idle-ms. IndexWorker takes its pending entries over
+ * with XCLAIM (claim()) and, once its PEL is empty, removes it from the group
+ * with XGROUP DELCONSUMER (remove()) — DELCONSUMER drops any entries still
+ * pending for the consumer, so it is never called before that.
+ *
+ * XCLAIM only moves entries that are still idle past min-idle, so two
+ * survivors racing for the same dead consumer never both get an entry.
+ *
+ * All of this spans both priority lanes (index.events.stream and
+ * index.events.low-stream): a consumer is a member of the group on each.
+ *
+ * On graceful shutdown the heartbeat is deleted, and the consumer is removed
+ * from the group right away if it has nothing pending.
+ *
+ * Metric: schemaguard.worker.claimed Counter — entries taken over from dead consumers.
+ *
+ * Active only on the 'redis' profile.
+ */
+@Component
+@Profile("redis")
+public class ConsumerMembership {
+
+    private static final Logger log = LoggerFactory.getLogger(ConsumerMembership.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final Counter claimed;
+    private final String consumerName;
+    private final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "consumer-heartbeat");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @Value("${index.events.stream:schemaguard:index-events}")
+    private String streamName;
+
+    @Value("${index.events.low-stream:schemaguard:index-events:low}")
+    private String lowStreamName;
+
+    @Value("${index.worker.group:schemaguard-indexers}")
+    private String groupName;
+
+    @Value("${index.worker.heartbeat-prefix:schemaguard:index-workers:}")
+    private String heartbeatPrefix;
+
+    @Value("${index.worker.heartbeat-interval-ms:5000}")
+    private long heartbeatIntervalMs;
+
+    @Value("${index.worker.heartbeat-ttl-ms:30000}")
+    private long heartbeatTtlMs;
+
+    @Value("${index.worker.claim-min-idle-ms:60000}")
+    private long claimMinIdleMs;
+
+    public ConsumerMembership(StringRedisTemplate redisTemplate,
+                              MeterRegistry registry,
+                              @Value("${index.worker.consumer:}") String configuredName) {
+        this.redisTemplate = redisTemplate;
+        this.consumerName = configuredName == null || configuredName.isBlank()
+                ? generatedName()
+                : configuredName.trim();
+        this.claimed = Counter.builder("schemaguard.worker.claimed")
+                .description("Pending index events taken over from dead consumers")
+                .register(registry);
+    }
+
+    public String consumerName() {
+        return consumerName;
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Heartbeat
+    // ─────────────────────────────────────────────────────────────────────────
+
+    @PostConstruct
+    public void start() {
+        heartbeats.scheduleWithFixedDelay(this::heartbeat, 0, heartbeatIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void heartbeat() {
+        try {
+            redisTemplate.opsForValue().set(heartbeatPrefix + consumerName,
+                    Long.toString(System.currentTimeMillis()), Duration.ofMillis(heartbeatTtlMs));
+        } catch (Exception ex) {
+            log.warn("could not refresh heartbeat for consumer {} — {}", consumerName, ex.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void leave() {
+        heartbeats.shutdownNow();
+        try {
+            redisTemplate.delete(heartbeatPrefix + consumerName);
+            if (pendingCount(consumerName) == 0) {
+                remove(consumerName);
+            } else {
+                log.info("consumer {} leaves with pending entries — another instance will claim them", consumerName);
+            }
+        } catch (Exception ex) {
+            log.debug("could not deregister consumer {} — {}", consumerName, ex.getMessage());
+        }
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Dead consumers
+    // ─────────────────────────────────────────────────────────────────────────
+
+    /** Other group members without a heartbeat that have been idle past claim-min-idle-ms, on either lane. */
+    public List<String> deadConsumers() {
+        Set<String> dead = new LinkedHashSet<>();
+        for (String stream : streams()) {
+            StreamInfo.XInfoConsumers consumers = redisTemplate.opsForStream().consumers(stream, groupName);
+            if (consumers == null) continue;
+            for (StreamInfo.XInfoConsumer consumer : consumers) {
+                String name = consumer.consumerName();
+                if (name.equals(consumerName) || dead.contains(name)
+                        || consumer.idleTimeMs() < claimMinIdleMs) continue;
+                if (!Boolean.TRUE.equals(redisTemplate.hasKey(heartbeatPrefix + name))) {
+                    dead.add(name);
+                }
+            }
+        }
+        return new ArrayList<>(dead);
+    }
+
+    /**
+     * XCLAIMs up to max of the dead consumer's pending entries for this one,
+     * HIGH lane first. Returned records are in this consumer's PEL and must be
+     * processed + ACKed (on record.getStream()).
+     */
+    public List<MapRecord<String, Object, Object>> claim(String deadConsumer, int max) {
+        List<MapRecord<String, Object, Object>> records = new ArrayList<>();
+        for (String stream : streams()) {
+            if (records.size() >= max) break;
+            records.addAll(claim(stream, deadConsumer, max - records.size()));
+        }
+        if (!records.isEmpty()) {
+            claimed.increment(records.size());
+            log.info("consumer {} claimed {} pending entries from dead consumer {}",
+                    consumerName, records.size(), deadConsumer);
+        }
+        return records;
+    }
+
+    private List<MapRecord<String, Object, Object>> claim(String stream, String deadConsumer, int max) {
+        PendingMessages pending = redisTemplate.opsForStream()
+                .pending(stream, Consumer.from(groupName, deadConsumer), Range.unbounded(), max);
+        if (pending == null || pending.isEmpty()) return List.of();
+
+        RecordId[] ids = new RecordId[pending.size()];
+        int i = 0;
+        for (PendingMessage message : pending) {
+            ids[i++] = message.getId();
+        }
+        List<MapRecord<String, Object, Object>> records = redisTemplate.opsForStream()
+                .claim(stream, groupName, consumerName, Duration.ofMillis(claimMinIdleMs), ids);
+        return records != null ? records : List.of();
+    }
+
+    /** Pending entries of consumer across both lanes (at most one counted per lane — callers only test for zero). */
+    public long pendingCount(String consumer) {
+        long count = 0;
+        for (String stream : streams()) {
+            PendingMessages pending = redisTemplate.opsForStream()
+                    .pending(stream, Consumer.from(groupName, consumer), Range.unbounded(), 1);
+            count += pending == null ? 0 : pending.size();
+        }
+        return count;
+    }
+
+    /** XGROUP DELCONSUMER on both lanes — only call once the consumer's PEL is empty. */
+    public void remove(String consumer) {
+        for (String stream : streams()) {
+            redisTemplate.opsForStream().deleteConsumer(stream, Consumer.from(groupName, consumer));
+        }
+        log.info("removed consumer {} from group {}", consumer, groupName);
+    }
+
+    private List<String> streams() {
+        return List.of(streamName, lowStreamName);
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // helpers
+    // ─────────────────────────────────────────────────────────────────────────
+
+    static String generatedName() {
+        return hostname() + "-" + ProcessHandle.current().pid() + "-"
+                + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    private static String hostname() {
+        String env = System.getenv("HOSTNAME");
+        if (env != null && !env.isBlank()) return env;
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception ex) {
+            return "indexer";
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package com.schemaguard.queue;
+
+import com.schemaguard.exception.ServiceUnavailableException;
+import com.schemaguard.timing.Phase;
+import com.schemaguard.timing.RequestTimings;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-process IndexEventPublisher + indexer for profiles without Redis.
+ *
+ * Events go into a bounded lock-free RingBuffer (index.bus.capacity); one
+ * consumer thread drains up to index.bus.batch-size at a time, coalesces
+ * them to the last event per plan and applies them through the same
+ * IndexEventProcessor the Redis IndexWorker uses (KV re-read, retries).
+ * Single-node and edge deployments on InMemoryKeyValueStore thereby get
+ * search indexing without a Redis Stream in between.
+ *
+ * Wait strategy of the idle consumer (index.bus.wait-strategy):
+ *   spin   — Thread.onSpinWait() loop; lowest latency, keeps one core busy
+ *   yield  — spins briefly, then Thread.yield()
+ *   park   — spins, yields, then parks; publishers unpark it, and
+ *            index.bus.park-max-micros bounds a missed wake-up (default)
+ *
+ * A full buffer makes publish() wait up to index.bus.offer-timeout-ms and
+ * then throw ServiceUnavailableException (503 + Retry-After).
+ * InMemoryDocumentOutbox publishes inside its per-key compute(), which holds
+ * the map's bin lock, so it splits that in two: awaitCapacity() does the
+ * waiting before the lock is taken, and publishNow() inside it only tries
+ * once — a buffer that filled up in between fails the write with the same
+ * 503, rolled back instead of committed without its event.
+ *
+ * Unlike a stream there is no PEL: an event whose retries are exhausted is
+ * logged and dropped, and events still buffered at shutdown are lost — as is
+ * the in-memory store they describe.
+ *
+ * Queue depth, in-flight batch and the oldest in-flight event are reported
+ * to IndexLagTracker like the stream stats, so the lag endpoint and
+ * WriteAdmission work unchanged. Keep admission.max-backlog below the
+ * capacity so writes are shed before the buffer fills.
+ *
+ * Active on every profile except 'redis', unless index.bus.enabled=false
+ * (NoOpIndexEventPublisher then drops events, as the test profile does).
+ */
+@Component
+@Profile("!redis")
+@ConditionalOnProperty(name = "index.bus.enabled", havingValue = "true", matchIfMissing = true)
+public class InProcessIndexEventBus implements IndexEventPublisher {
+
+    private static final Logger log = LoggerFactory.getLogger(InProcessIndexEventBus.class);
+
+    /** Producer-side pause between offer attempts while the buffer is full. */
+    private static final long PRODUCER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    public enum WaitStrategy {
+        SPIN, YIELD, PARK;
+
+        private static final int SPIN_TRIES = 100;
+        private static final int YIELD_TRIES = 100;
+
+        /** One idle step; returns the next idle count. */
+        int idle(int count, long parkNanos) {
+            switch (this) {
+                case SPIN -> Thread.onSpinWait();
+                case YIELD -> {
+                    if (count < SPIN_TRIES) Thread.onSpinWait(); else Thread.yield();
+                }
+                case PARK -> {
+                    if (count < SPIN_TRIES) Thread.onSpinWait();
+                    else if (count < SPIN_TRIES + YIELD_TRIES) Thread.yield();
+                    else LockSupport.parkNanos(parkNanos);
+                }
+            }
+            return count == Integer.MAX_VALUE ? count : count + 1;
+        }
+    }
+
+    private final IndexEventProcessor processor;
+    private final IndexLagTracker lagTracker;
+    private final RingBuffer<IndexEvent> buffer;
+    private final WaitStrategy waitStrategy;
+    private final Map<String, Timer> successTimers = new HashMap<>();
+    private final Map<String, Timer> failureTimers = new HashMap<>();
+
+    private final AtomicLong inFlight = new AtomicLong();
+    /** Enqueue millis of the oldest event in the batch being processed, 0 when idle. */
+    private final AtomicLong oldestInFlightMillis = new AtomicLong();
+
+    private volatile boolean running;
+    private volatile boolean consumerParked;
+    private Thread consumer;
+
+    @Value("${index.bus.batch-size:100}")
+    private int batchSize;
+
+    @Value("${index.bus.offer-timeout-ms:1000}")
+    private long offerTimeoutMs;
+
+    @Value("${index.bus.park-max-micros:100000}")
+    private long parkMaxMicros;
+
+    public InProcessIndexEventBus(IndexEventProcessor processor,
+                                  IndexLagTracker lagTracker,
+                                  MeterRegistry registry,
+                                  @Value("${index.bus.capacity:65536}") int capacity,
+                                  @Value("${index.bus.wait-strategy:park}") String waitStrategy) {
+        this.processor = processor;
+        this.lagTracker = lagTracker;
+        this.buffer = new RingBuffer<>(capacity);
+        this.waitStrategy = WaitStrategy.valueOf(waitStrategy.trim().toUpperCase(Locale.ROOT));
+        for (IndexEventOperation op : IndexEventOperation.values()) {
+            successTimers.put(op.name(), publishTimer(registry, op, "success"));
+            failureTimers.put(op.name(), publishTimer(registry, op, "failure"));
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        consumer = new Thread(this::consume, "index-bus-consumer");
+        consumer.setDaemon(true);
+        consumer.start();
+        log.info("in-process index bus started (capacity={}, batch={}, wait={})",
+                buffer.capacity(), batchSize, waitStrategy);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        int left = buffer.size();
+        if (left > 0) {
+            log.warn("in-process index bus stopped with {} events not indexed", left);
+        }
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Publish
+    // ─────────────────────────────────────────────────────────────────────────
+
+    @Override
+    public void publish(IndexEvent event) {
+        publish(event, true);
+    }
+
+    @Override
+    public void publishNow(IndexEvent event) {
+        publish(event, false);
+    }
+
+    @Override
+    public void awaitCapacity() {
+        if (buffer.size() < buffer.capacity()) return;
+        long phase = RequestTimings.start();
+        try {
+            LockSupport.unpark(consumer);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(offerTimeoutMs);
+            int idle = 0;
+            while (buffer.size() >= buffer.capacity()) {
+                if (System.nanoTime() >= deadline) {
+                    log.warn("index bus full ({} events) — rejecting write", buffer.capacity());
+                    throw full();
+                }
+                idle = waitStrategy.idle(idle, PRODUCER_PARK_NANOS);
+            }
+        } finally {
+            RequestTimings.stop(Phase.PUBLISH, phase);
+        }
+    }
+
+    private void publish(IndexEvent event, boolean wait) {
+        long phase = RequestTimings.start();
+        long start = System.nanoTime();
+        try {
+            if (!(wait ? offer(event) : buffer.offer(event))) {
+                record(failureTimers, event, start);
+                log.warn("index bus full ({} events) — rejecting {} for id={}",
+                        buffer.capacity(), event.operation(), event.documentId());
+                throw full();
+            }
+            record(successTimers, event, start);
+            if (consumerParked) {
+                LockSupport.unpark(consumer);
+            }
+        } finally {
+            RequestTimings.stop(Phase.PUBLISH, phase);
+        }
+    }
+
+    private static ServiceUnavailableException full() {
+        return new ServiceUnavailableException("Index event buffer is full; retry later", 1);
+    }
+
+    private boolean offer(IndexEvent event) {
+        if (buffer.offer(event)) return true;
+        LockSupport.unpark(consumer);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(offerTimeoutMs);
+        int idle = 0;
+        while (!buffer.offer(event)) {
+            if (System.nanoTime() >= deadline) return false;
+            idle = waitStrategy.idle(idle, PRODUCER_PARK_NANOS);
+        }
+        return true;
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Consume
+    // ─────────────────────────────────────────────────────────────────────────
+
+    private void consume() {
+        List<IndexEvent> batch = new ArrayList<>(batchSize);
+        long parkNanos = TimeUnit.MICROSECONDS.toNanos(parkMaxMicros);
+        int idle = 0;
+        while (running) {
+            batch.clear();
+            if (buffer.drainTo(batch, batchSize) == 0) {
+                consumerParked = true;
+                if (buffer.size() == 0) {
+                    idle = waitStrategy.idle(idle, parkNanos);
+                }
+                consumerParked = false;
+                continue;
+            }
+            idle = 0;
+            try {
+                handle(batch);
+            } catch (Exception ex) {
+                log.warn("in-process index bus batch error — {}", ex.getMessage());
+            }
+        }
+    }
+
+    private void handle(List<IndexEvent> batch) {
+        processor.recordBatch(batch.size());
+        inFlight.set(batch.size());
+
+        long[] enqueuedAt = new long[batch.size()];
+        long oldest = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            IndexEvent event = batch.get(i);
+            enqueuedAt[i] = lagTracker.onDequeued(event.timestamp(), priority(event));
+            if (enqueuedAt[i] > 0 && (oldest == 0 || enqueuedAt[i] < oldest)) oldest = enqueuedAt[i];
+        }
+        oldestInFlightMillis.set(oldest);
+
+        List<IndexEventProcessor.Delivery> deliveries = new ArrayList<>();
+        for (IndexEvent event : IndexEventProcessor.coalesce(batch, IndexEvent::documentId, IndexEvent::operation)) {
+            deliveries.add(new IndexEventProcessor.Delivery(event, event.eventId(), () -> { }));
+        }
+        boolean[] indexed = processor.processBatch(deliveries);
+        Set<String> failed = new HashSet<>();
+        for (int i = 0; i < indexed.length; i++) {
+            IndexEvent event = deliveries.get(i).event();
+            if (!indexed[i]) {
+                failed.add(event.documentId());
+                log.error("dropping {} event for id={} — no PEL on the in-process bus",
+                        event.operation(), event.documentId());
+            }
+        }
+        // events merged into a survivor count as indexed along with it
+        for (int i = 0; i < batch.size(); i++) {
+            IndexEvent event = batch.get(i);
+            if (!failed.contains(event.documentId())) {
+                lagTracker.onIndexed(enqueuedAt[i], priority(event));
+            }
+        }
+        inFlight.set(0);
+        oldestInFlightMillis.set(0);
+    }
+
+    /**
+     * Same queue stats the Redis worker reports: buffered events are the
+     * "lag", the batch being processed is "pending".
+     */
+    @Scheduled(fixedDelayString = "${index.worker.stats-interval-ms:5000}")
+    public void refreshQueueStats() {
+        long queued = buffer.size();
+        long pending = inFlight.get();
+        long oldest = oldestInFlightMillis.get();
+        lagTracker.updateQueueStats(queued + pending, queued, pending, oldest > 0 ? oldest + "-0" : null);
+    }
+
+    private static IndexEventPriority priority(IndexEvent event) {
+        return IndexEventPriority.LOW.name().equals(event.priority())
+                ? IndexEventPriority.LOW : IndexEventPriority.HIGH;
+    }
+
+    private static void record(Map<String, Timer> timers, IndexEvent event, long startNanos) {
+        Timer timer = timers.get(event.operation());
+        if (timer != null) {
+            timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static Timer publishTimer(MeterRegistry registry, IndexEventOperation op, String outcome) {
+        return Timer.builder("schemaguard.publish")
+                .description("Index event publish into the in-process ring buffer")
+                .tag("operation", op.name())
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+}
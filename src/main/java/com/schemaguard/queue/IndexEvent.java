@@ -1,6 +1,8 @@
 package com.schemaguard.queue;
 
 import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -15,7 +17,18 @@ import java.util.UUID;
  *   documentId   — objectId of the plan resource
  *   resourceType — always "plan" for now; extensible for other resource types later
  *   etag         — current SHA-256 ETag at the time of the event
+ *   version      — StoredDocument version the write was given ("" if unversioned)
  *   timestamp    — ISO-8601 instant at publish time
+ *   priority     — HIGH / LOW, the lane the event is published to
+ *   baseEtag     — PATCH only: etag of the version the patch was applied to
+ *   patch        — PATCH only: the RFC 7396 merge patch, "" when not carried
+ *   refresh      — "wait_for" when the client asked for read-your-writes
+ *                  (see IndexRefreshPolicy), "" otherwise
+ *
+ * baseEtag + patch let the worker apply a small edit as a partial _update
+ * instead of re-sending the whole plan. They are left out of the stream
+ * entry when empty, and an entry without them is simply re-indexed in full.
+ * version and refresh are left out when empty as well.
  */
 public record IndexEvent(
         String eventId,
@@ -23,34 +36,110 @@ public record IndexEvent(
         String documentId,
         String resourceType,
         String etag,
-        String timestamp
+        String version,
+        String timestamp,
+        String priority,
+        String baseEtag,
+        String patch,
+        String refresh
 ) {
+    /** refresh value of an event whose client asked for read-your-writes. */
+    public static final String REFRESH_WAIT_FOR = "wait_for";
+
     /**
-     * Factory method — generates eventId and timestamp automatically.
+     * Factory method for an interactive (HIGH) event — generates eventId and timestamp automatically.
      */
     public static IndexEvent of(IndexEventOperation op, String documentId, String etag) {
+        return of(op, documentId, etag, IndexEventPriority.HIGH);
+    }
+
+    /**
+     * Factory method — generates eventId and timestamp automatically.
+     */
+    public static IndexEvent of(IndexEventOperation op, String documentId, String etag,
+                                IndexEventPriority priority) {
         return new IndexEvent(
                 UUID.randomUUID().toString(),
                 op.name(),
                 documentId,
                 "plan",
                 etag != null ? etag : "",
-                Instant.now().toString()
+                "",
+                Instant.now().toString(),
+                priority.name(),
+                "",
+                "",
+                ""
         );
     }
 
+    /** This event carrying the merge patch that turned baseEtag into etag. */
+    public IndexEvent withPatch(String baseEtag, String patch) {
+        return new IndexEvent(eventId, operation, documentId, resourceType, etag, version, timestamp, priority,
+                baseEtag != null ? baseEtag : "", patch != null ? patch : "", refresh);
+    }
+
+    /** This event carrying the version of the write it describes. */
+    public IndexEvent withVersion(long version) {
+        return new IndexEvent(eventId, operation, documentId, resourceType, etag,
+                version > 0 ? Long.toString(version) : "", timestamp, priority, baseEtag, patch, refresh);
+    }
+
+    /** This event asking the indexer for refresh=wait_for (read-your-writes), or not. */
+    public IndexEvent withRefresh(boolean waitFor) {
+        return new IndexEvent(eventId, operation, documentId, resourceType, etag, version, timestamp, priority,
+                baseEtag, patch, waitFor ? REFRESH_WAIT_FOR : "");
+    }
+
+    public boolean refreshRequested() {
+        return REFRESH_WAIT_FOR.equals(refresh);
+    }
+
+    /** version as a number, 0 when unversioned. */
+    public long versionNumber() {
+        return version.isEmpty() ? 0 : Long.parseLong(version);
+    }
+
+    /** Rebuilds an event from its stream entry; fields missing from older entries read as "". */
+    public static IndexEvent fromStreamFields(Map<?, ?> fields) {
+        return new IndexEvent(field(fields, "eventId"), field(fields, "operation"), field(fields, "documentId"),
+                field(fields, "resourceType"), field(fields, "etag"), field(fields, "version"),
+                field(fields, "timestamp"), field(fields, "priority"),
+                field(fields, "baseEtag"), field(fields, "patch"), field(fields, "refresh"));
+    }
+
+    private static String field(Map<?, ?> fields, String name) {
+        Object value = fields.get(name);
+        return value != null ? value.toString() : "";
+    }
+
+    public boolean hasPatch() {
+        return !patch.isEmpty() && !baseEtag.isEmpty();
+    }
+
     /**
      * Converts the event to a flat Map<String, String> for Redis XADD.
      * Redis Streams store each entry as a set of field–value pairs.
      */
-    public java.util.Map<String, String> toStreamFields() {
-        return java.util.Map.of(
-                "eventId",      eventId,
-                "operation",    operation,
-                "documentId",   documentId,
-                "resourceType", resourceType,
-                "etag",         etag,
-                "timestamp",    timestamp
-        );
+    public Map<String, String> toStreamFields() {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("eventId",      eventId);
+        fields.put("operation",    operation);
+        fields.put("documentId",   documentId);
+        fields.put("resourceType", resourceType);
+        fields.put("etag",         etag);
+        if (!version.isEmpty()) {
+            fields.put("version", version);
+        }
+        fields.put("timestamp",    timestamp);
+        fields.put("priority",     priority);
+        if (hasPatch()) {
+            fields.put("baseEtag", baseEtag);
+            fields.put("patch",    patch);
+        }
+        if (!refresh.isEmpty()) {
+            fields.put("refresh", refresh);
+        }
+        return fields;
     }
 }
@@ -0,0 +1,15 @@
+package com.schemaguard.queue;
+
+/**
+ * Lane an index event travels in.
+ *
+ * HIGH — interactive API writes; index.events.stream
+ * LOW  — bulk loads, backfills and replays; index.events.low-stream
+ *
+ * IndexWorker reads both lanes with weighted fair scheduling, so a backfill
+ * of any size delays interactive edits by at most one low-lane share of a batch.
+ */
+public enum IndexEventPriority {
+    HIGH,
+    LOW
+}
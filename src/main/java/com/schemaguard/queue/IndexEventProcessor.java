@@ -0,0 +1,540 @@
+package com.schemaguard.queue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.schemaguard.elastic.IndexRefreshPolicy;
+import com.schemaguard.elastic.IndexService;
+import com.schemaguard.model.StoredDocument;
+import com.schemaguard.store.KeyValueStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Applies index events to Elasticsearch — the processing shared by the
+ * Redis IndexWorker and the in-process InProcessIndexEventBus.
+ *
+ * Every operation re-reads the authoritative document from the KV store, so
+ * handling an event is idempotent and only the latest state of a plan is
+ * ever indexed. That is also what makes coalesce() safe: of several events
+ * for one id, the last one alone produces the same index state.
+ *
+ * process() retries MAX_RETRIES times with backoff; the caller's ack runs
+ * inside the retry loop, so a failed XACK is retried like a failed ES call.
+ * What happens after retries are exhausted is up to the caller (the Redis
+ * worker leaves the entry in the PEL).
+ *
+ * processBatch() takes a whole batch: DELETEs of plans with no other event
+ * in the batch are applied together — one delete_by_query for all their
+ * children and one _bulk for the parents — and everything else goes through
+ * process() in order. Writes are refreshed per IndexRefreshPolicy.
+ *
+ * Metrics:
+ *   schemaguard.worker.batch.size   DistributionSummary — events per non-empty batch
+ *   schemaguard.worker.event        Timer{operation, outcome=indexed|failed}, incl. retry backoff
+ *   schemaguard.worker.retries      Counter{operation} — failed attempts that were retried
+ *   schemaguard.worker.children     Counter{action=indexed|deleted|unchanged} — child diff results
+ *   schemaguard.worker.patch        Counter{mode=partial|noop|full} — how PATCH events were applied
+ *   schemaguard.worker.deletes      Counter{mode=batched|single} — how DELETE events were applied
+ *
+ * Profile-agnostic: every profile has a KV store and an IndexService.
+ */
+@Component
+public class IndexEventProcessor {
+
+    private static final Logger log = LoggerFactory.getLogger(IndexEventProcessor.class);
+
+    private static final int MAX_RETRIES = 3;
+    private static final long[] BACKOFF_MS = {250, 500, 1000};
+
+    private final IndexService indexService;
+    private final KeyValueStore kvStore;
+    private final ObjectMapper objectMapper;
+    private final PlanDocumentSplitter splitter;
+    private final IndexRefreshPolicy refreshPolicy;
+
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary batchSizes;
+    private final Map<String, Timer> eventTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> retryCounters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> childCounters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> patchCounters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> deleteCounters = new ConcurrentHashMap<>();
+
+    public IndexEventProcessor(IndexService indexService,
+                               KeyValueStore kvStore,
+                               ObjectMapper objectMapper,
+                               PlanDocumentSplitter splitter,
+                               IndexRefreshPolicy refreshPolicy,
+                               MeterRegistry meterRegistry) {
+        this.indexService = indexService;
+        this.kvStore = kvStore;
+        this.objectMapper = objectMapper;
+        this.splitter = splitter;
+        this.refreshPolicy = refreshPolicy;
+        this.meterRegistry = meterRegistry;
+
+        this.batchSizes = DistributionSummary.builder("schemaguard.worker.batch.size")
+                .description("Index events handled per non-empty batch")
+                .register(meterRegistry);
+    }
+
+    public void recordBatch(int size) {
+        batchSizes.record(size);
+    }
+
+    /**
+     * Applies one event, retrying with backoff; ack runs after a successful
+     * apply, inside the same attempt. Returns true when the event was
+     * applied and acknowledged.
+     */
+    public boolean process(IndexEvent event, String messageId, Runnable ack) {
+        String operation = event.operation();
+        String documentId = event.documentId();
+        log.info("processing event op={} id={} etag={} version={} msgId={}",
+                operation, documentId, event.etag(), event.version(), messageId);
+
+        long start = System.nanoTime();
+        Exception lastEx = null;
+        for (int attempt = 0; attempt < MAX_RETRIES; attempt++) {
+            try {
+                apply(event);
+                refreshPolicy.onWritten();
+                ack.run();
+                eventTimer(operation, "indexed").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                return true;
+            } catch (Exception ex) {
+                lastEx = ex;
+                log.warn("attempt {}/{} failed for event op={} id={} — {}",
+                        attempt + 1, MAX_RETRIES, operation, documentId, ex.getMessage());
+                if (attempt < MAX_RETRIES - 1) {
+                    retryCounter(operation).increment();
+                    sleep(BACKOFF_MS[attempt]);
+                }
+            }
+        }
+        eventTimer(operation, "failed").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        log.error("retries_exhausted for event op={} id={} msgId={} — cause: {}",
+                operation, documentId, messageId,
+                lastEx != null ? lastEx.getMessage() : "unknown");
+        return false;
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Batches
+    // ─────────────────────────────────────────────────────────────────────────
+
+    /** One event of a batch, with the id and ack of the message it came in. */
+    public record Delivery(IndexEvent event, String messageId, Runnable ack) {}
+
+    /**
+     * Applies a batch; returns per delivery whether it was applied and
+     * acknowledged. DELETEs that batchableDeletes() picks are applied with
+     * one deletePlans() call — plans re-created in KV since are skipped, as
+     * in handleDelete() — and acked together. If that call still fails after
+     * retries they fall back to process() one by one. All other events are
+     * handed to process() in batch order.
+     */
+    public boolean[] processBatch(List<Delivery> deliveries) {
+        boolean[] indexed = new boolean[deliveries.size()];
+        List<IndexEvent> events = new ArrayList<>(deliveries.size());
+        for (Delivery delivery : deliveries) events.add(delivery.event());
+
+        Set<Integer> batched = new HashSet<>(batchableDeletes(events));
+        if (batched.size() > 1) {
+            List<Integer> deletes = new ArrayList<>(batched);
+            deletes.sort(null);
+            if (!deleteTogether(deliveries, deletes, indexed)) {
+                batched.clear();    // fall back: process() them below
+            }
+        } else {
+            batched.clear();
+        }
+        for (int i = 0; i < deliveries.size(); i++) {
+            if (batched.contains(i)) continue;
+            Delivery delivery = deliveries.get(i);
+            indexed[i] = process(delivery.event(), delivery.messageId(), delivery.ack());
+        }
+        return indexed;
+    }
+
+    /**
+     * Positions of the DELETE events whose plan has no other event in the
+     * batch — their order relative to the rest of the batch cannot matter.
+     */
+    static List<Integer> batchableDeletes(List<IndexEvent> events) {
+        Map<String, Integer> perId = new HashMap<>();
+        for (IndexEvent event : events) perId.merge(event.documentId(), 1, Integer::sum);
+        List<Integer> out = new ArrayList<>();
+        for (int i = 0; i < events.size(); i++) {
+            IndexEvent event = events.get(i);
+            if ("DELETE".equals(event.operation()) && perId.get(event.documentId()) == 1) out.add(i);
+        }
+        return out;
+    }
+
+    /** deletePlans() for the given deliveries with retries; false when retries are exhausted. */
+    private boolean deleteTogether(List<Delivery> deliveries, List<Integer> positions, boolean[] indexed) {
+        long start = System.nanoTime();
+        List<String> ids = new ArrayList<>(positions.size());
+        for (int i : positions) ids.add(deliveries.get(i).event().documentId());
+        log.info("processing {} DELETE events together ids={}", positions.size(), ids);
+
+        Exception lastEx = null;
+        for (int attempt = 0; attempt < MAX_RETRIES; attempt++) {
+            try {
+                Set<String> recreated = kvStore.getEtags(ids).keySet();
+                Map<String, Long> versions = new LinkedHashMap<>();
+                IndexService.Refresh refresh = IndexService.Refresh.NONE;
+                for (int i : positions) {
+                    IndexEvent event = deliveries.get(i).event();
+                    if (recreated.contains(event.documentId())) {
+                        log.info("DELETE event for id={} superseded — plan re-created since", event.documentId());
+                        continue;
+                    }
+                    versions.put(event.documentId(), event.versionNumber());
+                    if (refreshPolicy.refreshFor(event.refreshRequested()) == IndexService.Refresh.WAIT_FOR) {
+                        refresh = IndexService.Refresh.WAIT_FOR;
+                    }
+                }
+                if (!versions.isEmpty()) {
+                    int failed = indexService.deletePlans(versions, refresh);
+                    if (failed > 0) {
+                        throw new IllegalStateException(failed + " parent deletes rejected");
+                    }
+                    refreshPolicy.onWritten();
+                }
+                break;
+            } catch (Exception ex) {
+                lastEx = ex;
+                log.warn("attempt {}/{} failed for {} batched DELETE events — {}",
+                        attempt + 1, MAX_RETRIES, positions.size(), ex.getMessage());
+                if (attempt < MAX_RETRIES - 1) {
+                    retryCounter("DELETE").increment();
+                    sleep(BACKOFF_MS[attempt]);
+                } else {
+                    log.error("retries_exhausted for {} batched DELETE events — cause: {}; applying one by one",
+                            positions.size(), lastEx.getMessage());
+                    return false;
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        for (int i : positions) {
+            Delivery delivery = deliveries.get(i);
+            try {
+                delivery.ack().run();
+                indexed[i] = true;
+                eventTimer("DELETE", "indexed").record(elapsed, TimeUnit.NANOSECONDS);
+            } catch (Exception ex) {
+                // the delete is applied; the entry stays pending and is re-applied idempotently
+                log.warn("ack failed for DELETE id={} msgId={} — {}",
+                        delivery.event().documentId(), delivery.messageId(), ex.getMessage());
+                eventTimer("DELETE", "failed").record(elapsed, TimeUnit.NANOSECONDS);
+            }
+        }
+        deleteCounter("batched").increment(positions.size());
+        return true;
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Coalescing
+    // ─────────────────────────────────────────────────────────────────────────
+
+    /**
+     * Collapses a batch to the last event per document id, in the order of
+     * those last occurrences. A DELETE followed by a re-create keeps the
+     * DELETE in front of the surviving event, so children of the old version
+     * are still removed.
+     */
+    static <T> List<T> coalesce(List<T> events, Function<T, String> documentId,
+                                Function<T, String> operation) {
+        Map<String, T> last = new LinkedHashMap<>();
+        Map<String, T> deleteFirst = new HashMap<>();
+        for (T event : events) {
+            String id = documentId.apply(event);
+            T previous = last.remove(id);   // re-insert so iteration follows the last occurrence
+            if (previous != null && "DELETE".equals(operation.apply(previous))) {
+                deleteFirst.put(id, previous);
+            }
+            last.put(id, event);
+        }
+        List<T> out = new ArrayList<>(last.size());
+        for (Map.Entry<String, T> entry : last.entrySet()) {
+            T delete = deleteFirst.get(entry.getKey());
+            if (delete != null && !"DELETE".equals(operation.apply(entry.getValue()))) {
+                out.add(delete);
+            }
+            out.add(entry.getValue());
+        }
+        return out;
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Operations
+    // ─────────────────────────────────────────────────────────────────────────
+
+    private void apply(IndexEvent event) throws Exception {
+        String documentId = event.documentId();
+        IndexService.Refresh refresh = refreshPolicy.refreshFor(event.refreshRequested());
+        switch (event.operation()) {
+            case "UPSERT" -> handleUpsert(documentId, refresh);
+            case "PATCH"  -> handlePatch(documentId, event.etag(), event.baseEtag(), event.patch(), refresh);
+            case "DELETE" -> handleDelete(documentId, event.versionNumber(), refresh);
+            default -> log.warn("unknown operation '{}' for id={} — skipping", event.operation(), documentId);
+        }
+    }
+
+    private void handleUpsert(String documentId, IndexService.Refresh refresh) throws Exception {
+        StoredDocument doc = currentDocument(documentId, "UPSERT");
+        if (doc == null) return;
+        indexPlan(doc, refresh);
+    }
+
+    /**
+     * Handles a PATCH event by re-fetching the authoritative document from the KV store
+     * and re-indexing it in Elasticsearch.
+     *
+     * When the event carries its merge patch and the patch is still the latest
+     * write in KV, the patch alone is sent as a partial _update instead — but
+     * only while the etag chain holds: the indexed parent must be at the
+     * patch's base etag, so a missed or reordered write is never papered over.
+     * Anything else (broken chain, later write in KV, patch not applicable as a
+     * partial doc) falls back to the full re-index from KV, which keeps
+     * Elasticsearch a consistent, idempotent replica of the single source of truth.
+     */
+    private void handlePatch(String documentId, String etag, String baseEtag, String patch,
+                             IndexService.Refresh refresh) throws Exception {
+        log.info("Processing PATCH event id={} etag={}", documentId, etag);
+
+        if (tryPartialUpdate(documentId, etag, baseEtag, patch, refresh)) return;
+
+        StoredDocument doc = currentDocument(documentId, "PATCH");
+        if (doc == null) return;
+        indexPlan(doc, refresh);
+        patchCounter("full").increment();
+    }
+
+    /** True when the PATCH was fully handled by a partial _update (or was already applied). */
+    private boolean tryPartialUpdate(String documentId, String etag, String baseEtag, String patch,
+                                     IndexService.Refresh refresh) throws Exception {
+        if (patch.isEmpty() || baseEtag.isEmpty()) return false;
+        JsonNode patchNode = objectMapper.readTree(patch);
+        if (!isPartialDoc(patchNode, splitter.childFields())) return false;
+
+        // only the newest write may be applied as a delta; otherwise index what KV holds now
+        String kvEtag = kvStore.getEtags(List.of(documentId)).get(documentId);
+        if (!etag.equals(kvEtag)) return false;
+
+        IndexService.PartialUpdate outcome = indexService.updateParent(documentId, patchNode, baseEtag, etag, refresh);
+        if (outcome == IndexService.PartialUpdate.CHAIN_BROKEN) {
+            log.info("PATCH id={} — indexed parent not at base etag, re-indexing in full", documentId);
+            return false;
+        }
+        patchCounter(outcome == IndexService.PartialUpdate.NOOP ? "noop" : "partial").increment();
+        return true;
+    }
+
+    /**
+     * Whether a merge patch means the same as an _update partial doc: an
+     * object that leaves the childFields (linkedPlanServices, plus
+     * planCostShares with join-levels=3) alone — children need the diff in
+     * indexPlan — and removes nothing: RFC 7396 null deletes a member, while
+     * _update would store an explicit null.
+     */
+    static boolean isPartialDoc(JsonNode patch, Set<String> childFields) {
+        if (!patch.isObject() || containsNull(patch)) return false;
+        for (String field : childFields) {
+            if (patch.has(field)) return false;
+        }
+        return true;
+    }
+
+    private static boolean containsNull(JsonNode node) {
+        if (node.isNull()) return true;
+        for (JsonNode child : node) {
+            if (containsNull(child)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Full upsert of the parent, then only the child operations the change
+     * actually needs. The indexed children (and their content etags) are read
+     * back from Elasticsearch and diffed against the current linkedPlanServices:
+     * new or changed children are indexed, children no longer in the plan are
+     * deleted — all in one routed _bulk. Unchanged children are not rewritten.
+     *
+     * Reading the children fails loudly, so a lost read is retried rather than
+     * mistaken for "no children indexed".
+     *
+     * Every write carries the document's version (version_type=external), so
+     * if a newer version of the plan has been indexed meanwhile — by another
+     * worker, or an event processed out of order — Elasticsearch rejects these
+     * writes instead of letting older data overwrite it.
+     *
+     * Only the last request of the plan waits for refresh (wait_for): parent
+     * and children live on one shard, so once it is visible all of them are.
+     */
+    private void indexPlan(StoredDocument doc, IndexService.Refresh refresh) throws Exception {
+        String documentId = doc.getObjectId();
+        JsonNode parentNode = objectMapper.readTree(doc.getJson());
+
+        Map<String, IndexService.ChildDoc> desired = splitter.childDocs(doc.getJson());
+        ChildDiff diff = diffChildren(desired, indexService.indexedChildEtags(documentId));
+        boolean childWrites = !diff.upserts().isEmpty() || !diff.deletes().isEmpty();
+
+        indexService.indexParent(documentId, parentNode, doc.getEtag(), doc.getVersion(), null,
+                childWrites ? IndexService.Refresh.NONE : refresh);
+
+        Map<String, IndexService.ChildDoc> upserts = new LinkedHashMap<>();
+        for (String childId : diff.upserts()) {
+            upserts.put(childId, desired.get(childId));
+        }
+        int failed = indexService.syncChildren(documentId, upserts, diff.deletes(), doc.getVersion(), refresh);
+        if (failed > 0) {
+            throw new IllegalStateException(failed + " child operations rejected for parent " + documentId);
+        }
+        childCounter("indexed").increment(upserts.size());
+        childCounter("deleted").increment(diff.deletes().size());
+        childCounter("unchanged").increment(diff.unchanged());
+        log.info("indexed parent id={}: {} children indexed, {} deleted, {} unchanged",
+                documentId, upserts.size(), diff.deletes().size(), diff.unchanged());
+    }
+
+    /** Child ids to (re-)index and to delete, plus how many were already up to date. */
+    record ChildDiff(List<String> upserts, List<String> deletes, int unchanged) {}
+
+    /**
+     * Compares the wanted children (id → content etag) with what is indexed:
+     * absent or different etag → upsert, indexed but no longer wanted → delete.
+     */
+    static ChildDiff diffChildren(Map<String, IndexService.ChildDoc> desired, Map<String, String> indexed) {
+        List<String> upserts = new ArrayList<>();
+        int unchanged = 0;
+        for (Map.Entry<String, IndexService.ChildDoc> child : desired.entrySet()) {
+            if (child.getValue().etag().equals(indexed.get(child.getKey()))) {
+                unchanged++;
+            } else {
+                upserts.add(child.getKey());
+            }
+        }
+        List<String> deletes = new ArrayList<>();
+        for (String childId : indexed.keySet()) {
+            if (!desired.containsKey(childId)) deletes.add(childId);
+        }
+        return new ChildDiff(upserts, deletes, unchanged);
+    }
+
+    /**
+     * Latest committed version from KV, or null when the plan has been deleted
+     * since the event was published. Writes go through DocumentOutbox, so that
+     * delete is guaranteed to have its own DELETE event further down the
+     * stream — there is nothing to index now and nothing to retry.
+     */
+    private StoredDocument currentDocument(String documentId, String operation) {
+        StoredDocument doc = kvStore.get(documentId).orElse(null);
+        if (doc == null) {
+            log.info("{} event for id={} superseded — plan no longer in KV, DELETE event follows",
+                    operation, documentId);
+        }
+        return doc;
+    }
+
+    /**
+     * Handles a DELETE event by cascading removal through Elasticsearch.
+     *
+     * Order is deliberate — children MUST be deleted before the parent because
+     * Elasticsearch's parent-child join requires the parent to exist when querying
+     * children via parent_id. Deleting children first also avoids orphaned child
+     * documents that would be unreachable after the parent is gone.
+     *
+     * Both operations are idempotent: re-processing the same DELETE event
+     * (after a worker crash + PEL re-claim) produces no errors.
+     *
+     * A plan that is back in KV was re-created after this delete; its own
+     * event indexes it (the child diff removes the old children), so the
+     * delete is skipped rather than racing it. The parent delete carries the
+     * delete's version, so Elasticsearch also refuses it against a newer parent.
+     */
+    private void handleDelete(String documentId, long version, IndexService.Refresh refresh) {
+        log.info("Processing DELETE event id={} version={}", documentId, version);
+
+        if (kvStore.exists(documentId)) {
+            log.info("DELETE event for id={} superseded — plan re-created since", documentId);
+            return;
+        }
+
+        // Step 1: delete all child documents for this parent first.
+        // Uses delete_by_query with routing=parentId + parent_id term query.
+        indexService.deleteChildren(documentId);
+        log.info("Deleted children for parent id={}", documentId);
+
+        // Step 2: delete the parent document. Graceful if already absent.
+        indexService.deleteParent(documentId, version, refresh);
+        deleteCounter("single").increment();
+        log.info("Deleted parent id={}", documentId);
+    }
+
+    private Timer eventTimer(String operation, String outcome) {
+        return eventTimers.computeIfAbsent(operation + '|' + outcome, k ->
+                Timer.builder("schemaguard.worker.event")
+                        .description("Time from event pickup to ACK (or giving up), including retries")
+                        .tag("operation", operation)
+                        .tag("outcome", outcome)
+                        .register(meterRegistry));
+    }
+
+    private Counter patchCounter(String mode) {
+        return patchCounters.computeIfAbsent(mode, m ->
+                Counter.builder("schemaguard.worker.patch")
+                        .description("PATCH events by how they reached the index")
+                        .tag("mode", m)
+                        .register(meterRegistry));
+    }
+
+    private Counter deleteCounter(String mode) {
+        return deleteCounters.computeIfAbsent(mode, m ->
+                Counter.builder("schemaguard.worker.deletes")
+                        .description("DELETE events by whether they were applied as part of a batch")
+                        .tag("mode", m)
+                        .register(meterRegistry));
+    }
+
+    private Counter childCounter(String action) {
+        return childCounters.computeIfAbsent(action, a ->
+                Counter.builder("schemaguard.worker.children")
+                        .description("Child documents per indexing pass, by what the diff decided")
+                        .tag("action", a)
+                        .register(meterRegistry));
+    }
+
+    private Counter retryCounter(String operation) {
+        return retryCounters.computeIfAbsent(operation, op ->
+                Counter.builder("schemaguard.worker.retries")
+                        .description("Failed processing attempts that were retried")
+                        .tag("operation", op)
+                        .register(meterRegistry));
+    }
+
+    private static void sleep(long ms) {
+        try { Thread.sleep(ms); } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
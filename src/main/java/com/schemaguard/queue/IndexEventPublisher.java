@@ -10,14 +10,36 @@ package com.schemaguard.queue;
 public interface IndexEventPublisher {
 
     /**
-     * Publish an indexing event to the configured stream.
+     * Publish an indexing event to the configured stream (or in-process bus).
      *
      * Publishing is fire-and-forget: the method logs on failure but does
      * not throw, so a stream write failure cannot break the API response.
+     * The one exception is InProcessIndexEventBus, which throws
+     * ServiceUnavailableException when its bounded buffer stays full, so
+     * InMemoryDocumentOutbox rolls the write back instead of losing the event.
      * This is an explicit tradeoff favouring demo stability over strict
-     * durability — documented in README.
+     * durability — documented in README. Plan writes therefore do not use
+     * this directly: they go through DocumentOutbox, which commits the event
+     * atomically with the document.
      *
      * @param event  the event to publish
      */
     void publish(IndexEvent event);
+
+    /**
+     * Waits until a publishNow() is likely to find room, for callers that
+     * publish while holding a lock and must not wait inside it. A bounded
+     * publisher that stays full throws ServiceUnavailableException. Unbounded
+     * publishers return at once.
+     */
+    default void awaitCapacity() {
+    }
+
+    /**
+     * Like publish(), but never waits for room: a full bounded publisher
+     * throws ServiceUnavailableException right away.
+     */
+    default void publishNow(IndexEvent event) {
+        publish(event);
+    }
 }
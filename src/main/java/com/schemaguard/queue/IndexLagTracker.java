@@ -0,0 +1,267 @@
+package com.schemaguard.queue;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks how far Elasticsearch trails the KV store.
+ *
+ * Fed by IndexWorker:
+ *   - per event: enqueue → dequeue and enqueue → indexed latency, where
+ *     "enqueue" is IndexEvent.timestamp (publish time on the API node)
+ *   - periodically: stream length, group lag, PEL size and the id of the
+ *     oldest pending message (XLEN / XINFO GROUPS / XPENDING), summed over
+ *     the HIGH and LOW lanes
+ *
+ * Metrics:
+ *   schemaguard.index.lag.dequeue   Timer{priority=high|low} — time an event waited in the stream
+ *   schemaguard.index.lag.indexed   Timer{priority=high|low} — publish → ES write done (event ACKed)
+ *   schemaguard.stream.length       Gauge — XLEN of the index-events stream
+ *   schemaguard.worker.lag          Gauge — entries not yet delivered to the group
+ *   schemaguard.worker.pending      Gauge — delivered but not yet ACKed
+ *   schemaguard.worker.oldest.pending.age  Gauge (seconds) — age of the oldest PEL entry
+ *
+ * Alert on schemaguard.worker.oldest.pending.age or the indexed-lag
+ * histogram rather than on stream length — a long stream with a fast
+ * worker is healthy, a short one with a stuck PEL entry is not.
+ *
+ * snapshot() backs GET /api/v1/index/lag. Gauges read NaN until the worker
+ * has reported at least once (always, on profiles without a worker).
+ * backlog() / oldestPendingAgeMillis() / statsAgeMillis() feed WriteAdmission.
+ *
+ * Profile-agnostic so the admin endpoint can always inject it.
+ */
+@Component
+public class IndexLagTracker {
+
+    /** One-second buckets covering the last minute of indexed events. */
+    private static final int WINDOW_SECONDS = 60;
+
+    private final Map<IndexEventPriority, Timer> dequeueLag = new EnumMap<>(IndexEventPriority.class);
+    private final Map<IndexEventPriority, Timer> indexedLag = new EnumMap<>(IndexEventPriority.class);
+
+    private final AtomicLong streamLength = new AtomicLong(-1);
+    private final AtomicLong groupLag = new AtomicLong(-1);
+    private final AtomicLong pendingCount = new AtomicLong(-1);
+    /** Millisecond timestamp of the oldest pending stream id, 0 when the PEL is empty. */
+    private final AtomicLong oldestPendingMillis = new AtomicLong(-1);
+    private final AtomicLong statsUpdatedAt = new AtomicLong(0);
+
+    // ring of per-second buckets: events, events with a known lag, summed and max lag (ms)
+    private final long[] bucketSecond = new long[WINDOW_SECONDS];
+    private final long[] bucketCount = new long[WINDOW_SECONDS];
+    private final long[] bucketLagCount = new long[WINDOW_SECONDS];
+    private final long[] bucketLagSum = new long[WINDOW_SECONDS];
+    private final long[] bucketLagMax = new long[WINDOW_SECONDS];
+
+    public IndexLagTracker(MeterRegistry registry) {
+        for (IndexEventPriority priority : IndexEventPriority.values()) {
+            String lane = priority.name().toLowerCase(Locale.ROOT);
+            dequeueLag.put(priority, Timer.builder("schemaguard.index.lag.dequeue")
+                    .description("Time an index event waited in the stream before the worker picked it up")
+                    .tag("priority", lane)
+                    .register(registry));
+            indexedLag.put(priority, Timer.builder("schemaguard.index.lag.indexed")
+                    .description("Time from event publish until Elasticsearch was updated and the event ACKed")
+                    .tag("priority", lane)
+                    .register(registry));
+        }
+
+        Gauge.builder("schemaguard.stream.length", streamLength, IndexLagTracker::gaugeValue)
+                .description("Entries in the index-events stream (XLEN)")
+                .register(registry);
+        Gauge.builder("schemaguard.worker.lag", groupLag, IndexLagTracker::gaugeValue)
+                .description("Stream entries not yet delivered to the consumer group")
+                .register(registry);
+        Gauge.builder("schemaguard.worker.pending", pendingCount, IndexLagTracker::gaugeValue)
+                .description("Messages delivered to the consumer group but not yet ACKed")
+                .register(registry);
+        Gauge.builder("schemaguard.worker.oldest.pending.age", this, IndexLagTracker::oldestPendingAgeSeconds)
+                .description("Age of the oldest un-ACKed message in the consumer group")
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Worker callbacks
+    // ─────────────────────────────────────────────────────────────────────────
+
+    /**
+     * Called when the worker picks an event up. Returns the parsed enqueue
+     * time in epoch millis (or -1) so the caller can pass it to onIndexed.
+     */
+    public long onDequeued(String publishTimestamp, IndexEventPriority priority) {
+        long enqueued = parseMillis(publishTimestamp);
+        if (enqueued > 0) {
+            dequeueLag.get(priority).record(Math.max(0, System.currentTimeMillis() - enqueued), TimeUnit.MILLISECONDS);
+        }
+        return enqueued;
+    }
+
+    /** Called once the event's effect is in Elasticsearch and the message is ACKed. */
+    public void onIndexed(long enqueuedMillis, IndexEventPriority priority) {
+        long now = System.currentTimeMillis();
+        long lag = enqueuedMillis > 0 ? Math.max(0, now - enqueuedMillis) : -1;
+        if (lag >= 0) {
+            indexedLag.get(priority).record(lag, TimeUnit.MILLISECONDS);
+        }
+        recordInWindow(now / 1000, lag);
+    }
+
+    /**
+     * Periodic queue statistics. Any value may be -1 when the server did not
+     * report it (e.g. XINFO lag needs Redis 7). oldestPendingId is null when
+     * the PEL is empty.
+     */
+    public void updateQueueStats(long length, long lag, long pending, String oldestPendingId) {
+        streamLength.set(length);
+        groupLag.set(lag);
+        pendingCount.set(pending);
+        oldestPendingMillis.set(oldestPendingId == null ? 0 : streamIdMillis(oldestPendingId));
+        statsUpdatedAt.set(System.currentTimeMillis());
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Snapshot for GET /api/v1/index/lag
+    // ─────────────────────────────────────────────────────────────────────────
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        long updatedAt = statsUpdatedAt.get();
+        out.put("workerReporting", updatedAt > 0);
+        out.put("statsAgeMs", updatedAt > 0 ? System.currentTimeMillis() - updatedAt : null);
+        out.put("streamLength", nullIfUnknown(streamLength.get()));
+        out.put("consumerGroupLag", nullIfUnknown(groupLag.get()));
+        out.put("pendingCount", nullIfUnknown(pendingCount.get()));
+        out.put("oldestPendingAgeMs", nullIfUnknown(oldestPendingAgeMillis()));
+
+        long[] window = windowTotals(System.currentTimeMillis() / 1000);
+        long count = window[0];
+        out.put("indexedLastMinute", count);
+        out.put("throughputPerSecond", Math.round(count * 100.0 / WINDOW_SECONDS) / 100.0);
+        out.put("avgIndexLagMs", window[2] > 0 ? window[1] / window[2] : null);
+        out.put("maxIndexLagMs", window[2] > 0 ? window[3] : null);
+        return out;
+    }
+
+    private double oldestPendingAgeSeconds() {
+        long ms = oldestPendingAgeMillis();
+        return ms < 0 ? Double.NaN : ms / 1000.0;
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Current queue state
+    // ─────────────────────────────────────────────────────────────────────────
+
+    /**
+     * Events the worker still has to finish: undelivered (group lag) plus
+     * pending. Lag counts as 0 when the server does not report it; -1 only
+     * when neither value is known.
+     */
+    public long backlog() {
+        long lag = groupLag.get();
+        long pending = pendingCount.get();
+        if (lag < 0 && pending < 0) return -1;
+        return Math.max(0, lag) + Math.max(0, pending);
+    }
+
+    /** Milliseconds since the worker last reported queue stats, -1 if it never has. */
+    public long statsAgeMillis() {
+        long updatedAt = statsUpdatedAt.get();
+        return updatedAt > 0 ? Math.max(0, System.currentTimeMillis() - updatedAt) : -1;
+    }
+
+    /** Events indexed per second, averaged over the last minute. */
+    public double throughputPerSecond() {
+        return windowTotals(System.currentTimeMillis() / 1000)[0] / (double) WINDOW_SECONDS;
+    }
+
+    /** -1 until stats arrive; 0 when nothing is pending. */
+    public long oldestPendingAgeMillis() {
+        long oldest = oldestPendingMillis.get();
+        if (oldest < 0) return -1;
+        if (oldest == 0) return 0;
+        return Math.max(0, System.currentTimeMillis() - oldest);
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Sliding window
+    // ─────────────────────────────────────────────────────────────────────────
+
+    private synchronized void recordInWindow(long second, long lagMs) {
+        int i = (int) (second % WINDOW_SECONDS);
+        if (bucketSecond[i] != second) {
+            bucketSecond[i] = second;
+            bucketCount[i] = 0;
+            bucketLagCount[i] = 0;
+            bucketLagSum[i] = 0;
+            bucketLagMax[i] = 0;
+        }
+        bucketCount[i]++;
+        if (lagMs >= 0) {
+            bucketLagCount[i]++;
+            bucketLagSum[i] += lagMs;
+            bucketLagMax[i] = Math.max(bucketLagMax[i], lagMs);
+        }
+    }
+
+    /**
+     * {events, summed lag, events with a known lag, max lag} over the last minute.
+     * Events without a parseable timestamp count as throughput but not as lag.
+     */
+    private synchronized long[] windowTotals(long nowSecond) {
+        long count = 0, lagSum = 0, lagCount = 0, lagMax = 0;
+        for (int i = 0; i < WINDOW_SECONDS; i++) {
+            if (nowSecond - bucketSecond[i] < WINDOW_SECONDS) {
+                count += bucketCount[i];
+                lagCount += bucketLagCount[i];
+                lagSum += bucketLagSum[i];
+                lagMax = Math.max(lagMax, bucketLagMax[i]);
+            }
+        }
+        return new long[] {count, lagSum, lagCount, lagMax};
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // helpers
+    // ─────────────────────────────────────────────────────────────────────────
+
+    private static long parseMillis(String isoInstant) {
+        if (isoInstant == null || isoInstant.isEmpty()) return -1;
+        try {
+            return Instant.parse(isoInstant).toEpochMilli();
+        } catch (DateTimeParseException ex) {
+            return -1;
+        }
+    }
+
+    /** Stream ids are "<ms>-<seq>"; the ms part is the Redis server time at XADD. */
+    private static long streamIdMillis(String streamId) {
+        int dash = streamId.indexOf('-');
+        try {
+            return Long.parseLong(dash < 0 ? streamId : streamId.substring(0, dash));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private static Long nullIfUnknown(long v) {
+        return v < 0 ? null : v;
+    }
+
+    private static double gaugeValue(AtomicLong value) {
+        long v = value.get();
+        return v < 0 ? Double.NaN : v;
+    }
+}
@@ -0,0 +1,290 @@
+package com.schemaguard.queue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.schemaguard.admission.WriteAdmission;
+import com.schemaguard.elastic.IndexService;
+import com.schemaguard.store.KeyValueStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background KV ↔ Elasticsearch consistency check.
+ *
+ * A dropped event, or one given up after its retries, leaves no trace, so
+ * drift between the store and the index is otherwise invisible. Each pass
+ * compares etags only:
+ *
+ *   1. KV → ES   SCAN the plan ids in batches of reconcile.batch-size, read
+ *                their etags (KeyValueStore.getEtags — an HMGET on the etag
+ *                hash on Redis, no documents read) and the
+ *                indexed etags (_mget, _source limited to _etag). A parent
+ *                missing from the index or indexed with another etag gets an
+ *                UPSERT event.
+ *   2. ES → KV   page through the indexed parents with search_after; an id no
+ *                longer in KV gets a DELETE event (orphan).
+ *
+ * Events go to the LOW priority lane, so repairs never delay interactive
+ * writes; the worker re-reads KV as for any other event. A document written
+ * between the two reads may look stale once and be re-indexed needlessly —
+ * harmless, since indexing is idempotent.
+ *
+ * Rate limit: at most reconcile.max-docs-per-second ids are checked (both
+ * phases together), so a pass can run continuously next to production
+ * traffic. The pass pauses while WriteAdmission reports overload, and while
+ * the indexing backlog is above reconcile.max-backlog — repairs still queued
+ * from the last pass are not enqueued again on top of them. Passes run
+ * reconcile.interval-ms apart on their own thread — not on the shared
+ * @Scheduled thread, which a long pass would otherwise block.
+ *
+ * Metric: schemaguard.reconcile.documents Counter, tag result =
+ * in_sync | stale | missing | orphan. GET /api/v1/index/reconcile shows the
+ * current / last pass.
+ *
+ * reconcile.enabled=false turns it off (the test profile does).
+ */
+@Component
+public class IndexReconciler {
+
+    private static final Logger log = LoggerFactory.getLogger(IndexReconciler.class);
+    private static final long OVERLOAD_PAUSE_MS = 1000;
+
+    private final KeyValueStore kvStore;
+    private final IndexService indexService;
+    private final IndexEventPublisher publisher;
+    private final WriteAdmission admission;
+    private final IndexLagTracker lagTracker;
+    private final Counter inSync;
+    private final Counter stale;
+    private final Counter missing;
+    private final Counter orphan;
+
+    @Value("${reconcile.enabled:true}")
+    private boolean enabled;
+
+    @Value("${reconcile.initial-delay-ms:60000}")
+    private long initialDelayMs;
+
+    @Value("${reconcile.interval-ms:300000}")
+    private long intervalMs;
+
+    @Value("${reconcile.batch-size:500}")
+    private int batchSize;
+
+    @Value("${reconcile.max-docs-per-second:1000}")
+    private double maxDocsPerSecond;
+
+    @Value("${reconcile.max-backlog:1000}")
+    private long maxBacklog;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    /** Earliest nanoTime the next batch may start — the rate limiter's only state. */
+    private long nextBatchNanos;
+
+    // progress of the current / last pass
+    private volatile Instant passStartedAt;
+    private volatile Instant passFinishedAt;
+    private volatile String lastError;
+    private final AtomicLong passes = new AtomicLong();
+    private final AtomicLong checked = new AtomicLong();
+    private final AtomicLong staleFound = new AtomicLong();
+    private final AtomicLong missingFound = new AtomicLong();
+    private final AtomicLong orphansFound = new AtomicLong();
+
+    public IndexReconciler(KeyValueStore kvStore,
+                           IndexService indexService,
+                           IndexEventPublisher publisher,
+                           WriteAdmission admission,
+                           IndexLagTracker lagTracker,
+                           MeterRegistry registry) {
+        this.kvStore = kvStore;
+        this.indexService = indexService;
+        this.publisher = publisher;
+        this.admission = admission;
+        this.lagTracker = lagTracker;
+        this.inSync = resultCounter(registry, "in_sync");
+        this.stale = resultCounter(registry, "stale");
+        this.missing = resultCounter(registry, "missing");
+        this.orphan = resultCounter(registry, "orphan");
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            log.info("index reconciler disabled");
+            return;
+        }
+        running = true;
+        thread = new Thread(this::loop, "index-reconciler");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("index reconciler started (every {} ms, {} docs/s, batch {})",
+                intervalMs, maxDocsPerSecond, batchSize);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (thread != null) thread.interrupt();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", enabled);
+        result.put("state", passStartedAt != null && passFinishedAt == null ? "RUNNING" : "IDLE");
+        result.put("passes", passes.get());
+        result.put("passStartedAt", passStartedAt != null ? passStartedAt.toString() : null);
+        result.put("passFinishedAt", passFinishedAt != null ? passFinishedAt.toString() : null);
+        result.put("checked", checked.get());
+        result.put("stale", staleFound.get());
+        result.put("missing", missingFound.get());
+        result.put("orphans", orphansFound.get());
+        result.put("maxDocsPerSecond", maxDocsPerSecond);
+        if (lastError != null) result.put("lastError", lastError);
+        return result;
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Pass
+    // ─────────────────────────────────────────────────────────────────────────
+
+    private void loop() {
+        try {
+            Thread.sleep(initialDelayMs);
+            while (running) {
+                reconcile();
+                Thread.sleep(intervalMs);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** One full pass; failures end the pass early and are reported in the snapshot. */
+    void reconcile() throws InterruptedException {
+        checked.set(0);
+        staleFound.set(0);
+        missingFound.set(0);
+        orphansFound.set(0);
+        lastError = null;
+        passFinishedAt = null;
+        passStartedAt = Instant.now();
+        nextBatchNanos = System.nanoTime();
+        try {
+            kvStore.scanIds(batchSize, this::checkIndexed);
+            checkOrphans();
+            log.info("reconcile pass done: {} checked, {} stale, {} missing, {} orphans",
+                    checked.get(), staleFound.get(), missingFound.get(), orphansFound.get());
+        } catch (Interrupted ie) {
+            throw ie.getCause();
+        } catch (Exception ex) {
+            lastError = ex.getMessage();
+            log.warn("reconcile pass aborted after {} checked — {}", checked.get(), ex.getMessage());
+        } finally {
+            passes.incrementAndGet();
+            passFinishedAt = Instant.now();
+        }
+    }
+
+    /** KV → ES: ids in KV that are not indexed, or indexed with an older etag. */
+    private void checkIndexed(List<String> ids) {
+        throttle(ids.size());
+        Map<String, String> kvEtags = kvStore.getEtags(ids);
+        if (kvEtags.isEmpty()) return;
+        Map<String, String> indexed = indexService.indexedEtags(new ArrayList<>(kvEtags.keySet()));
+        for (Map.Entry<String, String> entry : kvEtags.entrySet()) {
+            String indexedEtag = indexed.get(entry.getKey());
+            if (indexedEtag == null) {
+                missing.increment();
+                missingFound.incrementAndGet();
+                enqueue(IndexEventOperation.UPSERT, entry.getKey(), entry.getValue());
+            } else if (!indexedEtag.equals(entry.getValue())) {
+                stale.increment();
+                staleFound.incrementAndGet();
+                enqueue(IndexEventOperation.UPSERT, entry.getKey(), entry.getValue());
+            } else {
+                inSync.increment();
+            }
+        }
+        checked.addAndGet(kvEtags.size());
+    }
+
+    /** ES → KV: indexed parents whose plan is gone from KV. */
+    private void checkOrphans() {
+        JsonNode after = null;
+        IndexService.IdPage page;
+        while (!(page = indexService.parentIdsAfter(after, batchSize)).ids().isEmpty()) {
+            throttle(page.ids().size());
+            Map<String, String> kvEtags = kvStore.getEtags(page.ids());
+            for (String id : page.ids()) {
+                if (!kvEtags.containsKey(id)) {
+                    orphan.increment();
+                    orphansFound.incrementAndGet();
+                    enqueue(IndexEventOperation.DELETE, id, "");
+                }
+            }
+            after = page.after();
+        }
+    }
+
+    private void enqueue(IndexEventOperation operation, String id, String etag) {
+        publisher.publish(IndexEvent.of(operation, id, etag, IndexEventPriority.LOW));
+    }
+
+    /**
+     * Waits until n more ids may be checked under max-docs-per-second, and
+     * while writes are shed or the indexer is behind. Runs on the reconciler
+     * thread only.
+     */
+    private void throttle(int n) {
+        try {
+            while (admission.isOverloaded() || lagTracker.backlog() > maxBacklog) {
+                Thread.sleep(OVERLOAD_PAUSE_MS);
+                nextBatchNanos = System.nanoTime();
+            }
+            long now = System.nanoTime();
+            if (nextBatchNanos > now) {
+                TimeUnit.NANOSECONDS.sleep(nextBatchNanos - now);
+            }
+            long cost = maxDocsPerSecond > 0 ? (long) (n * 1_000_000_000L / maxDocsPerSecond) : 0;
+            nextBatchNanos = Math.max(nextBatchNanos, now) + cost;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new Interrupted(ie);
+        }
+    }
+
+    /** Carries an interrupt out of the scanIds callback, which cannot throw checked exceptions. */
+    private static final class Interrupted extends RuntimeException {
+        Interrupted(InterruptedException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized InterruptedException getCause() {
+            return (InterruptedException) super.getCause();
+        }
+    }
+
+    private static Counter resultCounter(MeterRegistry registry, String result) {
+        return Counter.builder("schemaguard.reconcile.documents")
+                .description("Plans checked by the KV ↔ Elasticsearch reconciler")
+                .tag("result", result)
+                .register(registry);
+    }
+}
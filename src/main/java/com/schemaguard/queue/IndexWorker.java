@@ -1,39 +1,62 @@
 package com.schemaguard.queue;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.schemaguard.elastic.IndexService;
-import com.schemaguard.model.StoredDocument;
-import com.schemaguard.store.KeyValueStore;
+import com.schemaguard.jfr.IndexBatchEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
-import org.springframework.data.domain.Range;
 import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * Background worker that consumes indexing events from the Redis Stream
  * and synchronises Elasticsearch via IndexService.
  *
- * Stream: schemaguard:index-events (configurable)
- * Consumer group: schemaguard-indexers
- * Consumer: indexer-1 (configurable)
+ * Streams: schemaguard:index-events      — HIGH lane, interactive API writes
+ *          schemaguard:index-events:low  — LOW lane, bulk loads / backfills / replays
+ * Consumer group: schemaguard-indexers (on both streams)
+ * Consumer: unique per instance (see ConsumerMembership), so replicas share
+ *           the stream's entries between them
  *
  * Processing loop (runs every POLL_INTERVAL_MS via @Scheduled):
- * 1. XREADGROUP to claim up to BATCH_SIZE new messages.
- * 2. For each message, call handleWithRetry().
+ * 1. XREADGROUP up to BATCH_SIZE new messages, shared between the lanes by
+ *    weighted fair scheduling (see readFair()); HIGH records are handled first.
+ * 2. Hand the batch to IndexEventProcessor.processBatch(), which applies it
+ *    to Elasticsearch with retries (DELETEs of distinct plans together).
  * 3. On success: XACK to remove from PEL.
  * 4. On all retries exhausted: do NOT ACK — message stays in PEL.
- *    It will be re-claimed on next startup via pending check.
+ *    It is reprocessed on the next startup of a consumer with the same
+ *    name, or claimed by a surviving replica if this one dies. StreamTrimmer
+ *    dead-letters it once it is stuck past the dead-letter bounds.
+ *
+ * Rebalancing (every index.worker.rebalance-interval-ms): pending entries
+ * of dead consumers are XCLAIMed in pages of index.worker.claim-batch,
+ * processed like new ones, and the dead consumer is deleted from the group
+ * once nothing is left pending for it.
+ *
+ * Metrics: batch size, per-event timer and retries are recorded by
+ * IndexEventProcessor. Index lag (publish → dequeue / indexed) and the queue gauges — stream
+ * length, group lag, PEL size, oldest pending age — are reported to
+ * IndexLagTracker; the gauges are refreshed every index.worker.stats-interval-ms
+ * on a thread of their own ("index-queue-stats"). poll and rebalance share
+ * Spring's scheduler thread and can spend minutes in Elasticsearch retries
+ * during an outage — exactly when WriteAdmission needs fresh stats.
+ * Each non-empty batch is also a schemaguard.IndexBatch JFR event.
  *
  * Active only on the 'redis' profile.
  */
@@ -43,218 +66,323 @@ public class IndexWorker {
 
     private static final Logger log = LoggerFactory.getLogger(IndexWorker.class);
 
-    private static final int MAX_RETRIES = 3;
-    private static final long[] BACKOFF_MS = {250, 500, 1000};
-
     private final StringRedisTemplate redisTemplate;
-    private final IndexService indexService;
-    private final KeyValueStore kvStore;
-    private final ObjectMapper objectMapper;
-    private final PlanDocumentSplitter splitter;
+    private final IndexEventProcessor processor;
+    private final IndexLagTracker lagTracker;
+    private final ConsumerMembership membership;
+    private final String consumerName;
+    private final ScheduledExecutorService queueStats = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "index-queue-stats");
+        t.setDaemon(true);
+        return t;
+    });
 
     @Value("${index.events.stream:schemaguard:index-events}")
     private String streamName;
 
+    @Value("${index.events.low-stream:schemaguard:index-events:low}")
+    private String lowStreamName;
+
     @Value("${index.worker.group:schemaguard-indexers}")
     private String groupName;
 
-    @Value("${index.worker.consumer:indexer-1}")
-    private String consumerName;
-
     @Value("${index.worker.batch-size:10}")
     private int batchSize;
 
     @Value("${index.worker.block-ms:2000}")
     private long blockMs;
 
+    /** Relative share of each batch for the HIGH and LOW lanes while both have work. */
+    @Value("${index.worker.high-weight:4}")
+    private int highWeight;
+
+    @Value("${index.worker.low-weight:1}")
+    private int lowWeight;
+
+    @Value("${index.worker.claim-batch:100}")
+    private int claimBatch;
+
+    @Value("${index.worker.stats-interval-ms:5000}")
+    private long statsIntervalMs;
+
     public IndexWorker(StringRedisTemplate redisTemplate,
-                       IndexService indexService,
-                       KeyValueStore kvStore,
-                       ObjectMapper objectMapper,
-                       PlanDocumentSplitter splitter) {
+                       IndexEventProcessor processor,
+                       IndexLagTracker lagTracker,
+                       ConsumerMembership membership) {
         this.redisTemplate = redisTemplate;
-        this.indexService = indexService;
-        this.kvStore = kvStore;
-        this.objectMapper = objectMapper;
-        this.splitter = splitter;
+        this.processor = processor;
+        this.lagTracker = lagTracker;
+        this.membership = membership;
+        this.consumerName = membership.consumerName();
     }
 
     @PostConstruct
     public void initConsumerGroup() {
+        for (String stream : List.of(streamName, lowStreamName)) {
+            createGroup(stream);
+        }
+        membership.heartbeat();
+        queueStats.scheduleWithFixedDelay(this::refreshQueueStats, 0, statsIntervalMs, TimeUnit.MILLISECONDS);
+        reprocessOwnPending();
+        log.info("IndexWorker started (streams={},{} group={}, consumer={}, weights={}:{})",
+                streamName, lowStreamName, groupName, consumerName, highWeight, lowWeight);
+    }
+
+    @PreDestroy
+    public void stop() {
+        queueStats.shutdownNow();
+    }
+
+    private void createGroup(String stream) {
         try {
-            redisTemplate.opsForStream()
-                    .createGroup(streamName, ReadOffset.from("0"), groupName);
+            // MKSTREAM — on a fresh Redis the stream does not exist until the first
+            // XADD, and a plain XGROUP CREATE would fail, leaving poll() with NOGROUP.
+            redisTemplate.execute((RedisCallback<String>) connection ->
+                    connection.streamCommands().xGroupCreate(
+                            stream.getBytes(StandardCharsets.UTF_8),
+                            groupName, ReadOffset.from("0"), true));
             log.info("IndexWorker created consumer group '{}' on stream '{}'",
-                    groupName, streamName);
+                    groupName, stream);
         } catch (Exception ex) {
             if (ex.getMessage() != null && ex.getMessage().contains("BUSYGROUP")) {
-                log.info("IndexWorker consumer group '{}' already exists", groupName);
+                log.info("IndexWorker consumer group '{}' already exists on '{}'", groupName, stream);
             } else {
-                log.warn("IndexWorker could not create consumer group '{}' — {}",
-                        groupName, ex.getMessage());
+                log.warn("IndexWorker could not create consumer group '{}' on '{}' — {}",
+                        groupName, stream, ex.getMessage());
             }
         }
-        reclaimPendingMessages();
-        log.info("IndexWorker started (stream={}, group={}, consumer={})",
-                streamName, groupName, consumerName);
     }
 
     @Scheduled(fixedDelayString = "${index.worker.poll-interval-ms:1000}")
     public void poll() {
         try {
-            List<MapRecord<String, Object, Object>> records = redisTemplate.opsForStream()
-                    .read(Consumer.from(groupName, consumerName),
-                            StreamReadOptions.empty()
-                                    .count(batchSize)
-                                    .block(Duration.ofMillis(blockMs)),
-                            StreamOffset.create(streamName, ReadOffset.lastConsumed()));
-
-            if (records == null || records.isEmpty()) return;
-
-            for (MapRecord<String, Object, Object> record : records) {
-                handleWithRetry(record);
+            List<MapRecord<String, Object, Object>> records = readFair();
+            if (records.isEmpty()) return;
+
+            processor.recordBatch(records.size());
+            IndexBatchEvent batch = new IndexBatchEvent();
+            batch.begin();
+            int indexed = handleBatch(records);
+            batch.end();
+            if (batch.shouldCommit()) {
+                batch.size = records.size();
+                batch.indexed = indexed;
+                batch.failed = records.size() - indexed;
+                batch.firstStreamId = records.get(0).getId().getValue();
+                batch.lastStreamId = records.get(records.size() - 1).getId().getValue();
+                batch.objectIds = records.stream()
+                        .map(r -> str(r.getValue(), "documentId"))
+                        .collect(Collectors.joining(","));
+                batch.commit();
             }
         } catch (Exception ex) {
             log.warn("IndexWorker poll error — {}", ex.getMessage());
         }
     }
 
-    private void handleWithRetry(MapRecord<String, Object, Object> record) {
-        String messageId = record.getId().getValue();
-        Map<Object, Object> fields = record.getValue();
-
-        String operation  = str(fields, "operation");
-        String documentId = str(fields, "documentId");
-        String etag       = str(fields, "etag");
-
-        log.info("processing event op={} id={} etag={} msgId={}",
-                operation, documentId, etag, messageId);
-
-        Exception lastEx = null;
-        for (int attempt = 0; attempt < MAX_RETRIES; attempt++) {
-            try {
-                processEvent(operation, documentId, etag);
-                redisTemplate.opsForStream().acknowledge(streamName, groupName, messageId);
-                return;
-            } catch (Exception ex) {
-                lastEx = ex;
-                log.warn("attempt {}/{} failed for event op={} id={} — {}",
-                        attempt + 1, MAX_RETRIES, operation, documentId, ex.getMessage());
-                if (attempt < MAX_RETRIES - 1) {
-                    sleep(BACKOFF_MS[attempt]);
-                }
-            }
+    /**
+     * Weighted fair read across the lanes. HIGH may take highQuota of the
+     * batch and LOW the rest; whatever one lane leaves unused goes to the
+     * other, so a lone lane still gets full batches. Only when both lanes
+     * are empty does the worker block, on both streams at once.
+     *
+     * During a backfill an interactive event therefore waits behind at most
+     * one LOW share of a batch, never behind the whole LOW backlog.
+     */
+    private List<MapRecord<String, Object, Object>> readFair() {
+        int highQuota = highQuota(batchSize, highWeight, lowWeight);
+        List<MapRecord<String, Object, Object>> high = new ArrayList<>(read(streamName, highQuota));
+        List<MapRecord<String, Object, Object>> low = read(lowStreamName, batchSize - high.size());
+        if (high.size() == highQuota && high.size() + low.size() < batchSize) {
+            high.addAll(read(streamName, batchSize - high.size() - low.size()));
         }
-        log.error("retries_exhausted for event op={} id={} msgId={} — leaving in PEL. cause: {}",
-                operation, documentId, messageId,
-                lastEx != null ? lastEx.getMessage() : "unknown");
-    }
-
-    private void processEvent(String operation, String documentId, String etag) throws Exception {
-        switch (operation) {
-            case "UPSERT" -> handleUpsert(documentId, etag);
-            case "PATCH"  -> handlePatch(documentId, etag);
-            case "DELETE" -> handleDelete(documentId);
-            default -> log.warn("unknown operation '{}' for id={} — skipping", operation, documentId);
+        if (high.isEmpty() && low.isEmpty()) {
+            List<MapRecord<String, Object, Object>> any = redisTemplate.opsForStream()
+                    .read(Consumer.from(groupName, consumerName),
+                            StreamReadOptions.empty().count(batchSize).block(Duration.ofMillis(blockMs)),
+                            StreamOffset.create(streamName, ReadOffset.lastConsumed()),
+                            StreamOffset.create(lowStreamName, ReadOffset.lastConsumed()));
+            if (any == null) return List.of();
+            // one COUNT per stream — keep HIGH first
+            List<MapRecord<String, Object, Object>> ordered = new ArrayList<>(any.size());
+            any.stream().filter(r -> !lowStreamName.equals(r.getStream())).forEach(ordered::add);
+            any.stream().filter(r -> lowStreamName.equals(r.getStream())).forEach(ordered::add);
+            return ordered;
         }
+        high.addAll(low);
+        return high;
     }
 
-    private void handleUpsert(String documentId, String etag) throws Exception {
-        StoredDocument doc = kvStore.get(documentId)
-                .orElseThrow(() -> new IllegalStateException(
-                        "document not found in KV store for id=" + documentId));
+    /** Non-blocking XREADGROUP of up to count new entries. */
+    private List<MapRecord<String, Object, Object>> read(String stream, int count) {
+        if (count <= 0) return List.of();
+        List<MapRecord<String, Object, Object>> records = redisTemplate.opsForStream()
+                .read(Consumer.from(groupName, consumerName),
+                        StreamReadOptions.empty().count(count),
+                        StreamOffset.create(stream, ReadOffset.lastConsumed()));
+        return records != null ? records : List.of();
+    }
 
-        JsonNode parentNode = objectMapper.readTree(doc.getJson());
-        indexService.indexParent(documentId, parentNode, doc.getEtag(), null);
+    /**
+     * HIGH lane's share of a batch: batchSize × high / (high + low), rounded,
+     * but leaving each weighted lane at least one slot when the batch has
+     * room, so a steady stream of interactive writes cannot starve a backfill.
+     */
+    static int highQuota(int batchSize, int highWeight, int lowWeight) {
+        if (lowWeight <= 0) return batchSize;
+        if (highWeight <= 0) return 0;
+        int quota = (int) Math.round(batchSize * (double) highWeight / (highWeight + lowWeight));
+        if (batchSize <= 1) return Math.min(quota, batchSize);
+        return Math.max(1, Math.min(quota, batchSize - 1));
+    }
 
-        List<PlanDocumentSplitter.ChildEntry> children = splitter.extractChildren(doc.getJson());
-        for (PlanDocumentSplitter.ChildEntry child : children) {
-            indexService.indexChild(documentId, child.childId(), child.childDoc(),
-                    doc.getEtag(), null);
+    /**
+     * processBatch() over the records; returns how many were processed and
+     * ACKed. Entries whose retries are exhausted stay in the PEL.
+     */
+    private int handleBatch(List<MapRecord<String, Object, Object>> records) {
+        List<IndexEventProcessor.Delivery> deliveries = new ArrayList<>(records.size());
+        long[] enqueuedAt = new long[records.size()];
+        for (int i = 0; i < records.size(); i++) {
+            MapRecord<String, Object, Object> record = records.get(i);
+            String messageId = record.getId().getValue();
+            enqueuedAt[i] = lagTracker.onDequeued(str(record.getValue(), "timestamp"), priority(record));
+            deliveries.add(new IndexEventProcessor.Delivery(IndexEvent.fromStreamFields(record.getValue()), messageId,
+                    () -> redisTemplate.opsForStream().acknowledge(record.getStream(), groupName, messageId)));
         }
-        log.info("indexed parent id={} with {} children", documentId, children.size());
+        boolean[] indexed = processor.processBatch(deliveries);
+        int count = 0;
+        for (int i = 0; i < indexed.length; i++) {
+            if (!indexed[i]) continue;
+            lagTracker.onIndexed(enqueuedAt[i], priority(records.get(i)));
+            count++;
+        }
+        return count;
     }
 
     /**
-     * Handles a PATCH event by re-fetching the authoritative document from the KV store
-     * and re-indexing it in Elasticsearch.
-     *
-     * We deliberately do NOT apply the partial patch directly to Elastic.
-     * Always fetching the latest committed state from KV (Redis) ensures Elasticsearch
-     * is a consistent, idempotent replica of the single source of truth.
+     * Returns true when the event was processed and ACKed. When retries are
+     * exhausted the entry is NOT ACKed and stays in the PEL.
      */
-    private void handlePatch(String documentId, String etag) throws Exception {
-        log.info("Processing PATCH event id={} etag={}", documentId, etag);
-
-        StoredDocument doc = kvStore.get(documentId)
-                .orElseThrow(() -> new IllegalStateException(
-                        "document not found in KV store for id=" + documentId));
-
-        log.info("Fetched latest KV doc id={}; re-indexed into Elastic", documentId);
+    private boolean handleWithRetry(MapRecord<String, Object, Object> record) {
+        String messageId = record.getId().getValue();
+        Map<Object, Object> fields = record.getValue();
 
-        JsonNode parentNode = objectMapper.readTree(doc.getJson());
-        // Full upsert — Elasticsearch replaces the document by id, guaranteeing
-        // the indexed state matches the current KV contents exactly.
-        indexService.indexParent(documentId, parentNode, doc.getEtag(), null);
+        IndexEventPriority priority = priority(record);
+        long enqueuedAt = lagTracker.onDequeued(str(fields, "timestamp"), priority);
 
-        // Re-index children so their stored etag stays consistent with the parent.
-        List<PlanDocumentSplitter.ChildEntry> children = splitter.extractChildren(doc.getJson());
-        for (PlanDocumentSplitter.ChildEntry child : children) {
-            indexService.indexChild(documentId, child.childId(), child.childDoc(),
-                    doc.getEtag(), null);
+        boolean indexed = processor.process(IndexEvent.fromStreamFields(fields), messageId,
+                () -> redisTemplate.opsForStream().acknowledge(record.getStream(), groupName, messageId));
+        if (indexed) {
+            lagTracker.onIndexed(enqueuedAt, priority);
         }
-        log.info("PATCH re-index complete id={} children={}", documentId, children.size());
+        return indexed;
     }
 
     /**
-     * Handles a DELETE event by cascading removal through Elasticsearch.
-     *
-     * Order is deliberate — children MUST be deleted before the parent because
-     * Elasticsearch's parent-child join requires the parent to exist when querying
-     * children via parent_id. Deleting children first also avoids orphaned child
-     * documents that would be unreachable after the parent is gone.
-     *
-     * Both operations are idempotent: re-processing the same DELETE event
-     * (after a worker crash + PEL re-claim) produces no errors.
+     * Reports stream length, group lag, PEL size and the oldest pending id to
+     * IndexLagTracker (XLEN + XINFO GROUPS + XPENDING). Runs on the
+     * index-queue-stats thread, so neither gauge freshness costs indexing
+     * latency nor a stuck poll stops the stats.
      */
-    private void handleDelete(String documentId) {
-        log.info("Processing DELETE event id={}", documentId);
+    public void refreshQueueStats() {
+        try {
+            long length = 0, lag = 0, pending = 0;
+            String oldestPendingId = null;
+            boolean anyGroup = false;
+            for (String stream : List.of(streamName, lowStreamName)) {
+                Long size = redisTemplate.opsForStream().size(stream);
+                StreamInfo.XInfoGroup group = redisTemplate.opsForStream().groups(stream).stream()
+                        .filter(g -> groupName.equals(g.groupName()))
+                        .findFirst()
+                        .orElse(null);
+                if (group == null) continue;
+                anyGroup = true;
+
+                Object groupLag = group.getRaw().get("lag");
+                long groupPending = group.pendingCount() != null ? group.pendingCount() : -1;
+                length  = sumKnown(length, size != null ? size : -1);
+                lag     = sumKnown(lag, groupLag instanceof Number n ? n.longValue() : -1);
+                pending = sumKnown(pending, groupPending);
+                if (groupPending != 0) {
+                    PendingMessagesSummary summary = redisTemplate.opsForStream().pending(stream, groupName);
+                    if (summary != null && summary.getTotalPendingMessages() > 0) {
+                        oldestPendingId = oldestPendingId == null ? summary.minMessageId()
+                                : StreamTrimmer.minStreamId(oldestPendingId, summary.minMessageId());
+                    }
+                }
+            }
+            if (!anyGroup) return;
+            lagTracker.updateQueueStats(length, lag, pending, oldestPendingId);
+        } catch (Exception ex) {
+            log.debug("could not refresh stream stats — {}", ex.getMessage());
+        }
+    }
 
-        // Step 1: delete all child documents for this parent first.
-        // Uses delete_by_query with routing=parentId + parent_id term query.
-        indexService.deleteChildren(documentId);
-        log.info("Deleted children for parent id={}", documentId);
+    /** -1 (unknown) in either lane makes the total unknown. */
+    private static long sumKnown(long total, long value) {
+        return total < 0 || value < 0 ? -1 : total + value;
+    }
 
-        // Step 2: delete the parent document. Graceful if already absent.
-        indexService.deleteParent(documentId);
-        log.info("Deleted parent id={}", documentId);
+    /**
+     * Takes over the PEL of consumers that stopped heartbeating, then deletes
+     * them from the group once nothing is left pending for them. A dead
+     * consumer with a large PEL is drained claim-batch entries per run.
+     */
+    @Scheduled(fixedDelayString = "${index.worker.rebalance-interval-ms:15000}")
+    public void rebalance() {
+        try {
+            for (String dead : membership.deadConsumers()) {
+                for (MapRecord<String, Object, Object> record : membership.claim(dead, claimBatch)) {
+                    handleWithRetry(record);
+                }
+                if (membership.pendingCount(dead) == 0) {
+                    membership.remove(dead);
+                }
+            }
+        } catch (Exception ex) {
+            log.warn("IndexWorker rebalance error — {}", ex.getMessage());
+        }
     }
 
     /**
-     * Checks for pending (unACKed) messages from previous runs and logs the count.
-     * Uses PendingMessages — the correct return type from opsForStream().pending().
+     * Reprocesses entries this consumer name read but never ACKed in a
+     * previous run (XREADGROUP from id 0 returns the consumer's own PEL).
+     * Only relevant with a fixed index.worker.consumer; generated names start
+     * empty and their predecessors' PELs are claimed through rebalance().
      */
-    private void reclaimPendingMessages() {
+    private void reprocessOwnPending() {
         try {
-            PendingMessages pending = redisTemplate.opsForStream()
-                    .pending(streamName, groupName, Range.unbounded(), 100);
-            if (pending != null && !pending.isEmpty()) {
-                log.info("IndexWorker found {} pending messages on startup — will reprocess",
-                        pending.size());
+            int reprocessed = 0;
+            for (String stream : List.of(streamName, lowStreamName)) {
+                String after = "0";
+                while (true) {
+                    List<MapRecord<String, Object, Object>> records = redisTemplate.opsForStream()
+                            .read(Consumer.from(groupName, consumerName),
+                                    StreamReadOptions.empty().count(batchSize),
+                                    StreamOffset.create(stream, ReadOffset.from(after)));
+                    if (records == null || records.isEmpty()) break;
+                    for (MapRecord<String, Object, Object> record : records) {
+                        handleWithRetry(record);
+                        reprocessed++;
+                    }
+                    after = records.get(records.size() - 1).getId().getValue();
+                }
+            }
+            if (reprocessed > 0) {
+                log.info("IndexWorker reprocessed {} pending messages from a previous run", reprocessed);
             }
         } catch (Exception ex) {
-            log.warn("could not check pending messages — {}", ex.getMessage());
+            log.warn("could not reprocess pending messages — {}", ex.getMessage());
         }
     }
 
+    private IndexEventPriority priority(MapRecord<String, Object, Object> record) {
+        return lowStreamName.equals(record.getStream()) ? IndexEventPriority.LOW : IndexEventPriority.HIGH;
+    }
+
     private static String str(Map<Object, Object> fields, String key) {
         Object v = fields.get(key);
         return v != null ? v.toString() : "";
     }
-
-    private static void sleep(long ms) {
-        try { Thread.sleep(ms); } catch (InterruptedException ie) {
-            Thread.currentThread().interrupt();
-        }
-    }
 }
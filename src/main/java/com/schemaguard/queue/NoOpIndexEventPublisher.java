@@ -2,18 +2,22 @@ package com.schemaguard.queue;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
 /**
- * No-op implementation of IndexEventPublisher for the 'test' profile.
+ * No-op implementation of IndexEventPublisher for profiles without Redis
+ * that set index.bus.enabled=false — the 'test' profile does.
  *
  * The test profile uses InMemoryKeyValueStore and has no Redis connection.
- * This bean satisfies the IndexEventPublisher dependency in PlanController
- * without attempting any Redis operations.
+ * This bean satisfies the IndexEventPublisher dependency of
+ * InMemoryDocumentOutbox without indexing anything, so tests never reach
+ * for Elasticsearch. Everywhere else InProcessIndexEventBus is used.
  */
 @Component
-@Profile("test")
+@Profile("!redis")
+@ConditionalOnProperty(name = "index.bus.enabled", havingValue = "false")
 public class NoOpIndexEventPublisher implements IndexEventPublisher {
 
     private static final Logger log = LoggerFactory.getLogger(NoOpIndexEventPublisher.class);
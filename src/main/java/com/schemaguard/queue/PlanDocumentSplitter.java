@@ -2,12 +2,21 @@ package com.schemaguard.queue;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.schemaguard.elastic.IndexService;
+import com.schemaguard.elastic.PlanRoutingStrategy;
+import com.schemaguard.util.EtagUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.schemaguard.elastic.PlanIndexConstants.*;
 
 /**
  * Splits a plan document into parent and child nodes for Elasticsearch indexing.
@@ -23,47 +32,133 @@ import java.util.List;
  *   └── linkedPlanServices[0]  (child, objectType = planservice)
  *   └── linkedPlanServices[1]  (child, objectType = planservice)
  *
- * The split is intentionally minimal: only linkedPlanServices are indexed
- * as children. planCostShares and nested cost shares are stored within
- * the parent document and are searchable via dynamic field mapping.
+ * With elastic.index.join-levels=2 (default) the split is intentionally
+ * minimal: only linkedPlanServices are indexed as children. planCostShares
+ * and nested cost shares are stored within the parent document.
+ *
+ * With join-levels=3 every object becomes its own document and is cut out
+ * of the one containing it:
+ *   plan (parent, without planCostShares / linkedPlanServices)
+ *   ├── planCostShares                     (plancostshare)
+ *   └── linkedPlanServices[i]              (child, without the two below)
+ *       ├── linkedService                  (service)
+ *       └── planserviceCostShares          (servicecostshare)
+ * All of them are routed by the plan's objectId (PlanRoutingStrategy).
+ *
+ * With elastic.index.strategy=nested or flattened nothing is split: the
+ * plan is indexed as one document and there are no children.
  */
 @Component
 public class PlanDocumentSplitter {
 
     private static final Logger log = LoggerFactory.getLogger(PlanDocumentSplitter.class);
 
+    /** Top-level array whose entries become child documents. */
+    public static final String CHILDREN_FIELD = "linkedPlanServices";
+
+    /** Plan cost shares — a child document with join-levels=3. */
+    public static final String PLAN_COST_SHARES_FIELD = "planCostShares";
+
+    /** Objects of a planservice that become grandchildren with join-levels=3. */
+    public static final String LINKED_SERVICE_FIELD = "linkedService";
+    public static final String SERVICE_COST_SHARES_FIELD = "planserviceCostShares";
+
     private final ObjectMapper objectMapper;
+    private final PlanRoutingStrategy routing;
 
-    public PlanDocumentSplitter(ObjectMapper objectMapper) {
+    public PlanDocumentSplitter(ObjectMapper objectMapper, PlanRoutingStrategy routing) {
         this.objectMapper = objectMapper;
+        this.routing = routing;
     }
 
-    public record ChildEntry(String childId, JsonNode childDoc) {}
+    /**
+     * One non-plan document: its id, content, join relation and the objectId
+     * of its direct parent in the join (the plan, or a planservice for a
+     * grandchild).
+     */
+    public record ChildEntry(String childId, JsonNode childDoc, String relation, String joinParent) {
+
+        /** Hash of this child's own content — changes only when the child does. */
+        public String etag() {
+            return EtagUtil.sha256Etag(childDoc.toString());
+        }
+    }
 
     /**
      * Extracts child entries from a plan document.
-     * Returns an empty list if the plan has no linkedPlanServices or if parsing fails.
+     * Returns an empty list if the plan has no linkedPlanServices, if parsing
+     * fails, or if the strategy keeps services inside the plan document.
      *
      * @param planJson  raw JSON string of the plan document
      * @return list of child entries, each with its objectId and JsonNode
      */
     public List<ChildEntry> extractChildren(String planJson) {
         List<ChildEntry> children = new ArrayList<>();
+        if (!routing.joined()) return children;
         try {
             JsonNode root = objectMapper.readTree(planJson);
-            JsonNode services = root.get("linkedPlanServices");
+            String planId = root.path("objectId").asText();
+            if (routing.multiLevel()) {
+                add(children, root.get(PLAN_COST_SHARES_FIELD), TYPE_PLAN_COST_SHARE, planId);
+            }
+            JsonNode services = root.get(CHILDREN_FIELD);
             if (services == null || !services.isArray()) {
                 return children;
             }
             for (JsonNode service : services) {
-                JsonNode idNode = service.get("objectId");
-                if (idNode != null && !idNode.isNull()) {
-                    children.add(new ChildEntry(idNode.asText(), service));
+                if (!routing.multiLevel()) {
+                    add(children, service, TYPE_CHILD, planId);
+                    continue;
                 }
+                String serviceId = add(children, without(service, LINKED_SERVICE_FIELD, SERVICE_COST_SHARES_FIELD),
+                        TYPE_CHILD, planId);
+                if (serviceId == null) continue;
+                add(children, service.get(LINKED_SERVICE_FIELD), TYPE_SERVICE, serviceId);
+                add(children, service.get(SERVICE_COST_SHARES_FIELD), TYPE_SERVICE_COST_SHARE, serviceId);
             }
         } catch (Exception ex) {
             log.warn("failed to extract children from plan document — {}", ex.getMessage());
         }
         return children;
     }
+
+    /** extractChildren() as the child documents IndexService takes, keyed by child id. */
+    public Map<String, IndexService.ChildDoc> childDocs(String planJson) {
+        Map<String, IndexService.ChildDoc> docs = new LinkedHashMap<>();
+        for (ChildEntry child : extractChildren(planJson)) {
+            docs.put(child.childId(),
+                    new IndexService.ChildDoc(child.childDoc(), child.etag(), child.relation(), child.joinParent()));
+        }
+        return docs;
+    }
+
+    /** The plan as indexed: without the objects extractChildren() turns into their own documents. */
+    public JsonNode parentDocument(JsonNode plan) {
+        return routing.multiLevel() ? without(plan, PLAN_COST_SHARES_FIELD, CHILDREN_FIELD) : plan;
+    }
+
+    /**
+     * Top-level plan fields whose objects are indexed as child documents — a
+     * change to one of them needs the child diff, not a partial parent update.
+     */
+    public Set<String> childFields() {
+        if (!routing.joined()) return Set.of();
+        return routing.multiLevel() ? Set.of(CHILDREN_FIELD, PLAN_COST_SHARES_FIELD) : Set.of(CHILDREN_FIELD);
+    }
+
+    /** Adds node as a child entry when it is an object with an objectId; returns that id. */
+    private static String add(List<ChildEntry> children, JsonNode node, String relation, String joinParent) {
+        if (node == null || !node.isObject()) return null;
+        JsonNode idNode = node.get("objectId");
+        if (idNode == null || idNode.isNull()) return null;
+        children.add(new ChildEntry(idNode.asText(), node, relation, joinParent));
+        return idNode.asText();
+    }
+
+    private static JsonNode without(JsonNode node, String... fields) {
+        if (!node.isObject()) return node;
+        ObjectNode copy = ((ObjectNode) node).deepCopy();
+        copy.remove(List.of(fields));
+        return copy;
+    }
 }
@@ -1,14 +1,24 @@
 package com.schemaguard.queue;
 
+import com.schemaguard.jfr.IndexEventPublishEvent;
+import com.schemaguard.timing.Phase;
+import com.schemaguard.timing.RequestTimings;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
 import org.springframework.data.redis.connection.stream.StreamRecords;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Redis Streams implementation of IndexEventPublisher.
  *
@@ -19,14 +29,25 @@ import org.springframework.stereotype.Component;
  * string key–value pairs, making them easy to inspect with:
  *   redis-cli XRANGE schemaguard:index-events - +
  *
+ * Events go to index.events.stream (HIGH) or index.events.low-stream (LOW)
+ * according to IndexEvent.priority, so bulk and backfill traffic never
+ * queues in front of interactive edits.
+ *
  * XADD semantics:
  * - auto-generates a stream entry ID ("*")
  * - entries are appended; the stream is created automatically on first write
- * - stream is bounded by MAX_LEN to prevent unbounded growth in demo
+ * - the stream is not capped here; StreamTrimmer removes entries once
+ *   every consumer group has ACKed them
  *
  * Publishing is non-blocking and non-fatal: any exception is caught,
  * logged, and swallowed so the API response is never affected by a
- * stream write failure.
+ * stream write failure. PlanController does not publish through here —
+ * its writes use RedisDocumentOutbox, which XADDs in the same Lua script
+ * as the document write.
+ *
+ * Each XADD is timed as schemaguard.publish{operation, outcome=success|failure};
+ * the failure count is the only signal of events that never reached the stream.
+ * It is also recorded as a schemaguard.IndexEventPublish JFR event.
  */
 @Component
 @Profile("redis")
@@ -34,33 +55,74 @@ public class RedisStreamEventPublisher implements IndexEventPublisher {
 
     private static final Logger log = LoggerFactory.getLogger(RedisStreamEventPublisher.class);
 
-    /** Maximum number of entries kept in the stream (approximate trim). */
-    private static final long MAX_LEN = 1000L;
-
     private final StringRedisTemplate redisTemplate;
+    private final Map<String, Timer> successTimers = new HashMap<>();
+    private final Map<String, Timer> failureTimers = new HashMap<>();
 
     @Value("${index.events.stream:schemaguard:index-events}")
     private String streamName;
 
-    public RedisStreamEventPublisher(StringRedisTemplate redisTemplate) {
+    @Value("${index.events.low-stream:schemaguard:index-events:low}")
+    private String lowStreamName;
+
+    public RedisStreamEventPublisher(StringRedisTemplate redisTemplate, MeterRegistry registry) {
         this.redisTemplate = redisTemplate;
+        for (IndexEventOperation op : IndexEventOperation.values()) {
+            successTimers.put(op.name(), publishTimer(registry, op, "success"));
+            failureTimers.put(op.name(), publishTimer(registry, op, "failure"));
+        }
     }
 
     @Override
     public void publish(IndexEvent event) {
+        IndexEventPublishEvent jfr = new IndexEventPublishEvent();
+        jfr.begin();
+        long phase = RequestTimings.start();
+        long start = System.nanoTime();
+        RecordId recordId = null;
+        String stream = IndexEventPriority.LOW.name().equals(event.priority()) ? lowStreamName : streamName;
         try {
             MapRecord<String, String, String> record = StreamRecords
                     .newRecord()
-                    .in(streamName)
+                    .in(stream)
                     .ofMap(event.toStreamFields());
 
-            redisTemplate.opsForStream().add(record);
+            recordId = redisTemplate.opsForStream().add(record);
+
+            record(successTimers, event, start);
 
             log.info("published {} event for id={} etag={} stream={}",
-                    event.operation(), event.documentId(), event.etag(), streamName);
+                    event.operation(), event.documentId(), event.etag(), stream);
         } catch (Exception ex) {
+            record(failureTimers, event, start);
             log.warn("failed to publish {} event for id={} — {}",
                     event.operation(), event.documentId(), ex.getMessage());
+        } finally {
+            RequestTimings.stop(Phase.PUBLISH, phase);
+            jfr.end();
+            if (jfr.shouldCommit()) {
+                jfr.operation = event.operation();
+                jfr.objectId = event.documentId();
+                jfr.etag = event.etag();
+                jfr.streamId = recordId != null ? recordId.getValue() : null;
+                jfr.success = recordId != null;
+                jfr.commit();
+            }
+        }
+    }
+
+    private static void record(Map<String, Timer> timers, IndexEvent event, long startNanos) {
+        Timer timer = timers.get(event.operation());
+        if (timer != null) {
+            timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
         }
     }
+
+    private static Timer publishTimer(MeterRegistry registry, IndexEventOperation op, String outcome) {
+        return Timer.builder("schemaguard.publish")
+                .description("Index event XADD latency")
+                .tag("operation", op.name())
+                .tag("outcome", outcome)
+                .register(registry);
+    }
 }
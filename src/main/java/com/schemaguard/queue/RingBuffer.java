@@ -0,0 +1,101 @@
+package com.schemaguard.queue;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free multi-producer / single-consumer ring buffer.
+ *
+ * Every slot carries a sequence number (the array-based bounded queue
+ * described by D. Vyukov):
+ *
+ *   sequence == position       slot is free for the producer claiming position
+ *   sequence == position + 1   slot holds the element published at position
+ *
+ * Producers claim a position with one CAS on tail, write the element and
+ * then release the slot by publishing its sequence; the single consumer
+ * reads the slot at head once its sequence says it is filled and hands it
+ * back to the producers for the next lap (position + capacity). There are
+ * no locks and no allocation per element, and a full buffer makes offer()
+ * fail instead of blocking — the caller decides how to wait.
+ *
+ * poll() / drainTo() must only ever be called from one thread.
+ */
+final class RingBuffer<E> {
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    /** capacity is rounded up to the next power of two. */
+    RingBuffer(int requestedCapacity) {
+        if (requestedCapacity < 2) throw new IllegalArgumentException("capacity must be at least 2");
+        int size = Integer.highestOneBit(requestedCapacity - 1) << 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /** Publishes element, or returns false when the buffer is full. Safe for any number of threads. */
+    boolean offer(E element) {
+        long position = tail.get();
+        while (true) {
+            int slot = (int) (position & mask);
+            long diff = sequences.get(slot) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(slot, element);
+                    sequences.set(slot, position + 1);    // release: element visible before the sequence
+                    return true;
+                }
+                position = tail.get();
+            } else if (diff < 0) {
+                return false;                              // consumer is a whole lap behind — full
+            } else {
+                position = tail.get();                     // another producer took this position
+            }
+        }
+    }
+
+    /** Next element or null when empty. Single consumer only. */
+    E poll() {
+        long position = head.get();
+        int slot = (int) (position & mask);
+        if (sequences.get(slot) != position + 1) return null;
+        E element = elements.get(slot);
+        elements.lazySet(slot, null);
+        sequences.set(slot, position + capacity);
+        head.lazySet(position + 1);
+        return element;
+    }
+
+    /** Moves up to max available elements into target; returns how many. Single consumer only. */
+    int drainTo(List<E> target, int max) {
+        int drained = 0;
+        E element;
+        while (drained < max && (element = poll()) != null) {
+            target.add(element);
+            drained++;
+        }
+        return drained;
+    }
+
+    /** Elements published but not yet consumed (a snapshot under concurrent use). */
+    int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    int capacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,285 @@
+package com.schemaguard.queue;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.PendingMessagesSummary;
+import org.springframework.data.redis.connection.stream.StreamInfo;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the index-events streams (both priority lanes) bounded without
+ * dropping unconsumed events.
+ *
+ * A fixed MAXLEN would discard entries a slow or stopped worker has not
+ * read yet. Instead, every index.events.trim-interval-ms this computes the
+ * oldest id any consumer group still needs:
+ *
+ *   per group:  oldest PEL entry (delivered, not ACKed), or the entry right
+ *               after last-delivered-id when nothing is pending
+ *   stream:     the minimum across all groups
+ *
+ * and runs XTRIM <stream> MINID ~ <that id>. Approximate ("~") trimming only
+ * removes whole radix-tree nodes, so it is cheap and never removes more than
+ * asked — it may keep a few already-consumed entries until the next run.
+ * With index.events.retention-ms > 0, consumed entries younger than that are
+ * kept as well (for XRANGE debugging / replay).
+ *
+ * An entry that never gets ACKed would pin that horizon forever: a poison
+ * event whose retries are exhausted stays in its consumer's PEL, and so does
+ * the entry of a dead consumer nobody claims. Before computing the horizon,
+ * the oldest index.events.dead-letter-scan entries of each group's PEL are
+ * checked, and one delivered index.events.dead-letter-after-deliveries times
+ * or idle for index.events.dead-letter-after-idle-ms is copied to
+ * index.events.dead-letter-stream (with its origin stream, group, id,
+ * consumer and delivery count) and XACKed there. 0 disables either bound.
+ * The dead-letter stream has no consumer group and is never trimmed — it is
+ * for inspection and manual replay.
+ *
+ * A stream without consumer groups is never trimmed — nobody has read it.
+ * Each lane is trimmed against its own groups; the gauges report the older
+ * of the two lanes.
+ *
+ * Metrics:
+ *   schemaguard.stream.trimmed           Counter — entries removed by XTRIM
+ *   schemaguard.stream.oldest.entry.age  Gauge (seconds) — age of the first retained entry
+ *   schemaguard.stream.trim.horizon.age  Gauge (seconds) — age of the last MINID used
+ *   schemaguard.stream.dead_lettered     Counter — pending entries moved to the dead-letter stream
+ *
+ * At steady state the oldest retained entry stays roughly at
+ * max(worker lag, retention) old, so stream memory stays flat.
+ *
+ * Active only on the 'redis' profile.
+ */
+@Component
+@Profile("redis")
+public class StreamTrimmer {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamTrimmer.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final Counter trimmed;
+    private final Counter deadLettered;
+    private final AtomicLong oldestEntryMillis = new AtomicLong(-1);
+    private final AtomicLong horizonMillis = new AtomicLong(-1);
+
+    @Value("${index.events.stream:schemaguard:index-events}")
+    private String streamName;
+
+    @Value("${index.events.low-stream:schemaguard:index-events:low}")
+    private String lowStreamName;
+
+    @Value("${index.events.trim-enabled:true}")
+    private boolean enabled;
+
+    @Value("${index.events.retention-ms:0}")
+    private long retentionMs;
+
+    @Value("${index.events.dead-letter-stream:schemaguard:index-events:dead}")
+    private String deadLetterStream;
+
+    @Value("${index.events.dead-letter-after-deliveries:5}")
+    private long deadLetterAfterDeliveries;
+
+    @Value("${index.events.dead-letter-after-idle-ms:3600000}")
+    private long deadLetterAfterIdleMs;
+
+    @Value("${index.events.dead-letter-scan:100}")
+    private int deadLetterScan;
+
+    public StreamTrimmer(StringRedisTemplate redisTemplate, MeterRegistry registry) {
+        this.redisTemplate = redisTemplate;
+        this.trimmed = Counter.builder("schemaguard.stream.trimmed")
+                .description("Index-events stream entries removed by lag-aware XTRIM MINID")
+                .register(registry);
+        this.deadLettered = Counter.builder("schemaguard.stream.dead_lettered")
+                .description("Pending entries moved to the dead-letter stream so they stop pinning the trim horizon")
+                .register(registry);
+        Gauge.builder("schemaguard.stream.oldest.entry.age", oldestEntryMillis, StreamTrimmer::ageSeconds)
+                .description("Age of the oldest entry still retained in the index-events stream")
+                .baseUnit("seconds")
+                .register(registry);
+        Gauge.builder("schemaguard.stream.trim.horizon.age", horizonMillis, StreamTrimmer::ageSeconds)
+                .description("Age of the MINID used by the last trim — nothing newer than this is removed")
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    @Scheduled(fixedDelayString = "${index.events.trim-interval-ms:10000}")
+    public void trim() {
+        if (!enabled) return;
+        long horizon = -1;
+        long oldest = 0;
+        for (String stream : List.of(streamName, lowStreamName)) {
+            try {
+                String minId = safeMinId(stream);
+                if (minId != null) {
+                    if (retentionMs > 0) {
+                        minId = minStreamId(minId, (System.currentTimeMillis() - retentionMs) + "-0");
+                    }
+                    long millis = streamIdMillis(minId);
+                    horizon = horizon < 0 ? millis : Math.min(horizon, millis);
+                    long removed = xtrimMinId(stream, minId);
+                    if (removed > 0) {
+                        trimmed.increment(removed);
+                        log.debug("trimmed {} entries below {} from {}", removed, minId, stream);
+                    }
+                }
+                long first = oldestEntryMillis(stream);
+                if (first > 0) oldest = oldest == 0 ? first : Math.min(oldest, first);
+            } catch (Exception ex) {
+                log.debug("could not trim stream {} — {}", stream, ex.getMessage());
+            }
+        }
+        if (horizon >= 0) horizonMillis.set(horizon);
+        oldestEntryMillis.set(oldest);
+    }
+
+    /** Oldest id still needed by any consumer group, or null when the stream must not be trimmed. */
+    private String safeMinId(String stream) {
+        StreamInfo.XInfoGroups groups = redisTemplate.opsForStream().groups(stream);
+        if (groups == null || groups.isEmpty()) return null;
+
+        List<GroupPosition> positions = new ArrayList<>();
+        for (StreamInfo.XInfoGroup group : groups) {
+            String oldestPending = null;
+            if (group.pendingCount() != null && group.pendingCount() > 0) {
+                deadLetter(stream, group.groupName());
+                PendingMessagesSummary summary = redisTemplate.opsForStream().pending(stream, group.groupName());
+                if (summary != null && summary.getTotalPendingMessages() > 0) {
+                    oldestPending = summary.minMessageId();
+                }
+            }
+            positions.add(new GroupPosition(group.lastDeliveredId(), oldestPending));
+        }
+        return safeMinId(positions);
+    }
+
+    /**
+     * Moves the group's stuck pending entries to the dead-letter stream and
+     * ACKs them. Only the head of the PEL is scanned — those are the entries
+     * holding MINID back.
+     */
+    private void deadLetter(String stream, String group) {
+        PendingMessages pending = redisTemplate.opsForStream()
+                .pending(stream, group, Range.unbounded(), deadLetterScan);
+        if (pending == null) return;
+        for (PendingMessage message : pending) {
+            if (!isStuck(message.getTotalDeliveryCount(), message.getElapsedTimeSinceLastDelivery().toMillis(),
+                    deadLetterAfterDeliveries, deadLetterAfterIdleMs)) {
+                continue;
+            }
+            String id = message.getIdAsString();
+            List<MapRecord<String, Object, Object>> entry = redisTemplate.opsForStream()
+                    .range(stream, Range.closed(id, id));
+            if (entry != null && !entry.isEmpty()) {
+                Map<Object, Object> fields = new LinkedHashMap<>(entry.get(0).getValue());
+                fields.put("deadStream",     stream);
+                fields.put("deadGroup",      group);
+                fields.put("deadId",         id);
+                fields.put("deadConsumer",   message.getConsumerName());
+                fields.put("deadDeliveries", Long.toString(message.getTotalDeliveryCount()));
+                redisTemplate.opsForStream().add(deadLetterStream, fields);
+            }
+            redisTemplate.opsForStream().acknowledge(stream, group, id);
+            deadLettered.increment();
+            log.warn("dead-lettered {} {} of group {} (consumer {}, {} deliveries, idle {} ms) to {}",
+                    stream, id, group, message.getConsumerName(), message.getTotalDeliveryCount(),
+                    message.getElapsedTimeSinceLastDelivery().toMillis(), deadLetterStream);
+        }
+    }
+
+    private long xtrimMinId(String stream, String minId) {
+        Object reply = redisTemplate.execute((RedisCallback<Object>) connection -> connection.execute("XTRIM",
+                bytes(stream), bytes("MINID"), bytes("~"), bytes(minId)));
+        return reply instanceof Number n ? n.longValue() : 0;
+    }
+
+    /** Millis of the first retained entry, 0 when the stream is empty. */
+    private long oldestEntryMillis(String stream) {
+        List<MapRecord<String, Object, Object>> first = redisTemplate.opsForStream()
+                .range(stream, Range.unbounded(), Limit.limit().count(1));
+        return first == null || first.isEmpty() ? 0 : streamIdMillis(first.get(0).getId().getValue());
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Trim horizon — pure functions, unit tested
+    // ─────────────────────────────────────────────────────────────────────────
+
+    /** A consumer group's read position: last-delivered-id and its oldest PEL id (null if none). */
+    record GroupPosition(String lastDeliveredId, String oldestPendingId) {}
+
+    /**
+     * MINID keeping every entry some group has not ACKed or not yet received.
+     * Entries strictly below the returned id are safe to remove.
+     */
+    static String safeMinId(List<GroupPosition> groups) {
+        String min = null;
+        for (GroupPosition g : groups) {
+            String needed = g.oldestPendingId() != null
+                    ? g.oldestPendingId()
+                    : nextStreamId(g.lastDeliveredId() != null ? g.lastDeliveredId() : "0-0");
+            min = min == null ? needed : minStreamId(min, needed);
+        }
+        return min;
+    }
+
+    /** A pending entry past either bound (0 = no bound) will not be ACKed by its consumer. */
+    static boolean isStuck(long deliveries, long idleMs, long maxDeliveries, long maxIdleMs) {
+        return (maxDeliveries > 0 && deliveries >= maxDeliveries)
+                || (maxIdleMs > 0 && idleMs >= maxIdleMs);
+    }
+
+    static String nextStreamId(String id) {
+        long[] p = parse(id);
+        return p[1] == Long.MAX_VALUE ? (p[0] + 1) + "-0" : p[0] + "-" + (p[1] + 1);
+    }
+
+    static String minStreamId(String a, String b) {
+        long[] x = parse(a);
+        long[] y = parse(b);
+        int c = x[0] != y[0] ? Long.compare(x[0], y[0]) : Long.compare(x[1], y[1]);
+        return c <= 0 ? a : b;
+    }
+
+    private static long[] parse(String id) {
+        int dash = id.indexOf('-');
+        if (dash < 0) return new long[] {Long.parseLong(id), 0};
+        return new long[] {Long.parseLong(id.substring(0, dash)), Long.parseLong(id.substring(dash + 1))};
+    }
+
+    private static long streamIdMillis(String id) {
+        return parse(id)[0];
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** NaN until the first run; 0 when the stream is empty. */
+    private static double ageSeconds(AtomicLong millis) {
+        long v = millis.get();
+        if (v < 0) return Double.NaN;
+        if (v == 0) return 0;
+        return Math.max(0, System.currentTimeMillis() - v) / 1000.0;
+    }
+}
@@ -4,6 +4,8 @@ import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import com.schemaguard.timing.Phase;
+import com.schemaguard.timing.RequestTimings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.security.core.Authentication;
@@ -20,6 +22,9 @@ import java.io.IOException;
  *   1. Logs them for audit/tracing purposes.
  *   2. Adds X-User-Sub and X-User-Email response headers for demo visibility.
  *
+ * Also closes the Server-Timing "jwt" phase: everything since the request
+ * entered ServerTimingFilter was spent in the security chain.
+ *
  * Only runs when a valid authenticated JWT principal is present.
  * No user data is stored anywhere — purely in-request extraction.
  */
@@ -36,6 +41,8 @@ public class JwtClaimsLogger extends OncePerRequestFilter {
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
 
         if (auth != null && auth.getPrincipal() instanceof Jwt jwt) {
+            RequestTimings.markSinceRequestStart(Phase.JWT);
+
             String sub   = jwt.getClaimAsString("sub");
             String email = jwt.getClaimAsString("email");
 
@@ -0,0 +1,30 @@
+package com.schemaguard.store;
+
+import java.util.List;
+
+/**
+ * Ids of plans written since a point in time — what a reindex copies again
+ * once its snapshot pass is done, since writes keep landing on the old index
+ * while it runs.
+ *
+ * open() marks the start; poll() returns each id written after it (at least
+ * once, possibly more often) until close(). Only one feed is open at a time.
+ * Callers re-read the document from KV for every id, so a returned id only
+ * says "look again", never what changed.
+ *
+ * Implementations:
+ *   RedisDocumentChangeFeed     — 'redis' profile, a temporary consumer group on
+ *                                 the index-events streams (both lanes)
+ *   InMemoryDocumentChangeFeed  — other profiles, fed by InMemoryDocumentOutbox
+ */
+public interface DocumentChangeFeed {
+
+    /** Starts recording writes from now on; resets a feed left open by a previous run. */
+    void open();
+
+    /** Up to max distinct ids written since open() and not returned yet; empty when caught up. */
+    List<String> poll(int max);
+
+    /** Stops recording and releases what open() set up. */
+    void close();
+}
@@ -0,0 +1,94 @@
+package com.schemaguard.store;
+
+import com.schemaguard.model.StoredDocument;
+import com.schemaguard.queue.IndexEventOperation;
+
+/**
+ * Transactional outbox for plan writes: the KV write and its index event
+ * are applied together or not at all.
+ *
+ * PlanController routes every create / replace / patch / delete through
+ * here instead of KeyValueStore + IndexEventPublisher, so a write that
+ * reached the store can never lose the event that keeps Elasticsearch in
+ * sync. Failures surface as exceptions (→ 500) with nothing applied,
+ * rather than being logged and swallowed after the fact.
+ *
+ * The optional expectedEtag is checked inside the same atomic step, so
+ * If-Match preconditions cannot race with a concurrent writer.
+ *
+ * Indexing.DEFER (WriteAdmission's "degrade" policy) writes the document
+ * without an event and records its id in a deferred set instead, in the
+ * same atomic step. replayDeferred() later publishes the current state of
+ * each deferred id, so search catches up once the backlog has drained.
+ *
+ * Implementations:
+ *   RedisDocumentOutbox     — 'redis' profile, one Lua script (GET, SET/DEL, XADD)
+ *   InMemoryDocumentOutbox  — other profiles, per-key ConcurrentHashMap.compute
+ */
+public interface DocumentOutbox {
+
+    /** Stores a new document and publishes UPSERT. ALREADY_EXISTS if the id is taken. */
+    Result create(String objectId, String json, Indexing indexing);
+
+    /**
+     * Replaces an existing document and publishes operation (UPSERT or PATCH).
+     * NOT_FOUND if absent; ETAG_MISMATCH if expectedEtag is non-null and stale.
+     */
+    Result replace(String objectId, String json, String expectedEtag,
+                   IndexEventOperation operation, Indexing indexing);
+
+    /**
+     * Replaces an existing document with the result of a merge patch and
+     * publishes PATCH. The event carries mergePatch (null: none) and
+     * expectedEtag as its base, so the indexer can apply the patch as a
+     * partial update. expectedEtag is required here — the patch only
+     * describes the change from that version.
+     */
+    Result patch(String objectId, String json, String expectedEtag, String mergePatch, Indexing indexing);
+
+    /**
+     * Deletes a document and publishes DELETE carrying its last etag.
+     * NOT_FOUND if absent; ETAG_MISMATCH if expectedEtag is non-null and stale.
+     */
+    Result delete(String objectId, String expectedEtag, Indexing indexing);
+
+    /** Ids written with Indexing.DEFER whose event has not been replayed yet. */
+    long deferredCount();
+
+    /**
+     * Publishes one event for each of up to max deferred ids — UPSERT with the
+     * current etag, or DELETE if the document is gone — on the LOW lane, and
+     * removes them from the deferred set, atomically per id. Returns the number
+     * of events published.
+     */
+    int replayDeferred(int max);
+
+    /**
+     * What happens to a write's index event: PUBLISH on the interactive (HIGH)
+     * lane, BACKFILL on the bulk (LOW) lane, or DEFER it to the deferred set.
+     * READ_YOUR_WRITES publishes like PUBLISH, with the event asking the
+     * indexer for refresh=wait_for (see IndexRefreshPolicy).
+     */
+    enum Indexing { PUBLISH, READ_YOUR_WRITES, BACKFILL, DEFER }
+
+    enum Status { APPLIED, ALREADY_EXISTS, NOT_FOUND, ETAG_MISMATCH }
+
+    /**
+     * Outcome of a write. document is the stored version for an applied
+     * create/replace, null otherwise.
+     */
+    record Result(Status status, StoredDocument document) {
+
+        public static Result applied(StoredDocument document) {
+            return new Result(Status.APPLIED, document);
+        }
+
+        public static Result rejected(Status status) {
+            return new Result(status, null);
+        }
+
+        public boolean isApplied() {
+            return status == Status.APPLIED;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.schemaguard.store;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * In-memory DocumentChangeFeed for profiles without Redis. InMemoryDocumentOutbox
+ * calls record() for every write it applies (and every deferred id it
+ * replays) while the feed is open; single node, so that sees every write.
+ */
+@Component
+@Profile("!redis")
+public class InMemoryDocumentChangeFeed implements DocumentChangeFeed {
+
+    private final Set<String> changed = new LinkedHashSet<>();
+    private volatile boolean open;
+
+    @Override
+    public synchronized void open() {
+        changed.clear();
+        open = true;
+    }
+
+    void record(String objectId) {
+        if (!open) return;
+        synchronized (this) {
+            if (open) changed.add(objectId);
+        }
+    }
+
+    @Override
+    public synchronized List<String> poll(int max) {
+        List<String> ids = new ArrayList<>(Math.min(max, changed.size()));
+        Iterator<String> it = changed.iterator();
+        while (it.hasNext() && ids.size() < max) {
+            ids.add(it.next());
+            it.remove();
+        }
+        return ids;
+    }
+
+    @Override
+    public synchronized void close() {
+        open = false;
+        changed.clear();
+    }
+}
@@ -0,0 +1,195 @@
+package com.schemaguard.store;
+
+import com.schemaguard.model.StoredDocument;
+import com.schemaguard.queue.IndexEvent;
+import com.schemaguard.queue.IndexEventOperation;
+import com.schemaguard.queue.IndexEventPriority;
+import com.schemaguard.queue.IndexEventPublisher;
+import com.schemaguard.util.EtagUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory DocumentOutbox for profiles without Redis.
+ *
+ * Each write runs inside InMemoryKeyValueStore.compute(), i.e. under the
+ * map's per-key lock, and publishes its event from within that lock. If
+ * publishNow() throws, compute() aborts and the entry is left unchanged —
+ * the same all-or-nothing guarantee the Lua script gives on Redis, and
+ * events for one id are published in write order.
+ *
+ * That lock is a ConcurrentHashMap bin lock, shared with other ids, so
+ * nothing may wait inside it: a write first waits for room in the publisher
+ * (awaitCapacity(), no lock held) and then publishes without waiting — if
+ * the room was taken meanwhile the write fails fast with a 503.
+ *
+ * Deferred ids (Indexing.DEFER) are kept in a concurrent set; they are added
+ * and replayed under the same per-key lock as the writes themselves.
+ *
+ * Versions come from one AtomicLong seeded with the start time in epoch
+ * millis — the in-memory counterpart of the Redis INCR counter — and are
+ * taken inside the per-key lock, so they grow in write order per id.
+ *
+ * Every published event is also recorded in InMemoryDocumentChangeFeed, which
+ * ignores it unless a reindex has the feed open.
+ */
+@Component
+@Profile("!redis")
+public class InMemoryDocumentOutbox implements DocumentOutbox {
+
+    private final InMemoryKeyValueStore store;
+    private final IndexEventPublisher publisher;
+    private final InMemoryDocumentChangeFeed changeFeed;
+    private final Set<String> deferred = ConcurrentHashMap.newKeySet();
+    private final AtomicLong versions = new AtomicLong(System.currentTimeMillis());
+
+    public InMemoryDocumentOutbox(InMemoryKeyValueStore store, IndexEventPublisher publisher) {
+        this(store, publisher, new InMemoryDocumentChangeFeed());
+    }
+
+    @Autowired
+    public InMemoryDocumentOutbox(InMemoryKeyValueStore store, IndexEventPublisher publisher,
+                                  InMemoryDocumentChangeFeed changeFeed) {
+        this.store = store;
+        this.publisher = publisher;
+        this.changeFeed = changeFeed;
+    }
+
+    @Override
+    public Result create(String objectId, String json, Indexing indexing) {
+        awaitCapacity(indexing);
+        Result[] result = new Result[1];
+        store.compute("outbox_create", objectId, current -> {
+            if (current != null) {
+                result[0] = Result.rejected(Status.ALREADY_EXISTS);
+                return current;
+            }
+            StoredDocument doc = newDocument(objectId, json);
+            publish(indexing, IndexEventOperation.UPSERT, objectId, doc.getEtag(), doc.getVersion(), null, null);
+            result[0] = Result.applied(doc);
+            return doc;
+        });
+        return result[0];
+    }
+
+    @Override
+    public Result replace(String objectId, String json, String expectedEtag,
+                          IndexEventOperation operation, Indexing indexing) {
+        return replace("outbox_replace", objectId, json, expectedEtag, operation, null, indexing);
+    }
+
+    @Override
+    public Result patch(String objectId, String json, String expectedEtag, String mergePatch, Indexing indexing) {
+        return replace("outbox_patch", objectId, json, expectedEtag, IndexEventOperation.PATCH, mergePatch, indexing);
+    }
+
+    private Result replace(String kvOperation, String objectId, String json, String expectedEtag,
+                           IndexEventOperation operation, String mergePatch, Indexing indexing) {
+        awaitCapacity(indexing);
+        Result[] result = new Result[1];
+        store.compute(kvOperation, objectId, current -> {
+            Status rejected = check(current, expectedEtag);
+            if (rejected != null) {
+                result[0] = Result.rejected(rejected);
+                return current;
+            }
+            StoredDocument doc = newDocument(objectId, json);
+            publish(indexing, operation, objectId, doc.getEtag(), doc.getVersion(), current.getEtag(), mergePatch);
+            result[0] = Result.applied(doc);
+            return doc;
+        });
+        return result[0];
+    }
+
+    @Override
+    public Result delete(String objectId, String expectedEtag, Indexing indexing) {
+        awaitCapacity(indexing);
+        Result[] result = new Result[1];
+        store.compute("outbox_delete", objectId, current -> {
+            Status rejected = check(current, expectedEtag);
+            if (rejected != null) {
+                result[0] = Result.rejected(rejected);
+                return current;
+            }
+            publish(indexing, IndexEventOperation.DELETE, objectId, current.getEtag(), versions.incrementAndGet(),
+                    null, null);
+            result[0] = Result.applied(null);
+            return null;
+        });
+        return result[0];
+    }
+
+    @Override
+    public long deferredCount() {
+        return deferred.size();
+    }
+
+    @Override
+    public int replayDeferred(int max) {
+        List<String> ids = new ArrayList<>(Math.min(max, deferred.size()));
+        for (String id : deferred) {
+            if (ids.size() >= max) break;
+            ids.add(id);
+        }
+        int replayed = 0;
+        for (String id : ids) {
+            boolean[] published = new boolean[1];
+            publisher.awaitCapacity();
+            store.compute("outbox_replay", id, current -> {
+                if (!deferred.contains(id)) return current;
+                // a deferred delete's version was never published — take a fresh one
+                publisher.publishNow(current != null
+                        ? IndexEvent.of(IndexEventOperation.UPSERT, id, current.getEtag(), IndexEventPriority.LOW)
+                                .withVersion(current.getVersion())
+                        : IndexEvent.of(IndexEventOperation.DELETE, id, "", IndexEventPriority.LOW)
+                                .withVersion(versions.incrementAndGet()));
+                deferred.remove(id);
+                changeFeed.record(id);
+                published[0] = true;
+                return current;
+            });
+            if (published[0]) replayed++;
+        }
+        return replayed;
+    }
+
+    private void publish(Indexing indexing, IndexEventOperation operation, String objectId, String etag,
+                         long version, String baseEtag, String mergePatch) {
+        switch (indexing) {
+            case PUBLISH, READ_YOUR_WRITES -> publisher.publishNow(IndexEvent.of(operation, objectId, etag)
+                    .withVersion(version).withPatch(baseEtag, mergePatch)
+                    .withRefresh(indexing == Indexing.READ_YOUR_WRITES));
+            case BACKFILL -> publisher.publishNow(IndexEvent.of(operation, objectId, etag, IndexEventPriority.LOW)
+                    .withVersion(version).withPatch(baseEtag, mergePatch));
+            case DEFER -> {
+                deferred.add(objectId);
+                return;
+            }
+        }
+        changeFeed.record(objectId);
+    }
+
+    /** Waits for publisher room before the per-key lock is taken; a deferred write publishes nothing. */
+    private void awaitCapacity(Indexing indexing) {
+        if (indexing != Indexing.DEFER) publisher.awaitCapacity();
+    }
+
+    private static Status check(StoredDocument current, String expectedEtag) {
+        if (current == null) return Status.NOT_FOUND;
+        if (expectedEtag != null && !expectedEtag.equals(current.getEtag())) return Status.ETAG_MISMATCH;
+        return null;
+    }
+
+    private StoredDocument newDocument(String objectId, String json) {
+        return new StoredDocument(objectId, json, EtagUtil.sha256Etag(json), Instant.now())
+                .withVersion(versions.incrementAndGet());
+    }
+}
@@ -2,51 +2,122 @@ package com.schemaguard.store;
 
 import com.schemaguard.model.StoredDocument;
 import com.schemaguard.util.EtagUtil;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Primary;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 
 @Component
 @Primary
 @Profile("!redis")
 public class InMemoryKeyValueStore implements KeyValueStore {
 
+    private static final String STORE = "memory";
+
     private final ConcurrentHashMap<String, StoredDocument> map = new ConcurrentHashMap<>();
+    private final KeyValueStoreMetrics metrics;
+
+    public InMemoryKeyValueStore() {
+        this(KeyValueStoreMetrics.unregistered());
+    }
+
+    @Autowired
+    public InMemoryKeyValueStore(KeyValueStoreMetrics metrics) {
+        this.metrics = metrics;
+    }
 
     @Override
     public boolean create(String objectId, String jsonString) {
-        String etag = EtagUtil.sha256Etag(jsonString);
-        StoredDocument doc = new StoredDocument(objectId, jsonString, etag, Instant.now());
-        return map.putIfAbsent(objectId, doc) == null;
+        return metrics.record(STORE, "create", () -> {
+            String etag = EtagUtil.sha256Etag(jsonString);
+            StoredDocument doc = new StoredDocument(objectId, jsonString, etag, Instant.now());
+            return map.putIfAbsent(objectId, doc) == null;
+        });
     }
 
     @Override
     public Optional<StoredDocument> get(String objectId) {
-        return Optional.ofNullable(map.get(objectId));
+        return metrics.record(STORE, "get", () -> Optional.ofNullable(map.get(objectId)));
     }
 
     @Override
     public boolean update(String objectId, String jsonString) {
-        if (!map.containsKey(objectId)) {
-            return false;
-        }
-        String etag = EtagUtil.sha256Etag(jsonString);
-        StoredDocument updated = new StoredDocument(objectId, jsonString, etag, Instant.now());
-        map.put(objectId, updated);
-        return true;
+        return metrics.record(STORE, "update", () -> {
+            if (!map.containsKey(objectId)) {
+                return false;
+            }
+            String etag = EtagUtil.sha256Etag(jsonString);
+            StoredDocument updated = new StoredDocument(objectId, jsonString, etag, Instant.now());
+            map.put(objectId, updated);
+            return true;
+        });
     }
 
     @Override
     public boolean delete(String objectId) {
-        return map.remove(objectId) != null;
+        return metrics.record(STORE, "delete", () -> map.remove(objectId) != null);
     }
 
     @Override
     public boolean exists(String objectId) {
-        return map.containsKey(objectId);
+        return metrics.record(STORE, "exists", () -> map.containsKey(objectId));
+    }
+
+    @Override
+    public Map<String, StoredDocument> getAll(List<String> objectIds) {
+        return metrics.record(STORE, "get_all", () -> {
+            Map<String, StoredDocument> found = new LinkedHashMap<>();
+            for (String id : objectIds) {
+                StoredDocument doc = map.get(id);
+                if (doc != null) found.put(id, doc);
+            }
+            return found;
+        });
+    }
+
+    @Override
+    public Map<String, String> getEtags(List<String> objectIds) {
+        return metrics.record(STORE, "get_etags", () -> {
+            Map<String, String> etags = new LinkedHashMap<>();
+            for (String id : objectIds) {
+                StoredDocument doc = map.get(id);
+                if (doc != null) etags.put(id, doc.getEtag());
+            }
+            return etags;
+        });
+    }
+
+    /** ConcurrentHashMap iteration is weakly consistent — the same contract as SCAN. */
+    @Override
+    public void scanIds(int batchSize, Consumer<List<String>> consumer) {
+        List<String> batch = new ArrayList<>(batchSize);
+        for (String id : map.keySet()) {
+            batch.add(id);
+            if (batch.size() >= batchSize) {
+                consumer.accept(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) consumer.accept(batch);
+    }
+
+    /**
+     * Atomically replaces the entry for objectId with change(current); a null
+     * result removes it. Runs under the map's per-key lock, so side effects in
+     * change (InMemoryDocumentOutbox publishing) happen exactly when the write
+     * does — and not at all if change throws.
+     */
+    StoredDocument compute(String operation, String objectId, UnaryOperator<StoredDocument> change) {
+        return metrics.record(STORE, operation, () -> map.compute(objectId, (id, current) -> change.apply(current)));
     }
 }
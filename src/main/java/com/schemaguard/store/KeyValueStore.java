@@ -2,7 +2,10 @@ package com.schemaguard.store;
 
 import com.schemaguard.model.StoredDocument;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface KeyValueStore {
 
@@ -33,4 +36,26 @@ public interface KeyValueStore {
      * Checks if a key exists.
      */
     boolean exists(String objectId);
+
+    /**
+     * Fetches several entries in one call (MGET on Redis).
+     * @return the entries found, keyed by id; missing ids are left out
+     */
+    Map<String, StoredDocument> getAll(List<String> objectIds);
+
+    /**
+     * Etags of several entries in one call, without their bodies (on Redis
+     * an HMGET on the etag hash kept next to the documents, so no document
+     * is read).
+     * @return etag by id; missing ids are left out
+     */
+    Map<String, String> getEtags(List<String> objectIds);
+
+    /**
+     * Walks every stored id, handing them to consumer in batches of up to
+     * batchSize (SCAN on Redis — never KEYS, so the server is not blocked).
+     * Weakly consistent: ids written during the walk may or may not be seen,
+     * and an id may be handed over more than once.
+     */
+    void scanIds(int batchSize, Consumer<List<String>> consumer);
 }
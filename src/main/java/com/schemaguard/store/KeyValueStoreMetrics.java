@@ -0,0 +1,73 @@
+package com.schemaguard.store;
+
+import com.schemaguard.timing.Phase;
+import com.schemaguard.timing.RequestTimings;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Times every KeyValueStore operation.
+ *
+ * Meter: schemaguard.kv.operation (Timer)
+ *   store     — redis | memory
+ *   operation — create | get | update | delete | exists
+ *               get_all | get_etags (listing, reconciler etag reads)
+ *               outbox_create | outbox_replace | outbox_patch | outbox_delete
+ *               (document write + index event, see DocumentOutbox)
+ *               outbox_replay (deferred index events, admission degrade)
+ *   outcome   — success | error (an exception escaped the store)
+ *
+ * Both store implementations route each call through record(), so this is
+ * the single place to hang further per-operation instrumentation — it also
+ * charges the call to the Server-Timing "kv" phase.
+ * Timers are cached per tag combination to keep the hot path allocation-free.
+ */
+@Component
+public class KeyValueStoreMetrics {
+
+    static final String TIMER = "schemaguard.kv.operation";
+
+    private final MeterRegistry registry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public KeyValueStoreMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /** Standalone instance for stores constructed outside Spring (unit tests). */
+    public static KeyValueStoreMetrics unregistered() {
+        return new KeyValueStoreMetrics(new SimpleMeterRegistry());
+    }
+
+    public <T> T record(String store, String operation, Supplier<T> call) {
+        long phase = RequestTimings.start();
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T result = call.get();
+            success = true;
+            return result;
+        } finally {
+            timer(store, operation, success ? "success" : "error")
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            RequestTimings.stop(Phase.KV, phase);
+        }
+    }
+
+    private Timer timer(String store, String operation, String outcome) {
+        return timers.computeIfAbsent(store + '|' + operation + '|' + outcome, k ->
+                Timer.builder(TIMER)
+                        .description("KeyValueStore operation latency")
+                        .tag("store", store)
+                        .tag("operation", operation)
+                        .tag("outcome", outcome)
+                        .register(registry));
+    }
+}
@@ -0,0 +1,107 @@
+package com.schemaguard.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Redis DocumentChangeFeed: a temporary consumer group (index.reindex.group)
+ * on both index-events streams, created at "$" by open().
+ *
+ * Every plan write XADDs its event in the same Lua script as the document
+ * (RedisDocumentOutbox), so the group sees exactly the writes made after
+ * open(), from every API replica — unlike a set kept in one JVM. While the
+ * group exists StreamTrimmer will not trim past what it has not ACKed, so
+ * a long copy cannot lose its catch-up events. poll() reads and ACKs in one
+ * go; close() destroys the group.
+ */
+@Component
+@Profile("redis")
+public class RedisDocumentChangeFeed implements DocumentChangeFeed {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisDocumentChangeFeed.class);
+    private static final String CONSUMER = "reindex";
+
+    private final StringRedisTemplate redisTemplate;
+
+    @Value("${index.events.stream:schemaguard:index-events}")
+    private String streamName;
+
+    @Value("${index.events.low-stream:schemaguard:index-events:low}")
+    private String lowStreamName;
+
+    @Value("${index.reindex.group:schemaguard-reindex}")
+    private String groupName;
+
+    public RedisDocumentChangeFeed(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public void open() {
+        for (String stream : streams()) {
+            destroyGroup(stream);   // left over from an interrupted run
+            redisTemplate.execute((RedisCallback<String>) connection ->
+                    connection.streamCommands().xGroupCreate(bytes(stream), groupName, ReadOffset.latest(), true));
+        }
+        log.info("change feed opened — consumer group '{}' on {} and {}", groupName, streamName, lowStreamName);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<String> poll(int max) {
+        List<MapRecord<String, Object, Object>> records = redisTemplate.opsForStream()
+                .read(Consumer.from(groupName, CONSUMER),
+                        StreamReadOptions.empty().count(max),
+                        StreamOffset.create(streamName, ReadOffset.lastConsumed()),
+                        StreamOffset.create(lowStreamName, ReadOffset.lastConsumed()));
+        if (records == null || records.isEmpty()) return List.of();
+
+        Set<String> ids = new LinkedHashSet<>();
+        for (MapRecord<String, Object, Object> record : records) {
+            Object id = record.getValue().get("documentId");
+            if (id != null) ids.add(id.toString());
+            redisTemplate.opsForStream().acknowledge(record.getStream(), groupName, record.getId());
+        }
+        return new ArrayList<>(ids);
+    }
+
+    @Override
+    public void close() {
+        for (String stream : streams()) {
+            destroyGroup(stream);
+        }
+        log.info("change feed closed — consumer group '{}' destroyed", groupName);
+    }
+
+    private void destroyGroup(String stream) {
+        try {
+            redisTemplate.opsForStream().destroyGroup(stream, groupName);
+        } catch (Exception ex) {
+            log.debug("no consumer group '{}' to destroy on {} — {}", groupName, stream, ex.getMessage());
+        }
+    }
+
+    private List<String> streams() {
+        return List.of(streamName, lowStreamName);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,227 @@
+package com.schemaguard.store;
+
+import com.schemaguard.jfr.KvOperationEvent;
+import com.schemaguard.model.StoredDocument;
+import com.schemaguard.queue.IndexEvent;
+import com.schemaguard.queue.IndexEventOperation;
+import com.schemaguard.queue.IndexEventPriority;
+import com.schemaguard.util.EtagUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Redis DocumentOutbox: document write + XADD in one EVALSHA round trip.
+ *
+ * redis/outbox-write.lua reads the current value, checks existence and the
+ * expected etag, writes (SET) or deletes (DEL) the document and appends the
+ * index event to the stream. Redis runs scripts atomically, so either both
+ * the key and the stream entry change or neither does, and no other client
+ * can interleave between the check and the write.
+ *
+ * The document is serialized with the StoredDocument template's own value
+ * serializer, so RedisKeyValueStore reads it back unchanged. The DELETE
+ * event's etag is taken from the stored document inside the script.
+ *
+ * With store.group-commit.enabled the script call is handed to
+ * RedisGroupCommitter and pipelined with other concurrent writes.
+ *
+ * The script also INCRs the document version counter (store.version-counter)
+ * for every applied write, stores the value in the document and adds it to
+ * the event — see StoredDocument.getVersion(). It keeps the document's etag
+ * in the etag hash (store.etag-hash) as well, so etags can be read without
+ * the documents (KeyValueStore.getEtags).
+ *
+ * patch() is a replace whose PATCH event also carries the merge patch and
+ * its base etag (IndexEvent.withPatch) — extra stream fields, same script.
+ *
+ * Indexing.BACKFILL appends to the low-priority stream (index.events.low-stream)
+ * instead of the interactive one; the script is the same, only KEYS[2] differs.
+ *
+ * Indexing.DEFER makes the same script SADD the id to the deferred set
+ * (index.events.deferred-set) instead of XADDing. redis/outbox-replay.lua
+ * later turns each deferred id into one event for the document's current
+ * state: SREM, GET and XADD in one script, so a replay never races a write.
+ *
+ * Timed as schemaguard.kv.operation{store=redis, operation=outbox_<mode>}
+ * and emitted as a schemaguard.KvOperation JFR event.
+ */
+@Component
+@Profile("redis")
+public class RedisDocumentOutbox implements DocumentOutbox {
+
+    private static final String KEY_PREFIX = "plan:";
+    private static final String STORE = "redis";
+
+    private static final RedisScript<List> WRITE_SCRIPT = loadScript("redis/outbox-write.lua");
+    private static final RedisScript<List> REPLAY_SCRIPT = loadScript("redis/outbox-replay.lua");
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisTemplate<String, StoredDocument> documentTemplate;
+    private final KeyValueStoreMetrics metrics;
+    private final RedisGroupCommitter groupCommitter;
+
+    @Value("${index.events.stream:schemaguard:index-events}")
+    private String streamName;
+
+    @Value("${index.events.low-stream:schemaguard:index-events:low}")
+    private String lowStreamName;
+
+    @Value("${index.events.deferred-set:schemaguard:index-deferred}")
+    private String deferredSetName;
+
+    @Value("${store.version-counter:schemaguard:document-version}")
+    private String versionCounterName;
+
+    @Value("${store.etag-hash:schemaguard:etags}")
+    private String etagHashName;
+
+    public RedisDocumentOutbox(StringRedisTemplate redisTemplate,
+                               RedisTemplate<String, StoredDocument> documentTemplate,
+                               KeyValueStoreMetrics metrics,
+                               RedisGroupCommitter groupCommitter) {
+        this.redisTemplate = redisTemplate;
+        this.documentTemplate = documentTemplate;
+        this.metrics = metrics;
+        this.groupCommitter = groupCommitter;
+    }
+
+    @Override
+    public Result create(String objectId, String json, Indexing indexing) {
+        return write("create", objectId, null, newDocument(objectId, json), IndexEventOperation.UPSERT, null, indexing);
+    }
+
+    @Override
+    public Result replace(String objectId, String json, String expectedEtag,
+                          IndexEventOperation operation, Indexing indexing) {
+        return write("replace", objectId, expectedEtag, newDocument(objectId, json), operation, null, indexing);
+    }
+
+    @Override
+    public Result patch(String objectId, String json, String expectedEtag, String mergePatch, Indexing indexing) {
+        return write("replace", objectId, expectedEtag, newDocument(objectId, json),
+                IndexEventOperation.PATCH, mergePatch, indexing);
+    }
+
+    @Override
+    public Result delete(String objectId, String expectedEtag, Indexing indexing) {
+        return write("delete", objectId, expectedEtag, null, IndexEventOperation.DELETE, null, indexing);
+    }
+
+    @Override
+    public long deferredCount() {
+        Long size = redisTemplate.opsForSet().size(deferredSetName);
+        return size != null ? size : 0;
+    }
+
+    @Override
+    public int replayDeferred(int max) {
+        Set<String> ids = redisTemplate.opsForSet().distinctRandomMembers(deferredSetName, max);
+        if (ids == null) return 0;
+        int replayed = 0;
+        for (String objectId : ids) {
+            List<String> args = new ArrayList<>(12);
+            args.add(objectId);
+            addEventFields(args, IndexEvent.of(IndexEventOperation.UPSERT, objectId, "", IndexEventPriority.LOW),
+                    "operation", "etag", "version");
+            List<?> reply = metrics.record(STORE, "outbox_replay", () -> redisTemplate.execute(REPLAY_SCRIPT,
+                    List.of(KEY_PREFIX + objectId, lowStreamName, deferredSetName, versionCounterName, etagHashName),
+                    args.toArray()));
+            if (reply != null && !reply.isEmpty() && !"SKIPPED".equals(reply.get(0).toString())) {
+                replayed++;
+            }
+        }
+        return replayed;
+    }
+
+    // --- private helpers ---
+
+    /** Runs the outbox script; an applied create/replace returns doc with the version the script gave it. */
+    private Result write(String mode, String objectId, String expectedEtag,
+                         StoredDocument doc, IndexEventOperation operation, String mergePatch,
+                         Indexing indexing) {
+        List<String> args = new ArrayList<>(16);
+        args.add(mode);
+        args.add(expectedEtag != null ? expectedEtag : "");
+        args.add(doc != null ? serialize(doc) : "");
+        args.add(doc != null ? doc.getEtag() : "");
+        args.add(indexing == Indexing.DEFER ? objectId : "");
+        args.add(Long.toString(System.currentTimeMillis()));
+        args.add(objectId);
+        IndexEventPriority priority = indexing == Indexing.BACKFILL ? IndexEventPriority.LOW : IndexEventPriority.HIGH;
+        // the script checks expectedEtag, so a patch event's base is exactly the version it replaced
+        addEventFields(args, IndexEvent.of(operation, objectId, doc != null ? doc.getEtag() : "", priority)
+                .withPatch(expectedEtag, mergePatch)
+                .withRefresh(indexing == Indexing.READ_YOUR_WRITES), "etag", "version");
+
+        KvOperationEvent jfr = new KvOperationEvent();
+        jfr.begin();
+        Status status = null;
+        try {
+            String stream = priority == IndexEventPriority.LOW ? lowStreamName : streamName;
+            List<String> keys = List.of(KEY_PREFIX + objectId, stream, deferredSetName, versionCounterName,
+                    etagHashName);
+            List<?> reply = metrics.record(STORE, "outbox_" + mode, () -> groupCommitter.isEnabled()
+                    ? groupCommitter.execute(WRITE_SCRIPT, keys, args.toArray())
+                    : redisTemplate.execute(WRITE_SCRIPT, keys, args.toArray()));
+            if (reply == null || reply.isEmpty()) {
+                throw new IllegalStateException("outbox script returned no result for id=" + objectId);
+            }
+            status = Status.valueOf(reply.get(0).toString());
+            if (status != Status.APPLIED) return Result.rejected(status);
+            return Result.applied(doc != null ? doc.withVersion(Long.parseLong(reply.get(2).toString())) : null);
+        } finally {
+            jfr.end();
+            if (jfr.shouldCommit()) {
+                jfr.store = STORE;
+                jfr.operation = "outbox_" + mode;
+                jfr.objectId = objectId;
+                jfr.etag = doc != null ? doc.getEtag() : null;
+                jfr.payloadSize = doc != null ? doc.getJson().length() : 0;
+                jfr.success = status != null;
+                jfr.commit();
+            }
+        }
+    }
+
+    /** Appends the event's stream fields as name/value pairs, minus the ones the script fills in. */
+    private static void addEventFields(List<String> args, IndexEvent event, String... scriptFields) {
+        List<String> skip = List.of(scriptFields);
+        for (Map.Entry<String, String> field : event.toStreamFields().entrySet()) {
+            if (!skip.contains(field.getKey())) {
+                args.add(field.getKey());
+                args.add(field.getValue());
+            }
+        }
+    }
+
+    private static StoredDocument newDocument(String objectId, String json) {
+        return new StoredDocument(objectId, json, EtagUtil.sha256Etag(json), Instant.now());
+    }
+
+    @SuppressWarnings("unchecked")
+    private String serialize(StoredDocument doc) {
+        byte[] bytes = ((RedisSerializer<StoredDocument>) documentTemplate.getValueSerializer()).serialize(doc);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static RedisScript<List> loadScript(String path) {
+        DefaultRedisScript<List> script = new DefaultRedisScript<>();
+        script.setLocation(new ClassPathResource(path));
+        script.setResultType(List.class);
+        return script;
+    }
+}
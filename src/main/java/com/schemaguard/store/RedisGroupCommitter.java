@@ -0,0 +1,316 @@
+package com.schemaguard.store;
+
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Group commit for Redis script calls.
+ *
+ * With store.group-commit.enabled=true, request threads hand their EVALSHA
+ * to a single flusher thread instead of sending it themselves. The flusher
+ * takes whatever has queued up — at most max-batch calls, waiting at most
+ * max-wait-micros after the first one — and sends them back to back as
+ * asynchronous commands on the shared Lettuce connection, i.e. as one
+ * pipeline that keeps a separate outcome per call (a Spring pipeline with
+ * any error in it reports none of the replies).
+ * Each caller blocks only until its own reply is back, so per-request
+ * semantics (status, etag, atomicity of each script) are unchanged; only
+ * the number of network round trips shrinks under concurrency.
+ *
+ * max-wait-micros=0 is "natural" batching: no deliberate delay, a batch is
+ * whatever arrived while the previous pipeline was in flight. A small wait
+ * (100–500 µs) builds bigger batches at the cost of that much latency.
+ *
+ * Scripts are SCRIPT LOADed before first use. If Redis lost its script cache
+ * (restart / SCRIPT FLUSH) the NOSCRIPT calls of a batch are retried once
+ * through the template, which falls back to EVAL.
+ *
+ * Reply timeout: a caller gives up after reply-timeout-ms only while its call
+ * is still queued — it is then withdrawn and never sent, so failing the
+ * request cannot hide a write that happened. Once the flusher has taken the
+ * call into a pipeline, the script may already have run; the caller then
+ * waits for the actual reply instead of reporting a failure that a client
+ * retry would turn into a spurious 412. Only a sent call with no reply
+ * within the Redis client's command timeout (spring.data.redis.timeout)
+ * fails, as "outcome unknown".
+ *
+ * Shutdown drains: calls queued before stop() are still sent; calls made
+ * after it fail right away.
+ *
+ * Metric: schemaguard.kv.group_commit.batch (DistributionSummary) — calls per pipeline.
+ *
+ * Active only on the 'redis' profile; disabled by default.
+ */
+@Component
+@Profile("redis")
+public class RedisGroupCommitter {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisGroupCommitter.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final DistributionSummary batchSizes;
+    private final BlockingQueue<Call> queue = new LinkedBlockingQueue<>();
+
+    @Value("${store.group-commit.enabled:false}")
+    private boolean enabled;
+
+    @Value("${store.group-commit.max-batch:64}")
+    private int maxBatch;
+
+    @Value("${store.group-commit.max-wait-micros:0}")
+    private long maxWaitMicros;
+
+    /** Upper bound a caller waits for its call to be sent before failing the request. */
+    @Value("${store.group-commit.reply-timeout-ms:5000}")
+    private long replyTimeoutMs;
+
+    /** How long a sent call waits for its reply — the client's command timeout. */
+    private Duration commandTimeout = Duration.ofSeconds(60);
+    private Thread flusher;
+    private volatile boolean running;
+    /** SHA1 of the last script loaded; flusher thread only. */
+    private String loadedSha;
+
+    public RedisGroupCommitter(StringRedisTemplate redisTemplate, MeterRegistry registry) {
+        this.redisTemplate = redisTemplate;
+        this.batchSizes = DistributionSummary.builder("schemaguard.kv.group_commit.batch")
+                .description("Script calls sent per group-commit pipeline")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) return;
+        if (redisTemplate.getConnectionFactory() instanceof LettuceConnectionFactory lettuce) {
+            commandTimeout = lettuce.getClientConfiguration().getCommandTimeout();
+        }
+        running = true;
+        flusher = new Thread(this::flushLoop, "redis-group-commit");
+        flusher.setDaemon(true);
+        flusher.start();
+        log.info("Redis group commit enabled (max-batch={}, max-wait-micros={})", maxBatch, maxWaitMicros);
+    }
+
+    /** Sends what is queued, waiting up to reply-timeout-ms for the flusher; fails whatever is left. */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (flusher != null) {
+            try {
+                flusher.join(replyTimeoutMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flusher.interrupt();
+        }
+        Call call;
+        while ((call = queue.poll()) != null) {
+            if (call.taken.compareAndSet(false, true)) {
+                call.reply.completeExceptionally(new IllegalStateException("group committer stopped"));
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues one script call and blocks until its own reply arrives.
+     * Exceptions from Redis are rethrown to the caller unchanged. Throws
+     * IllegalStateException only for a call that was never sent.
+     */
+    public List<?> execute(RedisScript<List> script, List<String> keys, Object... args) {
+        if (!running) throw new IllegalStateException("group committer stopped");
+        Call call = new Call(script, keys, args);
+        queue.add(call);
+        try {
+            try {
+                return call.reply.get(replyTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (call.taken.compareAndSet(false, true)) {
+                    throw new IllegalStateException("group-commit call not sent within " + replyTimeoutMs + " ms", e);
+                }
+                // in flight — it may have applied, so its reply decides the outcome
+                return call.reply.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            call.taken.compareAndSet(false, true);
+            throw new IllegalStateException("interrupted waiting for group-commit reply", e);
+        }
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Flusher
+    // ─────────────────────────────────────────────────────────────────────────
+
+    private void flushLoop() {
+        List<Call> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Call first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                collect(batch);
+                // calls whose callers already gave up are dropped, never sent
+                batch.removeIf(call -> !call.taken.compareAndSet(false, true));
+                if (!batch.isEmpty()) flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                for (Call call : batch) call.reply.completeExceptionally(e);
+                log.warn("group commit flush failed for {} calls — {}", batch.size(), e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /** Adds queued calls until max-batch, waiting up to max-wait-micros after the first. */
+    private void collect(List<Call> batch) throws InterruptedException {
+        queue.drainTo(batch, maxBatch - batch.size());
+        if (maxWaitMicros <= 0) return;
+        long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+        while (batch.size() < maxBatch) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) return;
+            Call next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) return;
+            batch.add(next);
+            queue.drainTo(batch, maxBatch - batch.size());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void flush(List<Call> batch) {
+        batchSizes.record(batch.size());
+        loadScripts(batch);
+
+        List<RedisFuture<Object>> replies = redisTemplate.execute((RedisCallback<List<RedisFuture<Object>>>) connection -> {
+            RedisClusterAsyncCommands<byte[], byte[]> commands =
+                    (RedisClusterAsyncCommands<byte[], byte[]>) connection.getNativeConnection();
+            List<RedisFuture<Object>> futures = new ArrayList<>(batch.size());
+            for (Call call : batch) {
+                futures.add(evalSha(commands, call));
+            }
+            return futures;
+        });
+
+        long deadline = System.nanoTime() + commandTimeout.toNanos();
+        for (int i = 0; i < batch.size(); i++) {
+            Call call = batch.get(i);
+            try {
+                Object reply = replies.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (reply instanceof List<?> list) {
+                    call.reply.complete((List<?>) decode(list));
+                } else {
+                    call.reply.completeExceptionally(new IllegalStateException("unexpected script reply: " + reply));
+                }
+            } catch (ExecutionException e) {
+                if (isNoScript(e.getCause())) {
+                    retryDirect(call);
+                } else {
+                    call.reply.completeExceptionally(e.getCause() instanceof RuntimeException re
+                            ? re : new IllegalStateException(e.getCause()));
+                }
+            } catch (TimeoutException e) {
+                call.reply.completeExceptionally(new IllegalStateException(
+                        "group-commit call sent, but no reply within " + commandTimeout.toMillis() + " ms — outcome unknown", e));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                call.reply.completeExceptionally(new IllegalStateException("interrupted waiting for script reply", e));
+            }
+        }
+    }
+
+    private void loadScripts(List<Call> batch) {
+        for (Call call : batch) {
+            RedisScript<List> script = call.script;
+            if (script.getSha1().equals(loadedSha)) continue;
+            redisTemplate.execute((RedisCallback<String>) connection ->
+                    connection.scriptingCommands().scriptLoad(script.getScriptAsString().getBytes(StandardCharsets.UTF_8)));
+            loadedSha = script.getSha1();
+        }
+    }
+
+    private static RedisFuture<Object> evalSha(RedisClusterAsyncCommands<byte[], byte[]> commands, Call call) {
+        byte[][] keys = new byte[call.keys.size()][];
+        byte[][] args = new byte[call.args.length][];
+        for (int i = 0; i < keys.length; i++) keys[i] = call.keys.get(i).getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < args.length; i++) args[i] = String.valueOf(call.args[i]).getBytes(StandardCharsets.UTF_8);
+        return commands.evalsha(call.script.getSha1(), ScriptOutputType.MULTI, keys, args);
+    }
+
+    /** Bulk strings as String, like the StringRedisTemplate the non-batched path goes through. */
+    private static Object decode(Object value) {
+        if (value instanceof byte[] bytes) return new String(bytes, StandardCharsets.UTF_8);
+        if (value instanceof List<?> list) {
+            List<Object> out = new ArrayList<>(list.size());
+            for (Object item : list) out.add(decode(item));
+            return out;
+        }
+        return value;
+    }
+
+    private void retryDirect(Call call) {
+        loadedSha = null;
+        try {
+            call.reply.complete(redisTemplate.execute(call.script, call.keys, call.args));
+        } catch (RuntimeException e) {
+            call.reply.completeExceptionally(e);
+        }
+    }
+
+    private static boolean isNoScript(Throwable ex) {
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            if (t.getMessage() != null && t.getMessage().contains("NOSCRIPT")) return true;
+        }
+        return false;
+    }
+
+    private static final class Call {
+        final RedisScript<List> script;
+        final List<String> keys;
+        final Object[] args;
+        final CompletableFuture<List<?>> reply = new CompletableFuture<>();
+        /** Set once, by the flusher sending the call or by its caller withdrawing it. */
+        final AtomicBoolean taken = new AtomicBoolean();
+
+        Call(RedisScript<List> script, List<String> keys, Object[] args) {
+            this.script = script;
+            this.keys = keys;
+            this.args = args;
+        }
+    }
+}
@@ -1,71 +1,220 @@
 package com.schemaguard.store;
 
+import com.schemaguard.jfr.KvOperationEvent;
 import com.schemaguard.model.StoredDocument;
 import com.schemaguard.util.EtagUtil;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.Cursor;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
+/**
+ * Redis-backed KeyValueStore. Every call is timed via KeyValueStoreMetrics
+ * and emitted as a schemaguard.KvOperation JFR event.
+ *
+ * Each document's etag is also kept in the etag hash (store.etag-hash,
+ * objectId → etag), written together with the document — here and by
+ * redis/outbox-write.lua — so getEtags is an HMGET rather than a read of
+ * every document.
+ */
 @Component
 @Profile("redis")
 public class RedisKeyValueStore implements KeyValueStore {
 
     private final RedisTemplate<String, StoredDocument> redisTemplate;
+    private final StringRedisTemplate stringTemplate;
+    private final KeyValueStoreMetrics metrics;
     private static final String KEY_PREFIX = "plan:";
+    private static final String STORE = "redis";
+    private static final RedisScript<List> ETAGS_SCRIPT = etagsScript();
 
-    public RedisKeyValueStore(RedisTemplate<String, StoredDocument> redisTemplate) {
+    @Value("${store.etag-hash:schemaguard:etags}")
+    private String etagHashName;
+
+    public RedisKeyValueStore(RedisTemplate<String, StoredDocument> redisTemplate,
+                              StringRedisTemplate stringTemplate,
+                              KeyValueStoreMetrics metrics) {
         this.redisTemplate = redisTemplate;
+        this.stringTemplate = stringTemplate;
+        this.metrics = metrics;
     }
 
     @Override
     public boolean create(String objectId, String jsonString) {
-        String key = KEY_PREFIX + objectId;
-        Boolean exists = redisTemplate.hasKey(key);
-        if (Boolean.TRUE.equals(exists)) {
-            return false;
-        }
-        String etag = EtagUtil.sha256Etag(jsonString);
-        StoredDocument doc = new StoredDocument(objectId, jsonString, etag, Instant.now());
-        // No TTL — data persists until explicitly deleted or Redis is flushed
-        redisTemplate.opsForValue().set(key, doc);
-        return true;
+        return record("create", objectId, event -> {
+            String key = KEY_PREFIX + objectId;
+            Boolean exists = redisTemplate.hasKey(key);
+            if (Boolean.TRUE.equals(exists)) {
+                return false;
+            }
+            String etag = EtagUtil.sha256Etag(jsonString);
+            StoredDocument doc = new StoredDocument(objectId, jsonString, etag, Instant.now());
+            // No TTL — data persists until explicitly deleted or Redis is flushed
+            redisTemplate.opsForValue().set(key, doc);
+            stringTemplate.opsForHash().put(etagHashName, objectId, etag);
+            describe(event, doc);
+            return true;
+        });
     }
 
     @Override
     public Optional<StoredDocument> get(String objectId) {
-        String key = KEY_PREFIX + objectId;
-        StoredDocument doc = redisTemplate.opsForValue().get(key);
-        return Optional.ofNullable(doc);
+        return record("get", objectId, event -> {
+            String key = KEY_PREFIX + objectId;
+            StoredDocument doc = redisTemplate.opsForValue().get(key);
+            describe(event, doc);
+            return Optional.ofNullable(doc);
+        });
     }
 
     @Override
     public boolean update(String objectId, String jsonString) {
-        String key = KEY_PREFIX + objectId;
-        Boolean exists = redisTemplate.hasKey(key);
-        if (!Boolean.TRUE.equals(exists)) {
-            return false;
-        }
-        String etag = EtagUtil.sha256Etag(jsonString);
-        StoredDocument updated = new StoredDocument(objectId, jsonString, etag, Instant.now());
-        // No TTL — data persists until explicitly deleted
-        redisTemplate.opsForValue().set(key, updated);
-        return true;
+        return record("update", objectId, event -> {
+            String key = KEY_PREFIX + objectId;
+            Boolean exists = redisTemplate.hasKey(key);
+            if (!Boolean.TRUE.equals(exists)) {
+                return false;
+            }
+            String etag = EtagUtil.sha256Etag(jsonString);
+            StoredDocument updated = new StoredDocument(objectId, jsonString, etag, Instant.now());
+            // No TTL — data persists until explicitly deleted
+            redisTemplate.opsForValue().set(key, updated);
+            stringTemplate.opsForHash().put(etagHashName, objectId, etag);
+            describe(event, updated);
+            return true;
+        });
     }
 
     @Override
     public boolean delete(String objectId) {
-        String key = KEY_PREFIX + objectId;
-        Boolean deleted = redisTemplate.delete(key);
-        return Boolean.TRUE.equals(deleted);
+        return record("delete", objectId, event -> {
+            String key = KEY_PREFIX + objectId;
+            Boolean deleted = redisTemplate.delete(key);
+            stringTemplate.opsForHash().delete(etagHashName, objectId);
+            return Boolean.TRUE.equals(deleted);
+        });
     }
 
     @Override
     public boolean exists(String objectId) {
-        String key = KEY_PREFIX + objectId;
-        Boolean exists = redisTemplate.hasKey(key);
-        return Boolean.TRUE.equals(exists);
+        return record("exists", objectId, event -> {
+            String key = KEY_PREFIX + objectId;
+            Boolean exists = redisTemplate.hasKey(key);
+            return Boolean.TRUE.equals(exists);
+        });
+    }
+
+    @Override
+    public Map<String, StoredDocument> getAll(List<String> objectIds) {
+        return record("get_all", null, event -> {
+            Map<String, StoredDocument> found = new LinkedHashMap<>();
+            if (objectIds.isEmpty()) return found;
+            List<String> keys = new ArrayList<>(objectIds.size());
+            for (String id : objectIds) keys.add(KEY_PREFIX + id);
+            List<StoredDocument> docs = redisTemplate.opsForValue().multiGet(keys);
+            if (docs == null) return found;
+            for (int i = 0; i < objectIds.size() && i < docs.size(); i++) {
+                if (docs.get(i) != null) found.put(objectIds.get(i), docs.get(i));
+            }
+            return found;
+        });
+    }
+
+    /**
+     * redis/etags.lua: HMGET on the etag hash; only a document written before
+     * the hash existed is read (GET + cjson.decode, once — it is then added).
+     */
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Map<String, String> getEtags(List<String> objectIds) {
+        return record("get_etags", null, event -> {
+            Map<String, String> etags = new LinkedHashMap<>();
+            if (objectIds.isEmpty()) return etags;
+            List<String> keys = new ArrayList<>(objectIds.size() + 1);
+            keys.add(etagHashName);
+            for (String id : objectIds) keys.add(KEY_PREFIX + id);
+            // the result serializer applies to each element of the reply list
+            List<?> reply = redisTemplate.execute(ETAGS_SCRIPT, RedisSerializer.string(),
+                    (RedisSerializer) RedisSerializer.string(), keys, objectIds.toArray());
+            if (reply == null) return etags;
+            for (int i = 0; i < objectIds.size() && i < reply.size(); i++) {
+                Object etag = reply.get(i);
+                if (etag != null && !etag.toString().isEmpty()) etags.put(objectIds.get(i), etag.toString());
+            }
+            return etags;
+        });
+    }
+
+    /**
+     * SCAN MATCH plan:* COUNT batchSize. COUNT is a hint, so batches are cut
+     * to batchSize here rather than per SCAN reply; the cursor pages through
+     * the keyspace without blocking Redis the way KEYS would.
+     */
+    @Override
+    public void scanIds(int batchSize, Consumer<List<String>> consumer) {
+        ScanOptions options = ScanOptions.scanOptions().match(KEY_PREFIX + "*").count(batchSize).build();
+        List<String> batch = new ArrayList<>(batchSize);
+        try (Cursor<String> cursor = redisTemplate.scan(options)) {
+            while (cursor.hasNext()) {
+                batch.add(cursor.next().substring(KEY_PREFIX.length()));
+                if (batch.size() >= batchSize) {
+                    consumer.accept(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+        }
+        if (!batch.isEmpty()) consumer.accept(batch);
+    }
+
+    // --- private helpers ---
+
+    /** Runs a store call under the metrics timer and a KvOperation JFR event. */
+    private <T> T record(String operation, String objectId, Function<KvOperationEvent, T> call) {
+        KvOperationEvent event = new KvOperationEvent();
+        event.begin();
+        try {
+            T result = metrics.record(STORE, operation, () -> call.apply(event));
+            event.success = true;
+            return result;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.store = STORE;
+                event.operation = operation;
+                event.objectId = objectId;
+                event.commit();
+            }
+        }
+    }
+
+    /** Fields are plain stores of existing references — no cost when recording is off. */
+    private static void describe(KvOperationEvent event, StoredDocument doc) {
+        if (doc != null) {
+            event.etag = doc.getEtag();
+            event.payloadSize = doc.getJson() != null ? doc.getJson().length() : 0;
+        }
+    }
+
+    private static RedisScript<List> etagsScript() {
+        DefaultRedisScript<List> script = new DefaultRedisScript<>();
+        script.setLocation(new ClassPathResource("redis/etags.lua"));
+        script.setResultType(List.class);
+        return script;
     }
 }
@@ -0,0 +1,33 @@
+package com.schemaguard.timing;
+
+/**
+ * Request phases reported in the Server-Timing header.
+ * The metric name is what appears in the header (e.g. "validate;dur=1.204").
+ */
+public enum Phase {
+
+    JWT("jwt", "Authentication — security filter chain incl. JWT decode"),
+    PARSE("parse", "JSON parsing"),
+    VALIDATE("validate", "JSON Schema validation"),
+    ETAG("etag", "ETag hashing"),
+    KV("kv", "Key-value store"),
+    PUBLISH("publish", "Index event publish");
+
+    static final Phase[] VALUES = values();
+
+    private final String metricName;
+    private final String description;
+
+    Phase(String metricName, String description) {
+        this.metricName = metricName;
+        this.description = description;
+    }
+
+    public String metricName() {
+        return metricName;
+    }
+
+    public String description() {
+        return description;
+    }
+}
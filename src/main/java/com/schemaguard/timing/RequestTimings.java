@@ -0,0 +1,138 @@
+package com.schemaguard.timing;
+
+import java.util.Arrays;
+
+/**
+ * Per-request phase accumulator, one preallocated instance per thread.
+ *
+ * Usage at an instrumentation point:
+ *
+ *   long t = RequestTimings.start();
+ *   try { ... } finally { RequestTimings.stop(Phase.KV, t); }
+ *
+ * Recording allocates nothing: durations go into a long[] indexed by
+ * Phase.ordinal(). Phases may nest (a KV write hashes the ETag) — each phase
+ * is charged only its exclusive time, so the phases of a request add up to
+ * at most its total.
+ *
+ * Collection is only active between ServerTimingFilter's beginRequest() and
+ * endRequest(); on any other thread (e.g. IndexWorker) start() returns 0
+ * and stop() is a no-op.
+ */
+public final class RequestTimings {
+
+    private static final int MAX_DEPTH = 8;
+
+    private static final ThreadLocal<RequestTimings> CURRENT = ThreadLocal.withInitial(RequestTimings::new);
+
+    private final long[] nanos = new long[Phase.VALUES.length];
+    /** Time spent in nested phases, per open depth level. */
+    private final long[] childNanos = new long[MAX_DEPTH + 1];
+    private final StringBuilder header = new StringBuilder(192);
+    private int depth;
+    private boolean active;
+    private long requestStart;
+
+    private RequestTimings() {}
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Instrumentation API
+    // ─────────────────────────────────────────────────────────────────────────
+
+    /** Opens a phase; returns the start token for stop(), 0 when not collecting. */
+    public static long start() {
+        RequestTimings t = CURRENT.get();
+        if (!t.active) return 0;
+        t.depth++;
+        if (t.depth <= MAX_DEPTH) {
+            t.childNanos[t.depth] = 0;
+        }
+        return System.nanoTime();
+    }
+
+    /** Closes a phase opened by start(), charging its exclusive time to phase. */
+    public static void stop(Phase phase, long startToken) {
+        if (startToken == 0) return;
+        RequestTimings t = CURRENT.get();
+        if (!t.active || t.depth == 0) return;
+        long elapsed = System.nanoTime() - startToken;
+        long nested = t.depth <= MAX_DEPTH ? t.childNanos[t.depth] : 0;
+        t.nanos[phase.ordinal()] += Math.max(0, elapsed - nested);
+        t.depth--;
+        if (t.depth > 0 && t.depth <= MAX_DEPTH) {
+            t.childNanos[t.depth] += elapsed;
+        }
+    }
+
+    /**
+     * Charges everything since the request entered ServerTimingFilter to
+     * phase — for work done by earlier filters (JWT authentication).
+     */
+    public static void markSinceRequestStart(Phase phase) {
+        RequestTimings t = CURRENT.get();
+        if (!t.active || t.depth != 0) return;
+        t.nanos[phase.ordinal()] = System.nanoTime() - t.requestStart;
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Lifecycle — ServerTimingFilter
+    // ─────────────────────────────────────────────────────────────────────────
+
+    static RequestTimings beginRequest() {
+        RequestTimings t = CURRENT.get();
+        Arrays.fill(t.nanos, 0);
+        t.depth = 0;
+        t.active = true;
+        t.requestStart = System.nanoTime();
+        return t;
+    }
+
+    void endRequest() {
+        active = false;
+        depth = 0;
+    }
+
+    long phaseNanos(Phase phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    long totalNanos() {
+        return System.nanoTime() - requestStart;
+    }
+
+    /**
+     * Server-Timing value, e.g.
+     *   jwt;dur=0.412, validate;dur=1.204, etag;dur=0.031, kv;dur=0.880, other;dur=0.302, total;dur=2.829
+     * Phases that did not run are omitted; "other" is the unattributed remainder.
+     */
+    String headerValue() {
+        long total = totalNanos();
+        long attributed = 0;
+        header.setLength(0);
+        for (Phase p : Phase.VALUES) {
+            long n = nanos[p.ordinal()];
+            if (n <= 0) continue;
+            attributed += n;
+            appendMetric(p.metricName(), n);
+        }
+        appendMetric("other", Math.max(0, total - attributed));
+        appendMetric("total", total);
+        return header.toString();
+    }
+
+    private void appendMetric(String name, long durationNanos) {
+        if (header.length() > 0) header.append(", ");
+        header.append(name).append(";dur=");
+        appendMillis(header, durationNanos);
+    }
+
+    /** Milliseconds with microsecond precision, without String.format. */
+    static void appendMillis(StringBuilder sb, long durationNanos) {
+        long micros = durationNanos / 1_000;
+        long frac = micros % 1_000;
+        sb.append(micros / 1_000).append('.');
+        if (frac < 100) sb.append('0');
+        if (frac < 10) sb.append('0');
+        sb.append(frac);
+    }
+}
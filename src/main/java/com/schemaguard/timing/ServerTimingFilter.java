@@ -0,0 +1,109 @@
+package com.schemaguard.timing;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.web.util.OnCommittedResponseWrapper;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Outermost servlet filter: opens a RequestTimings window for each request
+ * and emits the per-phase breakdown as a Server-Timing response header
+ * (visible in browser dev tools and `curl -i`).
+ *
+ * Runs before Spring Security so the JWT phase can be measured as "time
+ * until JwtClaimsLogger runs". The header is written just before the
+ * response commits (first body byte), or after the chain for bodiless
+ * responses such as 204 / 304.
+ *
+ * Config:
+ *   server-timing.enabled          emit the header (default true)
+ *   server-timing.log-sample-rate  fraction of requests also logged as one
+ *                                  structured line at INFO (default 0 = off)
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class ServerTimingFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(ServerTimingFilter.class);
+
+    static final String HEADER = "Server-Timing";
+
+    @Value("${server-timing.enabled:true}")
+    private boolean enabled;
+
+    @Value("${server-timing.log-sample-rate:0}")
+    private double logSampleRate;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        if (!enabled) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        RequestTimings timings = RequestTimings.beginRequest();
+        TimingResponseWrapper wrapped = new TimingResponseWrapper(response, timings);
+        try {
+            filterChain.doFilter(request, wrapped);
+        } finally {
+            if (!response.isCommitted()) {
+                wrapped.writeHeader();
+            }
+            if (logSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < logSampleRate) {
+                logTimings(request, response, timings);
+            }
+            timings.endRequest();
+        }
+    }
+
+    private static void logTimings(HttpServletRequest request, HttpServletResponse response,
+                                   RequestTimings timings) {
+        StringBuilder sb = new StringBuilder(160);
+        sb.append("server_timing method=").append(request.getMethod())
+                .append(" path=").append(request.getRequestURI())
+                .append(" status=").append(response.getStatus())
+                .append(" total_ms=");
+        RequestTimings.appendMillis(sb, timings.totalNanos());
+        for (Phase p : Phase.VALUES) {
+            sb.append(' ').append(p.metricName()).append("_ms=");
+            RequestTimings.appendMillis(sb, timings.phaseNanos(p));
+        }
+        log.info(sb.toString());
+    }
+
+    /** Adds the header at the last moment it can still be set. */
+    private static final class TimingResponseWrapper extends OnCommittedResponseWrapper {
+
+        private final RequestTimings timings;
+        private boolean written;
+
+        TimingResponseWrapper(HttpServletResponse response, RequestTimings timings) {
+            super(response);
+            this.timings = timings;
+        }
+
+        @Override
+        protected void onResponseCommitted() {
+            writeHeader();
+        }
+
+        void writeHeader() {
+            if (written) return;
+            written = true;
+            ((HttpServletResponse) getResponse()).setHeader(HEADER, timings.headerValue());
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package com.schemaguard.util;
 
+import com.schemaguard.timing.Phase;
+import com.schemaguard.timing.RequestTimings;
+
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -9,6 +12,7 @@ public class EtagUtil {
     private EtagUtil() {}
 
     public static String sha256Etag(String json) {
+        long phase = RequestTimings.start();
         try {
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
             byte[] hashBytes = digest.digest(json.getBytes(StandardCharsets.UTF_8));
@@ -18,6 +22,8 @@ public class EtagUtil {
         } catch (NoSuchAlgorithmException e) {
             // SHA-256 always exists in Java, but handle defensively
             throw new IllegalStateException("SHA-256 not available", e);
+        } finally {
+            RequestTimings.stop(Phase.ETAG, phase);
         }
     }
 
@@ -3,12 +3,22 @@ package com.schemaguard.validation;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.networknt.schema.*;
+import com.schemaguard.jfr.PlanValidationEvent;
+import com.schemaguard.timing.Phase;
+import com.schemaguard.timing.RequestTimings;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Component
@@ -23,10 +33,37 @@ public class SchemaValidator {
     // Raw schema string cached at startup — served by GET /api/v1/schema/plan
     private final String planSchemaRaw;
 
+    // ── metrics ───────────────────────────────────────────────────────────
+    // schemaguard.validation          Timer, outcome = valid | invalid | parse_error
+    // schemaguard.validation.payload  DistributionSummary, payload length in characters
+    // schemaguard.validation.errors   Counter, schema violations reported
+    // Each call is also a schemaguard.PlanValidation JFR event.
+    private final Timer validTimer;
+    private final Timer invalidTimer;
+    private final Timer parseErrorTimer;
+    private final DistributionSummary payloadSize;
+    private final Counter violationCount;
+
     public SchemaValidator(ObjectMapper objectMapper) {
+        this(objectMapper, new SimpleMeterRegistry());
+    }
+
+    @Autowired
+    public SchemaValidator(ObjectMapper objectMapper, MeterRegistry registry) {
         this.objectMapper = objectMapper;
         this.planSchemaRaw = readSchemaString(PLAN_SCHEMA_CLASSPATH);
         this.planSchema = parseSchema(planSchemaRaw);
+
+        this.validTimer = validationTimer(registry, "valid");
+        this.invalidTimer = validationTimer(registry, "invalid");
+        this.parseErrorTimer = validationTimer(registry, "parse_error");
+        this.payloadSize = DistributionSummary.builder("schemaguard.validation.payload")
+                .description("Size of payloads submitted for schema validation")
+                .baseUnit("characters")
+                .register(registry);
+        this.violationCount = Counter.builder("schemaguard.validation.errors")
+                .description("Schema violations reported across all rejected payloads")
+                .register(registry);
     }
 
     /**
@@ -35,21 +72,55 @@ public class SchemaValidator {
      * Used by POST, PUT, and PATCH (post-merge) in PlanController.
      */
     public void validatePlanJson(String rawJson) {
+        PlanValidationEvent event = new PlanValidationEvent();
+        event.begin();
+        long start = System.nanoTime();
+        Timer outcome = parseErrorTimer;
+        int violations = 0;
+        JsonNode node = null;
+        if (rawJson != null) {
+            payloadSize.record(rawJson.length());
+        }
         try {
-            JsonNode node = objectMapper.readTree(rawJson);
-            Set<ValidationMessage> errors = planSchema.validate(node);
+            long phase = RequestTimings.start();
+            try {
+                node = objectMapper.readTree(rawJson);
+            } finally {
+                RequestTimings.stop(Phase.PARSE, phase);
+            }
+            phase = RequestTimings.start();
+            Set<ValidationMessage> errors;
+            try {
+                errors = planSchema.validate(node);
+            } finally {
+                RequestTimings.stop(Phase.VALIDATE, phase);
+            }
 
             if (!errors.isEmpty()) {
+                outcome = invalidTimer;
+                violations = errors.size();
+                violationCount.increment(violations);
                 List<String> messages = errors.stream()
                         .map(ValidationMessage::getMessage)
                         .sorted()
                         .collect(Collectors.toList());
                 throw new SchemaValidationException("JSON Schema validation failed", messages);
             }
+            outcome = validTimer;
         } catch (SchemaValidationException e) {
             throw e;
         } catch (Exception e) {
             throw new SchemaValidationException("Invalid JSON payload (parse error)", List.of(e.getMessage()));
+        } finally {
+            outcome.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            event.end();
+            if (event.shouldCommit()) {
+                event.objectId = node != null ? node.path("objectId").asText(null) : null;
+                event.payloadSize = rawJson != null ? rawJson.length() : 0;
+                event.outcome = outcome == validTimer ? "valid" : outcome == invalidTimer ? "invalid" : "parse_error";
+                event.violations = violations;
+                event.commit();
+            }
         }
     }
 
@@ -63,6 +134,13 @@ public class SchemaValidator {
 
     // --- private helpers ---
 
+    private static Timer validationTimer(MeterRegistry registry, String outcome) {
+        return Timer.builder("schemaguard.validation")
+                .description("Plan JSON Schema validation latency")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
     private String readSchemaString(String classpathLocation) {
         try (InputStream is = SchemaValidator.class.getResourceAsStream(classpathLocation)) {
             if (is == null) {
@@ -0,0 +1,26 @@
+-- schemaguard:etags
+-- Returns the etag of each document without reading the documents — the
+-- reconciler compares etags only. Used by RedisKeyValueStore.
+--
+-- KEYS[1]    etag hash (objectId → etag), kept by outbox-write.lua
+-- KEYS[2…n]  document keys (plan:<objectId>), in the order of ARGV
+-- ARGV[1…]   objectIds
+--
+-- The etags are one HMGET. A document written before the hash existed has
+-- no entry yet: it is read and decoded once, and its etag added to the hash.
+--
+-- Returns one etag per id, in order; '' for a missing document.
+
+local etags = redis.call('HMGET', KEYS[1], unpack(ARGV))
+for i, id in ipairs(ARGV) do
+  if not etags[i] then
+    local current = redis.call('GET', KEYS[i + 1])
+    if current then
+      etags[i] = cjson.decode(current).etag
+      redis.call('HSET', KEYS[1], id, etags[i])
+    else
+      etags[i] = ''
+    end
+  end
+end
+return etags
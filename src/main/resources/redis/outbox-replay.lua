@@ -0,0 +1,52 @@
+-- schemaguard:outbox-replay
+-- Publishes the index event for one id written while indexing was deferred
+-- (WriteAdmission "degrade" policy). Used by RedisDocumentOutbox.
+--
+-- KEYS[1]  document key (plan:<objectId>)
+-- KEYS[2]  index-events stream
+-- KEYS[3]  deferred-index set
+-- KEYS[4]  document version counter
+-- KEYS[5]  etag hash (objectId → etag)
+-- ARGV[1]  objectId
+-- ARGV[2…] stream entry fields as name/value pairs, without operation, etag
+--          and version
+--
+-- The event describes the document as it is now: UPSERT with its current
+-- etag and version, or DELETE when it no longer exists — with a fresh
+-- version (INCR), since the delete's own version was never published.
+-- The etag hash entry is set to match (it may predate the hash).
+-- Returns {operation, stream id}, or {'SKIPPED', ''} when the id is no
+-- longer in the deferred set.
+
+if redis.call('SREM', KEYS[3], ARGV[1]) == 0 then
+  return {'SKIPPED', ''}
+end
+
+local current = redis.call('GET', KEYS[1])
+local operation = 'DELETE'
+local etag = ''
+local version
+if current then
+  local doc = cjson.decode(current)
+  operation = 'UPSERT'
+  etag = doc.etag
+  version = doc.version and string.format('%d', doc.version) or ''
+  redis.call('HSET', KEYS[5], ARGV[1], etag)
+else
+  version = tostring(redis.call('INCR', KEYS[4]))
+  redis.call('HDEL', KEYS[5], ARGV[1])
+end
+
+local fields = {}
+for i = 2, #ARGV do
+  fields[#fields + 1] = ARGV[i]
+end
+fields[#fields + 1] = 'operation'
+fields[#fields + 1] = operation
+fields[#fields + 1] = 'etag'
+fields[#fields + 1] = etag
+fields[#fields + 1] = 'version'
+fields[#fields + 1] = version
+
+local id = redis.call('XADD', KEYS[2], '*', unpack(fields))
+return {operation, id}
@@ -0,0 +1,82 @@
+-- schemaguard:outbox-write
+-- Applies a plan write and appends its index event in one atomic step
+-- (transactional outbox). Used by RedisDocumentOutbox.
+--
+-- KEYS[1]  document key (plan:<objectId>)
+-- KEYS[2]  index-events stream
+-- KEYS[3]  deferred-index set
+-- KEYS[4]  document version counter
+-- KEYS[5]  etag hash (objectId → etag)
+-- ARGV[1]  mode: create | replace | delete
+-- ARGV[2]  expected etag, '' for an unconditional write
+-- ARGV[3]  serialized StoredDocument, '' for delete
+-- ARGV[4]  etag of the new document, '' for delete
+-- ARGV[5]  objectId to add to the deferred set instead of publishing,
+--          '' to publish the event now
+-- ARGV[6]  seed for a version counter that does not exist yet
+-- ARGV[7]  objectId
+-- ARGV[8…] stream entry fields as name/value pairs, without etag and version
+--
+-- Every applied write (deletes included) takes the next value of the
+-- version counter (INCR); it is stored in the document and carried by the
+-- event, so versions only ever grow per document — also across delete and
+-- re-create. The seed (epoch millis) keeps a fresh counter above the
+-- internal versions of documents indexed before versions existed.
+--
+-- The document's etag is also kept in the etag hash (HSET / HDEL with the
+-- document), so the etag check here and etags.lua never read or decode
+-- the stored document. One written before the hash existed is decoded
+-- once, when it has no entry.
+--
+-- Returns {status, stream id, version}. status is APPLIED, ALREADY_EXISTS,
+-- NOT_FOUND or ETAG_MISMATCH; the stream id is '' unless an event was
+-- appended; version is '' unless the write was applied.
+
+local mode = ARGV[1]
+local id = ARGV[7]
+local exists = redis.call('EXISTS', KEYS[1]) == 1
+
+if mode == 'create' then
+  if exists then return {'ALREADY_EXISTS', '', ''} end
+elseif not exists then
+  return {'NOT_FOUND', '', ''}
+end
+
+local currentEtag = ''
+if exists then
+  currentEtag = redis.call('HGET', KEYS[5], id) or cjson.decode(redis.call('GET', KEYS[1])).etag
+end
+if ARGV[2] ~= '' and ARGV[2] ~= currentEtag then
+  return {'ETAG_MISMATCH', '', ''}
+end
+
+redis.call('SET', KEYS[4], ARGV[6], 'NX')
+local version = tostring(redis.call('INCR', KEYS[4]))
+local eventEtag = ARGV[4]
+if mode == 'delete' then
+  redis.call('DEL', KEYS[1])
+  redis.call('HDEL', KEYS[5], id)
+  eventEtag = currentEtag
+else
+  local doc = cjson.decode(ARGV[3])
+  doc.version = tonumber(version)
+  redis.call('SET', KEYS[1], cjson.encode(doc))
+  redis.call('HSET', KEYS[5], id, ARGV[4])
+end
+
+if ARGV[5] ~= '' then
+  redis.call('SADD', KEYS[3], ARGV[5])
+  return {'APPLIED', '', version}
+end
+
+local fields = {}
+for i = 8, #ARGV do
+  fields[#fields + 1] = ARGV[i]
+end
+fields[#fields + 1] = 'etag'
+fields[#fields + 1] = eventEtag
+fields[#fields + 1] = 'version'
+fields[#fields + 1] = version
+
+local entryId = redis.call('XADD', KEYS[2], '*', unpack(fields))
+return {'APPLIED', entryId, version}
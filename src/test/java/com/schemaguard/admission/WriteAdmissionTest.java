@@ -0,0 +1,57 @@
+package com.schemaguard.admission;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteAdmissionTest {
+
+    private static final WriteAdmission.Thresholds LIMITS =
+            new WriteAdmission.Thresholds(1000, 60_000, 0.8);
+
+    @Test
+    void overloaded_entersAtThreshold_andLeavesOnlyBelowResumeLevel() {
+        assertFalse(WriteAdmission.overloaded(false, 999, 0, LIMITS));
+        assertTrue(WriteAdmission.overloaded(false, 1000, 0, LIMITS));
+        assertTrue(WriteAdmission.overloaded(false, 10, 60_000, LIMITS));
+
+        // between resume level (800) and threshold: keeps the current state
+        assertTrue(WriteAdmission.overloaded(true, 900, 0, LIMITS));
+        assertFalse(WriteAdmission.overloaded(false, 900, 0, LIMITS));
+
+        assertFalse(WriteAdmission.overloaded(true, 799, 0, LIMITS));
+        assertTrue(WriteAdmission.overloaded(true, 799, 50_000, LIMITS));
+    }
+
+    @Test
+    void overloaded_ignoresUnknownValues_andDisabledChecks() {
+        assertFalse(WriteAdmission.overloaded(false, -1, -1, LIMITS));
+        assertFalse(WriteAdmission.overloaded(true, -1, -1, LIMITS));
+
+        WriteAdmission.Thresholds backlogOnly = new WriteAdmission.Thresholds(1000, 0, 0.8);
+        assertFalse(WriteAdmission.overloaded(false, 10, Long.MAX_VALUE, backlogOnly));
+    }
+
+    @Test
+    void staleStats_countAsOverloaded_unlessConfiguredToAdmit() {
+        // fresh stats decide as usual
+        assertFalse(WriteAdmission.overloaded(false, 1_000, 30_000, true, 10, 0, LIMITS));
+        assertTrue(WriteAdmission.overloaded(false, 1_000, 30_000, true, 1000, 0, LIMITS));
+
+        // a stats loop that stopped reporting fails closed, even from a low backlog
+        assertTrue(WriteAdmission.overloaded(false, 30_001, 30_000, true, 10, 0, LIMITS));
+        assertFalse(WriteAdmission.overloaded(true, 30_001, 30_000, false, 5000, 0, LIMITS));
+
+        // no stats yet admits
+        assertFalse(WriteAdmission.overloaded(true, -1, 30_000, true, 5000, 0, LIMITS));
+    }
+
+    @Test
+    void retryAfter_estimatesDrainTime_withinBounds() {
+        assertEquals(10, WriteAdmission.retryAfterSeconds(1800, 800, 100, 60));
+        assertEquals(1, WriteAdmission.retryAfterSeconds(801, 800, 100, 60));
+        assertEquals(60, WriteAdmission.retryAfterSeconds(100_000, 800, 100, 60));
+        // nothing being indexed — no estimate, use the cap
+        assertEquals(60, WriteAdmission.retryAfterSeconds(1800, 800, 0, 60));
+    }
+}
@@ -0,0 +1,97 @@
+package com.schemaguard.bench;
+
+import com.schemaguard.SchemaGuardApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The application booted in-process on the 'redis' profile against the
+ * local stand-ins: RespStandInServer (or a real Redis via --redis=host:port)
+ * and StubElasticsearchServer. JWT validation is replaced by
+ * BenchSecurityConfig, so any Bearer token is accepted.
+ *
+ * Options read here:
+ *   redis                          "standin" or host:port      (standin)
+ *   es-latency-us / es-jitter-us   stub ES latency + jitter    (2000 / 1000)
+ *   es-threads                     stub ES handler threads     (16)
+ *   app.<property>                 passed through to the app
+ */
+final class BenchEnvironment implements AutoCloseable {
+
+    private final RespStandInServer redisStandIn;
+    private final StubElasticsearchServer elasticsearch;
+    private final ConfigurableApplicationContext app;
+
+    private BenchEnvironment(RespStandInServer redisStandIn, StubElasticsearchServer elasticsearch,
+                             ConfigurableApplicationContext app) {
+        this.redisStandIn = redisStandIn;
+        this.elasticsearch = elasticsearch;
+        this.app = app;
+    }
+
+    static BenchEnvironment start(BenchOptions options) throws IOException {
+        String redis = options.get("redis", "standin");
+        RespStandInServer standIn = redis.equals("standin") ? new RespStandInServer(0) : null;
+        StubElasticsearchServer es = null;
+        try {
+            String redisHost = standIn != null ? "127.0.0.1" : redis.substring(0, redis.indexOf(':'));
+            int redisPort = standIn != null ? standIn.port() : Integer.parseInt(redis.substring(redis.indexOf(':') + 1));
+            es = new StubElasticsearchServer(0, options.longOpt("es-latency-us", 2000),
+                    options.longOpt("es-jitter-us", 1000), options.intOpt("es-threads", 16));
+            return new BenchEnvironment(standIn, es, startApp(options, redisHost, redisPort, es.port()));
+        } catch (RuntimeException | IOException ex) {
+            if (es != null) es.close();
+            if (standIn != null) standIn.close();
+            throw ex;
+        }
+    }
+
+    private static ConfigurableApplicationContext startApp(BenchOptions options, String redisHost,
+                                                           int redisPort, int esPort) {
+        Map<String, String> props = new LinkedHashMap<>();
+        props.put("server.port", "0");
+        props.put("spring.data.redis.host", redisHost);
+        props.put("spring.data.redis.port", Integer.toString(redisPort));
+        props.put("elastic.host", "127.0.0.1");
+        props.put("elastic.port", Integer.toString(esPort));
+        props.put("google.client-id", "bench");
+        // per-request INFO logging would dominate the measurement
+        props.put("logging.level.com.schemaguard", "WARN");
+        props.putAll(options.appProperties());
+
+        // passed as command-line args so they outrank application-redis.properties
+        String[] args = props.entrySet().stream()
+                .map(e -> "--" + e.getKey() + "=" + e.getValue())
+                .toArray(String[]::new);
+        return new SpringApplicationBuilder(SchemaGuardApplication.class, BenchSecurityConfig.class)
+                .profiles("redis")
+                .initializers(ctx -> ctx.getBeanFactory().registerSingleton(
+                        "benchTypeExcludeFilter", new BenchSecurityConfig.ExcludeTestConfigurations()))
+                .run(args);
+    }
+
+    /** e.g. http://127.0.0.1:53211 */
+    String baseUrl() {
+        return "http://127.0.0.1:" + app.getEnvironment().getProperty("local.server.port");
+    }
+
+    StubElasticsearchServer elasticsearch() {
+        return elasticsearch;
+    }
+
+    /** Null when running against a real Redis. */
+    RespStandInServer redisStandIn() {
+        return redisStandIn;
+    }
+
+    @Override
+    public void close() throws IOException {
+        app.close();
+        elasticsearch.close();
+        if (redisStandIn != null) redisStandIn.close();
+    }
+}
@@ -0,0 +1,57 @@
+package com.schemaguard.bench;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * --key=value command-line options shared by the bench tools.
+ * A bare --flag is read as "true"; "app.<property>" entries are passed
+ * through to the booted application.
+ */
+final class BenchOptions {
+
+    private final Map<String, String> values;
+
+    private BenchOptions(Map<String, String> values) {
+        this.values = values;
+    }
+
+    static BenchOptions parse(String[] args) {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (String arg : args) {
+            String a = arg.startsWith("--") ? arg.substring(2) : arg;
+            int eq = a.indexOf('=');
+            values.put(eq < 0 ? a : a.substring(0, eq), eq < 0 ? "true" : a.substring(eq + 1));
+        }
+        return new BenchOptions(values);
+    }
+
+    boolean has(String key) {
+        return values.containsKey(key);
+    }
+
+    String get(String key, String def) {
+        return values.getOrDefault(key, def);
+    }
+
+    int intOpt(String key, int def) {
+        return values.containsKey(key) ? Integer.parseInt(values.get(key)) : def;
+    }
+
+    long longOpt(String key, long def) {
+        return values.containsKey(key) ? Long.parseLong(values.get(key)) : def;
+    }
+
+    double doubleOpt(String key, double def) {
+        return values.containsKey(key) ? Double.parseDouble(values.get(key)) : def;
+    }
+
+    /** "app.<property>" options with the prefix stripped. */
+    Map<String, String> appProperties() {
+        Map<String, String> out = new LinkedHashMap<>();
+        values.forEach((k, v) -> {
+            if (k.startsWith("app.")) out.put(k.substring(4), v);
+        });
+        return out;
+    }
+}
@@ -0,0 +1,56 @@
+package com.schemaguard.bench;
+
+import org.springframework.boot.context.TypeExcludeFilter;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.type.classreading.MetadataReader;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+
+import java.time.Instant;
+
+/**
+ * Benchmark-only JwtDecoder that accepts any Bearer token.
+ *
+ * Unlike TestSecurityConfig (MockMvc + jwt() post-processor), the benchmark
+ * drives the app over real HTTP, so the decoder must actually succeed.
+ * Every token maps to a fixed "bench" subject.
+ */
+@TestConfiguration
+public class BenchSecurityConfig {
+
+    @Bean
+    @Primary
+    public JwtDecoder benchJwtDecoder() {
+        return token -> Jwt.withTokenValue(token)
+                .header("alg", "none")
+                .subject("bench")
+                .issuedAt(Instant.now())
+                .expiresAt(Instant.now().plusSeconds(3600))
+                .build();
+    }
+
+    /**
+     * Keeps component scanning from picking up @TestConfiguration classes
+     * (e.g. TestSecurityConfig) when the app is booted outside @SpringBootTest.
+     * Explicitly passed sources such as this class are still registered.
+     */
+    static class ExcludeTestConfigurations extends TypeExcludeFilter {
+        @Override
+        public boolean match(MetadataReader reader, MetadataReaderFactory factory) {
+            return reader.getAnnotationMetadata().hasAnnotation(TestConfiguration.class.getName());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj != null && obj.getClass() == getClass();
+        }
+
+        @Override
+        public int hashCode() {
+            return getClass().hashCode();
+        }
+    }
+}
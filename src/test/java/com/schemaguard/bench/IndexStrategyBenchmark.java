@@ -0,0 +1,282 @@
+package com.schemaguard.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.schemaguard.SchemaGuardApplication;
+import com.schemaguard.elastic.IndexAliasManager;
+import com.schemaguard.elastic.IndexService;
+import com.schemaguard.queue.PlanDocumentSplitter;
+import com.schemaguard.util.EtagUtil;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query latency and index size of the index strategies on a real
+ * Elasticsearch: join with 2 and 3 levels (elastic.index.join-levels),
+ * nested and flattened (elastic.index.strategy).
+ *
+ * For each layout the application is booted (in-memory stores, no Redis,
+ * index events dropped) with that strategy, so the mapping, splitter and
+ * bulk indexing are the production ones. It then:
+ *   1. creates plans-bench-<layout> with the plan mapping (0 replicas),
+ *   2. bulk-loads the same synthetic plans through IndexService.bulkIndex,
+ *   3. force-merges to one segment and reads docs.count / store size
+ *      (Lucene documents: each nested object counts as one),
+ *   4. runs each query warmup + iterations times, one at a time, with the
+ *      request cache off, recording took-from-the-client latency.
+ *
+ * The queries ask the same question of every layout — only the document
+ * each condition is evaluated on differs:
+ *   service-name        plans with a linked service named X
+ *   service-copay       plans with a planservice copay in [10, 12]
+ *   plan-deductible     plans whose plan deductible is >= 2900
+ *   plan-type           plans of planType inNetwork (parent only)
+ *
+ * Needs a scratch cluster: the booted app also creates the plans-index
+ * alias if missing, and the bench indices are deleted at the end unless
+ * --keep is given.
+ *
+ *   mvn -q test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=com.schemaguard.bench.IndexStrategyBenchmark \
+ *       -Dexec.args="--es=http://localhost:9200 --plans=20000 --services=4"
+ *
+ * Options (all --key=value):
+ *   es                    Elasticsearch base URL                 (http://localhost:9200)
+ *   plans / services      plans to load / linkedPlanServices each (10000 / 4)
+ *   batch                 plans per _bulk                         (500)
+ *   warmup / iterations   runs per query                          (100 / 500)
+ *   layouts               layouts to run, comma-separated
+ *                         (join-2,join-3,nested,flattened)
+ *   keep                  leave the bench indices in place
+ *   app.<property>        passed through to the app
+ */
+public class IndexStrategyBenchmark {
+
+    /** One strategy + join-levels combination, named join-2, join-3, nested, flattened. */
+    record Layout(String name, String strategy, int joinLevels) {
+
+        static Layout parse(String name) {
+            if (name.startsWith("join-")) return new Layout(name, "join", Integer.parseInt(name.substring(5)));
+            return new Layout(name, name, 2);
+        }
+
+        boolean multiLevel() {
+            return strategy.equals("join") && joinLevels == 3;
+        }
+    }
+
+    private final BenchOptions options;
+    private final URI es;
+    private final HttpClient http = HttpClient.newHttpClient();
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final List<ObjectNode> plans = new ArrayList<>();
+
+    /** Values the queries look for, taken from the generated plans. */
+    private String serviceName;
+
+    IndexStrategyBenchmark(BenchOptions options) {
+        this.options = options;
+        this.es = URI.create(options.get("es", "http://localhost:9200"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        new IndexStrategyBenchmark(BenchOptions.parse(args)).run();
+        System.exit(0);
+    }
+
+    void run() throws Exception {
+        SyntheticPlanGenerator generator = SyntheticPlanGenerator.fromClasspath(options.intOpt("services", 4), 3000, 50);
+        int count = options.intOpt("plans", 10_000);
+        for (int i = 0; i < count; i++) {
+            plans.add(generator.generate("bench-" + i));
+        }
+        serviceName = plans.get(count / 2).path("linkedPlanServices").path(0).path("linkedService").path("name").asText();
+
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (String name : options.get("layouts", "join-2,join-3,nested,flattened").split(",")) {
+            Layout layout = Layout.parse(name.trim());
+            results.put(layout.name(), measure(layout));
+        }
+        report(results);
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // One layout
+    // ─────────────────────────────────────────────────────────────────────────
+
+    record Result(long docs, long storeBytes, long loadMillis, Map<String, Histogram> latency) {}
+
+    private Result measure(Layout layout) throws Exception {
+        String index = "plans-bench-" + layout.name();
+        try (ConfigurableApplicationContext app = startApp(layout)) {
+            IndexAliasManager aliases = app.getBean(IndexAliasManager.class);
+            IndexService indexService = app.getBean(IndexService.class);
+            PlanDocumentSplitter splitter = app.getBean(PlanDocumentSplitter.class);
+
+            aliases.delete(index);
+            aliases.create(index, true, false);
+            long start = System.nanoTime();
+            load(index, indexService, splitter);
+            aliases.finishBulkLoad(index);
+            long loadMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            send("POST", "/" + index + "/_forcemerge?max_num_segments=1", null);
+            JsonNode stats = mapper.readTree(send("GET", "/" + index + "/_stats/docs,store", null))
+                    .path("_all").path("primaries");
+            long docs = stats.path("docs").path("count").asLong();
+            long store = stats.path("store").path("size_in_bytes").asLong();
+
+            Map<String, Histogram> latency = new LinkedHashMap<>();
+            for (Map.Entry<String, String> query : queries(layout).entrySet()) {
+                latency.put(query.getKey(), time(index, query.getValue()));
+            }
+            if (!options.has("keep")) aliases.delete(index);
+            return new Result(docs, store, loadMillis, latency);
+        }
+    }
+
+    private void load(String index, IndexService indexService, PlanDocumentSplitter splitter) {
+        int batchSize = options.intOpt("batch", 500);
+        List<IndexService.BulkPlan> batch = new ArrayList<>(batchSize);
+        int failed = 0;
+        for (ObjectNode plan : plans) {
+            String json = plan.toString();
+            batch.add(new IndexService.BulkPlan(plan.path("objectId").asText(), plan,
+                    EtagUtil.sha256Etag(json), 0, splitter.childDocs(json)));
+            if (batch.size() == batchSize) {
+                failed += indexService.bulkIndex(index, batch);
+                batch.clear();
+            }
+        }
+        failed += indexService.bulkIndex(index, batch);
+        if (failed > 0) System.err.println(index + ": " + failed + " bulk items rejected");
+    }
+
+    /** The four queries, written for the layout. */
+    private Map<String, String> queries(Layout layout) {
+        Map<String, String> queries = new LinkedHashMap<>();
+        if (layout.multiLevel()) {
+            queries.put("service-name", hasChild("child", hasChild("service", match("name", serviceName))));
+            queries.put("service-copay", hasChild("child", hasChild("servicecostshare", range("copay", 10, 12))));
+            queries.put("plan-deductible", hasChild("plancostshare", range("deductible", 2900, null)));
+        } else {
+            // planservice fields: on the child documents, or under the plan's linkedPlanServices
+            String prefix = layout.strategy().equals("join") ? "" : "linkedPlanServices.";
+            queries.put("service-name", service(layout, match(prefix + "linkedService.name", serviceName)));
+            queries.put("service-copay", service(layout, range(prefix + "planserviceCostShares.copay", 10, 12)));
+            queries.put("plan-deductible", range("planCostShares.deductible", 2900, null));
+        }
+        queries.put("plan-type", "{\"term\":{\"planType\":\"inNetwork\"}}");
+        return queries;
+    }
+
+    /** A condition on one planservice: has_child, nested, or the query itself (flattened). */
+    private static String service(Layout layout, String query) {
+        return switch (layout.strategy()) {
+            case "join" -> hasChild("child", query);
+            case "nested" -> "{\"nested\":{\"path\":\"linkedPlanServices\",\"query\":" + query + "}}";
+            default -> query;
+        };
+    }
+
+    private static String hasChild(String type, String query) {
+        return "{\"has_child\":{\"type\":\"" + type + "\",\"query\":" + query + "}}";
+    }
+
+    private static String match(String field, String value) {
+        return "{\"match\":{\"" + field + "\":\"" + value + "\"}}";
+    }
+
+    private static String range(String field, Integer gte, Integer lte) {
+        return "{\"range\":{\"" + field + "\":{" + (gte != null ? "\"gte\":" + gte : "")
+                + (gte != null && lte != null ? "," : "") + (lte != null ? "\"lte\":" + lte : "") + "}}}";
+    }
+
+    private Histogram time(String index, String query) throws Exception {
+        String body = "{\"size\":10,\"track_total_hits\":false,\"query\":" + query + "}";
+        String path = "/" + index + "/_search?request_cache=false";
+        for (int i = 0; i < options.intOpt("warmup", 100); i++) {
+            send("POST", path, body);
+        }
+        Histogram histogram = new Histogram(TimeUnit.SECONDS.toMicros(60), 3);
+        for (int i = 0; i < options.intOpt("iterations", 500); i++) {
+            long start = System.nanoTime();
+            send("POST", path, body);
+            histogram.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        }
+        return histogram;
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Output
+    // ─────────────────────────────────────────────────────────────────────────
+
+    private void report(Map<String, Result> results) {
+        System.out.printf("%n%d plans, %d services each%n%n", plans.size(), options.intOpt("services", 4));
+        System.out.printf("%-12s %10s %12s %10s%n", "layout", "docs", "store MiB", "load s");
+        results.forEach((layout, r) -> System.out.printf("%-12s %10d %12.1f %10.1f%n",
+                layout, r.docs(), r.storeBytes() / 1048576.0, r.loadMillis() / 1000.0));
+
+        System.out.printf("%n%-16s %-12s %9s %9s %9s %9s%n", "query", "layout", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        for (String query : results.values().iterator().next().latency().keySet()) {
+            results.forEach((layout, r) -> {
+                Histogram h = r.latency().get(query);
+                System.out.printf("%-16s %-12s %9.2f %9.2f %9.2f %9.2f%n", query, layout,
+                        h.getValueAtPercentile(50) / 1000.0, h.getValueAtPercentile(90) / 1000.0,
+                        h.getValueAtPercentile(99) / 1000.0, h.getMaxValue() / 1000.0);
+            });
+        }
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // helpers
+    // ─────────────────────────────────────────────────────────────────────────
+
+    private ConfigurableApplicationContext startApp(Layout layout) {
+        Map<String, String> props = new LinkedHashMap<>();
+        props.put("server.port", "0");
+        // in-memory stores: nothing is written through the API
+        props.put("spring.profiles.active", "bench");
+        props.put("elastic.host", es.getHost());
+        props.put("elastic.port", Integer.toString(es.getPort()));
+        props.put("elastic.index.strategy", layout.strategy());
+        props.put("elastic.index.join-levels", Integer.toString(layout.joinLevels()));
+        props.put("elastic.index.replicas", "0");
+        props.put("index.bus.enabled", "false");
+        props.put("google.client-id", "bench");
+        props.put("logging.level.com.schemaguard", "WARN");
+        props.putAll(options.appProperties());
+
+        String[] args = props.entrySet().stream()
+                .map(e -> "--" + e.getKey() + "=" + e.getValue())
+                .toArray(String[]::new);
+        return new SpringApplicationBuilder(SchemaGuardApplication.class, BenchSecurityConfig.class)
+                .initializers(ctx -> ctx.getBeanFactory().registerSingleton(
+                        "benchTypeExcludeFilter", new BenchSecurityConfig.ExcludeTestConfigurations()))
+                .run(args);
+    }
+
+    private String send(String method, String path, String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(es.resolve(path))
+                .header("Content-Type", "application/json")
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() >= 300) {
+            throw new IllegalStateException(method + " " + path + " → " + response.statusCode() + " " + response.body());
+        }
+        return response.body();
+    }
+}
@@ -0,0 +1,329 @@
+package com.schemaguard.bench;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-model load generator for the plan and search APIs.
+ *
+ * Requests are issued on a fixed schedule (--rate ops/s, uniform or Poisson
+ * inter-arrival) regardless of how fast the server answers. Latency is
+ * measured from each request's *intended* start time, so a stalled server
+ * shows up as queueing delay instead of silently lowering the offered load
+ * (no coordinated omission). Service time — actual send to response — is
+ * reported alongside for comparison.
+ *
+ * Plans are synthesized from plan-schema.json by SyntheticPlanGenerator.
+ *
+ * Two targets:
+ *   - default: the app is booted in-process (BenchEnvironment: Redis stand-in,
+ *     stub Elasticsearch) with BenchSecurityConfig, so any token is accepted
+ *   - --target=http://host:8080 --token=<jwt>: an already running instance;
+ *     start it with a permissive JwtDecoder (e.g. BenchSecurityConfig) or pass a real token
+ *
+ *   mvn -q test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=com.schemaguard.bench.LoadGenerator \
+ *       -Dexec.args="--rate=300 --duration=60 --mix=post=20,get=30,get_not_modified=20,patch=15,delete=5,search=10"
+ *
+ * Options (all --key=value):
+ *   rate                 target ops/s                                  (200)
+ *   arrival              poisson | uniform                             (poisson)
+ *   duration / warmup    measured / warm-up seconds                    (30 / 5)
+ *   mix                  weights per endpoint, see Endpoint            (post=20,get=30,get_not_modified=20,patch=15,delete=5,search=10)
+ *   seed-plans           plans created before warm-up                  (100)
+ *   services             linkedPlanServices per plan                   (2)
+ *   max-deductible / max-copay   cost-share amount upper bounds        (3000 / 50)
+ *   max-in-flight        outstanding requests before new ones are dropped (4096)
+ *   target / token       external instance + Bearer token              (in-process / "loadgen")
+ *   + BenchEnvironment options when running in-process
+ */
+public class LoadGenerator {
+
+    enum Endpoint { POST, GET, GET_NOT_MODIFIED, PATCH, DELETE, SEARCH }
+
+    private static final long HISTOGRAM_MAX = TimeUnit.SECONDS.toNanos(120);
+
+    private final BenchOptions options;
+    private final Map<Endpoint, Integer> weights;
+    private final SyntheticPlanGenerator plans;
+
+    private final Map<Endpoint, Histogram> responseTime = new EnumMap<>(Endpoint.class);
+    private final Map<Endpoint, Histogram> serviceTime = new EnumMap<>(Endpoint.class);
+    private final Map<Endpoint, Map<String, LongAdder>> errors = new EnumMap<>(Endpoint.class);
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final PipelineBenchmark.LivePool pool = new PipelineBenchmark.LivePool();
+    private final Map<String, String> etags = new ConcurrentHashMap<>();
+    private final AtomicLong idSequence = new AtomicLong();
+    private final AtomicLong revision = new AtomicLong();
+
+    private HttpClient http;
+    private String baseUrl;
+    private String token;
+
+    LoadGenerator(BenchOptions options) {
+        this.options = options;
+        this.weights = parseMix(options.get("mix",
+                "post=20,get=30,get_not_modified=20,patch=15,delete=5,search=10"));
+        this.plans = SyntheticPlanGenerator.fromClasspath(options.intOpt("services", 2),
+                options.intOpt("max-deductible", 3000), options.intOpt("max-copay", 50));
+        for (Endpoint e : Endpoint.values()) {
+            responseTime.put(e, new ConcurrentHistogram(HISTOGRAM_MAX, 3));
+            serviceTime.put(e, new ConcurrentHistogram(HISTOGRAM_MAX, 3));
+            errors.put(e, new ConcurrentHashMap<>());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new LoadGenerator(BenchOptions.parse(args)).run();
+        System.exit(0);
+    }
+
+    void run() throws Exception {
+        http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5)).build();
+        token = options.get("token", "loadgen");
+
+        if (options.has("target")) {
+            baseUrl = options.get("target", null).replaceAll("/+$", "");
+            execute();
+        } else {
+            try (BenchEnvironment env = BenchEnvironment.start(options)) {
+                baseUrl = env.baseUrl();
+                execute();
+            }
+        }
+    }
+
+    private void execute() throws Exception {
+        int seed = options.intOpt("seed-plans", 100);
+        System.out.printf("target %s — seeding %d plans%n", baseUrl, seed);
+        for (int i = 0; i < seed; i++) {
+            String id = nextId();
+            HttpResponse<String> resp = http.send(request(Endpoint.POST, id), HttpResponse.BodyHandlers.ofString());
+            if (resp.statusCode() >= 300) {
+                throw new IllegalStateException("Seeding failed: HTTP " + resp.statusCode() + " " + resp.body());
+            }
+            onSuccess(Endpoint.POST, id, resp);
+        }
+
+        double rate = options.doubleOpt("rate", 200);
+        int warmup = options.intOpt("warmup", 5);
+        System.out.printf("warming up for %ds at %.0f ops/s (mix=%s)%n", warmup, rate, weights);
+        schedule(rate, warmup, false);
+
+        int duration = options.intOpt("duration", 30);
+        System.out.printf("measuring for %ds%n", duration);
+        long started = System.nanoTime();
+        schedule(rate, duration, true);
+        long elapsed = System.nanoTime() - started;
+        awaitInFlight(TimeUnit.SECONDS.toNanos(30));
+
+        report(rate, elapsed);
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Open-model scheduling
+    // ─────────────────────────────────────────────────────────────────────────
+
+    /**
+     * Dispatches requests at their intended times until the phase ends.
+     * If dispatch itself falls behind, requests go out immediately and the
+     * lag is charged to their response time.
+     */
+    private void schedule(double rate, int seconds, boolean record) {
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        boolean poisson = options.get("arrival", "poisson").equals("poisson");
+        int maxInFlight = options.intOpt("max-in-flight", 4096);
+        Random random = new Random();
+
+        long intended = System.nanoTime();
+        long end = intended + TimeUnit.SECONDS.toNanos(seconds);
+        while (intended < end) {
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            if (inFlight.get() >= maxInFlight) {
+                if (record) dropped.increment();
+            } else {
+                dispatch(pickEndpoint(), intended, record);
+            }
+            intended += poisson
+                    ? (long) (-Math.log(1 - random.nextDouble()) * intervalNanos)
+                    : intervalNanos;
+        }
+    }
+
+    private void dispatch(Endpoint endpoint, long intendedNanos, boolean record) {
+        String id = switch (endpoint) {
+            case POST -> nextId();
+            case DELETE -> pool.take();
+            case SEARCH -> "";
+            default -> pool.peek();
+        };
+        Endpoint actual = id == null ? Endpoint.POST : endpoint;
+        String target = id == null ? nextId() : id;
+        HttpRequest request = request(actual, target);
+
+        inFlight.incrementAndGet();
+        long sent = System.nanoTime();
+        http.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((resp, ex) -> {
+            long done = System.nanoTime();
+            inFlight.decrementAndGet();
+            boolean ok = ex == null && resp.statusCode() < 400;
+            if (ok) {
+                onSuccess(actual, target, resp);
+            } else if (actual == Endpoint.DELETE && (ex != null || resp.statusCode() >= 500)) {
+                pool.add(target);   // not deleted — keep it available
+            }
+            if (!record) return;
+            if (ok) {
+                responseTime.get(actual).recordValue(Math.min(HISTOGRAM_MAX, done - intendedNanos));
+                serviceTime.get(actual).recordValue(Math.min(HISTOGRAM_MAX, done - sent));
+            } else {
+                String key = ex != null ? ex.getClass().getSimpleName() : Integer.toString(resp.statusCode());
+                errors.get(actual).computeIfAbsent(key, k -> new LongAdder()).increment();
+            }
+        });
+    }
+
+    private void awaitInFlight(long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Requests
+    // ─────────────────────────────────────────────────────────────────────────
+
+    private HttpRequest request(Endpoint endpoint, String id) {
+        String planUrl = baseUrl + "/api/v1/plan";
+        HttpRequest.Builder b = switch (endpoint) {
+            case POST -> HttpRequest.newBuilder(URI.create(planUrl))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(plan(id)));
+            case GET -> HttpRequest.newBuilder(URI.create(planUrl + "/" + id)).GET();
+            case GET_NOT_MODIFIED -> {
+                HttpRequest.Builder get = HttpRequest.newBuilder(URI.create(planUrl + "/" + id)).GET();
+                String etag = etags.get(id);
+                yield etag != null ? get.header("If-None-Match", "\"" + etag + "\"") : get;
+            }
+            case PATCH -> HttpRequest.newBuilder(URI.create(planUrl + "/" + id))
+                    .header("Content-Type", "application/merge-patch+json")
+                    .method("PATCH", HttpRequest.BodyPublishers.ofString(
+                            "{\"loadRevision\":" + revision.incrementAndGet() + "}"));
+            case DELETE -> HttpRequest.newBuilder(URI.create(planUrl + "/" + id)).DELETE();
+            case SEARCH -> HttpRequest.newBuilder(URI.create(baseUrl
+                    + "/api/v1/search?childField=objectType&childValue=planservice")).GET();
+        };
+        return b.header("Authorization", "Bearer " + token)
+                .timeout(Duration.ofSeconds(30))
+                .build();
+    }
+
+    private void onSuccess(Endpoint endpoint, String id, HttpResponse<String> resp) {
+        switch (endpoint) {
+            case POST -> {
+                rememberEtag(id, resp);
+                pool.add(id);
+            }
+            case PATCH, GET -> rememberEtag(id, resp);
+            case DELETE -> etags.remove(id);
+            default -> { }
+        }
+    }
+
+    private void rememberEtag(String id, HttpResponse<String> resp) {
+        resp.headers().firstValue("ETag").ifPresent(e -> etags.put(id, e.replace("\"", "")));
+    }
+
+    private String nextId() {
+        return "load-" + idSequence.incrementAndGet() + "-" + Long.toHexString(ThreadLocalRandom.current().nextLong());
+    }
+
+    private String plan(String id) {
+        return plans.generate(id).toString();
+    }
+
+    private Endpoint pickEndpoint() {
+        int total = weights.values().stream().mapToInt(Integer::intValue).sum();
+        int r = ThreadLocalRandom.current().nextInt(total);
+        for (Map.Entry<Endpoint, Integer> e : weights.entrySet()) {
+            r -= e.getValue();
+            if (r < 0) return e.getKey();
+        }
+        return Endpoint.POST;
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Report
+    // ─────────────────────────────────────────────────────────────────────────
+
+    private void report(double rate, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long completed = 0;
+        System.out.println();
+        System.out.println("=== response time from intended start (ms) ===");
+        System.out.printf("%-17s %8s %9s %8s %8s %8s %8s %8s   %s%n",
+                "endpoint", "count", "ops/s", "p50", "p90", "p99", "p99.9", "max", "errors");
+        for (Endpoint e : Endpoint.values()) {
+            Histogram h = responseTime.get(e);
+            completed += h.getTotalCount();
+            printRow(e, h, seconds, errors.get(e));
+        }
+        System.out.println();
+        System.out.println("=== service time, send → response (ms) ===");
+        for (Endpoint e : Endpoint.values()) {
+            printRow(e, serviceTime.get(e), seconds, null);
+        }
+        System.out.println();
+        System.out.printf("offered %.1f ops/s, completed %.1f ops/s over %.1fs, dropped at max-in-flight: %d%n",
+                rate, completed / seconds, seconds, dropped.sum());
+    }
+
+    private static void printRow(Endpoint e, Histogram h, double seconds, Map<String, LongAdder> errors) {
+        String err = "";
+        if (errors != null && !errors.isEmpty()) {
+            StringBuilder sb = new StringBuilder();
+            errors.forEach((k, v) -> sb.append(sb.length() == 0 ? "" : " ").append(k).append('=').append(v.sum()));
+            err = sb.toString();
+        }
+        System.out.printf("%-17s %8d %9.1f %8.2f %8.2f %8.2f %8.2f %8.2f   %s%n",
+                e.name().toLowerCase(), h.getTotalCount(), h.getTotalCount() / seconds,
+                ms(h.getValueAtPercentile(50)), ms(h.getValueAtPercentile(90)),
+                ms(h.getValueAtPercentile(99)), ms(h.getValueAtPercentile(99.9)), ms(h.getMaxValue()), err);
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static Map<Endpoint, Integer> parseMix(String mix) {
+        Map<Endpoint, Integer> out = new EnumMap<>(Endpoint.class);
+        for (String part : mix.split(",")) {
+            String[] kv = part.split("=");
+            out.put(Endpoint.valueOf(kv[0].trim().toUpperCase()), Integer.parseInt(kv[1].trim()));
+        }
+        return out;
+    }
+}
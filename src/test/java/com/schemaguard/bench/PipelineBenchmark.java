@@ -0,0 +1,344 @@
+package com.schemaguard.bench;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * End-to-end write-to-searchable benchmark:
+ *
+ *   HTTP write → PlanController → Redis (KV + stream) → IndexWorker → Elasticsearch
+ *
+ * Boots the real application on the 'redis' profile against two local stand-ins —
+ * RespStandInServer (Redis) and StubElasticsearchServer (ES, with injected latency) —
+ * then drives a closed-loop write mix from N client threads and reports:
+ *
+ *   - throughput and HdrHistogram API latency per operation
+ *   - time-to-indexed: API request start → parent write arriving at the ES stub
+ *     (a version superseded before the worker reached it counts as indexed when
+ *     its successor lands, since the worker always indexes the latest KV state)
+ *
+ * Run from the IDE, or:
+ *   mvn -q test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=com.schemaguard.bench.PipelineBenchmark \
+ *       -Dexec.args="--duration=30 --concurrency=16 --mix=post=40,put=20,patch=30,delete=10"
+ *
+ * Options (all --key=value):
+ *   duration / warmup        measured / warm-up seconds             (30 / 5)
+ *   concurrency              client threads                          (16)
+ *   mix                      op weights post,put,patch,delete       (post=40,put=20,patch=30,delete=10)
+ *   services                 linkedPlanServices per plan             (2)
+ *   es-latency-us / es-jitter-us   stub ES latency + uniform jitter  (2000 / 1000)
+ *   redis                    "standin" or host:port of a real Redis  (standin)
+ *   drain-timeout            seconds to wait for indexing to catch up (60)
+ *   app.<property>           passed through to the app, e.g. --app.index.worker.poll-interval-ms=10
+ */
+public class PipelineBenchmark {
+
+    enum Op { POST, PUT, PATCH, DELETE }
+
+    private final BenchOptions options;
+    private final Map<Op, Integer> weights;
+    private final SyntheticPlanGenerator plans;
+
+    private final Map<Op, Histogram> apiLatency = new EnumMap<>(Op.class);
+    private final Map<Op, LongAdder> errors = new EnumMap<>(Op.class);
+    private final LivePool pool = new LivePool();
+    private final Map<String, List<Write>> writesByDoc = new ConcurrentHashMap<>();
+    private final AtomicLong idSequence = new AtomicLong();
+    private final AtomicLong revision = new AtomicLong();
+
+    private HttpClient http;
+    private String baseUrl;
+    private volatile boolean recording;
+
+    /** One acknowledged write: its ETag (null for DELETE) and request start time. */
+    record Write(String etag, long startNanos) {}
+
+    PipelineBenchmark(BenchOptions options) {
+        this.options = options;
+        this.weights = parseMix(options.get("mix", "post=40,put=20,patch=30,delete=10"));
+        this.plans = SyntheticPlanGenerator.fromClasspath(options.intOpt("services", 2), 3000, 50);
+        for (Op op : Op.values()) {
+            apiLatency.put(op, new ConcurrentHistogram(TimeUnit.SECONDS.toNanos(60), 3));
+            errors.put(op, new LongAdder());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new PipelineBenchmark(BenchOptions.parse(args)).run();
+        System.exit(0);
+    }
+
+    void run() throws Exception {
+        try (BenchEnvironment env = BenchEnvironment.start(options)) {
+            StubElasticsearchServer es = env.elasticsearch();
+            baseUrl = env.baseUrl() + "/api/v1/plan";
+            http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(5)).build();
+
+            int concurrency = options.intOpt("concurrency", 16);
+            int warmup = options.intOpt("warmup", 5);
+            System.out.printf("warming up for %ds (concurrency=%d, mix=%s)%n", warmup, concurrency, weights);
+            drive(concurrency, warmup);
+
+            writesByDoc.clear();
+            recording = true;
+            long started = System.nanoTime();
+            drive(concurrency, options.intOpt("duration", 30));
+            long elapsedNanos = System.nanoTime() - started;
+            recording = false;
+
+            System.out.println("load finished — waiting for indexing to drain");
+            long drainStart = System.nanoTime();
+            boolean drained = awaitDrain(es, TimeUnit.SECONDS.toNanos(options.intOpt("drain-timeout", 60)));
+            long drainNanos = System.nanoTime() - drainStart;
+
+            report(es, env.redisStandIn(), elapsedNanos, drained, drainNanos);
+        }
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Load
+    // ─────────────────────────────────────────────────────────────────────────
+
+    private void drive(int concurrency, int seconds) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        CountDownLatch done = new CountDownLatch(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            Thread t = new Thread(() -> {
+                try {
+                    while (System.nanoTime() < deadline) {
+                        execute(pickOp());
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "bench-client-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+        done.await();
+    }
+
+    private void execute(Op op) {
+        String id = op == Op.POST ? null : (op == Op.DELETE ? pool.take() : pool.peek());
+        if (id == null) {
+            op = Op.POST;
+        }
+        long start = System.nanoTime();
+        try {
+            HttpResponse<String> resp;
+            switch (op) {
+                case POST -> {
+                    id = "bench-" + idSequence.incrementAndGet();
+                    resp = send(HttpRequest.newBuilder(URI.create(baseUrl))
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString(plan(id))));
+                }
+                case PUT -> resp = send(HttpRequest.newBuilder(URI.create(baseUrl + "/" + id))
+                        .header("Content-Type", "application/json")
+                        .PUT(HttpRequest.BodyPublishers.ofString(plan(id))));
+                case PATCH -> resp = send(HttpRequest.newBuilder(URI.create(baseUrl + "/" + id))
+                        .header("Content-Type", "application/merge-patch+json")
+                        .method("PATCH", HttpRequest.BodyPublishers.ofString(
+                                "{\"benchRevision\":" + revision.incrementAndGet() + "}")));
+                default -> resp = send(HttpRequest.newBuilder(URI.create(baseUrl + "/" + id)).DELETE());
+            }
+            long elapsed = System.nanoTime() - start;
+            int status = resp.statusCode();
+            if (status >= 300) {
+                if (recording) errors.get(op).increment();
+                return;
+            }
+            if (op == Op.POST) pool.add(id);
+            if (recording) {
+                apiLatency.get(op).recordValue(elapsed);
+                String etag = op == Op.DELETE ? null
+                        : resp.headers().firstValue("ETag").map(e -> e.replace("\"", "")).orElse(null);
+                writesByDoc.computeIfAbsent(id, k -> java.util.Collections.synchronizedList(new ArrayList<>()))
+                        .add(new Write(etag, start));
+            }
+        } catch (Exception ex) {
+            if (recording) errors.get(op).increment();
+        }
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder builder) throws Exception {
+        return http.send(builder.header("Authorization", "Bearer bench")
+                .timeout(Duration.ofSeconds(30)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private Op pickOp() {
+        int total = weights.values().stream().mapToInt(Integer::intValue).sum();
+        int r = ThreadLocalRandom.current().nextInt(total);
+        for (Map.Entry<Op, Integer> e : weights.entrySet()) {
+            r -= e.getValue();
+            if (r < 0) return e.getKey();
+        }
+        return Op.POST;
+    }
+
+    /** A synthetic schema-valid plan; benchRevision makes every write's ETag unique. */
+    private String plan(String id) {
+        return plans.generate(id).put("benchRevision", revision.incrementAndGet()).toString();
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Time-to-indexed
+    // ─────────────────────────────────────────────────────────────────────────
+
+    private boolean awaitDrain(StubElasticsearchServer es, long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (System.nanoTime() < deadline) {
+            if (unindexedFinalVersions(es) == 0) return true;
+            Thread.sleep(200);
+        }
+        return false;
+    }
+
+    private long unindexedFinalVersions(StubElasticsearchServer es) {
+        long missing = 0;
+        for (Map.Entry<String, List<Write>> e : writesByDoc.entrySet()) {
+            List<Write> writes = e.getValue();
+            Write last;
+            synchronized (writes) {
+                last = writes.get(writes.size() - 1);
+            }
+            if (arrival(es, e.getKey(), last) == null) missing++;
+        }
+        return missing;
+    }
+
+    private static Long arrival(StubElasticsearchServer es, String docId, Write w) {
+        return w.etag() == null ? es.parentDeletedAt(docId) : es.parentIndexedAt(w.etag());
+    }
+
+    private Histogram timeToIndexed(StubElasticsearchServer es, long[] superseded, long[] neverIndexed) {
+        Histogram h = new Histogram(TimeUnit.SECONDS.toNanos(300), 3);
+        for (Map.Entry<String, List<Write>> e : writesByDoc.entrySet()) {
+            List<Write> writes;
+            synchronized (e.getValue()) {
+                writes = new ArrayList<>(e.getValue());
+            }
+            // walk backwards: a version is visible once it or any later version lands
+            Long earliestLater = null;
+            for (int i = writes.size() - 1; i >= 0; i--) {
+                Write w = writes.get(i);
+                Long own = arrival(es, e.getKey(), w);
+                Long visible = own;
+                if (earliestLater != null && (visible == null || earliestLater < visible)) {
+                    visible = earliestLater;
+                }
+                if (own == null && visible != null) superseded[0]++;
+                if (visible == null) {
+                    neverIndexed[0]++;
+                } else {
+                    h.recordValue(Math.max(0, visible - w.startNanos()));
+                    earliestLater = visible;
+                }
+            }
+        }
+        return h;
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Report
+    // ─────────────────────────────────────────────────────────────────────────
+
+    private void report(StubElasticsearchServer es, RespStandInServer standIn,
+                        long elapsedNanos, boolean drained, long drainNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long totalOps = 0;
+        System.out.println();
+        System.out.println("=== API latency (ms) ===");
+        System.out.printf("%-8s %9s %8s %9s %8s %8s %8s %8s %8s%n",
+                "op", "count", "errors", "ops/s", "p50", "p90", "p99", "p99.9", "max");
+        for (Op op : Op.values()) {
+            Histogram h = apiLatency.get(op);
+            totalOps += h.getTotalCount();
+            printRow(op.name(), h, errors.get(op).sum(), seconds);
+        }
+        System.out.printf("total throughput: %.1f ops/s over %.1fs%n", totalOps / seconds, seconds);
+
+        long[] superseded = {0};
+        long[] never = {0};
+        Histogram indexed = timeToIndexed(es, superseded, never);
+        System.out.println();
+        System.out.println("=== time-to-indexed (ms) ===");
+        System.out.printf("%-8s %9s %8s %9s %8s %8s %8s %8s %8s%n",
+                "", "count", "missing", "", "p50", "p90", "p99", "p99.9", "max");
+        printRow("indexed", indexed, never[0], -1);
+        System.out.printf("superseded before indexing: %d, drained: %s in %.1fs%n",
+                superseded[0], drained, drainNanos / 1e9);
+
+        System.out.println();
+        System.out.println("=== stand-ins ===");
+        System.out.println("elasticsearch calls: " + es.callCounts() + ", bytes received: " + es.bytesReceived());
+        if (standIn != null) {
+            System.out.println("redis commands: " + standIn.commandCount());
+        }
+    }
+
+    private static void printRow(String label, Histogram h, long errors, double seconds) {
+        System.out.printf("%-8s %9d %8d %9s %8.2f %8.2f %8.2f %8.2f %8.2f%n",
+                label, h.getTotalCount(), errors,
+                seconds > 0 ? String.format("%.1f", h.getTotalCount() / seconds) : "",
+                ms(h.getValueAtPercentile(50)), ms(h.getValueAtPercentile(90)),
+                ms(h.getValueAtPercentile(99)), ms(h.getValueAtPercentile(99.9)), ms(h.getMaxValue()));
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1e6;
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Options
+    // ─────────────────────────────────────────────────────────────────────────
+
+    private static Map<Op, Integer> parseMix(String mix) {
+        Map<Op, Integer> out = new EnumMap<>(Op.class);
+        for (String part : mix.split(",")) {
+            String[] kv = part.split("=");
+            out.put(Op.valueOf(kv[0].trim().toUpperCase()), Integer.parseInt(kv[1].trim()));
+        }
+        return out;
+    }
+
+    /** Ids of plans that currently exist; DELETE takes an id exclusively. */
+    static final class LivePool {
+        private final List<String> ids = new ArrayList<>();
+
+        synchronized void add(String id) {
+            ids.add(id);
+        }
+
+        synchronized String peek() {
+            return ids.isEmpty() ? null : ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+        }
+
+        synchronized String take() {
+            if (ids.isEmpty()) return null;
+            int i = ThreadLocalRandom.current().nextInt(ids.size());
+            String id = ids.get(i);
+            ids.set(i, ids.get(ids.size() - 1));
+            ids.remove(ids.size() - 1);
+            return id;
+        }
+    }
+}
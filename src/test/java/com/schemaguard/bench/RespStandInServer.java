@@ -0,0 +1,1287 @@
+package com.schemaguard.bench;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal in-JVM Redis stand-in speaking RESP2 — just enough of the command set
+ * used by RedisKeyValueStore, RedisStreamEventPublisher and IndexWorker for the
+ * pipeline benchmark to run without a real Redis.
+ *
+ * Supported: PING, ECHO, SELECT, CLIENT, FLUSHALL, EXISTS, GET, MGET, SET (NX/XX, EX/PX), DEL,
+ * SCAN (MATCH with * and ?, COUNT), SADD, SREM, SCARD, SISMEMBER, SRANDMEMBER (positive count),
+ * HSET, HGET, HMGET, HDEL, HLEN,
+ * XADD, XLEN, XTRIM (MAXLEN / MINID), XRANGE, XGROUP CREATE [MKSTREAM] / DESTROY / DELCONSUMER,
+ * XREADGROUP (COUNT/BLOCK, '>' and history ids), XACK, XPENDING (summary and extended forms),
+ * XCLAIM (min-idle + ids), XINFO GROUPS / CONSUMERS,
+ * EVAL / EVALSHA / SCRIPT LOAD for the app's own Lua scripts.
+ *
+ * Key expiry (EX / PX) is checked lazily on EXISTS / GET.
+ *
+ * Lua is not interpreted: a script is recognised by its first-line marker
+ * ("-- schemaguard:<name>") and run as a Java emulation under the data lock,
+ * which gives it the same atomicity a real Redis script has.
+ *
+ * HELLO is deliberately answered with "unknown command" so Lettuce falls back
+ * to RESP2. All data lives behind one monitor — the stand-in is meant to be
+ * faster than the app under test, not to model Redis' own throughput.
+ */
+public class RespStandInServer implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "resp-standin-conn");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Object lock = new Object();
+    private final Map<String, Object> data = new HashMap<>();
+    /** Absolute expiry (epoch ms) of keys written with EX / PX. */
+    private final Map<String, Long> expiresAt = new HashMap<>();
+    /** SHA1 of every script seen by EVAL / SCRIPT LOAD → its marker name. */
+    private final Map<String, String> scripts = new HashMap<>();
+    private final AtomicLong commandCount = new AtomicLong();
+    /** Added before every EVAL / EVALSHA runs, outside the data lock — models a slow script. */
+    private volatile long scriptLatencyMs;
+
+    private volatile boolean running = true;
+
+    public RespStandInServer(int port) throws IOException {
+        this.serverSocket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::acceptLoop, "resp-standin-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    public long commandCount() {
+        return commandCount.get();
+    }
+
+    public void setScriptLatencyMillis(long millis) {
+        this.scriptLatencyMs = millis;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+        connections.shutdownNow();
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Connection handling
+    // ─────────────────────────────────────────────────────────────────────────
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.submit(() -> serve(socket));
+            } catch (IOException ex) {
+                if (running) {
+                    System.err.println("resp-standin accept failed — " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             InputStream in = new BufferedInputStream(socket.getInputStream());
+             OutputStream out = new BufferedOutputStream(socket.getOutputStream())) {
+            while (running) {
+                List<byte[]> command = readCommand(in);
+                if (command == null) return;
+                commandCount.incrementAndGet();
+                Reply reply;
+                try {
+                    reply = dispatch(command);
+                } catch (CommandException ex) {
+                    reply = Reply.error(ex.getMessage());
+                }
+                reply.write(out);
+                // flush only once the client has nothing else queued — keeps pipelines cheap
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (IOException ignored) {
+            // client went away
+        }
+    }
+
+    private static List<byte[]> readCommand(InputStream in) throws IOException {
+        int first = in.read();
+        if (first == -1) return null;
+        if (first != '*') {
+            throw new IOException("inline commands are not supported");
+        }
+        int count = (int) readLong(in);
+        List<byte[]> args = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (in.read() != '$') throw new IOException("expected bulk string");
+            int len = (int) readLong(in);
+            byte[] buf = in.readNBytes(len);
+            if (buf.length != len) throw new EOFException();
+            in.read(); // \r
+            in.read(); // \n
+            args.add(buf);
+        }
+        return args;
+    }
+
+    private static long readLong(InputStream in) throws IOException {
+        long value = 0;
+        boolean negative = false;
+        int c;
+        while ((c = in.read()) != '\r') {
+            if (c == -1) throw new EOFException();
+            if (c == '-') negative = true;
+            else value = value * 10 + (c - '0');
+        }
+        in.read(); // \n
+        return negative ? -value : value;
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Command dispatch
+    // ─────────────────────────────────────────────────────────────────────────
+
+    Reply dispatch(List<byte[]> command) {
+        String name = str(command.get(0)).toUpperCase(Locale.ROOT);
+        return switch (name) {
+            case "PING" -> command.size() > 1 ? Reply.bulk(command.get(1)) : Reply.simple("PONG");
+            case "ECHO" -> Reply.bulk(command.get(1));
+            case "SELECT", "CLIENT", "READONLY" -> Reply.simple("OK");
+            case "FLUSHALL", "FLUSHDB" -> {
+                synchronized (lock) { data.clear(); expiresAt.clear(); }
+                yield Reply.simple("OK");
+            }
+            case "EXISTS" -> exists(command);
+            case "GET" -> get(command);
+            case "MGET" -> mget(command);
+            case "SCAN" -> scan(command);
+            case "SET" -> set(command);
+            case "DEL", "UNLINK" -> del(command);
+            case "SADD" -> sadd(command);
+            case "SREM" -> srem(command);
+            case "SCARD" -> scard(command);
+            case "SISMEMBER" -> sismember(command);
+            case "SRANDMEMBER" -> srandmember(command);
+            case "HSET" -> hset(command);
+            case "HGET" -> hget(command);
+            case "HMGET" -> hmget(command);
+            case "HDEL" -> hdel(command);
+            case "HLEN" -> hlen(command);
+            case "XADD" -> xadd(command);
+            case "XLEN" -> xlen(command);
+            case "XTRIM" -> xtrim(command);
+            case "XRANGE" -> xrange(command);
+            case "XGROUP" -> xgroup(command);
+            case "XREADGROUP" -> xreadgroup(command);
+            case "XACK" -> xack(command);
+            case "XCLAIM" -> xclaim(command);
+            case "XPENDING" -> xpending(command);
+            case "XINFO" -> xinfo(command);
+            case "EVAL" -> eval(command);
+            case "EVALSHA" -> evalSha(command);
+            case "SCRIPT" -> script(command);
+            default -> Reply.error("ERR unknown command '" + name.toLowerCase(Locale.ROOT) + "'");
+        };
+    }
+
+    private Reply exists(List<byte[]> cmd) {
+        synchronized (lock) {
+            long n = 0;
+            for (int i = 1; i < cmd.size(); i++) {
+                if (live(str(cmd.get(i))) != null) n++;
+            }
+            return Reply.integer(n);
+        }
+    }
+
+    private Reply get(List<byte[]> cmd) {
+        synchronized (lock) {
+            Object v = live(str(cmd.get(1)));
+            if (v == null) return Reply.nullBulk();
+            if (!(v instanceof byte[] bytes)) throw wrongType();
+            return Reply.bulk(bytes);
+        }
+    }
+
+    private Reply mget(List<byte[]> cmd) {
+        synchronized (lock) {
+            List<Reply> values = new ArrayList<>();
+            for (int i = 1; i < cmd.size(); i++) {
+                values.add(live(str(cmd.get(i))) instanceof byte[] bytes ? Reply.bulk(bytes) : Reply.nullBulk());
+            }
+            return Reply.array(values);
+        }
+    }
+
+    /**
+     * The cursor is a position in the sorted key set, so keys added or removed
+     * between calls may be missed or repeated — within SCAN's own guarantees.
+     */
+    private Reply scan(List<byte[]> cmd) {
+        long cursor = Long.parseLong(str(cmd.get(1)));
+        String match = "*";
+        long count = 10;
+        for (int i = 2; i < cmd.size(); i++) {
+            String opt = str(cmd.get(i)).toUpperCase(Locale.ROOT);
+            if (opt.equals("MATCH")) match = str(cmd.get(++i));
+            else if (opt.equals("COUNT")) count = Long.parseLong(str(cmd.get(++i)));
+        }
+        Pattern pattern = Pattern.compile(globToRegex(match));
+        synchronized (lock) {
+            List<String> keys = new ArrayList<>(new TreeMap<>(data).keySet());
+            List<Reply> found = new ArrayList<>();
+            int pos = (int) cursor;
+            for (long visited = 0; pos < keys.size() && visited < count; pos++, visited++) {
+                String key = keys.get(pos);
+                if (pattern.matcher(key).matches() && live(key) != null) {
+                    found.add(Reply.bulk(key.getBytes(StandardCharsets.UTF_8)));
+                }
+            }
+            String next = pos >= keys.size() ? "0" : Integer.toString(pos);
+            return Reply.array(List.of(Reply.bulk(next.getBytes(StandardCharsets.UTF_8)), Reply.array(found)));
+        }
+    }
+
+    private static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*') regex.append(".*");
+            else if (c == '?') regex.append('.');
+            else regex.append(Pattern.quote(String.valueOf(c)));
+        }
+        return regex.toString();
+    }
+
+    private Reply set(List<byte[]> cmd) {
+        String key = str(cmd.get(1));
+        boolean nx = false, xx = false;
+        long ttlMs = -1;
+        for (int i = 3; i < cmd.size(); i++) {
+            String opt = str(cmd.get(i)).toUpperCase(Locale.ROOT);
+            if (opt.equals("NX")) nx = true;
+            else if (opt.equals("XX")) xx = true;
+            else if (opt.equals("EX")) ttlMs = Long.parseLong(str(cmd.get(++i))) * 1000;
+            else if (opt.equals("PX")) ttlMs = Long.parseLong(str(cmd.get(++i)));
+        }
+        synchronized (lock) {
+            boolean present = live(key) != null;
+            if ((nx && present) || (xx && !present)) return Reply.nullBulk();
+            data.put(key, cmd.get(2));
+            if (ttlMs >= 0) expiresAt.put(key, System.currentTimeMillis() + ttlMs);
+            else expiresAt.remove(key);
+            return Reply.simple("OK");
+        }
+    }
+
+    private Reply del(List<byte[]> cmd) {
+        synchronized (lock) {
+            long n = 0;
+            for (int i = 1; i < cmd.size(); i++) {
+                String key = str(cmd.get(i));
+                if (live(key) != null) n++;
+                data.remove(key);
+                expiresAt.remove(key);
+            }
+            return Reply.integer(n);
+        }
+    }
+
+    /** Value of key, dropping it first if its expiry has passed; caller holds the lock. */
+    private Object live(String key) {
+        Long expiry = expiresAt.get(key);
+        if (expiry != null && expiry <= System.currentTimeMillis()) {
+            expiresAt.remove(key);
+            data.remove(key);
+        }
+        return data.get(key);
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Sets
+    // ─────────────────────────────────────────────────────────────────────────
+
+    private Reply sadd(List<byte[]> cmd) {
+        synchronized (lock) {
+            Set<String> set = setOrNull(str(cmd.get(1)));
+            if (set == null) {
+                set = new LinkedHashSet<>();
+                data.put(str(cmd.get(1)), set);
+            }
+            long added = 0;
+            for (int i = 2; i < cmd.size(); i++) {
+                if (set.add(str(cmd.get(i)))) added++;
+            }
+            return Reply.integer(added);
+        }
+    }
+
+    private Reply srem(List<byte[]> cmd) {
+        synchronized (lock) {
+            long removed = 0;
+            for (int i = 2; i < cmd.size(); i++) {
+                if (srem(str(cmd.get(1)), str(cmd.get(i)))) removed++;
+            }
+            return Reply.integer(removed);
+        }
+    }
+
+    private Reply scard(List<byte[]> cmd) {
+        synchronized (lock) {
+            Set<String> set = setOrNull(str(cmd.get(1)));
+            return Reply.integer(set == null ? 0 : set.size());
+        }
+    }
+
+    private Reply sismember(List<byte[]> cmd) {
+        synchronized (lock) {
+            Set<String> set = setOrNull(str(cmd.get(1)));
+            return Reply.integer(set != null && set.contains(str(cmd.get(2))) ? 1 : 0);
+        }
+    }
+
+    /** Distinct members only; insertion order stands in for randomness. */
+    private Reply srandmember(List<byte[]> cmd) {
+        long count = cmd.size() > 2 ? Long.parseLong(str(cmd.get(2))) : 1;
+        synchronized (lock) {
+            Set<String> set = setOrNull(str(cmd.get(1)));
+            List<Reply> out = new ArrayList<>();
+            if (set != null) {
+                for (String member : set) {
+                    if (out.size() >= count) break;
+                    out.add(Reply.bulk(member));
+                }
+            }
+            if (cmd.size() == 2) return out.isEmpty() ? Reply.nullBulk() : out.get(0);
+            return Reply.array(out);
+        }
+    }
+
+    /** Caller holds the lock; drops the key once the set is empty, as Redis does. */
+    private boolean srem(String key, String member) {
+        Set<String> set = setOrNull(key);
+        if (set == null || !set.remove(member)) return false;
+        if (set.isEmpty()) data.remove(key);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<String> setOrNull(String key) {
+        Object v = data.get(key);
+        if (v == null) return null;
+        if (!(v instanceof Set<?>)) throw wrongType();
+        return (Set<String>) v;
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Hashes
+    // ─────────────────────────────────────────────────────────────────────────
+
+    private Reply hset(List<byte[]> cmd) {
+        synchronized (lock) {
+            long added = 0;
+            for (int i = 2; i + 1 < cmd.size(); i += 2) {
+                if (hset(str(cmd.get(1)), str(cmd.get(i)), str(cmd.get(i + 1)))) added++;
+            }
+            return Reply.integer(added);
+        }
+    }
+
+    private Reply hget(List<byte[]> cmd) {
+        synchronized (lock) {
+            Map<String, String> hash = hashOrNull(str(cmd.get(1)));
+            String value = hash != null ? hash.get(str(cmd.get(2))) : null;
+            return value != null ? Reply.bulk(value) : Reply.nullBulk();
+        }
+    }
+
+    private Reply hmget(List<byte[]> cmd) {
+        synchronized (lock) {
+            Map<String, String> hash = hashOrNull(str(cmd.get(1)));
+            List<Reply> out = new ArrayList<>();
+            for (int i = 2; i < cmd.size(); i++) {
+                String value = hash != null ? hash.get(str(cmd.get(i))) : null;
+                out.add(value != null ? Reply.bulk(value) : Reply.nullBulk());
+            }
+            return Reply.array(out);
+        }
+    }
+
+    private Reply hdel(List<byte[]> cmd) {
+        synchronized (lock) {
+            long removed = 0;
+            for (int i = 2; i < cmd.size(); i++) {
+                if (hdel(str(cmd.get(1)), str(cmd.get(i)))) removed++;
+            }
+            return Reply.integer(removed);
+        }
+    }
+
+    private Reply hlen(List<byte[]> cmd) {
+        synchronized (lock) {
+            Map<String, String> hash = hashOrNull(str(cmd.get(1)));
+            return Reply.integer(hash == null ? 0 : hash.size());
+        }
+    }
+
+    /** Caller holds the lock; true when the field is new. */
+    private boolean hset(String key, String field, String value) {
+        Map<String, String> hash = hashOrNull(key);
+        if (hash == null) {
+            hash = new LinkedHashMap<>();
+            data.put(key, hash);
+        }
+        return hash.put(field, value) == null;
+    }
+
+    /** Caller holds the lock; drops the key once the hash is empty, as Redis does. */
+    private boolean hdel(String key, String field) {
+        Map<String, String> hash = hashOrNull(key);
+        if (hash == null || hash.remove(field) == null) return false;
+        if (hash.isEmpty()) data.remove(key);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, String> hashOrNull(String key) {
+        Object v = data.get(key);
+        if (v == null) return null;
+        if (!(v instanceof Map<?, ?>)) throw wrongType();
+        return (Map<String, String>) v;
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Scripts
+    // ─────────────────────────────────────────────────────────────────────────
+
+    private Reply script(List<byte[]> cmd) {
+        String sub = str(cmd.get(1)).toUpperCase(Locale.ROOT);
+        return switch (sub) {
+            case "LOAD" -> Reply.bulk(register(str(cmd.get(2))));
+            case "EXISTS" -> {
+                List<Reply> out = new ArrayList<>();
+                synchronized (lock) {
+                    for (int i = 2; i < cmd.size(); i++) {
+                        out.add(Reply.integer(scripts.containsKey(str(cmd.get(i))) ? 1 : 0));
+                    }
+                }
+                yield Reply.array(out);
+            }
+            case "FLUSH" -> {
+                synchronized (lock) { scripts.clear(); }
+                yield Reply.simple("OK");
+            }
+            default -> Reply.error("ERR unknown SCRIPT subcommand '" + sub + "'");
+        };
+    }
+
+    private Reply eval(List<byte[]> cmd) {
+        scriptLatency();
+        String sha = register(str(cmd.get(1)));
+        return runScript(sha, cmd);
+    }
+
+    private Reply evalSha(List<byte[]> cmd) {
+        scriptLatency();
+        return runScript(str(cmd.get(1)).toLowerCase(Locale.ROOT), cmd);
+    }
+
+    private void scriptLatency() {
+        long millis = scriptLatencyMs;
+        if (millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String register(String body) {
+        String sha = sha1(body);
+        String firstLine = body.lines().findFirst().orElse("").trim();
+        synchronized (lock) {
+            scripts.put(sha, firstLine.startsWith("-- ") ? firstLine.substring(3).trim() : "");
+        }
+        return sha;
+    }
+
+    private Reply runScript(String sha, List<byte[]> cmd) {
+        int numKeys = Integer.parseInt(str(cmd.get(2)));
+        List<String> keys = new ArrayList<>();
+        for (int i = 3; i < 3 + numKeys; i++) keys.add(str(cmd.get(i)));
+        List<byte[]> argv = new ArrayList<>(cmd.subList(3 + numKeys, cmd.size()));
+        synchronized (lock) {
+            String name = scripts.get(sha);
+            if (name == null) {
+                return Reply.error("NOSCRIPT No matching script. Please use EVAL.");
+            }
+            return switch (name) {
+                case "schemaguard:outbox-write" -> outboxWrite(keys, argv);
+                case "schemaguard:outbox-replay" -> outboxReplay(keys, argv);
+                case "schemaguard:etags" -> etags(keys, argv);
+                default -> Reply.error("ERR script '" + name + "' is not emulated by the stand-in");
+            };
+        }
+    }
+
+    /** Java twin of src/main/resources/redis/etags.lua; caller holds the lock. */
+    private Reply etags(List<String> keys, List<byte[]> argv) {
+        Map<String, String> hash = hashOrNull(keys.get(0));
+        List<Reply> etags = new ArrayList<>(argv.size());
+        for (int i = 0; i < argv.size(); i++) {
+            String id = str(argv.get(i));
+            String etag = hash != null ? hash.get(id) : null;
+            if (etag == null) {
+                Object current = live(keys.get(i + 1));
+                if (current != null && !(current instanceof byte[])) throw wrongType();
+                etag = current != null ? jsonStringField((byte[]) current, "etag") : "";
+                if (current != null) hset(keys.get(0), id, etag);
+            }
+            etags.add(Reply.bulk(bytes(etag)));
+        }
+        return Reply.array(etags);
+    }
+
+    /** Java twin of src/main/resources/redis/outbox-write.lua; caller holds the lock. */
+    private Reply outboxWrite(List<String> keys, List<byte[]> argv) {
+        String mode = str(argv.get(0));
+        String expectedEtag = str(argv.get(1));
+        Object current = data.get(keys.get(0));
+        if (current != null && !(current instanceof byte[])) throw wrongType();
+
+        if (mode.equals("create")) {
+            if (current != null) return rejected("ALREADY_EXISTS");
+        } else if (current == null) {
+            return rejected("NOT_FOUND");
+        }
+        String id = str(argv.get(6));
+        Map<String, String> etagHash = hashOrNull(keys.get(4));
+        String currentEtag = "";
+        if (current != null) {
+            currentEtag = etagHash != null && etagHash.containsKey(id)
+                    ? etagHash.get(id) : jsonStringField((byte[]) current, "etag");
+        }
+        if (!expectedEtag.isEmpty() && !expectedEtag.equals(currentEtag)) {
+            return rejected("ETAG_MISMATCH");
+        }
+
+        if (live(keys.get(3)) == null) data.put(keys.get(3), argv.get(5));
+        String version = incr(keys.get(3));
+        byte[] eventEtag = argv.get(3);
+        if (mode.equals("delete")) {
+            data.remove(keys.get(0));
+            hdel(keys.get(4), id);
+            eventEtag = currentEtag.getBytes(StandardCharsets.UTF_8);
+        } else {
+            data.put(keys.get(0), bytes(withJsonNumberField(str(argv.get(2)), "version", version)));
+            hset(keys.get(4), id, str(argv.get(3)));
+        }
+
+        String deferredMember = str(argv.get(4));
+        if (!deferredMember.isEmpty()) {
+            sadd(List.of(bytes("SADD"), bytes(keys.get(2)), argv.get(4)));
+            return Reply.array(List.of(Reply.bulk("APPLIED"), Reply.bulk(""), Reply.bulk(version)));
+        }
+
+        List<byte[]> fields = new ArrayList<>(argv.subList(7, argv.size()));
+        fields.add(bytes("etag"));
+        fields.add(eventEtag);
+        fields.add(bytes("version"));
+        fields.add(bytes(version));
+        return Reply.array(List.of(Reply.bulk("APPLIED"), Reply.bulk(appendEntry(keys.get(1), fields)),
+                Reply.bulk(version)));
+    }
+
+    private static Reply rejected(String status) {
+        return Reply.array(List.of(Reply.bulk(status), Reply.bulk(""), Reply.bulk("")));
+    }
+
+    /** Java twin of src/main/resources/redis/outbox-replay.lua; caller holds the lock. */
+    private Reply outboxReplay(List<String> keys, List<byte[]> argv) {
+        if (!srem(keys.get(2), str(argv.get(0)))) {
+            return Reply.array(List.of(Reply.bulk("SKIPPED"), Reply.bulk("")));
+        }
+        Object current = data.get(keys.get(0));
+        if (current != null && !(current instanceof byte[])) throw wrongType();
+        String operation = current != null ? "UPSERT" : "DELETE";
+        String etag = current != null ? jsonStringField((byte[]) current, "etag") : "";
+        String version = current != null ? jsonNumberField((byte[]) current, "version") : incr(keys.get(3));
+        if (current != null) hset(keys.get(4), str(argv.get(0)), etag);
+        else hdel(keys.get(4), str(argv.get(0)));
+
+        List<byte[]> fields = new ArrayList<>(argv.subList(1, argv.size()));
+        fields.add(bytes("operation"));
+        fields.add(bytes(operation));
+        fields.add(bytes("etag"));
+        fields.add(bytes(etag));
+        fields.add(bytes("version"));
+        fields.add(bytes(version));
+        return Reply.array(List.of(Reply.bulk(operation), Reply.bulk(appendEntry(keys.get(1), fields))));
+    }
+
+    /** INCR for the script twins; caller holds the lock. */
+    private String incr(String key) {
+        Object current = live(key);
+        if (current != null && !(current instanceof byte[])) throw wrongType();
+        String next = Long.toString((current != null ? Long.parseLong(str((byte[]) current)) : 0) + 1);
+        data.put(key, bytes(next));
+        return next;
+    }
+
+    /** XADD * for the script twins; caller holds the lock. */
+    private String appendEntry(String key, List<byte[]> fields) {
+        StreamValue stream = streamOrNull(key);
+        if (stream == null) {
+            stream = new StreamValue();
+            data.put(key, stream);
+        }
+        StreamId id = stream.nextId();
+        stream.entries.put(id, fields);
+        stream.lastId = id;
+        lock.notifyAll();
+        return id.toString();
+    }
+
+    /** Good enough for the flat JSON the app stores; not a general JSON parser. */
+    private static String jsonStringField(byte[] json, String field) {
+        String s = str(json);
+        String needle = "\"" + field + "\":\"";
+        int start = s.indexOf(needle);
+        if (start < 0) return "";
+        start += needle.length();
+        int end = s.indexOf('"', start);
+        return end < 0 ? "" : s.substring(start, end);
+    }
+
+    private static String jsonNumberField(byte[] json, String field) {
+        Matcher m = Pattern.compile("\"" + Pattern.quote(field) + "\":(-?\\d+)").matcher(str(json));
+        return m.find() ? m.group(1) : "";
+    }
+
+    /** Sets a top-level numeric field, as cjson.decode / encode does in the scripts. */
+    private static String withJsonNumberField(String json, String field, String value) {
+        Matcher m = Pattern.compile("\"" + Pattern.quote(field) + "\":-?\\d+").matcher(json);
+        if (m.find()) return json.substring(0, m.start()) + "\"" + field + "\":" + value + json.substring(m.end());
+        int end = json.lastIndexOf('}');
+        return json.substring(0, end) + ",\"" + field + "\":" + value + json.substring(end);
+    }
+
+    private static String sha1(String body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1")
+                    .digest(body.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(40);
+            for (byte b : digest) hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Streams
+    // ─────────────────────────────────────────────────────────────────────────
+
+    private Reply xadd(List<byte[]> cmd) {
+        String key = str(cmd.get(1));
+        int i = 2;
+        boolean noMkStream = false;
+        String trimKind = null;
+        String trimThreshold = null;
+        while (true) {
+            String opt = str(cmd.get(i)).toUpperCase(Locale.ROOT);
+            if (opt.equals("NOMKSTREAM")) {
+                noMkStream = true;
+                i++;
+            } else if (opt.equals("MAXLEN") || opt.equals("MINID")) {
+                trimKind = opt;
+                i++;
+                String next = str(cmd.get(i));
+                if (next.equals("~") || next.equals("=")) i++;
+                trimThreshold = str(cmd.get(i++));
+                if (i < cmd.size() && str(cmd.get(i)).equalsIgnoreCase("LIMIT")) i += 2;
+            } else {
+                break;
+            }
+        }
+        String idArg = str(cmd.get(i++));
+        if ((cmd.size() - i) % 2 != 0 || cmd.size() == i) {
+            throw new CommandException("ERR wrong number of arguments for 'xadd' command");
+        }
+        List<byte[]> fields = new ArrayList<>(cmd.subList(i, cmd.size()));
+
+        synchronized (lock) {
+            StreamValue stream = streamOrNull(key);
+            if (stream == null) {
+                if (noMkStream) return Reply.nullBulk();
+                stream = new StreamValue();
+                data.put(key, stream);
+            }
+            StreamId id = idArg.equals("*") ? stream.nextId() : StreamId.parse(idArg, 0);
+            if (id.compareTo(stream.lastId) <= 0) {
+                throw new CommandException("ERR The ID specified in XADD is equal or smaller than the target stream top item");
+            }
+            stream.entries.put(id, fields);
+            stream.lastId = id;
+            if (trimKind != null) {
+                stream.trim(trimKind, trimThreshold);
+            }
+            lock.notifyAll();
+            return Reply.bulk(id.toString());
+        }
+    }
+
+    private Reply xlen(List<byte[]> cmd) {
+        synchronized (lock) {
+            StreamValue stream = streamOrNull(str(cmd.get(1)));
+            return Reply.integer(stream == null ? 0 : stream.entries.size());
+        }
+    }
+
+    /** XTRIM key MAXLEN|MINID [=|~] threshold [LIMIT n] — trims exactly, like "=". */
+    private Reply xtrim(List<byte[]> cmd) {
+        String kind = str(cmd.get(2)).toUpperCase(Locale.ROOT);
+        int i = 3;
+        String next = str(cmd.get(i));
+        if (next.equals("~") || next.equals("=")) i++;
+        String threshold = str(cmd.get(i));
+        synchronized (lock) {
+            StreamValue stream = streamOrNull(str(cmd.get(1)));
+            if (stream == null) return Reply.integer(0);
+            int before = stream.entries.size();
+            stream.trim(kind, threshold);
+            return Reply.integer(before - stream.entries.size());
+        }
+    }
+
+    private Reply xrange(List<byte[]> cmd) {
+        synchronized (lock) {
+            StreamValue stream = streamOrNull(str(cmd.get(1)));
+            if (stream == null) return Reply.array(List.of());
+            StreamId start = parseRangeBound(str(cmd.get(2)), true);
+            StreamId end = parseRangeBound(str(cmd.get(3)), false);
+            long count = cmd.size() > 5 ? Long.parseLong(str(cmd.get(5))) : Long.MAX_VALUE;
+            List<Reply> out = new ArrayList<>();
+            for (Map.Entry<StreamId, List<byte[]>> e : stream.entries.subMap(start, true, end, true).entrySet()) {
+                if (out.size() >= count) break;
+                out.add(entryReply(e.getKey(), e.getValue()));
+            }
+            return Reply.array(out);
+        }
+    }
+
+    private Reply xgroup(List<byte[]> cmd) {
+        String sub = str(cmd.get(1)).toUpperCase(Locale.ROOT);
+        if (sub.equals("DELCONSUMER")) {
+            return xgroupDelConsumer(str(cmd.get(2)), str(cmd.get(3)), str(cmd.get(4)));
+        }
+        if (sub.equals("DESTROY")) {
+            synchronized (lock) {
+                StreamValue stream = streamOrNull(str(cmd.get(2)));
+                return Reply.integer(stream != null && stream.groups.remove(str(cmd.get(3))) != null ? 1 : 0);
+            }
+        }
+        if (!sub.equals("CREATE")) {
+            return Reply.error("ERR unknown subcommand '" + sub + "'");
+        }
+        String key = str(cmd.get(2));
+        String group = str(cmd.get(3));
+        String idArg = str(cmd.get(4));
+        boolean mkStream = false;
+        for (int i = 5; i < cmd.size(); i++) {
+            if (str(cmd.get(i)).equalsIgnoreCase("MKSTREAM")) mkStream = true;
+        }
+        synchronized (lock) {
+            StreamValue stream = streamOrNull(key);
+            if (stream == null) {
+                if (!mkStream) {
+                    throw new CommandException("ERR The XGROUP subcommand requires the key to exist. "
+                            + "Note that for CREATE you may want to use the MKSTREAM option to create an empty stream automatically.");
+                }
+                stream = new StreamValue();
+                data.put(key, stream);
+            }
+            if (stream.groups.containsKey(group)) {
+                throw new CommandException("BUSYGROUP Consumer Group name already exists");
+            }
+            StreamId start = idArg.equals("$") ? stream.lastId : StreamId.parse(idArg, 0);
+            stream.groups.put(group, new Group(start));
+            return Reply.simple("OK");
+        }
+    }
+
+    /** Removes the consumer and drops its pending entries, like Redis; replies with how many were pending. */
+    private Reply xgroupDelConsumer(String key, String group, String consumer) {
+        synchronized (lock) {
+            StreamValue stream = streamOrNull(key);
+            Group g = stream == null ? null : stream.groups.get(group);
+            if (g == null) throw new CommandException("NOGROUP No such consumer group '" + group + "'");
+            long dropped = 0;
+            Iterator<Pending> it = g.pel.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().consumer.equals(consumer)) {
+                    it.remove();
+                    dropped++;
+                }
+            }
+            g.consumers.remove(consumer);
+            return Reply.integer(dropped);
+        }
+    }
+
+    private Reply xreadgroup(List<byte[]> cmd) {
+        String group = null, consumer = null;
+        long count = Long.MAX_VALUE;
+        long blockMs = -1;
+        boolean noAck = false;
+        int i = 1;
+        for (; i < cmd.size(); i++) {
+            String opt = str(cmd.get(i)).toUpperCase(Locale.ROOT);
+            switch (opt) {
+                case "GROUP" -> { group = str(cmd.get(++i)); consumer = str(cmd.get(++i)); }
+                case "COUNT" -> count = Long.parseLong(str(cmd.get(++i)));
+                case "BLOCK" -> blockMs = Long.parseLong(str(cmd.get(++i)));
+                case "NOACK" -> noAck = true;
+                case "STREAMS" -> { i++; break; }
+                default -> { }
+            }
+            if (opt.equals("STREAMS")) break;
+        }
+        int remaining = cmd.size() - i;
+        int streams = remaining / 2;
+        List<String> keys = new ArrayList<>(streams);
+        List<String> ids = new ArrayList<>(streams);
+        for (int k = 0; k < streams; k++) {
+            keys.add(str(cmd.get(i + k)));
+            ids.add(str(cmd.get(i + streams + k)));
+        }
+
+        long deadline = blockMs > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(blockMs) : 0;
+        synchronized (lock) {
+            while (true) {
+                List<Reply> result = new ArrayList<>();
+                boolean allNew = true;
+                for (int k = 0; k < keys.size(); k++) {
+                    StreamValue stream = streamOrNull(keys.get(k));
+                    Group g = stream == null ? null : stream.groups.get(group);
+                    if (g == null) {
+                        throw new CommandException("NOGROUP No such key '" + keys.get(k)
+                                + "' or consumer group '" + group + "' in XREADGROUP with GROUP option");
+                    }
+                    g.touch(consumer);
+                    List<Reply> entries = ids.get(k).equals(">")
+                            ? deliverNew(stream, g, consumer, count, noAck)
+                            : readHistory(stream, g, consumer, StreamId.parse(ids.get(k), 0), count);
+                    if (!ids.get(k).equals(">")) allNew = false;
+                    if (!entries.isEmpty() || !ids.get(k).equals(">")) {
+                        result.add(Reply.array(List.of(Reply.bulk(keys.get(k)), Reply.array(entries))));
+                    }
+                }
+                if (!result.isEmpty()) return Reply.array(result);
+                if (!allNew || blockMs < 0 || !running) return Reply.nullArray();
+                try {
+                    if (blockMs == 0) {
+                        lock.wait();
+                    } else {
+                        long waitNanos = deadline - System.nanoTime();
+                        if (waitNanos <= 0) return Reply.nullArray();
+                        TimeUnit.NANOSECONDS.timedWait(lock, waitNanos);
+                    }
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return Reply.nullArray();
+                }
+            }
+        }
+    }
+
+    private List<Reply> deliverNew(StreamValue stream, Group g, String consumer, long count, boolean noAck) {
+        List<Reply> out = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (Map.Entry<StreamId, List<byte[]>> e : stream.entries.tailMap(g.lastDelivered, false).entrySet()) {
+            if (out.size() >= count) break;
+            g.lastDelivered = e.getKey();
+            if (!noAck) {
+                g.pel.put(e.getKey(), new Pending(consumer, now, 1));
+            }
+            out.add(entryReply(e.getKey(), e.getValue()));
+        }
+        return out;
+    }
+
+    private List<Reply> readHistory(StreamValue stream, Group g, String consumer, StreamId after, long count) {
+        List<Reply> out = new ArrayList<>();
+        for (Map.Entry<StreamId, Pending> e : g.pel.tailMap(after, false).entrySet()) {
+            if (out.size() >= count) break;
+            if (!e.getValue().consumer.equals(consumer)) continue;
+            e.getValue().deliveries++;
+            e.getValue().deliveredAt = System.currentTimeMillis();
+            List<byte[]> fields = stream.entries.get(e.getKey());
+            out.add(fields == null
+                    ? Reply.array(java.util.Arrays.asList(Reply.bulk(e.getKey().toString()), Reply.nullArray()))
+                    : entryReply(e.getKey(), fields));
+        }
+        return out;
+    }
+
+    private Reply xack(List<byte[]> cmd) {
+        synchronized (lock) {
+            StreamValue stream = streamOrNull(str(cmd.get(1)));
+            Group g = stream == null ? null : stream.groups.get(str(cmd.get(2)));
+            if (g == null) return Reply.integer(0);
+            long n = 0;
+            for (int i = 3; i < cmd.size(); i++) {
+                if (g.pel.remove(StreamId.parse(str(cmd.get(i)), 0)) != null) n++;
+            }
+            return Reply.integer(n);
+        }
+    }
+
+    /** XCLAIM key group consumer min-idle id [id ...] — options after the ids are ignored. */
+    private Reply xclaim(List<byte[]> cmd) {
+        synchronized (lock) {
+            StreamValue stream = streamOrNull(str(cmd.get(1)));
+            Group g = stream == null ? null : stream.groups.get(str(cmd.get(2)));
+            if (g == null) {
+                throw new CommandException("NOGROUP No such key '" + str(cmd.get(1))
+                        + "' or consumer group '" + str(cmd.get(2)) + "'");
+            }
+            String consumer = str(cmd.get(3));
+            long minIdle = Long.parseLong(str(cmd.get(4)));
+            long now = System.currentTimeMillis();
+            g.touch(consumer);
+            List<Reply> out = new ArrayList<>();
+            for (int i = 5; i < cmd.size(); i++) {
+                String raw = str(cmd.get(i));
+                if (!Character.isDigit(raw.charAt(0))) break;
+                StreamId id = StreamId.parse(raw, 0);
+                Pending p = g.pel.get(id);
+                if (p == null || now - p.deliveredAt < minIdle) continue;
+                List<byte[]> fields = stream.entries.get(id);
+                if (fields == null) {
+                    g.pel.remove(id); // entry was trimmed — Redis 7 drops it from the PEL
+                    continue;
+                }
+                p.consumer = consumer;
+                p.deliveredAt = now;
+                p.deliveries++;
+                out.add(entryReply(id, fields));
+            }
+            return Reply.array(out);
+        }
+    }
+
+    private Reply xpending(List<byte[]> cmd) {
+        synchronized (lock) {
+            StreamValue stream = streamOrNull(str(cmd.get(1)));
+            Group g = stream == null ? null : stream.groups.get(str(cmd.get(2)));
+            if (g == null) {
+                throw new CommandException("NOGROUP No such key '" + str(cmd.get(1))
+                        + "' or consumer group '" + str(cmd.get(2)) + "'");
+            }
+            if (cmd.size() == 3) {
+                if (g.pel.isEmpty()) {
+                    return Reply.array(java.util.Arrays.asList(
+                            Reply.integer(0), Reply.nullBulk(), Reply.nullBulk(), Reply.nullArray()));
+                }
+                Map<String, Long> perConsumer = new LinkedHashMap<>();
+                g.pel.values().forEach(p -> perConsumer.merge(p.consumer, 1L, Long::sum));
+                List<Reply> consumers = new ArrayList<>();
+                perConsumer.forEach((c, n) -> consumers.add(
+                        Reply.array(List.of(Reply.bulk(c), Reply.bulk(Long.toString(n))))));
+                return Reply.array(List.of(
+                        Reply.integer(g.pel.size()),
+                        Reply.bulk(g.pel.firstKey().toString()),
+                        Reply.bulk(g.pel.lastKey().toString()),
+                        Reply.array(consumers)));
+            }
+            int i = 3;
+            long minIdle = 0;
+            if (str(cmd.get(i)).equalsIgnoreCase("IDLE")) {
+                minIdle = Long.parseLong(str(cmd.get(i + 1)));
+                i += 2;
+            }
+            StreamId start = parseRangeBound(str(cmd.get(i)), true);
+            StreamId end = parseRangeBound(str(cmd.get(i + 1)), false);
+            long count = Long.parseLong(str(cmd.get(i + 2)));
+            String consumer = cmd.size() > i + 3 ? str(cmd.get(i + 3)) : null;
+            long now = System.currentTimeMillis();
+            List<Reply> out = new ArrayList<>();
+            for (Map.Entry<StreamId, Pending> e : g.pel.subMap(start, true, end, true).entrySet()) {
+                if (out.size() >= count) break;
+                Pending p = e.getValue();
+                if (consumer != null && !p.consumer.equals(consumer)) continue;
+                if (now - p.deliveredAt < minIdle) continue;
+                out.add(Reply.array(List.of(
+                        Reply.bulk(e.getKey().toString()),
+                        Reply.bulk(p.consumer),
+                        Reply.integer(now - p.deliveredAt),
+                        Reply.integer(p.deliveries))));
+            }
+            return Reply.array(out);
+        }
+    }
+
+    /** XINFO GROUPS (name, consumers, pending, last-delivered-id, lag) and CONSUMERS (name, pending, idle). */
+    private Reply xinfo(List<byte[]> cmd) {
+        String sub = str(cmd.get(1)).toUpperCase(Locale.ROOT);
+        if (sub.equals("CONSUMERS")) {
+            return xinfoConsumers(str(cmd.get(2)), str(cmd.get(3)));
+        }
+        if (!sub.equals("GROUPS")) {
+            return Reply.error("ERR unknown subcommand '" + sub + "'");
+        }
+        synchronized (lock) {
+            StreamValue stream = streamOrNull(str(cmd.get(2)));
+            if (stream == null) throw new CommandException("ERR no such key");
+            List<Reply> out = new ArrayList<>();
+            stream.groups.forEach((name, g) -> out.add(Reply.array(List.of(
+                    Reply.bulk("name"), Reply.bulk(name),
+                    Reply.bulk("consumers"), Reply.integer(g.consumers.size()),
+                    Reply.bulk("pending"), Reply.integer(g.pel.size()),
+                    Reply.bulk("last-delivered-id"), Reply.bulk(g.lastDelivered.toString()),
+                    Reply.bulk("lag"), Reply.integer(stream.entries.tailMap(g.lastDelivered, false).size())))));
+            return Reply.array(out);
+        }
+    }
+
+    private Reply xinfoConsumers(String key, String group) {
+        synchronized (lock) {
+            StreamValue stream = streamOrNull(key);
+            Group g = stream == null ? null : stream.groups.get(group);
+            if (g == null) throw new CommandException("NOGROUP No such consumer group '" + group + "'");
+            long now = System.currentTimeMillis();
+            List<Reply> out = new ArrayList<>();
+            g.consumers.forEach((name, seen) -> {
+                long pending = g.pel.values().stream().filter(p -> p.consumer.equals(name)).count();
+                out.add(Reply.array(List.of(
+                        Reply.bulk("name"), Reply.bulk(name),
+                        Reply.bulk("pending"), Reply.integer(pending),
+                        Reply.bulk("idle"), Reply.integer(now - seen),
+                        Reply.bulk("inactive"), Reply.integer(now - seen))));
+            });
+            return Reply.array(out);
+        }
+    }
+
+    private StreamValue streamOrNull(String key) {
+        Object v = data.get(key);
+        if (v == null) return null;
+        if (!(v instanceof StreamValue stream)) throw wrongType();
+        return stream;
+    }
+
+    private static Reply entryReply(StreamId id, List<byte[]> fields) {
+        List<Reply> flat = new ArrayList<>(fields.size());
+        for (byte[] f : fields) flat.add(Reply.bulk(f));
+        return Reply.array(List.of(Reply.bulk(id.toString()), Reply.array(flat)));
+    }
+
+    private static StreamId parseRangeBound(String raw, boolean start) {
+        if (raw.equals("-")) return StreamId.MIN;
+        if (raw.equals("+")) return StreamId.MAX;
+        boolean exclusive = raw.startsWith("(");
+        StreamId id = StreamId.parse(exclusive ? raw.substring(1) : raw, start ? 0 : Long.MAX_VALUE);
+        if (!exclusive) return id;
+        return start ? id.next() : id.previous();
+    }
+
+    private static CommandException wrongType() {
+        return new CommandException("WRONGTYPE Operation against a key holding the wrong kind of value");
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static String str(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Data structures
+    // ─────────────────────────────────────────────────────────────────────────
+
+    record StreamId(long ms, long seq) implements Comparable<StreamId> {
+        static final StreamId MIN = new StreamId(0, 0);
+        static final StreamId MAX = new StreamId(Long.MAX_VALUE, Long.MAX_VALUE);
+
+        static StreamId parse(String raw, long defaultSeq) {
+            int dash = raw.indexOf('-');
+            if (dash < 0) return new StreamId(Long.parseLong(raw), defaultSeq);
+            return new StreamId(Long.parseLong(raw.substring(0, dash)), Long.parseLong(raw.substring(dash + 1)));
+        }
+
+        StreamId next() {
+            return seq == Long.MAX_VALUE ? new StreamId(ms + 1, 0) : new StreamId(ms, seq + 1);
+        }
+
+        StreamId previous() {
+            return seq == 0 ? new StreamId(ms - 1, Long.MAX_VALUE) : new StreamId(ms, seq - 1);
+        }
+
+        @Override
+        public int compareTo(StreamId o) {
+            int c = Long.compareUnsigned(ms, o.ms);
+            return c != 0 ? c : Long.compareUnsigned(seq, o.seq);
+        }
+
+        @Override
+        public String toString() {
+            return Long.toUnsignedString(ms) + "-" + Long.toUnsignedString(seq);
+        }
+    }
+
+    static final class StreamValue {
+        final NavigableMap<StreamId, List<byte[]>> entries = new TreeMap<>();
+        final Map<String, Group> groups = new LinkedHashMap<>();
+        StreamId lastId = StreamId.MIN;
+
+        StreamId nextId() {
+            long now = System.currentTimeMillis();
+            return now > lastId.ms() ? new StreamId(now, 0) : new StreamId(lastId.ms(), lastId.seq() + 1);
+        }
+
+        void trim(String kind, String threshold) {
+            if (kind.equals("MAXLEN")) {
+                long max = Long.parseLong(threshold);
+                Iterator<StreamId> it = entries.keySet().iterator();
+                while (entries.size() > max && it.hasNext()) {
+                    it.next();
+                    it.remove();
+                }
+            } else {
+                entries.headMap(StreamId.parse(threshold, 0), false).clear();
+            }
+        }
+    }
+
+    static final class Group {
+        StreamId lastDelivered;
+        final NavigableMap<StreamId, Pending> pel = new TreeMap<>();
+        final Map<String, Long> consumers = new LinkedHashMap<>();
+
+        Group(StreamId lastDelivered) {
+            this.lastDelivered = lastDelivered;
+        }
+
+        void touch(String consumer) {
+            consumers.put(consumer, System.currentTimeMillis());
+        }
+    }
+
+    static final class Pending {
+        String consumer;
+        long deliveredAt;
+        long deliveries;
+
+        Pending(String consumer, long deliveredAt, long deliveries) {
+            this.consumer = consumer;
+            this.deliveredAt = deliveredAt;
+            this.deliveries = deliveries;
+        }
+    }
+
+    static final class CommandException extends RuntimeException {
+        CommandException(String message) {
+            super(message);
+        }
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // RESP2 replies
+    // ─────────────────────────────────────────────────────────────────────────
+
+    interface Reply {
+        void write(OutputStream out) throws IOException;
+
+        static Reply simple(String s) {
+            return out -> { out.write('+'); out.write(s.getBytes(StandardCharsets.UTF_8)); crlf(out); };
+        }
+
+        static Reply error(String s) {
+            return out -> { out.write('-'); out.write(s.getBytes(StandardCharsets.UTF_8)); crlf(out); };
+        }
+
+        static Reply integer(long n) {
+            return out -> { out.write(':'); out.write(Long.toString(n).getBytes(StandardCharsets.US_ASCII)); crlf(out); };
+        }
+
+        static Reply bulk(String s) {
+            return bulk(s.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Reply bulk(byte[] b) {
+            return out -> {
+                out.write('$');
+                out.write(Integer.toString(b.length).getBytes(StandardCharsets.US_ASCII));
+                crlf(out);
+                out.write(b);
+                crlf(out);
+            };
+        }
+
+        static Reply nullBulk() {
+            return out -> { out.write("$-1".getBytes(StandardCharsets.US_ASCII)); crlf(out); };
+        }
+
+        static Reply nullArray() {
+            return out -> { out.write("*-1".getBytes(StandardCharsets.US_ASCII)); crlf(out); };
+        }
+
+        static Reply array(List<Reply> items) {
+            return out -> {
+                out.write('*');
+                out.write(Integer.toString(items.size()).getBytes(StandardCharsets.US_ASCII));
+                crlf(out);
+                for (Reply r : items) r.write(out);
+            };
+        }
+
+        private static void crlf(OutputStream out) throws IOException {
+            out.write('\r');
+            out.write('\n');
+        }
+    }
+}
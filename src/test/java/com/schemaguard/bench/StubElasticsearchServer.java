@@ -0,0 +1,335 @@
+package com.schemaguard.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stub Elasticsearch HTTP server for the pipeline benchmark.
+ *
+ * Answers every endpoint the app calls with a plausible 2xx body, records
+ * _doc / _update / _bulk / _delete_by_query calls, and sleeps for a configurable
+ * latency (+ uniform jitter) before replying so indexing cost can be dialled
+ * up to match a real cluster.
+ *
+ * Each parent-document write is stamped with System.nanoTime() on arrival,
+ * keyed by the "_etag" it carries — the benchmark joins that against the
+ * ETag returned by the API to compute time-to-indexed. Parent deletes are
+ * keyed by document id.
+ *
+ * The current etag of each parent is kept as well, so _mget and sorted
+ * search_after pages (the reconciler's reads) see what was indexed; so is
+ * the etag of each routed child, for the worker's parent_id child reads.
+ */
+public class StubElasticsearchServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final long latencyMicros;
+    private final long jitterMicros;
+
+    private final Map<String, Long> parentIndexedAt = new ConcurrentHashMap<>();
+    private final Map<String, Long> parentDeletedAt = new ConcurrentHashMap<>();
+    /** Current etag of every parent written and not deleted since — what _mget and search_after see. */
+    private final ConcurrentSkipListMap<String, String> parentEtags = new ConcurrentSkipListMap<>();
+    /** parentId → (childId → etag) of every routed child written and not deleted since. */
+    private final Map<String, ConcurrentSkipListMap<String, String>> childEtags = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> callCounts = new ConcurrentHashMap<>();
+    private final LongAdder bytesReceived = new LongAdder();
+
+    public StubElasticsearchServer(int port, long latencyMicros, long jitterMicros, int threads) throws IOException {
+        this.latencyMicros = latencyMicros;
+        this.jitterMicros = jitterMicros;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 256);
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "stub-es");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /** Arrival time (nanoTime) of the first parent write carrying this etag, or null. */
+    public Long parentIndexedAt(String etag) {
+        return parentIndexedAt.get(etag);
+    }
+
+    /** Arrival time (nanoTime) of the first parent delete for this id, or null. */
+    public Long parentDeletedAt(String documentId) {
+        return parentDeletedAt.get(documentId);
+    }
+
+    public Map<String, Long> callCounts() {
+        Map<String, Long> out = new java.util.TreeMap<>();
+        callCounts.forEach((k, v) -> out.put(k, v.sum()));
+        return out;
+    }
+
+    public long bytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Request handling
+    // ─────────────────────────────────────────────────────────────────────────
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long arrival = System.nanoTime();
+        try (exchange) {
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            bytesReceived.add(body.length);
+            String method = exchange.getRequestMethod();
+            URI uri = exchange.getRequestURI();
+            String path = uri.getPath();
+            String query = uri.getQuery() == null ? "" : uri.getQuery();
+
+            String kind = classify(method, path);
+            callCounts.computeIfAbsent(kind, k -> new LongAdder()).increment();
+            simulateLatency();
+
+            String response = switch (kind) {
+                case "doc.get" -> getEtag(path);
+                case "update" -> recordParentUpdate(path, body, arrival);
+                case "doc.index" -> recordParentWrite(path, query, body, arrival);
+                case "doc.delete" -> recordParentDelete(path, query, arrival);
+                case "bulk" -> recordBulk(body, arrival);
+                case "delete_by_query" -> deleteChildren(query);
+                case "mget" -> mget(body);
+                case "search" -> search(body);
+                // no aliases, no indices: the app starts from a fresh cluster
+                case "alias" -> "{}";
+                case "cat" -> "[]";
+                case "pit" -> "{\"id\":\"stub-pit\"}";
+                case "root" -> "{\"name\":\"stub\",\"cluster_name\":\"schemaguard-bench\",\"version\":{\"number\":\"8.13.4\"}}";
+                default -> "{\"acknowledged\":true}";
+            };
+            if (response == null) {
+                send(exchange, 404, "{\"found\":false}");
+            } else {
+                send(exchange, 200, response);
+            }
+        } catch (Exception ex) {
+            send(exchange, 500, "{\"error\":\"" + ex.getClass().getSimpleName() + "\"}");
+        }
+    }
+
+    private static String classify(String method, String path) {
+        if (path.equals("/") || path.isEmpty()) return "root";
+        if (path.startsWith("/_alias/")) return "alias";
+        if (path.startsWith("/_cat/")) return "cat";
+        if (path.endsWith("/_pit")) return "pit";
+        if (path.endsWith("/_bulk")) return "bulk";
+        if (path.endsWith("/_delete_by_query")) return "delete_by_query";
+        if (path.endsWith("/_search")) return "search";
+        if (path.endsWith("/_mget")) return "mget";
+        if (path.contains("/_update/")) return "update";
+        if (path.contains("/_doc/")) {
+            if (method.equals("GET")) return "doc.get";
+            return method.equals("DELETE") ? "doc.delete" : "doc.index";
+        }
+        return "admin." + method.toLowerCase();
+    }
+
+    private String recordParentWrite(String path, String query, byte[] body, long arrival) throws IOException {
+        String id = path.substring(path.lastIndexOf('/') + 1);
+        // children carry ?routing=<parentId>; only parent writes mark a version as indexed
+        JsonNode doc = mapper.readTree(body);
+        String etag = doc.path("_etag").asText(null);
+        String routing = routing(query);
+        if (routing != null) {
+            if (etag != null) children(routing).put(id, etag);
+        } else if (etag != null) {
+            parentIndexedAt.putIfAbsent(etag, arrival);
+            parentEtags.put(id, etag);
+        }
+        return "{\"_id\":\"" + id + "\",\"result\":\"updated\",\"_version\":1}";
+    }
+
+    /** GET of a parent, _etag only; null (→ 404) when it is not indexed. Sequence numbers are not tracked. */
+    private String getEtag(String path) throws IOException {
+        String id = path.substring(path.lastIndexOf('/') + 1);
+        String etag = parentEtags.get(id);
+        if (etag == null) return null;
+        return "{\"_id\":" + mapper.writeValueAsString(id) + ",\"found\":true,\"_seq_no\":0,\"_primary_term\":1,"
+                + "\"_source\":{\"_etag\":" + mapper.writeValueAsString(etag) + "}}";
+    }
+
+    /** Partial _update of a parent: the new _etag in "doc" counts as that version being indexed. */
+    private String recordParentUpdate(String path, byte[] body, long arrival) throws IOException {
+        String id = path.substring(path.lastIndexOf('/') + 1);
+        if (!parentEtags.containsKey(id)) return null;
+        String etag = mapper.readTree(body).path("doc").path("_etag").asText(null);
+        if (etag != null) {
+            parentIndexedAt.putIfAbsent(etag, arrival);
+            parentEtags.put(id, etag);
+        }
+        return "{\"_id\":\"" + id + "\",\"result\":\"updated\",\"_version\":2}";
+    }
+
+    private String recordParentDelete(String path, String query, long arrival) {
+        String id = path.substring(path.lastIndexOf('/') + 1);
+        String routing = routing(query);
+        if (routing != null) {
+            children(routing).remove(id);
+        } else {
+            parentDeletedAt.putIfAbsent(id, arrival);
+            parentEtags.remove(id);
+        }
+        return "{\"_id\":\"" + id + "\",\"result\":\"deleted\"}";
+    }
+
+    /** Parses NDJSON action/source pairs so bulk-indexed parents count as indexed too. */
+    private String recordBulk(byte[] body, long arrival) throws IOException {
+        String[] lines = new String(body, StandardCharsets.UTF_8).split("\n");
+        StringBuilder items = new StringBuilder();
+        int i = 0;
+        while (i < lines.length) {
+            if (lines[i].isBlank()) { i++; continue; }
+            JsonNode action = mapper.readTree(lines[i++]);
+            String op = action.fieldNames().next();
+            JsonNode meta = action.path(op);
+            String id = meta.path("_id").asText();
+            boolean parent = !meta.has("routing");
+            if (op.equals("delete")) {
+                if (parent) {
+                    parentDeletedAt.putIfAbsent(id, arrival);
+                    parentEtags.remove(id);
+                } else {
+                    children(meta.path("routing").asText()).remove(id);
+                }
+            } else {
+                JsonNode source = mapper.readTree(lines[i++]);
+                JsonNode doc = op.equals("update") ? source.path("doc") : source;
+                String etag = doc.path("_etag").asText(null);
+                if (etag == null) {
+                    // nothing to track
+                } else if (parent) {
+                    parentIndexedAt.putIfAbsent(etag, arrival);
+                    parentEtags.put(id, etag);
+                } else {
+                    children(meta.path("routing").asText()).put(id, etag);
+                }
+            }
+            if (items.length() > 0) items.append(',');
+            items.append("{\"").append(op).append("\":{\"_id\":\"").append(id).append("\",\"status\":200}}");
+        }
+        return "{\"took\":1,\"errors\":false,\"items\":[" + items + "]}";
+    }
+
+    /** _mget by ids, answering with the _etag only. */
+    private String mget(byte[] body) throws IOException {
+        StringBuilder docs = new StringBuilder();
+        for (JsonNode id : mapper.readTree(body).path("ids")) {
+            String etag = parentEtags.get(id.asText());
+            if (docs.length() > 0) docs.append(',');
+            docs.append("{\"_id\":").append(mapper.writeValueAsString(id.asText()));
+            if (etag == null) {
+                docs.append(",\"found\":false}");
+            } else {
+                docs.append(",\"found\":true,\"_source\":{\"_etag\":").append(mapper.writeValueAsString(etag)).append("}}");
+            }
+        }
+        return "{\"docs\":[" + docs + "]}";
+    }
+
+    /** Sorted searches are id pages — children of one parent for parent_id, parents otherwise. */
+    private String search(byte[] body) throws IOException {
+        JsonNode request = body.length > 0 ? mapper.readTree(body) : mapper.createObjectNode();
+        if (!request.has("sort")) {
+            return "{\"took\":1,\"timed_out\":false,\"hits\":{\"total\":{\"value\":0,\"relation\":\"eq\"},\"hits\":[]}}";
+        }
+        JsonNode parentId = request.path("query").findPath("parent_id").path("id");
+        return idPage(request, parentId.isMissingNode() ? parentEtags : children(parentId.asText()));
+    }
+
+    /** One search_after page over etags (sorted by id), each hit with its _etag. */
+    private String idPage(JsonNode request, ConcurrentSkipListMap<String, String> etags) throws IOException {
+        int size = request.path("size").asInt(10);
+        JsonNode after = request.path("search_after");
+        Map<String, String> tail = after.isArray() && !after.isEmpty()
+                ? etags.tailMap(after.get(0).asText(), false) : etags;
+        StringBuilder hits = new StringBuilder();
+        int n = 0;
+        for (Map.Entry<String, String> entry : tail.entrySet()) {
+            if (n++ >= size) break;
+            if (hits.length() > 0) hits.append(',');
+            String quoted = mapper.writeValueAsString(entry.getKey());
+            hits.append("{\"_id\":").append(quoted)
+                    .append(",\"_source\":{\"_etag\":").append(mapper.writeValueAsString(entry.getValue()))
+                    .append("},\"sort\":[").append(quoted).append("]}");
+        }
+        return "{\"took\":1,\"timed_out\":false,\"hits\":{\"hits\":[" + hits + "]}}";
+    }
+
+    /** delete_by_query is only sent for the children of the parents named in ?routing= (comma list). */
+    private String deleteChildren(String query) {
+        String routing = routing(query);
+        int deleted = 0;
+        if (routing != null) {
+            for (String parentId : routing.split(",")) {
+                Map<String, String> removed = childEtags.remove(parentId);
+                if (removed != null) deleted += removed.size();
+            }
+        }
+        return "{\"took\":1,\"deleted\":" + deleted + ",\"failures\":[]}";
+    }
+
+    private ConcurrentSkipListMap<String, String> children(String parentId) {
+        return childEtags.computeIfAbsent(parentId, k -> new ConcurrentSkipListMap<>());
+    }
+
+    private static String routing(String query) {
+        for (String param : query.split("&")) {
+            if (param.startsWith("routing=")) return param.substring("routing=".length());
+        }
+        return null;
+    }
+
+    private void simulateLatency() throws InterruptedException {
+        long micros = latencyMicros;
+        if (jitterMicros > 0) {
+            micros += ThreadLocalRandom.current().nextLong(jitterMicros + 1);
+        }
+        if (micros > 0) {
+            Thread.sleep(micros / 1000, (int) (micros % 1000) * 1000);
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.schemaguard.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates plans that validate against plan-schema.json by walking the
+ * schema itself rather than templating samples/plan.json, so a schema change
+ * is picked up without touching the load tools.
+ *
+ * Supported keywords are the ones the plan schema uses: type, properties,
+ * required, const, enum, minLength, minimum, minItems, items and simple
+ * patterns (literals, \d, {n}). Every object gets a unique objectId derived
+ * from the plan id and its objectType, e.g. p1-planservice-0-membercostshare.
+ *
+ * Knobs:
+ *   services     — length of every array (linkedPlanServices)
+ *   maxDeductible / maxCopay — upper bound for the cost-share amounts
+ */
+public final class SyntheticPlanGenerator {
+
+    public static final String SCHEMA_RESOURCE = "/schemas/plan-schema.json";
+
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+    private static final int DEFAULT_NUMBER_MAX = 1000;
+
+    private final JsonNode schema;
+    private final int services;
+    private final Map<String, Integer> numberMax;
+
+    public SyntheticPlanGenerator(JsonNode schema, int services, int maxDeductible, int maxCopay) {
+        if (services < 0) {
+            throw new IllegalArgumentException("services must be >= 0");
+        }
+        this.schema = schema;
+        this.services = services;
+        this.numberMax = Map.of("deductible", maxDeductible, "copay", maxCopay);
+    }
+
+    public static SyntheticPlanGenerator fromClasspath(int services, int maxDeductible, int maxCopay) {
+        try (InputStream in = SyntheticPlanGenerator.class.getResourceAsStream(SCHEMA_RESOURCE)) {
+            if (in == null) {
+                throw new IllegalStateException("Schema not found on classpath: " + SCHEMA_RESOURCE);
+            }
+            return new SyntheticPlanGenerator(new ObjectMapper().readTree(in), services, maxDeductible, maxCopay);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /** A fresh plan with the given top-level objectId. */
+    public ObjectNode generate(String planId) {
+        JsonNode plan = value(schema, null, planId);
+        if (!plan.isObject()) {
+            throw new IllegalStateException("Plan schema root must be an object");
+        }
+        return (ObjectNode) plan;
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────
+    // Schema walk
+    // ─────────────────────────────────────────────────────────────────────────
+
+    private JsonNode value(JsonNode s, String property, String idPrefix) {
+        if (s.has("const")) {
+            return s.get("const").deepCopy();
+        }
+        if (s.has("enum")) {
+            JsonNode options = s.get("enum");
+            return options.get(ThreadLocalRandom.current().nextInt(options.size())).deepCopy();
+        }
+        return switch (s.path("type").asText("object")) {
+            case "object" -> object(s, idPrefix);
+            case "array" -> array(s, idPrefix);
+            case "string" -> NODES.textNode(string(s, property, idPrefix));
+            case "number", "integer" -> NODES.numberNode(number(s, property));
+            case "boolean" -> NODES.booleanNode(ThreadLocalRandom.current().nextBoolean());
+            default -> throw new IllegalArgumentException("Unsupported schema type: " + s.path("type"));
+        };
+    }
+
+    private ObjectNode object(JsonNode s, String idPrefix) {
+        ObjectNode out = NODES.objectNode();
+        for (Map.Entry<String, JsonNode> p : s.path("properties").properties()) {
+            JsonNode child = p.getValue();
+            String childPrefix = idPrefix;
+            if (child.path("type").asText().equals("object")) {
+                childPrefix = idPrefix + "-" + objectTypeOf(child, p.getKey());
+            }
+            out.set(p.getKey(), value(child, p.getKey(), childPrefix));
+        }
+        return out;
+    }
+
+    private ArrayNode array(JsonNode s, String idPrefix) {
+        ArrayNode out = NODES.arrayNode();
+        JsonNode items = s.path("items");
+        int size = Math.max(services, s.path("minItems").asInt(0));
+        for (int i = 0; i < size; i++) {
+            out.add(value(items, null, idPrefix + "-" + objectTypeOf(items, "item") + "-" + i));
+        }
+        return out;
+    }
+
+    private String string(JsonNode s, String property, String idPrefix) {
+        if ("objectId".equals(property)) {
+            return idPrefix;
+        }
+        if ("_org".equals(property)) {
+            return "example.com";
+        }
+        if (s.has("pattern")) {
+            return fromPattern(s.get("pattern").asText());
+        }
+        int length = Math.max(8, s.path("minLength").asInt(0));
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + ThreadLocalRandom.current().nextInt(26)));
+        }
+        return sb.toString();
+    }
+
+    private int number(JsonNode s, String property) {
+        int min = s.path("minimum").asInt(0);
+        int max = Math.max(min, numberMax.getOrDefault(property, DEFAULT_NUMBER_MAX));
+        return ThreadLocalRandom.current().nextInt(min, max + 1);
+    }
+
+    private static String objectTypeOf(JsonNode s, String fallback) {
+        return s.path("properties").path("objectType").path("const").asText(fallback);
+    }
+
+    /** Generates a match for anchored patterns made of literals, \d and {n} repeats. */
+    static String fromPattern(String pattern) {
+        StringBuilder out = new StringBuilder();
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            String unit;
+            if (c == '^' || c == '$') {
+                i++;
+                continue;
+            } else if (c == '\\' && i + 1 < pattern.length()) {
+                char e = pattern.charAt(i + 1);
+                unit = e == 'd' ? null : String.valueOf(e);
+                i += 2;
+            } else if ("[](){}*+?|.".indexOf(c) >= 0) {
+                throw new IllegalArgumentException("Unsupported pattern construct '" + c + "' in " + pattern);
+            } else {
+                unit = String.valueOf(c);
+                i++;
+            }
+            int repeat = 1;
+            if (i < pattern.length() && pattern.charAt(i) == '{') {
+                int close = pattern.indexOf('}', i);
+                repeat = Integer.parseInt(pattern.substring(i + 1, close));
+                i = close + 1;
+            }
+            for (int r = 0; r < repeat; r++) {
+                out.append(unit != null ? unit : (char) ('0' + ThreadLocalRandom.current().nextInt(10)));
+            }
+        }
+        return out.toString();
+    }
+}
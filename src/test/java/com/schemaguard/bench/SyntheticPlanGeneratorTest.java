@@ -0,0 +1,73 @@
+package com.schemaguard.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.schemaguard.validation.SchemaValidator;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SyntheticPlanGeneratorTest {
+
+    private final SchemaValidator validator = new SchemaValidator(new ObjectMapper());
+
+    @Test
+    void generatedPlans_passSchemaValidation() {
+        SyntheticPlanGenerator generator = SyntheticPlanGenerator.fromClasspath(5, 3000, 50);
+
+        for (int i = 0; i < 50; i++) {
+            ObjectNode plan = generator.generate("plan-" + i);
+            assertDoesNotThrow(() -> validator.validatePlanJson(plan.toString()));
+            assertEquals("plan-" + i, plan.get("objectId").asText());
+            assertEquals(5, plan.get("linkedPlanServices").size());
+        }
+    }
+
+    @Test
+    void objectIds_areUniqueWithinAPlan() {
+        ObjectNode plan = SyntheticPlanGenerator.fromClasspath(3, 3000, 50).generate("p1");
+
+        Set<String> ids = new HashSet<>();
+        collectObjectIds(plan, ids);
+
+        // plan + planCostShares + 3 × (planservice, service, membercostshare)
+        assertEquals(11, ids.size());
+    }
+
+    @Test
+    void costShares_respectConfiguredBounds() {
+        SyntheticPlanGenerator generator = SyntheticPlanGenerator.fromClasspath(4, 100, 5);
+
+        for (int i = 0; i < 20; i++) {
+            ObjectNode plan = generator.generate("p" + i);
+            assertTrue(plan.at("/planCostShares/deductible").asInt() <= 100);
+            plan.get("linkedPlanServices").forEach(ps ->
+                    assertTrue(ps.at("/planserviceCostShares/copay").asInt() <= 5));
+        }
+    }
+
+    @Test
+    void zeroServices_stillHonoursMinItems() {
+        ObjectNode plan = SyntheticPlanGenerator.fromClasspath(0, 3000, 50).generate("p1");
+
+        assertEquals(1, plan.get("linkedPlanServices").size());
+    }
+
+    @Test
+    void fromPattern_matchesDatePattern() {
+        String date = SyntheticPlanGenerator.fromPattern("^\\d{2}-\\d{2}-\\d{4}$");
+
+        assertTrue(date.matches("^\\d{2}-\\d{2}-\\d{4}$"), date);
+    }
+
+    private static void collectObjectIds(JsonNode node, Set<String> ids) {
+        if (node.has("objectId")) {
+            assertTrue(ids.add(node.get("objectId").asText()), "duplicate objectId " + node.get("objectId"));
+        }
+        node.forEach(child -> collectObjectIds(child, ids));
+    }
+}
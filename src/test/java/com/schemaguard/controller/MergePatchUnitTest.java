@@ -2,7 +2,6 @@ package com.schemaguard.controller;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.schemaguard.queue.IndexEventPublisher;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -14,9 +13,8 @@ import static org.junit.jupiter.api.Assertions.*;
 class MergePatchUnitTest {
 
     private final ObjectMapper mapper = new ObjectMapper();
-    // no-op publisher — event publishing is not under test here
-    private final IndexEventPublisher noOpPublisher = event -> {};
-    private final PlanController controller = new PlanController(null, null, mapper, noOpPublisher);
+    // no store / outbox — writes are not under test here
+    private final PlanController controller = new PlanController(null, null, mapper, null, null);
 
     @Test
     void patch_overwritesScalarField() throws Exception {
@@ -10,6 +10,7 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 
+import static org.hamcrest.Matchers.containsString;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.jwt;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -132,4 +133,16 @@ class PlanCrudIntegrationTest {
                 .content(VALID_PLAN))
                 .andExpect(status().isConflict());
     }
+
+    @Test
+    void createPlan_reportsServerTimingPhases() throws Exception {
+        mockMvc.perform(post("/api/v1/plan")
+                .with(jwt())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(VALID_PLAN.replace("12xvxc345ssdsds-508", "server-timing-plan-1")))
+                .andExpect(status().isCreated())
+                .andExpect(header().string("Server-Timing", containsString("validate;dur=")))
+                .andExpect(header().string("Server-Timing", containsString("kv;dur=")))
+                .andExpect(header().string("Server-Timing", containsString("total;dur=")));
+    }
 }
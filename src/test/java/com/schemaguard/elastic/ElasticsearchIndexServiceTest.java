@@ -0,0 +1,88 @@
+package com.schemaguard.elastic;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.schemaguard.queue.PlanDocumentSplitter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.jsonPath;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+class ElasticsearchIndexServiceTest {
+
+    private static final String ES = "http://localhost:9200";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private ElasticsearchIndexService service;
+    private MockRestServiceServer elastic;
+
+    @BeforeEach
+    void setUp() {
+        PlanRoutingStrategy routing = new PlanRoutingStrategy(2);
+        service = new ElasticsearchIndexService(objectMapper,
+                new ElasticsearchRequestMetrics(new SimpleMeterRegistry()), routing,
+                new PlanDocumentSplitter(objectMapper, routing));
+        ReflectionTestUtils.setField(service, "host", "localhost");
+        ReflectionTestUtils.setField(service, "port", 9200);
+        elastic = MockRestServiceServer.bindTo((RestTemplate) ReflectionTestUtils.getField(service, "restTemplate"))
+                .build();
+    }
+
+    /** Hits whose _id differs from the objectId they are sorted by. */
+    private static String hits(String... ids) {
+        StringBuilder json = new StringBuilder("{\"hits\":{\"hits\":[");
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"_id\":\"").append(ids[i]).append("\",\"_source\":{\"_etag\":\"e-").append(ids[i])
+                    .append("\"},\"sort\":[\"key-").append(ids[i]).append("\"]}");
+        }
+        return json.append("]}}").toString();
+    }
+
+    @Test
+    void parentIdsAfter_continuesFromTheSortValues_notTheId() {
+        elastic.expect(requestTo(ES + "/plans-index/_search")).andExpect(method(HttpMethod.POST))
+                .andExpect(jsonPath("$.search_after").doesNotExist())
+                .andRespond(withSuccess(hits("a", "b"), MediaType.APPLICATION_JSON));
+        elastic.expect(requestTo(ES + "/plans-index/_search"))
+                .andExpect(jsonPath("$.search_after[0]").value("key-b"))
+                .andRespond(withSuccess(hits(), MediaType.APPLICATION_JSON));
+
+        IndexService.IdPage first = service.parentIdsAfter(null, 2);
+        assertEquals(List.of("a", "b"), first.ids());
+        IndexService.IdPage last = service.parentIdsAfter(first.after(), 2);
+        assertTrue(last.ids().isEmpty());
+        assertNull(last.after());
+        elastic.verify();
+    }
+
+    @Test
+    void indexedChildEtags_pagesOnTheSortValues_notTheId() {
+        // a full page of 1000 children, then a short one
+        String[] ids = new String[1000];
+        for (int i = 0; i < ids.length; i++) ids[i] = String.format("c%04d", i);
+        elastic.expect(requestTo(ES + "/plans-index/_search?routing=p1"))
+                .andExpect(jsonPath("$.search_after").doesNotExist())
+                .andRespond(withSuccess(hits(ids), MediaType.APPLICATION_JSON));
+        elastic.expect(requestTo(ES + "/plans-index/_search?routing=p1"))
+                .andExpect(jsonPath("$.search_after[0]").value("key-c0999"))
+                .andRespond(withSuccess(hits("c1000"), MediaType.APPLICATION_JSON));
+
+        Map<String, String> etags = service.indexedChildEtags("p1");
+        assertEquals(1001, etags.size());
+        assertEquals("e-c1000", etags.get("c1000"));
+        elastic.verify();
+    }
+}
@@ -0,0 +1,90 @@
+package com.schemaguard.elastic;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.json.JsonCompareMode;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.content;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withServerError;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+class IndexAliasManagerTest {
+
+    private static final String ES = "http://localhost:9200";
+
+    private IndexAliasManager aliases;
+    private MockRestServiceServer elastic;
+
+    @BeforeEach
+    void setUp() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        aliases = new IndexAliasManager(objectMapper,
+                new PlanIndexMapping(objectMapper, new PlanRoutingStrategy(2)),
+                new ElasticsearchRequestMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(aliases, "host", "localhost");
+        ReflectionTestUtils.setField(aliases, "port", 9200);
+        elastic = MockRestServiceServer.bindTo(
+                (RestTemplate) ReflectionTestUtils.getField(aliases, "restTemplate")).build();
+    }
+
+    @Test
+    void swapFromVersionedIndex_onlyMovesTheAlias() {
+        elastic.expect(requestTo(ES + "/_aliases")).andExpect(method(HttpMethod.POST))
+                .andExpect(content().json("""
+                        {"actions":[
+                          {"add":{"index":"plans-index-v3","alias":"plans-index","is_write_index":true}},
+                          {"remove":{"index":"plans-index-v2","alias":"plans-index"}}]}""", JsonCompareMode.STRICT))
+                .andRespond(withSuccess());
+
+        assertEquals("plans-index-v2", aliases.swap("plans-index-v3", "plans-index-v2"));
+        elastic.verify();
+    }
+
+    @Test
+    void swapFromConcreteIndex_keepsAClone_beforeRemovingIt() {
+        elastic.expect(requestTo(ES + "/plans-index-v0")).andExpect(method(HttpMethod.DELETE))
+                .andRespond(withStatus(HttpStatus.NOT_FOUND));
+        elastic.expect(requestTo(ES + "/plans-index/_settings")).andExpect(method(HttpMethod.PUT))
+                .andExpect(content().json("{\"index.blocks.write\":true}", JsonCompareMode.STRICT))
+                .andRespond(withSuccess());
+        elastic.expect(requestTo(ES + "/plans-index/_clone/plans-index-v0")).andExpect(method(HttpMethod.POST))
+                .andExpect(content().json("{\"settings\":{\"index.blocks.write\":false}}", JsonCompareMode.STRICT))
+                .andRespond(withSuccess());
+        elastic.expect(requestTo(ES + "/_aliases")).andExpect(method(HttpMethod.POST))
+                .andExpect(content().json("""
+                        {"actions":[
+                          {"add":{"index":"plans-index-v1","alias":"plans-index","is_write_index":true}},
+                          {"remove_index":{"index":"plans-index"}}]}""", JsonCompareMode.STRICT))
+                .andRespond(withSuccess());
+
+        assertEquals("plans-index-v0", aliases.swap("plans-index-v1", "plans-index"));
+        elastic.verify();
+    }
+
+    @Test
+    void failedSwapFromConcreteIndex_liftsTheWriteBlockAgain() {
+        elastic.expect(requestTo(ES + "/plans-index-v0")).andExpect(method(HttpMethod.DELETE))
+                .andRespond(withStatus(HttpStatus.NOT_FOUND));
+        elastic.expect(requestTo(ES + "/plans-index/_settings")).andRespond(withSuccess());
+        elastic.expect(requestTo(ES + "/plans-index/_clone/plans-index-v0")).andRespond(withSuccess());
+        elastic.expect(requestTo(ES + "/_aliases")).andRespond(withServerError());
+        elastic.expect(requestTo(ES + "/plans-index/_settings")).andExpect(method(HttpMethod.PUT))
+                .andExpect(content().json("{\"index.blocks.write\":false}", JsonCompareMode.STRICT))
+                .andRespond(withSuccess());
+
+        assertThrows(HttpServerErrorException.class, () -> aliases.swap("plans-index-v1", "plans-index"));
+        elastic.verify();
+    }
+}
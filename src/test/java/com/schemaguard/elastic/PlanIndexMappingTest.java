@@ -0,0 +1,67 @@
+package com.schemaguard.elastic;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlanIndexMappingTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private JsonNode desired() {
+        JsonNode mappings = new PlanIndexMapping(objectMapper, new PlanRoutingStrategy(2)).createBody(false).get("mappings");
+        ((ObjectNode) mappings).put("dynamic", "false");
+        return mappings;
+    }
+
+    @Test
+    void diff_isEmpty_forTheMappingEsEchoesBack() {
+        ObjectNode live = (ObjectNode) desired().deepCopy();
+        // ES echoes scaling_factor as a double
+        ((ObjectNode) live.at("/properties/planCostShares/properties/copay")).put("scaling_factor", 100.0);
+
+        assertEquals(List.of(), PlanIndexMapping.diff(desired(), live));
+    }
+
+    @Test
+    void diff_reportsDynamicMappingDrift() throws Exception {
+        JsonNode live = objectMapper.readTree("""
+                {
+                  "dynamic": "true",
+                  "properties": {
+                    "objectId":   { "type": "keyword" },
+                    "_etag":      { "type": "text", "fields": { "keyword": { "type": "keyword", "ignore_above": 256 } } },
+                    "planCostShares": { "properties": { "copay": { "type": "long" } } },
+                    "extra":      { "type": "text" }
+                  }
+                }
+                """);
+
+        List<String> diff = PlanIndexMapping.diff(desired(), live);
+
+        assertTrue(diff.contains("dynamic: live true, desired false"), diff.toString());
+        assertTrue(diff.contains("type _etag: live text, desired keyword"), diff.toString());
+        assertTrue(diff.contains("type planCostShares.copay: live long, desired scaled_float"), diff.toString());
+        assertTrue(diff.contains("missing planType (keyword)"), diff.toString());
+        assertTrue(diff.contains("missing my_join_field (join)"), diff.toString());
+        assertTrue(diff.contains("unmapped extra (text)"), diff.toString());
+        // objectId matches; nothing is reported for it
+        assertFalse(diff.stream().anyMatch(line -> line.endsWith(" objectId (keyword)")), diff.toString());
+    }
+
+    @Test
+    void createBody_nestedStrategy_hasNoJoinField_andNestedServices() {
+        JsonNode properties = new PlanIndexMapping(objectMapper, new PlanRoutingStrategy("nested", 2))
+                .createBody(false).at("/mappings/properties");
+
+        assertFalse(properties.has("my_join_field"));
+        assertFalse(properties.has("_plan"));
+        assertEquals("nested", properties.at("/linkedPlanServices/type").asText());
+        assertEquals("text", properties.at("/linkedPlanServices/properties/linkedService/properties/name/type").asText());
+    }
+}
@@ -0,0 +1,76 @@
+package com.schemaguard.elastic;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.schemaguard.elastic.PlanQueries.Clause;
+import com.schemaguard.elastic.PlanQueries.MatchMode;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlanQueriesTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private Clause condition(MatchMode mode, String field, String value) {
+        PlanIndexMapping mapping = new PlanIndexMapping(objectMapper, new PlanRoutingStrategy(2));
+        return PlanQueries.condition(mode, field, value, mapping.fieldType(field), mapping.hasKeyword(field));
+    }
+
+    @Test
+    void auto_isAFilterTermOnKeywordsAndNumbers_textOnTextFields() throws Exception {
+        Clause objectType = condition(MatchMode.AUTO, "objectType", "planservice");
+        assertTrue(objectType.exact());
+        assertEquals(objectMapper.readTree("{\"term\":{\"objectType\":\"planservice\"}}"), objectType.query());
+        assertTrue(condition(MatchMode.AUTO, "planserviceCostShares.copay", "0").exact());
+
+        Clause name = condition(MatchMode.AUTO, "linkedService.name", "Yearly \"physical\"");
+        assertFalse(name.exact());
+        assertEquals("Yearly \"physical\"", name.query().at("/match/linkedService.name/query").asText());
+    }
+
+    @Test
+    void exactModes_useTheKeywordSubFieldOfATextField() {
+        assertEquals("Yearly physical",
+                condition(MatchMode.TERM, "linkedService.name", "Yearly physical")
+                        .query().at("/term/linkedService.name.keyword").asText());
+        assertEquals(2, condition(MatchMode.TERMS, "objectType", "service, planservice")
+                .query().at("/terms/objectType").size());
+        assertEquals("Year", condition(MatchMode.PREFIX, "linkedService.name", "Year")
+                .query().at("/prefix/linkedService.name.keyword").asText());
+    }
+
+    @Test
+    void range_takesOpenEnds_andRejectsOtherValues() {
+        Clause range = condition(MatchMode.RANGE, "planCostShares.deductible", "1000..");
+        assertTrue(range.exact());
+        assertEquals("1000", range.query().at("/range/planCostShares.deductible/gte").asText());
+        assertFalse(range.query().at("/range/planCostShares.deductible").has("lte"));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> condition(MatchMode.RANGE, "planCostShares.deductible", "1000"));
+        assertThrows(IllegalArgumentException.class,
+                () -> condition(MatchMode.RANGE, "planCostShares.deductible", ".."));
+    }
+
+    @Test
+    void objects_matchOnlyAsText_overTheirFields() {
+        Clause linkedService = condition(MatchMode.AUTO, "linkedService", "physical");
+        assertFalse(linkedService.exact());
+        assertEquals("linkedService.*", linkedService.query().at("/multi_match/fields/0").asText());
+
+        assertThrows(IllegalArgumentException.class, () -> condition(MatchMode.TERM, "linkedService", "x"));
+        assertThrows(IllegalArgumentException.class, () -> MatchMode.parse("fuzzy"));
+    }
+
+    @Test
+    void bool_putsExactClausesInFilter() {
+        var query = PlanQueries.bool()
+                .add(condition(MatchMode.TERM, "objectType", "planservice"))
+                .add(condition(MatchMode.TEXT, "linkedService.name", "physical"))
+                .build();
+
+        assertEquals("planservice", query.at("/bool/filter/0/term/objectType").asText());
+        assertTrue(query.at("/bool/must/0").has("match"));
+        assertFalse(query.path("bool").has("should"));
+    }
+}
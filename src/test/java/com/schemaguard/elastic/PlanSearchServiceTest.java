@@ -0,0 +1,264 @@
+package com.schemaguard.elastic;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.jsonPath;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+class PlanSearchServiceTest {
+
+    private static final String ES = "http://localhost:9200";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private PlanSearchService service(String strategy, int joinLevels) {
+        PlanRoutingStrategy routing = new PlanRoutingStrategy(strategy, joinLevels);
+        PlanSearchService service = new PlanSearchService(objectMapper,
+                new ElasticsearchRequestMetrics(new SimpleMeterRegistry()), routing,
+                new PlanIndexMapping(objectMapper, routing));
+        ReflectionTestUtils.setField(service, "host", "localhost");
+        ReflectionTestUtils.setField(service, "port", 9200);
+        ReflectionTestUtils.setField(service, "defaultPageSize", 2);
+        ReflectionTestUtils.setField(service, "maxPageSize", 100);
+        ReflectionTestUtils.setField(service, "pitKeepAlive", "1m");
+        ReflectionTestUtils.setField(service, "qFields", "planType,objectType,_org,objectId");
+        ReflectionTestUtils.setField(service, "defaultInnerHitsSize", 3);
+        ReflectionTestUtils.setField(service, "maxInnerHitsSize", 100);
+        return service;
+    }
+
+    private static MockRestServiceServer elastic(PlanSearchService service) {
+        return MockRestServiceServer.bindTo((RestTemplate) ReflectionTestUtils.getField(service, "restTemplate")).build();
+    }
+
+    private static String hits(String... ids) {
+        StringBuilder json = new StringBuilder("{\"hits\":{\"hits\":[");
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"_id\":\"").append(ids[i]).append("\",\"_score\":1.0,\"_source\":{\"objectId\":\"")
+                    .append(ids[i]).append("\"},\"sort\":[1.0,\"").append(ids[i]).append("\"]}");
+        }
+        return json.append("]}}").toString();
+    }
+
+    private static final PlanSearchService.PageRequest FIRST_PAGE =
+            new PlanSearchService.PageRequest(null, null, null, false);
+
+    @Test
+    void parseSort_defaultsToAscending_exceptScore() {
+        List<PlanSearchService.SortKey> keys = PlanSearchService.parseSort(
+                "_score, creationDate:desc,objectId", PlanSearchService.PARENT_SORT_FIELDS);
+
+        assertEquals(List.of(
+                new PlanSearchService.SortKey("_score", true),
+                new PlanSearchService.SortKey("creationDate", true),
+                new PlanSearchService.SortKey("objectId", false)), keys);
+    }
+
+    @Test
+    void parseSort_rejectsUnknownFieldsAndOrders() {
+        assertThrows(IllegalArgumentException.class,
+                () -> PlanSearchService.parseSort("name", PlanSearchService.PARENT_SORT_FIELDS));
+        assertThrows(IllegalArgumentException.class,
+                () -> PlanSearchService.parseSort("_score", PlanSearchService.CHILD_SORT_FIELDS));
+        assertThrows(IllegalArgumentException.class,
+                () -> PlanSearchService.parseSort("objectId:up", PlanSearchService.CHILD_SORT_FIELDS));
+    }
+
+    @Test
+    void includeChildren_parsesAnyCase_blankIsNone() {
+        assertEquals(PlanSearchService.IncludeChildren.NONE, PlanSearchService.IncludeChildren.parse(null));
+        assertEquals(PlanSearchService.IncludeChildren.MATCHING, PlanSearchService.IncludeChildren.parse(" Matching"));
+        assertEquals(PlanSearchService.IncludeChildren.ALL, PlanSearchService.IncludeChildren.parse("all"));
+        assertThrows(IllegalArgumentException.class, () -> PlanSearchService.IncludeChildren.parse("some"));
+    }
+
+    // ── parent query: strategy × children × child filter ────────────────────
+
+    private JsonNode parentQuery(String strategy, PlanSearchService.IncludeChildren children, boolean filtered) {
+        return parentQuery(strategy, new PlanSearchService.ResultOptions(null, children, null, null), filtered);
+    }
+
+    private JsonNode parentQuery(String strategy, PlanSearchService.ResultOptions options, boolean filtered) {
+        return service(strategy, 2).buildParentSearchQuery(filtered ? "objectType" : null,
+                filtered ? "planservice" : null, null, PlanQueries.MatchMode.AUTO, options);
+    }
+
+    private void assertQuery(String expected, JsonNode actual) throws Exception {
+        assertEquals(objectMapper.readTree(expected), actual);
+    }
+
+    private static final String INNER_HITS = "\"inner_hits\":{\"name\":\"children\",\"size\":3}";
+    private static final String HAS_ANY_CHILD = "{\"has_child\":{\"type\":\"child\",\"query\":{\"match_all\":{}}";
+    private static final String HAS_PLANSERVICE_CHILD = "{\"has_child\":{\"type\":\"child\","
+            + "\"query\":{\"bool\":{\"filter\":[{\"term\":{\"objectType\":\"planservice\"}}]}}";
+    private static final String ANY_NESTED = "{\"nested\":{\"path\":\"linkedPlanServices\","
+            + "\"query\":{\"bool\":{\"filter\":[{\"exists\":{\"field\":\"linkedPlanServices.objectId\"}}]}}";
+    private static final String PLANSERVICE_NESTED = "{\"nested\":{\"path\":\"linkedPlanServices\","
+            + "\"query\":{\"bool\":{\"filter\":[{\"term\":{\"linkedPlanServices.objectType\":\"planservice\"}}]}}";
+
+    @Test
+    void joinQuery_matchingPutsInnerHitsOnTheFilter_allOnAMatchAllShould() throws Exception {
+        assertQuery("{\"query\":{\"bool\":{\"filter\":[" + HAS_PLANSERVICE_CHILD + "," + INNER_HITS + "}}]}}}",
+                parentQuery("join", PlanSearchService.IncludeChildren.MATCHING, true));
+        assertQuery("{\"query\":{\"bool\":{\"filter\":[" + HAS_PLANSERVICE_CHILD + "}}],"
+                        + "\"should\":[" + HAS_ANY_CHILD + "," + INNER_HITS + "}}]}}}",
+                parentQuery("join", PlanSearchService.IncludeChildren.ALL, true));
+
+        // without a filter every child matches: one clause, no should
+        String unfiltered = "{\"query\":{\"bool\":{\"filter\":[" + HAS_ANY_CHILD + "," + INNER_HITS + "}}]}}}";
+        assertQuery(unfiltered, parentQuery("join", PlanSearchService.IncludeChildren.MATCHING, false));
+        assertQuery(unfiltered, parentQuery("join", PlanSearchService.IncludeChildren.ALL, false));
+    }
+
+    @Test
+    void nestedQuery_matchingPutsInnerHitsOnTheFilter_allOnAnExistsShould() throws Exception {
+        assertQuery("{\"query\":{\"bool\":{\"filter\":[" + PLANSERVICE_NESTED + "," + INNER_HITS + "}}]}}}",
+                parentQuery("nested", PlanSearchService.IncludeChildren.MATCHING, true));
+        assertQuery("{\"query\":{\"bool\":{\"filter\":[" + PLANSERVICE_NESTED + "}}],"
+                        + "\"should\":[" + ANY_NESTED + "," + INNER_HITS + "}}]}}}",
+                parentQuery("nested", PlanSearchService.IncludeChildren.ALL, true));
+
+        String unfiltered = "{\"query\":{\"bool\":{\"filter\":[" + ANY_NESTED + "," + INNER_HITS + "}}]}}}";
+        assertQuery(unfiltered, parentQuery("nested", PlanSearchService.IncludeChildren.MATCHING, false));
+        assertQuery(unfiltered, parentQuery("nested", PlanSearchService.IncludeChildren.ALL, false));
+    }
+
+    @Test
+    void flattenedQuery_hasNoInnerHits_andKeepsTheServicesInAFilteredSource() throws Exception {
+        String filtered = "{\"query\":{\"bool\":{\"filter\":[{\"term\":{\"linkedPlanServices.objectType\":\"planservice\"}}]}}}";
+        String unfiltered = "{\"query\":{\"bool\":{\"filter\":[{\"exists\":{\"field\":\"linkedPlanServices.objectId\"}}]}}}";
+        for (PlanSearchService.IncludeChildren children : List.of(
+                PlanSearchService.IncludeChildren.MATCHING, PlanSearchService.IncludeChildren.ALL)) {
+            assertQuery(filtered, parentQuery("flattened", children, true));
+            assertQuery(unfiltered, parentQuery("flattened", children, false));
+        }
+
+        // children are read from the plan's own array, so a _source filter must keep it
+        JsonNode query = parentQuery("flattened", new PlanSearchService.ResultOptions(
+                "objectId", PlanSearchService.IncludeChildren.MATCHING, null, "linkedService.name"), true);
+        assertEquals(objectMapper.readTree("[\"objectId\",\"linkedPlanServices\"]"), query.at("/_source/includes"));
+    }
+
+    @Test
+    void childrenSource_limitsInnerHits_withTheNestedPathPrefix() {
+        PlanSearchService.ResultOptions options = new PlanSearchService.ResultOptions(
+                null, PlanSearchService.IncludeChildren.MATCHING, 5, "linkedService.name");
+
+        assertEquals(5, parentQuery("join", options, true).at("/query/bool/filter/0/has_child/inner_hits/size").asInt());
+        assertEquals("[\"objectId\",\"linkedService.name\"]", parentQuery("join", options, true)
+                .at("/query/bool/filter/0/has_child/inner_hits/_source/includes").toString());
+        assertEquals("[\"linkedPlanServices.objectId\",\"linkedPlanServices.linkedService.name\"]",
+                parentQuery("nested", options, true)
+                        .at("/query/bool/filter/0/nested/inner_hits/_source/includes").toString());
+    }
+
+    // ── paging ───────────────────────────────────────────────────────────────
+
+    @Test
+    void firstPage_isAPlainSearch_andOnlyTheCursorOpensAPit() {
+        PlanSearchService service = service("join", 2);
+        MockRestServiceServer elastic = elastic(service);
+        elastic.expect(requestTo(ES + "/plans-index/_search")).andExpect(method(HttpMethod.POST))
+                .andExpect(jsonPath("$.pit").doesNotExist())
+                .andExpect(jsonPath("$.sort[0]._score.order").value("desc"))
+                .andExpect(jsonPath("$.sort[1].objectId.order").value("asc"))
+                .andRespond(withSuccess(hits("p1", "p2"), MediaType.APPLICATION_JSON));
+
+        Map<String, Object> first = service.searchParentsByChildField(null, null, "inNetwork",
+                PlanQueries.MatchMode.AUTO, FIRST_PAGE, PlanSearchService.ResultOptions.DEFAULT);
+        elastic.verify();
+        String cursor = (String) first.get("nextCursor");
+        assertNotNull(cursor);
+
+        elastic.reset();
+        elastic.expect(requestTo(ES + "/plans-index/_pit?keep_alive=1m")).andExpect(method(HttpMethod.POST))
+                .andRespond(withSuccess("{\"id\":\"pit-1\"}", MediaType.APPLICATION_JSON));
+        elastic.expect(requestTo(ES + "/_search")).andExpect(method(HttpMethod.POST))
+                .andExpect(jsonPath("$.pit.id").value("pit-1"))
+                .andExpect(jsonPath("$.search_after[1]").value("p2"))
+                .andRespond(withSuccess(hits("p3"), MediaType.APPLICATION_JSON));
+        elastic.expect(requestTo(ES + "/_pit")).andExpect(method(HttpMethod.DELETE))
+                .andExpect(jsonPath("$.id").value("pit-1"))
+                .andRespond(withSuccess());
+
+        Map<String, Object> last = service.searchParentsByChildField(null, null, "inNetwork",
+                PlanQueries.MatchMode.AUTO, new PlanSearchService.PageRequest(null, null, cursor, false),
+                PlanSearchService.ResultOptions.DEFAULT);
+        elastic.verify();
+        assertNull(last.get("nextCursor"));
+    }
+
+    @Test
+    void shortFirstPage_opensNothing_andHasNoCursor() {
+        PlanSearchService service = service("join", 2);
+        MockRestServiceServer elastic = elastic(service);
+        elastic.expect(requestTo(ES + "/plans-index/_search"))
+                .andRespond(withSuccess(hits("p1"), MediaType.APPLICATION_JSON));
+
+        Map<String, Object> page = service.searchParentsByChildField("objectType", "planservice", null,
+                PlanQueries.MatchMode.AUTO, FIRST_PAGE, PlanSearchService.ResultOptions.DEFAULT);
+        elastic.verify();
+        assertNull(page.get("nextCursor"));
+    }
+
+    @Test
+    void cursor_roundTrips() {
+        PlanSearchService service = service("join", 2);
+        PlanSearchService.Cursor cursor = new PlanSearchService.Cursor("parents", "q-hash", "pit-1", "_score:desc",
+                objectMapper.createArrayNode().add(1.5).add("p2"));
+
+        assertEquals(cursor, service.decodeCursor(service.encodeCursor(cursor), "parents", "q-hash"));
+    }
+
+    @Test
+    void cursor_isRejectedForAnotherQuery_scope_orSort() {
+        PlanSearchService service = service("join", 2);
+        ObjectNode query = objectMapper.createObjectNode();
+        query.putObject("query").putObject("term").put("objectType", "planservice");
+        String hash = PlanSearchService.queryHash(query);
+        String cursor = service.encodeCursor(new PlanSearchService.Cursor("parents", hash, null, "_score:desc",
+                objectMapper.createArrayNode().add(1.5).add("p2")));
+
+        ObjectNode other = query.deepCopy();
+        other.withObjectProperty("query").withObjectProperty("term").put("objectType", "service");
+        assertNotEquals(hash, PlanSearchService.queryHash(other));
+        assertThrows(IllegalArgumentException.class,
+                () -> service.decodeCursor(cursor, "parents", PlanSearchService.queryHash(other)));
+        assertThrows(IllegalArgumentException.class, () -> service.decodeCursor(cursor, "children:p1", hash));
+        assertThrows(IllegalArgumentException.class, () -> service.decodeCursor("not-a-cursor", "parents", hash));
+
+        // end to end: a cursor from one search sent with other parameters, before any request to ES
+        MockRestServiceServer elastic = elastic(service);
+        elastic.expect(requestTo(ES + "/plans-index/_search"))
+                .andRespond(withSuccess(hits("p1", "p2"), MediaType.APPLICATION_JSON));
+        String next = (String) service.searchParentsByChildField("objectType", "planservice", null,
+                PlanQueries.MatchMode.AUTO, FIRST_PAGE, PlanSearchService.ResultOptions.DEFAULT).get("nextCursor");
+        elastic.verify();
+
+        assertThrows(IllegalArgumentException.class, () -> service.searchParentsByChildField(
+                "objectType", "service", null, PlanQueries.MatchMode.AUTO,
+                new PlanSearchService.PageRequest(null, null, next, false), PlanSearchService.ResultOptions.DEFAULT));
+        assertThrows(IllegalArgumentException.class, () -> service.searchParentsByChildField(
+                "objectType", "planservice", "inNetwork", PlanQueries.MatchMode.AUTO,
+                new PlanSearchService.PageRequest(null, null, next, false), PlanSearchService.ResultOptions.DEFAULT));
+        assertThrows(IllegalArgumentException.class, () -> service.searchParentsByChildField(
+                "objectType", "planservice", null, PlanQueries.MatchMode.AUTO,
+                new PlanSearchService.PageRequest(null, "objectId", next, false), PlanSearchService.ResultOptions.DEFAULT));
+    }
+}
@@ -0,0 +1,86 @@
+package com.schemaguard.jfr;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.schemaguard.validation.SchemaValidationException;
+import com.schemaguard.validation.SchemaValidator;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlanValidationEventTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void validation_emitsEventWithPlanIdAndOutcome() throws Exception {
+        SchemaValidator validator = new SchemaValidator(new ObjectMapper());
+        String plan = """
+        {
+          "planCostShares": {
+            "deductible": 2000,
+            "_org": "example.com",
+            "copay": 23,
+            "objectId": "jfr-plan-1-cs",
+            "objectType": "membercostshare"
+          },
+          "linkedPlanServices": [{
+            "linkedService": {
+              "_org": "example.com",
+              "objectId": "jfr-plan-1-svc",
+              "objectType": "service",
+              "name": "Yearly physical"
+            },
+            "planserviceCostShares": {
+              "deductible": 10,
+              "_org": "example.com",
+              "copay": 0,
+              "objectId": "jfr-plan-1-pscs",
+              "objectType": "membercostshare"
+            },
+            "_org": "example.com",
+            "objectId": "jfr-plan-1-ps",
+            "objectType": "planservice"
+          }],
+          "_org": "example.com",
+          "objectId": "jfr-plan-1",
+          "objectType": "plan",
+          "planType": "inNetwork",
+          "creationDate": "12-12-2017"
+        }
+        """;
+        Path file = tempDir.resolve("validation.jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.enable(PlanValidationEvent.class).withThreshold(Duration.ZERO);
+            recording.start();
+            validator.validatePlanJson(plan);
+            assertThrows(SchemaValidationException.class, () -> validator.validatePlanJson("{\"objectId\":\"bad-1\"}"));
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(e -> e.getEventType().getName().equals("schemaguard.PlanValidation"))
+                .toList();
+        assertEquals(2, events.size());
+
+        RecordedEvent valid = events.get(0);
+        assertEquals("jfr-plan-1", valid.getString("objectId"));
+        assertEquals("valid", valid.getString("outcome"));
+        assertEquals(plan.length(), valid.getInt("payloadSize"));
+
+        RecordedEvent invalid = events.get(1);
+        assertEquals("bad-1", invalid.getString("objectId"));
+        assertEquals("invalid", invalid.getString("outcome"));
+        assertTrue(invalid.getInt("violations") > 0);
+    }
+}
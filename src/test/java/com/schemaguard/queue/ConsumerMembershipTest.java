@@ -0,0 +1,98 @@
+package com.schemaguard.queue;
+
+import com.schemaguard.bench.RespStandInServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsumerMembershipTest {
+
+    private static final String STREAM = "test:events";
+    private static final String LOW_STREAM = "test:events:low";
+    private static final String GROUP = "test-indexers";
+    private static final long TTL_MS = 300;
+
+    private RespStandInServer redis;
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate redisTemplate;
+
+    @BeforeEach
+    void startRedis() throws Exception {
+        redis = new RespStandInServer(0);
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", redis.port()));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+        for (String stream : new String[]{STREAM, LOW_STREAM}) {
+            redisTemplate.opsForStream().add(stream, Map.of("op", "UPSERT"));
+            redisTemplate.opsForStream().createGroup(stream, ReadOffset.from("0"), GROUP);
+        }
+    }
+
+    @AfterEach
+    void stopRedis() throws Exception {
+        connectionFactory.destroy();
+        redis.close();
+    }
+
+    private ConsumerMembership membership(String name) {
+        ConsumerMembership membership = new ConsumerMembership(redisTemplate, new SimpleMeterRegistry(), name);
+        ReflectionTestUtils.setField(membership, "streamName", STREAM);
+        ReflectionTestUtils.setField(membership, "lowStreamName", LOW_STREAM);
+        ReflectionTestUtils.setField(membership, "groupName", GROUP);
+        ReflectionTestUtils.setField(membership, "heartbeatPrefix", "test:workers:");
+        ReflectionTestUtils.setField(membership, "heartbeatIntervalMs", 50L);
+        ReflectionTestUtils.setField(membership, "heartbeatTtlMs", TTL_MS);
+        ReflectionTestUtils.setField(membership, "claimMinIdleMs", 0L);
+        return membership;
+    }
+
+    @Test
+    void slowPoll_onTheSchedulerThread_doesNotMakeTheReplicaLookDead() throws Exception {
+        ConsumerMembership busy = membership("busy");
+        ConsumerMembership peer = membership("peer");
+        busy.start();
+
+        // Spring's single scheduler thread: a poll that takes an entry, then
+        // works on it for several heartbeat TTLs without touching Redis again
+        ExecutorService scheduler = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> poll = scheduler.submit(() -> {
+                redisTemplate.opsForStream().read(Consumer.from(GROUP, "busy"),
+                        StreamReadOptions.empty().count(1), StreamOffset.create(STREAM, ReadOffset.lastConsumed()));
+                Thread.sleep(TTL_MS * 4);
+                return null;
+            });
+            Thread.sleep(TTL_MS);
+            while (!poll.isDone()) {
+                assertFalse(peer.deadConsumers().contains("busy"), "busy replica declared dead mid-batch");
+                Thread.sleep(50);
+            }
+            poll.get(1, TimeUnit.SECONDS);
+        } finally {
+            scheduler.shutdownNow();
+        }
+
+        // once it stops heartbeating (pending entry left behind) it is dead
+        busy.leave();
+        assertTrue(peer.deadConsumers().contains("busy"));
+        peer.leave();
+    }
+}
@@ -0,0 +1,96 @@
+package com.schemaguard.queue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.schemaguard.elastic.IndexService;
+import com.schemaguard.elastic.PlanRoutingStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexEventProcessorTest {
+
+    private static final Set<String> TWO_LEVELS = childFields(2);
+    private static final Set<String> THREE_LEVELS = childFields(3);
+
+    private static Set<String> childFields(int joinLevels) {
+        return new PlanDocumentSplitter(new ObjectMapper(), new PlanRoutingStrategy(joinLevels)).childFields();
+    }
+
+    private static IndexEvent event(IndexEventOperation op, String id, String etag) {
+        return IndexEvent.of(op, id, etag);
+    }
+
+    private static List<String> describe(List<IndexEvent> events) {
+        return events.stream().map(e -> e.operation() + ":" + e.documentId() + ":" + e.etag()).toList();
+    }
+
+    @Test
+    void coalesce_keepsLastEventPerId_inOrderOfLastOccurrence() {
+        List<IndexEvent> batch = List.of(
+                event(IndexEventOperation.UPSERT, "a", "1"),
+                event(IndexEventOperation.UPSERT, "b", "1"),
+                event(IndexEventOperation.PATCH, "a", "2"),
+                event(IndexEventOperation.DELETE, "b", ""));
+
+        assertEquals(List.of("PATCH:a:2", "DELETE:b:"),
+                describe(IndexEventProcessor.coalesce(batch, IndexEvent::documentId, IndexEvent::operation)));
+    }
+
+    @Test
+    void coalesce_keepsDeleteInFrontOfRecreate() {
+        List<IndexEvent> batch = List.of(
+                event(IndexEventOperation.UPSERT, "a", "1"),
+                event(IndexEventOperation.DELETE, "a", ""),
+                event(IndexEventOperation.UPSERT, "a", "2"),
+                event(IndexEventOperation.PATCH, "a", "3"));
+
+        assertEquals(List.of("DELETE:a:", "PATCH:a:3"),
+                describe(IndexEventProcessor.coalesce(batch, IndexEvent::documentId, IndexEvent::operation)));
+    }
+
+    @Test
+    void batchableDeletes_onlyDeletesOfPlansWithNoOtherEventInTheBatch() {
+        List<IndexEvent> batch = List.of(
+                event(IndexEventOperation.DELETE, "a", ""),
+                event(IndexEventOperation.UPSERT, "b", "1"),
+                event(IndexEventOperation.DELETE, "c", ""),
+                event(IndexEventOperation.UPSERT, "c", "2"),
+                event(IndexEventOperation.DELETE, "d", ""));
+
+        assertEquals(List.of(0, 4), IndexEventProcessor.batchableDeletes(batch));
+    }
+
+    @Test
+    void diffChildren_indexesNewAndChanged_deletesRemoved_skipsUnchanged() {
+        Map<String, IndexService.ChildDoc> desired = new LinkedHashMap<>();
+        desired.put("same", new IndexService.ChildDoc(null, "e1"));
+        desired.put("changed", new IndexService.ChildDoc(null, "e2-new"));
+        desired.put("added", new IndexService.ChildDoc(null, "e3"));
+        Map<String, String> indexed = Map.of("same", "e1", "changed", "e2", "removed", "e4");
+
+        IndexEventProcessor.ChildDiff diff = IndexEventProcessor.diffChildren(desired, indexed);
+
+        assertEquals(List.of("changed", "added"), diff.upserts());
+        assertEquals(List.of("removed"), diff.deletes());
+        assertEquals(1, diff.unchanged());
+    }
+
+    @Test
+    void isPartialDoc_onlyForObjectPatchesWithoutRemovalsOrChildren() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+
+        assertTrue(IndexEventProcessor.isPartialDoc(mapper.readTree("{\"planType\":\"outOfNetwork\"}"), TWO_LEVELS));
+        assertTrue(IndexEventProcessor.isPartialDoc(mapper.readTree("{\"planCostShares\":{\"deductible\":3000}}"), TWO_LEVELS));
+        assertFalse(IndexEventProcessor.isPartialDoc(mapper.readTree("{\"planCostShares\":{\"copay\":null}}"), TWO_LEVELS));
+        assertFalse(IndexEventProcessor.isPartialDoc(mapper.readTree("{\"linkedPlanServices\":[]}"), TWO_LEVELS));
+        assertFalse(IndexEventProcessor.isPartialDoc(mapper.readTree("[1]"), TWO_LEVELS));
+        // cost shares are their own documents with three join levels
+        assertFalse(IndexEventProcessor.isPartialDoc(mapper.readTree("{\"planCostShares\":{\"deductible\":3000}}"), THREE_LEVELS));
+        assertTrue(IndexEventProcessor.isPartialDoc(mapper.readTree("{\"planType\":\"outOfNetwork\"}"), THREE_LEVELS));
+    }
+}
@@ -0,0 +1,58 @@
+package com.schemaguard.queue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexLagTrackerTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final IndexLagTracker tracker = new IndexLagTracker(registry);
+
+    @Test
+    void beforeWorkerReports_snapshotIsEmptyAndGaugesAreNaN() {
+        Map<String, Object> snapshot = tracker.snapshot();
+
+        assertEquals(false, snapshot.get("workerReporting"));
+        assertNull(snapshot.get("streamLength"));
+        assertNull(snapshot.get("oldestPendingAgeMs"));
+        assertEquals(0L, snapshot.get("indexedLastMinute"));
+        assertTrue(Double.isNaN(registry.get("schemaguard.worker.pending").gauge().value()));
+    }
+
+    @Test
+    void indexedEvents_recordLagAndThroughput() {
+        long enqueued = tracker.onDequeued(Instant.now().minusMillis(1500).toString(), IndexEventPriority.HIGH);
+        tracker.onIndexed(enqueued, IndexEventPriority.HIGH);
+        tracker.onIndexed(tracker.onDequeued("not-a-timestamp", IndexEventPriority.LOW), IndexEventPriority.LOW);
+
+        Map<String, Object> snapshot = tracker.snapshot();
+        assertEquals(2L, snapshot.get("indexedLastMinute"));
+        long avg = (Long) snapshot.get("avgIndexLagMs");
+        assertTrue(avg >= 1500 && avg < 10_000, "avg lag " + avg);
+        assertEquals(1, registry.get("schemaguard.index.lag.indexed").tag("priority", "high").timer().count());
+        assertTrue(registry.get("schemaguard.index.lag.dequeue").tag("priority", "high").timer().totalTime(TimeUnit.MILLISECONDS) >= 1500);
+    }
+
+    @Test
+    void queueStats_reportOldestPendingAgeFromStreamId() {
+        long tenSecondsAgo = System.currentTimeMillis() - 10_000;
+        tracker.updateQueueStats(42, 3, 2, tenSecondsAgo + "-0");
+
+        Map<String, Object> snapshot = tracker.snapshot();
+        assertEquals(true, snapshot.get("workerReporting"));
+        assertEquals(42L, snapshot.get("streamLength"));
+        assertEquals(3L, snapshot.get("consumerGroupLag"));
+        long age = (Long) snapshot.get("oldestPendingAgeMs");
+        assertTrue(age >= 10_000 && age < 20_000, "age " + age);
+        assertEquals(2.0, registry.get("schemaguard.worker.pending").gauge().value());
+
+        tracker.updateQueueStats(42, 0, 0, null);
+        assertEquals(0L, tracker.snapshot().get("oldestPendingAgeMs"));
+    }
+}
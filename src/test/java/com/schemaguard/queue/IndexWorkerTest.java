@@ -0,0 +1,25 @@
+package com.schemaguard.queue;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexWorkerTest {
+
+    @Test
+    void highQuota_splitsBatchByWeight_andNeverStarvesLowLane() {
+        assertEquals(8, IndexWorker.highQuota(10, 4, 1));
+        assertEquals(5, IndexWorker.highQuota(10, 1, 1));
+        // heavy HIGH weight still leaves LOW one slot
+        assertEquals(9, IndexWorker.highQuota(10, 100, 1));
+        assertEquals(1, IndexWorker.highQuota(10, 1, 100));
+        assertEquals(1, IndexWorker.highQuota(2, 4, 1));
+    }
+
+    @Test
+    void highQuota_honoursDisabledLanes() {
+        assertEquals(10, IndexWorker.highQuota(10, 1, 0));
+        assertEquals(0, IndexWorker.highQuota(10, 0, 1));
+        assertEquals(1, IndexWorker.highQuota(1, 4, 1));
+    }
+}
@@ -0,0 +1,117 @@
+package com.schemaguard.queue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.schemaguard.elastic.PlanRoutingStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlanDocumentSplitterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final String PLAN = """
+        {
+          "planCostShares": {
+            "deductible": 2000,
+            "_org": "example.com",
+            "copay": 23,
+            "objectId": "1234vxc2324sdf-501",
+            "objectType": "membercostshare"
+          },
+          "linkedPlanServices": [{
+            "linkedService": {
+              "_org": "example.com",
+              "objectId": "1234520xvc30asdf-502",
+              "objectType": "service",
+              "name": "Yearly physical"
+            },
+            "planserviceCostShares": {
+              "deductible": 10,
+              "_org": "example.com",
+              "copay": 0,
+              "objectId": "1234512xvc1314asdfs-503",
+              "objectType": "membercostshare"
+            },
+            "_org": "example.com",
+            "objectId": "27283xvx9asdff-504",
+            "objectType": "planservice"
+          }],
+          "_org": "example.com",
+          "objectId": "12xvxc345ssdsds-508",
+          "objectType": "plan",
+          "planType": "inNetwork",
+          "creationDate": "12-12-2017"
+        }
+        """;
+
+    private PlanDocumentSplitter splitter(int joinLevels) {
+        return new PlanDocumentSplitter(objectMapper, new PlanRoutingStrategy(joinLevels));
+    }
+
+    private static List<String> describe(List<PlanDocumentSplitter.ChildEntry> children) {
+        return children.stream().map(c -> c.relation() + ":" + c.childId() + "<" + c.joinParent()).toList();
+    }
+
+    @Test
+    void twoLevels_onlyPlanServicesBecomeChildren_parentUnchanged() throws Exception {
+        PlanDocumentSplitter splitter = splitter(2);
+        List<PlanDocumentSplitter.ChildEntry> children = splitter.extractChildren(PLAN);
+
+        assertEquals(List.of("child:27283xvx9asdff-504<12xvxc345ssdsds-508"), describe(children));
+        assertTrue(children.get(0).childDoc().has("linkedService"));
+        JsonNode plan = objectMapper.readTree(PLAN);
+        assertEquals(plan, splitter.parentDocument(plan));
+    }
+
+    @Test
+    void threeLevels_everyObjectIsItsOwnDocument_cutOutOfItsContainer() throws Exception {
+        PlanDocumentSplitter splitter = splitter(3);
+        List<PlanDocumentSplitter.ChildEntry> children = splitter.extractChildren(PLAN);
+
+        assertEquals(List.of(
+                "plancostshare:1234vxc2324sdf-501<12xvxc345ssdsds-508",
+                "child:27283xvx9asdff-504<12xvxc345ssdsds-508",
+                "service:1234520xvc30asdf-502<27283xvx9asdff-504",
+                "servicecostshare:1234512xvc1314asdfs-503<27283xvx9asdff-504"), describe(children));
+
+        JsonNode planService = children.get(1).childDoc();
+        assertFalse(planService.has("linkedService"));
+        assertFalse(planService.has("planserviceCostShares"));
+        assertEquals("Yearly physical", children.get(2).childDoc().path("name").asText());
+
+        JsonNode parent = splitter.parentDocument(objectMapper.readTree(PLAN));
+        assertFalse(parent.has("planCostShares"));
+        assertFalse(parent.has("linkedPlanServices"));
+        assertEquals("inNetwork", parent.path("planType").asText());
+    }
+
+    @Test
+    void threeLevels_serviceEtagIgnoresItsSiblings() {
+        PlanDocumentSplitter splitter = splitter(3);
+        String changedCopay = PLAN.replace("\"copay\": 0", "\"copay\": 5");
+
+        var before = splitter.childDocs(PLAN);
+        var after = splitter.childDocs(changedCopay);
+
+        assertNotEquals(before.get("1234512xvc1314asdfs-503").etag(), after.get("1234512xvc1314asdfs-503").etag());
+        assertEquals(before.get("27283xvx9asdff-504").etag(), after.get("27283xvx9asdff-504").etag());
+        assertEquals(before.get("1234520xvc30asdf-502").etag(), after.get("1234520xvc30asdf-502").etag());
+    }
+
+    @Test
+    void embeddedStrategies_keepThePlanWhole() throws Exception {
+        for (String strategy : List.of("nested", "flattened")) {
+            PlanDocumentSplitter splitter = new PlanDocumentSplitter(objectMapper, new PlanRoutingStrategy(strategy, 3));
+
+            assertEquals(List.of(), splitter.extractChildren(PLAN), strategy);
+            assertEquals(Set.of(), splitter.childFields(), strategy);
+            JsonNode plan = objectMapper.readTree(PLAN);
+            assertEquals(plan, splitter.parentDocument(plan), strategy);
+        }
+    }
+}
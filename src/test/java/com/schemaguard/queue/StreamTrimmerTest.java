@@ -0,0 +1,114 @@
+package com.schemaguard.queue;
+
+import com.schemaguard.bench.RespStandInServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamTrimmerTest {
+
+    @Test
+    void horizon_isJustPastLastDelivered_whenNothingPending() {
+        assertEquals("1700000000000-4", StreamTrimmer.safeMinId(List.of(
+                new StreamTrimmer.GroupPosition("1700000000000-3", null))));
+    }
+
+    @Test
+    void horizon_keepsOldestPendingEntry_andSlowestGroupWins() {
+        String minId = StreamTrimmer.safeMinId(List.of(
+                new StreamTrimmer.GroupPosition("1700000009000-0", "1700000005000-2"),
+                new StreamTrimmer.GroupPosition("1700000007000-0", null)));
+        assertEquals("1700000005000-2", minId);
+
+        minId = StreamTrimmer.safeMinId(List.of(
+                new StreamTrimmer.GroupPosition("1700000009000-0", "1700000008000-0"),
+                new StreamTrimmer.GroupPosition("1700000002000-7", null)));
+        assertEquals("1700000002000-8", minId);
+    }
+
+    @Test
+    void noGroups_meansNoTrim() {
+        assertNull(StreamTrimmer.safeMinId(List.of()));
+    }
+
+    @Test
+    void stuck_afterEitherBound_andZeroDisablesIt() {
+        assertTrue(StreamTrimmer.isStuck(5, 0, 5, 0));
+        assertTrue(StreamTrimmer.isStuck(1, 60_000, 5, 60_000));
+        assertFalse(StreamTrimmer.isStuck(4, 59_999, 5, 60_000));
+        assertFalse(StreamTrimmer.isStuck(100, 100_000_000, 0, 0));
+    }
+
+    @Test
+    void poisonEntry_isDeadLettered_andNoLongerBlocksTrimming() throws Exception {
+        String stream = "test:events";
+        String group = "test-indexers";
+        String deadLetters = "test:events:dead";
+        try (RespStandInServer redis = new RespStandInServer(0)) {
+            LettuceConnectionFactory connectionFactory =
+                    new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", redis.port()));
+            connectionFactory.afterPropertiesSet();
+            connectionFactory.start();
+            try {
+                StringRedisTemplate redisTemplate = new StringRedisTemplate(connectionFactory);
+                StreamTrimmer trimmer = new StreamTrimmer(redisTemplate, new SimpleMeterRegistry());
+                ReflectionTestUtils.setField(trimmer, "streamName", stream);
+                ReflectionTestUtils.setField(trimmer, "lowStreamName", "test:events:low");
+                ReflectionTestUtils.setField(trimmer, "enabled", true);
+                ReflectionTestUtils.setField(trimmer, "deadLetterStream", deadLetters);
+                ReflectionTestUtils.setField(trimmer, "deadLetterAfterDeliveries", 3L);
+                ReflectionTestUtils.setField(trimmer, "deadLetterAfterIdleMs", 0L);
+                ReflectionTestUtils.setField(trimmer, "deadLetterScan", 10);
+
+                for (int i = 0; i < 5; i++) {
+                    redisTemplate.opsForStream().add(stream, Map.of("documentId", "plan-" + i));
+                }
+                redisTemplate.opsForStream().createGroup(stream, ReadOffset.from("0"), group);
+                List<MapRecord<String, Object, Object>> read = redisTemplate.opsForStream().read(
+                        Consumer.from(group, "worker"), StreamReadOptions.empty().count(5),
+                        StreamOffset.create(stream, ReadOffset.lastConsumed()));
+                RecordId poison = read.get(0).getId();
+                for (MapRecord<String, Object, Object> record : read.subList(1, read.size())) {
+                    redisTemplate.opsForStream().acknowledge(stream, group, record.getId());
+                }
+
+                // retries exhausted, never ACKed: the oldest pending id pins MINID
+                trimmer.trim();
+                assertEquals(5L, redisTemplate.opsForStream().size(stream));
+
+                // redelivered until it passes the bound
+                for (int i = 0; i < 2; i++) {
+                    redisTemplate.opsForStream().claim(stream, group, "worker", Duration.ZERO, poison);
+                }
+                trimmer.trim();
+
+                assertEquals(0L, redisTemplate.opsForStream().size(stream));
+                assertEquals(0L, redisTemplate.opsForStream().pending(stream, group).getTotalPendingMessages());
+                List<MapRecord<String, Object, Object>> dead = redisTemplate.opsForStream()
+                        .range(deadLetters, Range.unbounded());
+                assertEquals(1, dead.size());
+                assertEquals("plan-0", dead.get(0).getValue().get("documentId"));
+                assertEquals(poison.getValue(), dead.get(0).getValue().get("deadId"));
+                assertEquals("3", dead.get(0).getValue().get("deadDeliveries"));
+            } finally {
+                connectionFactory.destroy();
+            }
+        }
+    }
+}
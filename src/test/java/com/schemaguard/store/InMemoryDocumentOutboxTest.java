@@ -0,0 +1,177 @@
+package com.schemaguard.store;
+
+import com.schemaguard.exception.ServiceUnavailableException;
+import com.schemaguard.queue.InProcessIndexEventBus;
+import com.schemaguard.queue.IndexEvent;
+import com.schemaguard.queue.IndexEventOperation;
+import com.schemaguard.queue.IndexLagTracker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.schemaguard.store.DocumentOutbox.Indexing.DEFER;
+import static com.schemaguard.store.DocumentOutbox.Indexing.PUBLISH;
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryDocumentOutboxTest {
+
+    private static final String ID = "12xvxc345ssdsds-508";
+    private static final String V1 = "{\"objectId\":\"12xvxc345ssdsds-508\",\"planType\":\"inNetwork\"}";
+    private static final String V2 = "{\"objectId\":\"12xvxc345ssdsds-508\",\"planType\":\"outOfNetwork\"}";
+
+    @Test
+    void writes_publishOneEventEach_withTheEtagTheyCommitted() {
+        InMemoryKeyValueStore store = new InMemoryKeyValueStore();
+        List<IndexEvent> events = new ArrayList<>();
+        DocumentOutbox outbox = new InMemoryDocumentOutbox(store, events::add);
+
+        DocumentOutbox.Result created = outbox.create(ID, V1, PUBLISH);
+        assertTrue(created.isApplied());
+        assertEquals(DocumentOutbox.Status.ALREADY_EXISTS, outbox.create(ID, V2, PUBLISH).status());
+
+        String etag1 = created.document().getEtag();
+        assertEquals(DocumentOutbox.Status.ETAG_MISMATCH,
+                outbox.replace(ID, V2, "stale", IndexEventOperation.PATCH, PUBLISH).status());
+        DocumentOutbox.Result patched = outbox.replace(ID, V2, etag1, IndexEventOperation.PATCH, PUBLISH);
+        assertTrue(patched.isApplied());
+        assertEquals(V2, store.get(ID).orElseThrow().getJson());
+
+        assertTrue(outbox.delete(ID, null, PUBLISH).isApplied());
+        assertEquals(DocumentOutbox.Status.NOT_FOUND, outbox.delete(ID, null, PUBLISH).status());
+
+        assertEquals(List.of("UPSERT", "PATCH", "DELETE"),
+                events.stream().map(IndexEvent::operation).toList());
+        assertEquals(etag1, events.get(0).etag());
+        assertEquals(patched.document().getEtag(), events.get(1).etag());
+        // DELETE carries the last etag the document had
+        assertEquals(patched.document().getEtag(), events.get(2).etag());
+    }
+
+    @Test
+    void patch_publishesThePatchOnTopOfTheEtagItReplaced() {
+        InMemoryKeyValueStore store = new InMemoryKeyValueStore();
+        List<IndexEvent> events = new ArrayList<>();
+        DocumentOutbox outbox = new InMemoryDocumentOutbox(store, events::add);
+        String etag1 = outbox.create(ID, V1, PUBLISH).document().getEtag();
+
+        String patch = "{\"planType\":\"outOfNetwork\"}";
+        DocumentOutbox.Result patched = outbox.patch(ID, V2, etag1, patch, PUBLISH);
+        assertTrue(patched.isApplied());
+
+        IndexEvent event = events.get(1);
+        assertEquals("PATCH", event.operation());
+        assertEquals(patched.document().getEtag(), event.etag());
+        assertEquals(etag1, event.baseEtag());
+        assertEquals(patch, event.patch());
+        assertEquals(patch, event.toStreamFields().get("patch"));
+        // create carries no patch, and none goes onto the stream
+        assertFalse(events.get(0).hasPatch());
+        assertFalse(events.get(0).toStreamFields().containsKey("patch"));
+    }
+
+    @Test
+    void versions_growPerWrite_andSurviveDeleteAndRecreate() {
+        InMemoryKeyValueStore store = new InMemoryKeyValueStore();
+        List<IndexEvent> events = new ArrayList<>();
+        DocumentOutbox outbox = new InMemoryDocumentOutbox(store, events::add);
+
+        DocumentOutbox.Result created = outbox.create(ID, V1, PUBLISH);
+        DocumentOutbox.Result replaced = outbox.replace(ID, V2, null, IndexEventOperation.UPSERT, PUBLISH);
+        outbox.delete(ID, null, PUBLISH);
+        DocumentOutbox.Result recreated = outbox.create(ID, V1, PUBLISH);
+
+        assertTrue(created.document().getVersion() > 0);
+        assertEquals(replaced.document().getVersion(), events.get(1).versionNumber());
+        assertEquals(recreated.document().getVersion(), store.get(ID).orElseThrow().getVersion());
+        long previous = 0;
+        for (IndexEvent event : events) {
+            assertTrue(event.versionNumber() > previous, "versions must grow: " + events);
+            previous = event.versionNumber();
+        }
+        // round trip through the stream entry the Redis worker reads
+        assertEquals(events.get(2), IndexEvent.fromStreamFields(events.get(2).toStreamFields()));
+    }
+
+    @Test
+    void failedPublish_leavesTheStoreUnchanged() {
+        InMemoryKeyValueStore store = new InMemoryKeyValueStore();
+        DocumentOutbox outbox = new InMemoryDocumentOutbox(store, event -> {
+            throw new IllegalStateException("queue unavailable");
+        });
+
+        assertThrows(IllegalStateException.class, () -> outbox.create(ID, V1, PUBLISH));
+        assertFalse(store.exists(ID));
+
+        store.create(ID, V1);
+        assertThrows(IllegalStateException.class,
+                () -> outbox.replace(ID, V2, null, IndexEventOperation.UPSERT, PUBLISH));
+        assertEquals(V1, store.get(ID).orElseThrow().getJson());
+        assertThrows(IllegalStateException.class, () -> outbox.delete(ID, null, PUBLISH));
+        assertTrue(store.exists(ID));
+    }
+
+    @Test
+    void deferredWrites_publishNothing_untilReplayedWithTheCurrentState() {
+        InMemoryKeyValueStore store = new InMemoryKeyValueStore();
+        List<IndexEvent> events = new ArrayList<>();
+        DocumentOutbox outbox = new InMemoryDocumentOutbox(store, events::add);
+
+        DocumentOutbox.Result created = outbox.create(ID, V1, DEFER);
+        DocumentOutbox.Result patched = outbox.replace(ID, V2, created.document().getEtag(),
+                IndexEventOperation.PATCH, DEFER);
+        outbox.create("gone-1", V1, DEFER);
+        outbox.delete("gone-1", null, DEFER);
+
+        assertTrue(events.isEmpty());
+        assertEquals(2, outbox.deferredCount());
+
+        assertEquals(2, outbox.replayDeferred(10));
+        assertEquals(0, outbox.deferredCount());
+        assertEquals(0, outbox.replayDeferred(10));
+
+        IndexEvent upsert = events.stream().filter(e -> e.documentId().equals(ID)).findFirst().orElseThrow();
+        assertEquals("UPSERT", upsert.operation());
+        assertEquals(patched.document().getEtag(), upsert.etag());
+        IndexEvent delete = events.stream().filter(e -> e.documentId().equals("gone-1")).findFirst().orElseThrow();
+        assertEquals("DELETE", delete.operation());
+    }
+
+    @Test
+    void fullBus_waitsOutsideTheKeyLock_andRejectsWithoutChangingTheStore() throws Exception {
+        InMemoryKeyValueStore store = new InMemoryKeyValueStore();
+        // consumer never started: the two slots stay taken
+        InProcessIndexEventBus bus = new InProcessIndexEventBus(null,
+                new IndexLagTracker(new SimpleMeterRegistry()), new SimpleMeterRegistry(), 2, "park");
+        ReflectionTestUtils.setField(bus, "offerTimeoutMs", 500L);
+        DocumentOutbox outbox = new InMemoryDocumentOutbox(store, bus);
+        outbox.create("a", V1, PUBLISH);
+        outbox.create("b", V1, PUBLISH);
+
+        CompletableFuture<DocumentOutbox.Result> waiting = CompletableFuture.supplyAsync(
+                () -> outbox.create(ID, V1, PUBLISH));
+        Thread.sleep(100);
+
+        // another write to the same key is not held up by the waiting one
+        long start = System.nanoTime();
+        assertEquals(DocumentOutbox.Status.NOT_FOUND, outbox.delete(ID, null, DEFER).status());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 250);
+        assertFalse(waiting.isDone());
+
+        ExecutionException rejected = assertThrows(ExecutionException.class, () -> waiting.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(ServiceUnavailableException.class, rejected.getCause());
+        assertFalse(store.exists(ID));
+
+        // under the lock the offer is tried once, without waiting
+        ReflectionTestUtils.setField(bus, "offerTimeoutMs", 5000L);
+        start = System.nanoTime();
+        assertThrows(ServiceUnavailableException.class,
+                () -> bus.publishNow(IndexEvent.of(IndexEventOperation.UPSERT, ID, "etag")));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+    }
+}
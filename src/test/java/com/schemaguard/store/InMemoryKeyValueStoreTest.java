@@ -3,7 +3,12 @@ package com.schemaguard.store;
 import com.schemaguard.model.StoredDocument;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -44,4 +49,26 @@ class InMemoryKeyValueStoreTest {
         assertFalse(store.exists(objectId));
         assertTrue(store.get(objectId).isEmpty());
     }
+
+    @Test
+    void scanIds_visitsEveryId_inBatches_andBatchReadsSkipMissing() {
+        KeyValueStore store = new InMemoryKeyValueStore();
+        for (int i = 0; i < 7; i++) {
+            store.create("id-" + i, "{\"objectId\":\"id-" + i + "\"}");
+        }
+
+        List<List<String>> batches = new ArrayList<>();
+        store.scanIds(3, batches::add);
+        Set<String> seen = new HashSet<>();
+        batches.forEach(seen::addAll);
+        assertEquals(List.of(3, 3, 1), batches.stream().map(List::size).toList());
+        assertEquals(7, seen.size());
+
+        Map<String, StoredDocument> found = store.getAll(List.of("id-1", "missing", "id-6"));
+        assertEquals(Set.of("id-1", "id-6"), found.keySet());
+        assertEquals("id-6", found.get("id-6").getObjectId());
+
+        Map<String, String> etags = store.getEtags(List.of("id-1", "missing"));
+        assertEquals(Map.of("id-1", found.get("id-1").getEtag()), etags);
+    }
 }
@@ -0,0 +1,232 @@
+package com.schemaguard.store;
+
+import com.schemaguard.bench.RespStandInServer;
+import com.schemaguard.config.RedisConfig;
+import com.schemaguard.model.StoredDocument;
+import com.schemaguard.queue.IndexEventOperation;
+import com.schemaguard.util.EtagUtil;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RedisGroupCommitterTest {
+
+    private RespStandInServer redis;
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate strings;
+    private RedisTemplate<String, StoredDocument> documents;
+    private SimpleMeterRegistry registry;
+    private RedisGroupCommitter committer;
+    private RedisDocumentOutbox outbox;
+    private ExecutorService writers;
+
+    @BeforeEach
+    void start() throws Exception {
+        redis = new RespStandInServer(0);
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", redis.port()));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        strings = new StringRedisTemplate(connectionFactory);
+        documents = new RedisConfig().redisTemplate(connectionFactory);
+        registry = new SimpleMeterRegistry();
+        writers = Executors.newFixedThreadPool(16);
+
+        committer = new RedisGroupCommitter(strings, registry);
+        ReflectionTestUtils.setField(committer, "enabled", true);
+        ReflectionTestUtils.setField(committer, "maxBatch", 64);
+        ReflectionTestUtils.setField(committer, "maxWaitMicros", 0L);
+        ReflectionTestUtils.setField(committer, "replyTimeoutMs", 5000L);
+        outbox = new RedisDocumentOutbox(strings, documents, KeyValueStoreMetrics.unregistered(), committer);
+        ReflectionTestUtils.setField(outbox, "streamName", "test:events");
+        ReflectionTestUtils.setField(outbox, "lowStreamName", "test:events:low");
+        ReflectionTestUtils.setField(outbox, "deferredSetName", "test:deferred");
+        ReflectionTestUtils.setField(outbox, "versionCounterName", "test:version");
+        ReflectionTestUtils.setField(outbox, "etagHashName", "test:etags");
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        writers.shutdownNow();
+        committer.stop();
+        connectionFactory.destroy();
+        redis.close();
+    }
+
+    private static String plan(String id, int n) {
+        return "{\"objectId\":\"" + id + "\",\"n\":" + n + "}";
+    }
+
+    private Future<DocumentOutbox.Result> create(String id) {
+        return writers.submit(() -> outbox.create(id, plan(id, 0), DocumentOutbox.Indexing.PUBLISH));
+    }
+
+    private StoredDocument stored(String id) {
+        return documents.opsForValue().get("plan:" + id);
+    }
+
+    /** Waits until size calls wait in the queue, not yet taken by the flusher. */
+    private void awaitQueued(int size) throws InterruptedException {
+        Queue<?> queue = (Queue<?>) ReflectionTestUtils.getField(committer, "queue");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (queue.size() != size) {
+            assertTrue(System.nanoTime() < deadline, "queue never reached " + size);
+            Thread.sleep(1);
+        }
+    }
+
+    /** Waits until the flusher has sent count pipelines. */
+    private void awaitPipelines(long count) throws InterruptedException {
+        DistributionSummary batches = registry.get("schemaguard.kv.group_commit.batch").summary();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (batches.count() < count) {
+            assertTrue(System.nanoTime() < deadline, "flusher never sent " + count + " pipelines");
+            Thread.sleep(1);
+        }
+    }
+
+    /** Occupies the flusher with one slow script so that later calls stay queued behind it. */
+    private Future<DocumentOutbox.Result> blockFlusher(String id, long millis) throws InterruptedException {
+        long sent = registry.get("schemaguard.kv.group_commit.batch").summary().count();
+        redis.setScriptLatencyMillis(millis);
+        Future<DocumentOutbox.Result> blocker = create(id);
+        awaitPipelines(sent + 1);
+        return blocker;
+    }
+
+    @Test
+    void concurrentWriters_sharePipelines_andEachGetsItsOwnResult() throws Exception {
+        ReflectionTestUtils.setField(committer, "maxWaitMicros", 20_000L);
+        committer.start();
+
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<DocumentOutbox.Result>> results = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            String id = "doc-" + i;
+            results.add(writers.submit(() -> {
+                go.await();
+                return outbox.create(id, plan(id, 0), DocumentOutbox.Indexing.PUBLISH);
+            }));
+        }
+        go.countDown();
+        for (Future<DocumentOutbox.Result> result : results) {
+            assertEquals(DocumentOutbox.Status.APPLIED, result.get(5, TimeUnit.SECONDS).status());
+        }
+        // a duplicate create in a batch is rejected for that caller only
+        assertEquals(DocumentOutbox.Status.ALREADY_EXISTS,
+                outbox.create("doc-3", plan("doc-3", 1), DocumentOutbox.Indexing.PUBLISH).status());
+
+        for (int i = 0; i < 16; i++) {
+            assertEquals(plan("doc-" + i, 0), stored("doc-" + i).getJson());
+        }
+        DistributionSummary batches = registry.get("schemaguard.kv.group_commit.batch").summary();
+        assertEquals(17, (long) batches.totalAmount());
+        assertTrue(batches.count() < 16, "16 concurrent writes took " + batches.count() + " pipelines");
+    }
+
+    @Test
+    void lostScriptCache_fallsBackToEval() throws Exception {
+        committer.start();
+        assertEquals(DocumentOutbox.Status.APPLIED, create("a").get(5, TimeUnit.SECONDS).status());
+
+        strings.execute((RedisCallback<Object>) connection -> {
+            connection.scriptingCommands().scriptFlush();
+            return null;
+        });
+
+        assertEquals(DocumentOutbox.Status.APPLIED, create("b").get(5, TimeUnit.SECONDS).status());
+        assertEquals(DocumentOutbox.Status.APPLIED, create("c").get(5, TimeUnit.SECONDS).status());
+        assertNotNull(stored("b"));
+        assertNotNull(stored("c"));
+    }
+
+    @Test
+    void writesToOneKey_applyInTheOrderTheyWereQueued() throws Exception {
+        committer.start();
+        Future<DocumentOutbox.Result> blocker = blockFlusher("blocker", 300);
+
+        // each replace is conditional on the previous version, so all of them
+        // apply only if the pipeline keeps queue order
+        List<Future<DocumentOutbox.Result>> results = new ArrayList<>();
+        results.add(create("k"));
+        awaitQueued(1);
+        for (int n = 1; n <= 5; n++) {
+            String expected = EtagUtil.sha256Etag(plan("k", n - 1));
+            String json = plan("k", n);
+            results.add(writers.submit(() -> outbox.replace("k", json, expected,
+                    IndexEventOperation.UPSERT, DocumentOutbox.Indexing.PUBLISH)));
+            awaitQueued(n + 1);
+        }
+        redis.setScriptLatencyMillis(0);
+
+        assertEquals(DocumentOutbox.Status.APPLIED, blocker.get(5, TimeUnit.SECONDS).status());
+        for (Future<DocumentOutbox.Result> result : results) {
+            assertEquals(DocumentOutbox.Status.APPLIED, result.get(5, TimeUnit.SECONDS).status());
+        }
+        assertEquals(plan("k", 5), stored("k").getJson());
+        DistributionSummary batches = registry.get("schemaguard.kv.group_commit.batch").summary();
+        assertEquals(2, batches.count());
+        assertEquals(6, (long) batches.max());
+    }
+
+    @Test
+    void stop_sendsWhatIsQueued_thenRejectsNewCalls() throws Exception {
+        committer.start();
+        Future<DocumentOutbox.Result> inFlight = blockFlusher("a", 300);
+        List<Future<DocumentOutbox.Result>> queued = List.of(create("b"), create("c"));
+        awaitQueued(2);
+
+        committer.stop();
+
+        assertEquals(DocumentOutbox.Status.APPLIED, inFlight.get(5, TimeUnit.SECONDS).status());
+        for (Future<DocumentOutbox.Result> result : queued) {
+            assertEquals(DocumentOutbox.Status.APPLIED, result.get(5, TimeUnit.SECONDS).status());
+        }
+        assertThrows(IllegalStateException.class,
+                () -> outbox.create("d", plan("d", 0), DocumentOutbox.Indexing.PUBLISH));
+        assertNull(stored("d"));
+    }
+
+    @Test
+    void replyTimeout_failsOnlyCallsNeverSent() throws Exception {
+        ReflectionTestUtils.setField(committer, "replyTimeoutMs", 300L);
+        committer.start();
+
+        // queued 200 ms, then 200 ms in flight: past the timeout, yet the caller gets the real reply
+        Future<DocumentOutbox.Result> a = blockFlusher("a", 200);
+        Future<DocumentOutbox.Result> b = create("b");
+        assertEquals(DocumentOutbox.Status.APPLIED, a.get(5, TimeUnit.SECONDS).status());
+        assertEquals(DocumentOutbox.Status.APPLIED, b.get(5, TimeUnit.SECONDS).status());
+
+        // still queued when the timeout hits: withdrawn, and never applied later
+        Future<DocumentOutbox.Result> c = blockFlusher("c", 500);
+        assertThrows(IllegalStateException.class,
+                () -> outbox.create("d", plan("d", 0), DocumentOutbox.Indexing.PUBLISH));
+        redis.setScriptLatencyMillis(0);
+        assertEquals(DocumentOutbox.Status.APPLIED, c.get(5, TimeUnit.SECONDS).status());
+        assertEquals(DocumentOutbox.Status.APPLIED, create("e").get(5, TimeUnit.SECONDS).status());
+        assertNull(stored("d"));
+
+        // so a retry of the failed write is a clean create, not a conflict
+        assertEquals(DocumentOutbox.Status.APPLIED,
+                outbox.create("d", plan("d", 0), DocumentOutbox.Indexing.PUBLISH).status());
+    }
+}
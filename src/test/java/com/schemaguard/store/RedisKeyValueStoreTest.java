@@ -0,0 +1,92 @@
+package com.schemaguard.store;
+
+import com.schemaguard.bench.RespStandInServer;
+import com.schemaguard.config.RedisConfig;
+import com.schemaguard.model.StoredDocument;
+import com.schemaguard.queue.IndexEventOperation;
+import com.schemaguard.util.EtagUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RedisKeyValueStoreTest {
+
+    private static final String ETAG_HASH = "test:etags";
+    private static final String V1 = "{\"objectId\":\"a\",\"planType\":\"inNetwork\"}";
+    private static final String V2 = "{\"objectId\":\"a\",\"planType\":\"outOfNetwork\"}";
+
+    private RespStandInServer redis;
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate strings;
+    private RedisTemplate<String, StoredDocument> documents;
+    private RedisKeyValueStore store;
+    private RedisDocumentOutbox outbox;
+
+    @BeforeEach
+    void start() throws Exception {
+        redis = new RespStandInServer(0);
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", redis.port()));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        strings = new StringRedisTemplate(connectionFactory);
+        documents = new RedisConfig().redisTemplate(connectionFactory);
+
+        KeyValueStoreMetrics metrics = KeyValueStoreMetrics.unregistered();
+        store = new RedisKeyValueStore(documents, strings, metrics);
+        ReflectionTestUtils.setField(store, "etagHashName", ETAG_HASH);
+        outbox = new RedisDocumentOutbox(strings, documents, metrics,
+                new RedisGroupCommitter(strings, new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(outbox, "streamName", "test:events");
+        ReflectionTestUtils.setField(outbox, "lowStreamName", "test:events:low");
+        ReflectionTestUtils.setField(outbox, "deferredSetName", "test:deferred");
+        ReflectionTestUtils.setField(outbox, "versionCounterName", "test:version");
+        ReflectionTestUtils.setField(outbox, "etagHashName", ETAG_HASH);
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        connectionFactory.destroy();
+        redis.close();
+    }
+
+    @Test
+    void outboxWrites_keepTheEtagHashInStep() {
+        outbox.create("a", V1, DocumentOutbox.Indexing.PUBLISH);
+        assertEquals(EtagUtil.sha256Etag(V1), strings.opsForHash().get(ETAG_HASH, "a"));
+        assertEquals(Map.of("a", EtagUtil.sha256Etag(V1)), store.getEtags(List.of("a", "missing")));
+
+        outbox.replace("a", V2, EtagUtil.sha256Etag(V1),
+                IndexEventOperation.UPSERT, DocumentOutbox.Indexing.PUBLISH);
+        assertEquals(Map.of("a", EtagUtil.sha256Etag(V2)), store.getEtags(List.of("a")));
+
+        outbox.delete("a", EtagUtil.sha256Etag(V2), DocumentOutbox.Indexing.PUBLISH);
+        assertEquals(Map.of(), store.getEtags(List.of("a")));
+        assertNull(strings.opsForHash().get(ETAG_HASH, "a"));
+    }
+
+    @Test
+    void documentWrittenBeforeTheHash_isReadOnce_andAddedToIt() {
+        String etag = EtagUtil.sha256Etag(V1);
+        documents.opsForValue().set("plan:a", new StoredDocument("a", V1, etag, Instant.now()));
+        assertNull(strings.opsForHash().get(ETAG_HASH, "a"));
+
+        assertEquals(Map.of("a", etag), store.getEtags(List.of("a")));
+        assertEquals(etag, strings.opsForHash().get(ETAG_HASH, "a"));
+
+        // the etag check of the next write reads it from the hash
+        assertEquals(DocumentOutbox.Status.APPLIED, outbox.replace("a", V2, etag, IndexEventOperation.UPSERT,
+                DocumentOutbox.Indexing.PUBLISH).status());
+    }
+}